@@ -18,6 +18,9 @@ import java.io.IOException;
 @RequiredArgsConstructor
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    //? EventSource cannot send headers, so the stream endpoint also takes the token as a query param
+    private static final String STREAM_PATH = "/api/wallet/stream";
+
     private final JwtUtil jwtUtil;
     private final UserService userService;
 
@@ -29,12 +32,15 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         final String token;
         final String username;
 
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            token = authHeader.substring(7);  //! done to remove brearer prefix (7 wors)
+        } else if (STREAM_PATH.equals(request.getRequestURI()) && request.getParameter("access_token") != null) {
+            token = request.getParameter("access_token");
+        } else {
             filterChain.doFilter(request, response);
             return;
         }
 
-        token = authHeader.substring(7);  //! done to remove brearer prefix (7 wors)
         username = jwtUtil.extractUsername(token);
 
         if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
@@ -42,6 +48,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 if (jwtUtil.validateToken(token)) {
                     var authToken = new UsernamePasswordAuthenticationToken(
                             user.getId(), null, null);
+                    // ?the username rides along so handlers need no user lookup to know who is calling
+                    authToken.setDetails(user.getUsername());
                     SecurityContextHolder.getContext().setAuthentication(authToken);
                 }
             });
@@ -0,0 +1,63 @@
+package org.harsh.tuple.paisa.config;
+
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.TimeSeriesGranularity;
+import com.mongodb.client.model.TimeSeriesOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+
+// *Which collections hold the ledger. Transaction/Cashback resolve their @Document name through this bean,
+// *so repositories, templates and aggregations follow the configured layout without further changes
+@Slf4j
+@Component("ledgerStorage")
+public class LedgerStorage {
+
+    public enum Mode { STANDARD, TIMESERIES }
+
+    private static final String TIME_SERIES_SUFFIX = "_ts";
+
+    private final Mode mode;
+
+    public LedgerStorage(MongoDatabaseFactory mongoDatabaseFactory, @Value("${ledger.storage:standard}") String mode) {
+        this.mode = Mode.valueOf(mode.toUpperCase());
+        if (this.mode == Mode.TIMESERIES) {
+            //? must exist before the index creator touches the name, otherwise Mongo creates a plain collection
+            MongoDatabase database = mongoDatabaseFactory.getMongoDatabase();
+            ensureTimeSeries(database, getTransactions());
+            ensureTimeSeries(database, getCashbacks());
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public String getTransactions() {
+        return collectionName("transactions", mode);
+    }
+
+    public String getCashbacks() {
+        return collectionName("cashbacks", mode);
+    }
+
+    public static String collectionName(String base, Mode mode) {
+        return mode == Mode.TIMESERIES ? base + TIME_SERIES_SUFFIX : base;
+    }
+
+    // ?userId as metaField keeps each user's events in their own buckets; timestamp is the time field
+    public static void ensureTimeSeries(MongoDatabase database, String name) {
+        if (database.listCollectionNames().into(new ArrayList<>()).contains(name)) {
+            return;
+        }
+        log.info("Creating time-series collection {}", name);
+        database.createCollection(name, new CreateCollectionOptions().timeSeriesOptions(
+                new TimeSeriesOptions("timestamp")
+                        .metaField("userId")
+                        .granularity(TimeSeriesGranularity.HOURS)));
+    }
+}
@@ -1,8 +1,11 @@
 package org.harsh.tuple.paisa.config;
 
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
@@ -13,6 +16,7 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 import org.springframework.web.cors.CorsConfiguration;
 import java.util.Collections;
 import java.util.Arrays;
+import java.util.Set;
 
 @Configuration
 @EnableWebSecurity
@@ -21,6 +25,9 @@ public class SecurityConfig {
 
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    @Value("${admin.user-ids:}")
+    private Set<String> adminUserIds;
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
@@ -34,6 +41,8 @@ public class SecurityConfig {
                     return config;
                 }))
                 .authorizeHttpRequests(auth -> auth
+                        //* async dispatches of the SSE stream re-enter the chain without the JWT
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers(
                                 "/api/user/register",
                                 "/api/user/login"
@@ -44,9 +53,21 @@ public class SecurityConfig {
                                 "api/wallet/transfer",
                                 "api/wallet/statement",
                                 "api/cashback/history",
+                                "api/cashback/summary",
                                 "api/wallet/balance",
+                                "api/wallet/stream",
+                                "api/wallet/sync",
                                 "api/charts/chartsHistory",
+                                "api/charts/buckets",
+                                "api/insights/counterparties/top",
+                                "api/insights/counterparties/distinct",
+                                "api/insights/spending/percentiles",
+                                "api/insights/spending/monthly",
                                 "api/user/search").authenticated()
+                        //* ops endpoints: only the user ids listed in admin.user-ids
+                        .requestMatchers("/api/admin/**").access((authentication, context) ->
+                                new AuthorizationDecision(authentication.get().isAuthenticated()
+                                        && adminUserIds.contains(String.valueOf(authentication.get().getPrincipal()))))
                 )
                 .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
 
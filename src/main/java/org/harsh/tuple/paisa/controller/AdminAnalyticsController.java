@@ -0,0 +1,61 @@
+package org.harsh.tuple.paisa.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.harsh.tuple.paisa.dto.SpendingPercentiles;
+import org.harsh.tuple.paisa.model.PlatformDayStats;
+import org.harsh.tuple.paisa.model.TransactionType;
+import org.harsh.tuple.paisa.service.AdminAnalyticsService;
+import org.harsh.tuple.paisa.service.CounterpartyInsightsService;
+import org.harsh.tuple.paisa.service.SpendingDistributionService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/admin/analytics")
+public class AdminAnalyticsController {
+
+    private final AdminAnalyticsService adminAnalyticsService;
+    private final CounterpartyInsightsService counterpartyInsightsService;
+    private final SpendingDistributionService spendingDistributionService;
+
+    // *Recharge/transfer/cashback totals and active users per day, closed days come from the stored cache
+    @GetMapping("/daily")
+    public ResponseEntity<List<PlatformDayStats>> getDailyStats(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(adminAnalyticsService.getDailyStats(from, to));
+    }
+
+    // *Throws away the stored numbers of closed days in the range and computes them again from the primary
+    @PostMapping("/daily/recompute")
+    public ResponseEntity<List<PlatformDayStats>> recomputeDailyStats(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(adminAnalyticsService.recomputeDays(from, to));
+    }
+
+    @GetMapping("/counterparties")
+    public ResponseEntity<Map<String, Object>> getPlatformCounterparties(@RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(Map.of(
+                "topRecipients", counterpartyInsightsService.topRecipients(Math.max(1, Math.min(limit, 50))),
+                "distinctActiveUsers", counterpartyInsightsService.distinctActiveUsers()
+        ));
+    }
+
+    // *Platform-wide percentiles, the baseline users' own numbers are compared against
+    @GetMapping("/spending")
+    public ResponseEntity<SpendingPercentiles> getPlatformSpendingPercentiles(
+            @RequestParam TransactionType type,
+            @RequestParam YearMonth from,
+            @RequestParam YearMonth to,
+            @RequestParam(defaultValue = "0.5,0.9") List<Double> quantiles) {
+        return ResponseEntity.ok(spendingDistributionService.platformPercentiles(type, from, to, quantiles));
+    }
+}
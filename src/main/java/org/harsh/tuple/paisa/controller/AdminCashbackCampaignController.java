@@ -0,0 +1,28 @@
+package org.harsh.tuple.paisa.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.harsh.tuple.paisa.model.CashbackCampaign;
+import org.harsh.tuple.paisa.service.CampaignBudgetService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/admin/cashback/campaigns")
+public class AdminCashbackCampaignController {
+
+    private final CampaignBudgetService campaignBudgetService;
+
+    // *Budget, leased and spent amounts per campaign (spent lags by up to cashback.campaigns.reconcile-ms)
+    @GetMapping
+    public ResponseEntity<List<CashbackCampaign>> getCampaigns() {
+        return ResponseEntity.ok(campaignBudgetService.getCampaigns());
+    }
+
+    @PostMapping
+    public ResponseEntity<CashbackCampaign> saveCampaign(@RequestBody CashbackCampaign campaign) {
+        return ResponseEntity.ok(campaignBudgetService.saveCampaign(campaign));
+    }
+}
@@ -0,0 +1,52 @@
+package org.harsh.tuple.paisa.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.harsh.tuple.paisa.dto.BacktestJob;
+import org.harsh.tuple.paisa.model.CashbackRule;
+import org.harsh.tuple.paisa.service.CashbackBacktestService;
+import org.harsh.tuple.paisa.service.CashbackRuleEngine;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/admin/cashback/rules")
+public class AdminCashbackRuleController {
+
+    private final CashbackRuleEngine cashbackRuleEngine;
+    private final CashbackBacktestService cashbackBacktestService;
+
+    @GetMapping
+    public ResponseEntity<List<CashbackRule>> getRules() {
+        return ResponseEntity.ok(cashbackRuleEngine.getRules());
+    }
+
+    // *Create or replace a rule; live on this node immediately, on the others within cashback.rules.refresh-ms
+    @PostMapping
+    public ResponseEntity<CashbackRule> saveRule(@RequestBody CashbackRule rule) {
+        return ResponseEntity.ok(cashbackRuleEngine.saveRule(rule));
+    }
+
+    // *Queue a replay of the last `months` of recharges through a candidate rule set; nothing is saved or paid.
+    // *Answers 202 with the job, poll GET /backtest/{id} for its report
+    @PostMapping("/backtest")
+    public ResponseEntity<BacktestJob> backtest(@RequestBody List<CashbackRule> rules,
+                                                @RequestParam(defaultValue = "3") int months) {
+        return ResponseEntity.accepted().body(cashbackBacktestService.submit(rules, months));
+    }
+
+    @GetMapping("/backtest/{id}")
+    public ResponseEntity<BacktestJob> getBacktest(@PathVariable String id) {
+        return cashbackBacktestService.job(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteRule(@PathVariable String id) {
+        cashbackRuleEngine.deleteRule(id);
+        return ResponseEntity.noContent().build();
+    }
+}
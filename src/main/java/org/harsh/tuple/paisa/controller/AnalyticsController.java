@@ -2,6 +2,8 @@ package org.harsh.tuple.paisa.controller;
 
 import lombok.RequiredArgsConstructor;
 import org.harsh.tuple.paisa.dto.AnalyticsRequestDto;
+import org.harsh.tuple.paisa.dto.ChartBucket;
+import org.harsh.tuple.paisa.dto.ChartGranularity;
 import org.harsh.tuple.paisa.service.AnalyticsService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -25,4 +27,14 @@ public class AnalyticsController {
         List<Object> history = analyticsService.getCombinedHistory(userId,startDate,endDate);
         return ResponseEntity.ok(history);
     }
+
+    @PostMapping("/buckets")
+    public ResponseEntity<List<ChartBucket>> getBuckets(@RequestBody AnalyticsRequestDto request) {
+        String userId = (String) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        ChartGranularity granularity = request.getGranularity() == null
+                ? ChartGranularity.DAY
+                : request.getGranularity();
+        List<ChartBucket> buckets = analyticsService.getBuckets(userId, request.getStartDate(), request.getEndDate(), granularity);
+        return ResponseEntity.ok(buckets);
+    }
 }
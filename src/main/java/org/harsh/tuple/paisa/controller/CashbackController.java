@@ -1,13 +1,13 @@
 package org.harsh.tuple.paisa.controller;
 
 import lombok.RequiredArgsConstructor;
-import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.dto.CashbackHistoryPage;
+import org.harsh.tuple.paisa.dto.CashbackSummary;
 import org.harsh.tuple.paisa.service.CashbackService;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/api/cashback")
 @RequiredArgsConstructor
@@ -15,10 +15,20 @@ public class CashbackController {
 
     private final CashbackService cashbackService;
 
-    //! View Cashback History
+    //! View Cashback History, newest first; pass nextCursor back as "before" for older entries
     @GetMapping("/history")
-    public ResponseEntity<?> getCashbackHistory(@RequestParam String userId) {
-        List<Cashback> cashbacks = cashbackService.getCashbackHistory(userId);
+    public ResponseEntity<?> getCashbackHistory(@RequestParam(required = false) Long before,
+                                                @RequestParam(defaultValue = "20") int size) {
+        String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+        CashbackHistoryPage cashbacks = cashbackService.getCashbackHistory(userId, before, size);
         return ResponseEntity.ok(cashbacks);
     }
+
+    //! Lifetime and month-to-date cashback
+    @GetMapping("/summary")
+    public ResponseEntity<?> getCashbackSummary() {
+        String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+        CashbackSummary summary = cashbackService.getCashbackSummary(userId);
+        return ResponseEntity.ok(summary);
+    }
 }
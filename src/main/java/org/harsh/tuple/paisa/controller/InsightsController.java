@@ -0,0 +1,61 @@
+package org.harsh.tuple.paisa.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.harsh.tuple.paisa.dto.CounterpartyCount;
+import org.harsh.tuple.paisa.dto.SpendingPercentiles;
+import org.harsh.tuple.paisa.model.TransactionType;
+import org.harsh.tuple.paisa.service.CounterpartyInsightsService;
+import org.harsh.tuple.paisa.service.SpendingDistributionService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/insights")
+public class InsightsController {
+
+    private static final int MAX_LIMIT = 10;
+
+    private final CounterpartyInsightsService counterpartyInsightsService;
+    private final SpendingDistributionService spendingDistributionService;
+
+    // *Approximate "top people you paid", counts never under-report
+    @GetMapping("/counterparties/top")
+    public ResponseEntity<List<CounterpartyCount>> getTopCounterparties(@RequestParam(defaultValue = "5") int limit) {
+        String userId = (String) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        int boundedLimit = Math.max(1, Math.min(limit, MAX_LIMIT));
+        return ResponseEntity.ok(counterpartyInsightsService.topPaid(userId, boundedLimit));
+    }
+
+    @GetMapping("/counterparties/distinct")
+    public ResponseEntity<Map<String, Long>> getDistinctCounterparties() {
+        String userId = (String) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        return ResponseEntity.ok(Map.of("distinctCounterparties", counterpartyInsightsService.distinctCounterparties(userId)));
+    }
+
+    // *Percentiles of recharge or transfer sizes over a month range, e.g. ?type=TRANSFER&from=2024-01&to=2024-06
+    @GetMapping("/spending/percentiles")
+    public ResponseEntity<SpendingPercentiles> getSpendingPercentiles(
+            @RequestParam TransactionType type,
+            @RequestParam YearMonth from,
+            @RequestParam YearMonth to,
+            @RequestParam(defaultValue = "0.5,0.9") List<Double> quantiles) {
+        String userId = (String) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        return ResponseEntity.ok(spendingDistributionService.percentiles(userId, type, from, to, quantiles));
+    }
+
+    @GetMapping("/spending/monthly")
+    public ResponseEntity<List<SpendingPercentiles>> getMonthlySpendingPercentiles(
+            @RequestParam TransactionType type,
+            @RequestParam YearMonth from,
+            @RequestParam YearMonth to,
+            @RequestParam(defaultValue = "0.5,0.9") List<Double> quantiles) {
+        String userId = (String) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        return ResponseEntity.ok(spendingDistributionService.monthly(userId, type, from, to, quantiles));
+    }
+}
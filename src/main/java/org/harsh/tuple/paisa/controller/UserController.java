@@ -3,15 +3,14 @@ package org.harsh.tuple.paisa.controller;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.harsh.tuple.paisa.model.User;
-import org.harsh.tuple.paisa.repository.UserRepository;
 import org.harsh.tuple.paisa.service.UserService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -22,7 +21,6 @@ import java.util.Set;
 public class UserController {
 
     private final UserService userService;
-    private final UserRepository userRepository;
 
     // !User Registration
     @PostMapping("/register")
@@ -63,16 +61,12 @@ public class UserController {
 
     }
     @GetMapping("/search")
-    public Map<String, Set<String>> searchUser(@RequestParam("query") String query){
-        Map<String, Set<String>> suggestions =  userService.getSuggestions(query);
-        String userId = SecurityContextHolder.getContext().getAuthentication().getName();
-        String userName = userRepository.findById(userId).get().getUsername();
-
-        suggestions.forEach((key, usernames) -> {
-            usernames.remove(userName);
-        });
-
-        return suggestions;
+    public Map<String, Set<String>> searchUser(@RequestParam("query") String query,
+                                               @RequestParam(defaultValue = "10") int limit,
+                                               @RequestParam(defaultValue = "false") boolean fuzzy){
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String userName = authentication.getDetails() instanceof String username ? username : null;
+        return userService.getSuggestions(authentication.getName(), userName, query, limit, fuzzy);
 
     }
 }
@@ -2,12 +2,22 @@ package org.harsh.tuple.paisa.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.harsh.tuple.paisa.dto.StatementResponse;
+import org.harsh.tuple.paisa.dto.SyncResponse;
 import org.harsh.tuple.paisa.model.Transaction;
 import org.harsh.tuple.paisa.repository.UserRepository;
+import org.harsh.tuple.paisa.service.LedgerSyncService;
+import org.harsh.tuple.paisa.service.WalletEtagService;
+import org.harsh.tuple.paisa.service.WalletEventStream;
 import org.harsh.tuple.paisa.service.WalletService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
@@ -19,7 +29,13 @@ import java.util.Map;
 public class WalletController {
 
 
+    //? clients may keep a copy but must revalidate it with If-None-Match
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
     private final WalletService walletService;
+    private final WalletEtagService walletEtagService;
+    private final WalletEventStream walletEventStream;
+    private final LedgerSyncService ledgerSyncService;
     private final UserRepository userRepository;
 
 
@@ -49,17 +65,55 @@ public class WalletController {
 
     // View Account Statement
     @GetMapping("/statement")
-    public List<Object> getCombinedHistory(int page, int size) {
+    public ResponseEntity<StatementResponse> getCombinedHistory(int page, int size, WebRequest request) {
         String userId = SecurityContextHolder.getContext().getAuthentication().getName();
-        return walletService.getCombinedHistory(userId, page, size);
+        String etag = walletEtagService.statementEtag(userId, page, size);
+        if (walletEtagService.checkNotModified(request, etag, "statement")) {
+            return notModified(etag);
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(REVALIDATE)
+                .body(walletService.getCombinedHistory(userId, page, size));
     }
 
 
 
     @GetMapping("/balance")
-    public Map<String, Double> getWalletBalance() {
+    public ResponseEntity<Map<String, Double>> getWalletBalance(WebRequest request) {
         String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+        String etag = walletEtagService.balanceEtag(userId);
+        if (walletEtagService.checkNotModified(request, etag, "balance")) {
+            return notModified(etag);
+        }
         double balance = walletService.getBalance(userId);
-        return Map.of("balance", balance);
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(REVALIDATE)
+                .body(Map.of("balance", balance));
+    }
+
+    // Entries created after the client's watermark
+    @GetMapping("/sync")
+    public SyncResponse syncHistory(@RequestParam(defaultValue = "0") long since,
+                                    @RequestParam(defaultValue = "100") int limit) {
+        String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+        return ledgerSyncService.getChangesSince(userId, since, limit);
+    }
+
+    // Live balance and activity, replaces polling /balance
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamWallet() {
+        String userId = SecurityContextHolder.getContext().getAuthentication().getName();
+        SseEmitter emitter = walletEventStream.subscribe(userId);
+        walletEventStream.publishBalance(userId, walletService.getBalance(userId));
+        return emitter;
+    }
+
+    private static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(REVALIDATE)
+                .build();
     }
 }
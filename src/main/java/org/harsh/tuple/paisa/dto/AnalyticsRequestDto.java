@@ -14,4 +14,6 @@ public class AnalyticsRequestDto {
 
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss")
     private LocalDateTime endDate;
+
+    private ChartGranularity granularity;
 }
@@ -0,0 +1,24 @@
+package org.harsh.tuple.paisa.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+// *A backtest queued through the admin API; poll it by id until it is DONE or FAILED
+@Data
+@Builder
+public class BacktestJob {
+
+    public enum Status { QUEUED, RUNNING, DONE, FAILED }
+
+    private String id;
+    private int ruleCount;
+    private int months;
+    // ?updated by the backtest thread while requests read it
+    private volatile Status status;
+    private LocalDateTime submittedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile BacktestReport report;
+    private volatile String error;
+}
@@ -0,0 +1,31 @@
+package org.harsh.tuple.paisa.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+public class BacktestReport {
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private int ruleCount;
+    private long recharges;
+    private double rechargeVolume;
+    // ?recharges that earned any cashback
+    private long rewarded;
+    private double totalCashback;
+    // ?cashback the rules would have paid that the monthly cap held back
+    private double cappedCashback;
+    // ?cashback paid per rupee recharged
+    private double costRatio;
+    private Map<String, SegmentCost> bySegment;
+    // ?quantiles of the cashback amount over rewarded recharges
+    private List<QuantileValue> distribution;
+    // ?rupees drawn from each campaign budget
+    private Map<String, Double> campaignSpend;
+    private long elapsedMs;
+}
@@ -0,0 +1,16 @@
+package org.harsh.tuple.paisa.dto;
+
+import lombok.Builder;
+import lombok.Data;
+import org.harsh.tuple.paisa.model.Cashback;
+
+import java.util.List;
+
+@Data
+@Builder
+public class CashbackHistoryPage {
+    private List<Cashback> cashbacks;
+    // ?pass back as "before" for the next (older) page, null on the last page
+    private Long nextCursor;
+    private boolean hasMore;
+}
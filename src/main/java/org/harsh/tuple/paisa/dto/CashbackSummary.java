@@ -0,0 +1,16 @@
+package org.harsh.tuple.paisa.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.YearMonth;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CashbackSummary {
+    private double lifetime;
+    private YearMonth month;
+    private double monthToDate;
+}
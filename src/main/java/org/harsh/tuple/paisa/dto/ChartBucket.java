@@ -0,0 +1,18 @@
+package org.harsh.tuple.paisa.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.harsh.tuple.paisa.model.LedgerEntryKind;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChartBucket {
+    private LocalDate bucketStart;
+    private LedgerEntryKind kind;
+    private long count;
+    private double total;
+}
@@ -0,0 +1,18 @@
+package org.harsh.tuple.paisa.dto;
+
+public enum ChartGranularity {
+    DAY("day"),
+    WEEK("week"),
+    MONTH("month");
+
+    private final String unit;
+
+    ChartGranularity(String unit) {
+        this.unit = unit;
+    }
+
+    // ?unit name understood by Mongo's $dateTrunc
+    public String unit() {
+        return unit;
+    }
+}
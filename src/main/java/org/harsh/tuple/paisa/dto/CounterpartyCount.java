@@ -0,0 +1,14 @@
+package org.harsh.tuple.paisa.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CounterpartyCount {
+    private String userId;
+    // ?Count-Min estimate: never below the true count
+    private long count;
+}
@@ -0,0 +1,14 @@
+package org.harsh.tuple.paisa.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QuantileValue {
+    private double quantile;
+    // ?t-digest estimate, null when there were no amounts in the range
+    private Double value;
+}
@@ -0,0 +1,14 @@
+package org.harsh.tuple.paisa.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SegmentCost {
+    private long recharges;
+    private double rechargeVolume;
+    private double cashback;
+}
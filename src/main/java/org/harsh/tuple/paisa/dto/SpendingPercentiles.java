@@ -0,0 +1,20 @@
+package org.harsh.tuple.paisa.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.harsh.tuple.paisa.model.TransactionType;
+
+import java.time.YearMonth;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpendingPercentiles {
+    private TransactionType type;
+    private YearMonth from;
+    private YearMonth to;
+    private long count;
+    private List<QuantileValue> quantiles;
+}
@@ -0,0 +1,15 @@
+package org.harsh.tuple.paisa.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class StatementResponse {
+    private List<Object> history;
+    private int page;
+    private int size;
+    private boolean hasMore;
+}
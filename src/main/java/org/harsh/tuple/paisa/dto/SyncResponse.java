@@ -0,0 +1,17 @@
+package org.harsh.tuple.paisa.dto;
+
+import lombok.Builder;
+import lombok.Data;
+import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.Transaction;
+
+import java.util.List;
+
+@Data
+@Builder
+public class SyncResponse {
+    private List<Transaction> transactions;
+    private List<Cashback> cashbacks;
+    private long watermark;
+    private boolean hasMore;
+}
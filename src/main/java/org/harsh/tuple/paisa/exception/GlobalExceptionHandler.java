@@ -58,6 +58,24 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getErrorResponse());
     }
 
+    @ExceptionHandler(HistoryReadTimeoutException.class)
+    public ResponseEntity<ErrorResponse> handleHistoryReadTimeoutException(HistoryReadTimeoutException ex) {
+        log.error("HistoryReadTimeoutException: {}", ex.getErrorResponse().getMessage());
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(ex.getErrorResponse());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<ErrorResponse> handleIllegalArgumentException(IllegalArgumentException ex) {
+        log.error("IllegalArgumentException: {}", ex.getMessage());
+        ErrorResponse errorResponse = new ErrorResponse(
+                ex.getMessage(),
+                "ERR_INVALID_REQUEST",
+                LocalDateTime.now(),
+                Collections.emptyMap()
+        );
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorResponse> handleGenericException(Exception ex) {
         log.error("Unexpected exception: {}", ex.getMessage(), ex);
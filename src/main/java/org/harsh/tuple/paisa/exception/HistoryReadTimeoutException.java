@@ -0,0 +1,25 @@
+package org.harsh.tuple.paisa.exception;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.harsh.tuple.paisa.dto.ErrorResponse;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@EqualsAndHashCode(callSuper = true)
+@Getter
+public class HistoryReadTimeoutException extends RuntimeException {
+
+    private final ErrorResponse errorResponse;
+
+    public HistoryReadTimeoutException(Duration deadline) {
+        this.errorResponse = new ErrorResponse(
+                "History could not be read in time",
+                "ERR_HISTORY_TIMEOUT",
+                LocalDateTime.now(),
+                Map.of("deadline_ms", deadline.toMillis())
+        );
+    }
+}
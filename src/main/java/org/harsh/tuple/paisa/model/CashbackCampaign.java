@@ -0,0 +1,30 @@
+package org.harsh.tuple.paisa.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// *Hard cashback budget shared by every rule pointing at it. Amounts are paise so counters stay exact under $inc
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "cashback_campaigns")
+public class CashbackCampaign {
+
+    @Id
+    private String id;
+    private String name;
+    private long budgetPaise;
+    // ?leased to nodes (spent or still held locally); never exceeds budgetPaise
+    private long allocatedPaise;
+    // ?granted to users, reported by nodes on every reconcile
+    private long spentPaise;
+    private LocalDateTime startsAt;
+    private LocalDateTime endsAt;
+}
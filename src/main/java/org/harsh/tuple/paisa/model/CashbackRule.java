@@ -0,0 +1,46 @@
+package org.harsh.tuple.paisa.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+// *One row of the cashback decision table. For a recharge, the highest-priority enabled rule whose amount band,
+// *time window, segment and first-recharge conditions all match decides the cashback
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "cashback_rules")
+public class CashbackRule {
+
+    @Id
+    private String id;
+    private String name;
+    private boolean enabled;
+    private int priority;
+    // ?band is [minAmount, maxAmount), a null maxAmount is open-ended
+    private double minAmount;
+    private Double maxAmount;
+    private double percentage;
+    private double flatBonus;
+    // ?null = uncapped
+    private Double maxCashback;
+    private boolean firstRechargeOnly;
+    // ?both null = all day; a window may wrap midnight (22:00-02:00)
+    private LocalTime windowStart;
+    private LocalTime windowEnd;
+    // ?null = every user, otherwise must equal User.segment
+    private String segment;
+    // ?cashback from this rule is drawn from the campaign's budget; when it is used up the rule is skipped
+    private String campaignId;
+    // ?bumped on every change, nodes poll the latest value to know when to recompile
+    @Indexed
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,28 @@
+package org.harsh.tuple.paisa.model;
+
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@Data
+@Builder
+@Document(collection = "counterparty_sketches")
+public class CounterpartySketchSnapshot {
+
+    // ?userId, or "_platform" for the platform-wide sketch
+    @Id
+    private String id;
+    private byte[] frequencies;
+    private byte[] registers;
+    private int topK;
+    private Map<String, Long> heavyHitters;
+    // ?nodes merge their pending deltas into this document, the version guards the read-merge-write
+    @Version
+    private Long version;
+    private LocalDateTime checkpointedAt;
+}
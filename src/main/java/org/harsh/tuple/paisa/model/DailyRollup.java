@@ -0,0 +1,33 @@
+package org.harsh.tuple.paisa.model;
+
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+import java.util.Date;
+
+@Data
+@Builder
+@Document(collection = "daily_rollups")
+@CompoundIndex(name = "user_day", def = "{ 'userId': 1, 'day': 1 }")
+public class DailyRollup {
+
+    // ?userId + ":" + ISO day, so increments can upsert without a lookup
+    @Id
+    private String id;
+    private String userId;
+    private LocalDate day;
+    private long rechargeCount;
+    private double rechargeTotal;
+    private long transferInCount;
+    private double transferInTotal;
+    private long transferOutCount;
+    private double transferOutTotal;
+    private long cashbackCount;
+    private double cashbackTotal;
+    // ?set when RollupService.rebuild last wrote the document, null while only record() has touched it
+    private Date rebuiltAt;
+}
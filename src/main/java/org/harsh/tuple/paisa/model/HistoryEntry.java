@@ -0,0 +1,23 @@
+package org.harsh.tuple.paisa.model;
+
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@Document(collection = "history_entries")
+@CompoundIndex(name = "user_sequence", def = "{ 'userId': 1, 'sequence': -1 }")
+public class HistoryEntry {
+
+    @Id
+    private String id;
+    private String userId;
+    private long sequence;
+    private Object payload;
+    private LocalDateTime recordedAt;
+}
@@ -0,0 +1,8 @@
+package org.harsh.tuple.paisa.model;
+
+public enum LedgerEntryKind {
+    RECHARGE,
+    TRANSFER_IN,
+    TRANSFER_OUT,
+    CASHBACK
+}
@@ -0,0 +1,16 @@
+package org.harsh.tuple.paisa.model;
+
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Data
+@Builder
+@Document(collection = "ledger_sequences")
+public class LedgerSequence {
+
+    @Id
+    private String id;
+    private long seq;
+}
@@ -0,0 +1,37 @@
+package org.harsh.tuple.paisa.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// *Cashback earned but not yet credited (deferred settlement). Its id becomes the Cashback id; the seq and settledAt
+// *it is given on the first settlement attempt are what a replay uses to recognise rows that were already written
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "pending_cashbacks")
+public class PendingCashback {
+
+    @Id
+    private String id;
+    private String userId;
+    private double amount;
+    // ?campaign whose budget was reserved for the full amount; whatever settlement trims or drops is handed back
+    private String campaignId;
+    private LocalDateTime accruedAt;
+    // ?set when a settlement run claims the record; kept if another node takes over a stale claim
+    @Indexed
+    private String batchId;
+    private LocalDateTime claimedAt;
+    // ?assigned once per record, a replay reuses it and the user's sequence stays gapless
+    private Long seq;
+    // ?the ledger timestamp, written together with seq: rows land in the day they were settled, never a past one
+    private LocalDateTime settledAt;
+}
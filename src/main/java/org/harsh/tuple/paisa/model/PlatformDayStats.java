@@ -0,0 +1,29 @@
+package org.harsh.tuple.paisa.model;
+
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@Document(collection = "platform_daily_stats")
+public class PlatformDayStats {
+
+    // ?ISO day; only closed days are stored, the open day is always recomputed
+    @Id
+    private String id;
+    private LocalDate day;
+    private double rechargeVolume;
+    private long rechargeCount;
+    private double transferVolume;
+    private long transferCount;
+    private double cashbackPaid;
+    private long cashbackCount;
+    // ?HyperLogLog estimate, about 1% error
+    private long activeUsers;
+    private LocalDateTime computedAt;
+}
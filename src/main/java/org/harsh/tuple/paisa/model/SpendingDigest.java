@@ -0,0 +1,28 @@
+package org.harsh.tuple.paisa.model;
+
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@Document(collection = "spending_digests")
+public class SpendingDigest {
+
+    // ?"userId:yyyy-MM:TYPE", userId is "_platform" for the platform-wide digest
+    @Id
+    private String id;
+    private String userId;
+    private String month;
+    private TransactionType type;
+    // ?TDigest.toBytes(), a few KB at most
+    private byte[] digest;
+    private long count;
+    @Version
+    private Long version;
+    private LocalDateTime updatedAt;
+}
@@ -3,18 +3,21 @@ package org.harsh.tuple.paisa.model;
 import lombok.Builder;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 
 @Data
 @Builder
-@Document(collection = "transactions")
+@CompoundIndex(name = "user_seq", def = "{ 'userId': 1, 'seq': 1 }")
+@Document(collection = "#{@ledgerStorage.transactions}")
 public class Transaction {
 
     @Id
     private String id;
     private String userId;
+    private long seq;
     private String senderId;
     private String senderUsername;
     private String recipientUsername;
@@ -15,4 +15,6 @@ public class User {
     private String username;
     private String email;
     private String password;
+    // ?marketing segment used by cashback rules, null for most users
+    private String segment;
 }
@@ -9,6 +9,8 @@ import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 
 @Data
 @Document(collection = "wallets")
@@ -21,6 +23,15 @@ public class Wallet {
     private double balance;
     @Version
     private long version;
+    // ?deferred cashback batches credited to this wallet but not yet finished; added in the crediting update and
+    // ?pulled only once the batch's pending records are gone, so a replayed batch always finds it
+    private List<String> settledCashbackBatches;
+    // ?running cashback totals, $inc'ed in the same update that credits the cashback; months are "yyyy-MM" keys,
+    // ?so a new month starts at zero without a reset step
+    private double cashbackLifetime;
+    private Map<String, Double> cashbackByMonth;
+    // ?set once cashback from before the totals existed has been added to them (LedgerBackfillService)
+    private boolean cashbackTotalsBackfilled;
     @CreatedDate
     private LocalDateTime createdAt;
     @LastModifiedDate
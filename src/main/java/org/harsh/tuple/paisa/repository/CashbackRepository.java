@@ -1,15 +1,24 @@
 package org.harsh.tuple.paisa.repository;
 
 import org.harsh.tuple.paisa.model.Cashback;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 public interface CashbackRepository extends MongoRepository<Cashback, String> {
     List<Cashback> findByUserId(String userId);
-    Page<Cashback> findByUserId(String userId, Pageable pageable);
+    Slice<Cashback> findByUserId(String userId, Pageable pageable);
+    @Query(fields = "{ '_id' : 1 }")
+    Optional<Cashback> findFirstByUserIdOrderByTimestampDesc(String userId);
+    List<Cashback> findByUserIdAndSeqGreaterThanOrderBySeqAsc(String userId, long seq, Limit limit);
+    List<Cashback> findByUserIdAndSeqLessThanOrderBySeqDesc(String userId, long seq, Limit limit);
     List<Cashback> findByUserIdAndTimestampBetween(String userId, LocalDateTime startDate , LocalDateTime endDate);
+    List<Cashback> findByUserIdAndTimestampBetweenOrderByTimestampDesc(String userId, Range<LocalDateTime> range);
 }
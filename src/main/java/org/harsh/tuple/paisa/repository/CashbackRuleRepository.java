@@ -0,0 +1,12 @@
+package org.harsh.tuple.paisa.repository;
+
+import org.harsh.tuple.paisa.model.CashbackRule;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import java.util.Optional;
+
+public interface CashbackRuleRepository extends MongoRepository<CashbackRule, String> {
+    @Query(fields = "{ 'updatedAt' : 1 }")
+    Optional<CashbackRule> findFirstByOrderByUpdatedAtDesc();
+}
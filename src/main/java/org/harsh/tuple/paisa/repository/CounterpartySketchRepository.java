@@ -0,0 +1,7 @@
+package org.harsh.tuple.paisa.repository;
+
+import org.harsh.tuple.paisa.model.CounterpartySketchSnapshot;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface CounterpartySketchRepository extends MongoRepository<CounterpartySketchSnapshot, String> {
+}
@@ -0,0 +1,13 @@
+package org.harsh.tuple.paisa.repository;
+
+import org.harsh.tuple.paisa.model.DailyRollup;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface DailyRollupRepository extends MongoRepository<DailyRollup, String> {
+    @Query("{ 'userId': ?0, 'day': { '$gte': ?1, '$lte': ?2 } }")
+    List<DailyRollup> findByUserIdAndDayRange(String userId, LocalDate from, LocalDate to);
+}
@@ -0,0 +1,7 @@
+package org.harsh.tuple.paisa.repository;
+
+import org.harsh.tuple.paisa.model.HistoryEntry;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface HistoryEntryRepository extends MongoRepository<HistoryEntry, String> {
+}
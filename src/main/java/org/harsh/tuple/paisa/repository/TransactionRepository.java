@@ -1,15 +1,29 @@
 package org.harsh.tuple.paisa.repository;
 
 import org.harsh.tuple.paisa.model.Transaction;
-import org.springframework.data.domain.Page;
+import org.harsh.tuple.paisa.model.TransactionType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 public interface TransactionRepository extends MongoRepository<Transaction, String> {
-    Page<Transaction> findByUserId(String userId, Pageable pageable);
+    Slice<Transaction> findByUserId(String userId, Pageable pageable);
+    @Query(fields = "{ '_id' : 1 }")
+    Optional<Transaction> findFirstByUserIdOrderByTimestampDesc(String userId);
+    List<Transaction> findByUserIdAndSeqGreaterThanOrderBySeqAsc(String userId, long seq, Limit limit);
     List<Transaction> findByUserIdAndTimestampBetween(String userId, LocalDateTime startDate, LocalDateTime endDate);
+    List<Transaction> findByUserIdAndTimestampBetweenOrderByTimestampDesc(String userId, Range<LocalDateTime> range);
+    @Query(fields = "{ '_id' : 1 }")
+    List<Transaction> findByUserIdAndType(String userId, TransactionType type, Limit limit);
+    // ?a sender's own row of each outgoing transfer, newest first
+    @Query(fields = "{ 'recipientUsername' : 1, 'timestamp' : 1 }")
+    List<Transaction> findByUserIdAndTypeAndRecipientUsernameNotNullOrderBySeqDesc(String userId, TransactionType type, Limit limit);
 
 }
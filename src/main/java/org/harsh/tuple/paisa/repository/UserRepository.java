@@ -1,6 +1,7 @@
 package org.harsh.tuple.paisa.repository;
 
 import org.harsh.tuple.paisa.model.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -12,6 +13,7 @@ import java.util.Optional;
 public interface UserRepository extends MongoRepository<User, String> {
     Optional<User> findByUsername(String username);
     Optional<User> findByEmail(String email);
-    @Query(value = "{ 'username': { '$regex': ?0, '$options': 'i' } }", fields = "{ 'username' : 1, '_id' : 0 }")
-    List<String> findUsernamesByQuery(String query);
+    // ?fallback for autocomplete while the in-memory index is unavailable; the prefix is escaped and anchored
+    @Query(fields = "{ 'username' : 1 }")
+    List<User> findByUsernameStartingWithIgnoreCase(String prefix, Limit limit);
 }
@@ -2,6 +2,7 @@ package org.harsh.tuple.paisa.repository;
 
 import org.harsh.tuple.paisa.model.Wallet;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 
 import java.util.Optional;
 
@@ -9,5 +10,7 @@ public interface WalletRepository extends MongoRepository<Wallet, String> {
     Optional<Wallet> findByUserId(String userId);
     void deleteByUserId(String walletId);
     boolean existsByUserId(String userId);
+    @Query(value = "{ 'userId': ?0 }", fields = "{ 'version' : 1 }")
+    Optional<Wallet> findVersionByUserId(String userId);
 
 }
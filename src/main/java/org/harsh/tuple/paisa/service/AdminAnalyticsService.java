@@ -0,0 +1,257 @@
+package org.harsh.tuple.paisa.service;
+
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.PlatformDayStats;
+import org.harsh.tuple.paisa.model.Transaction;
+import org.harsh.tuple.paisa.repository.PlatformDayStatsRepository;
+import org.harsh.tuple.paisa.util.HyperLogLog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+// *Platform totals per day for ops. Each day's ledger is cut into _id ranges that are aggregated in parallel
+// *on a dedicated fork-join pool, reading off secondaries so the primary keeps serving wallet traffic. Closed days
+// *are computed once and kept in Mongo until recomputeDays overwrites them
+@Slf4j
+@Service
+public class AdminAnalyticsService {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    // ?_id seconds and the stored timestamp can straddle a boundary, the _id slices reach a bit past the day
+    private static final Duration ID_MARGIN = Duration.ofMinutes(1);
+    // ?a write that started before midnight may still land shortly after, the day is only final after this
+    private static final Duration CLOSE_GRACE = Duration.ofMinutes(5);
+    // ?the least Mongo accepts; kept well under CLOSE_GRACE so a secondary allowed to serve a closed day has
+    // ?already applied everything written up to the close
+    private static final Duration MAX_STALENESS = Duration.ofSeconds(90);
+    private static final int ACTIVE_USERS_PRECISION = 14;
+    private static final int MAX_DAYS = 366;
+
+    private final PlatformDayStatsRepository platformDayStatsRepository;
+    private final MongoTemplate mongoTemplate;
+    private final ForkJoinPool pool;
+    private final int partitions;
+
+    public AdminAnalyticsService(
+            PlatformDayStatsRepository platformDayStatsRepository,
+            MongoTemplate mongoTemplate,
+            @Value("${admin.analytics.parallelism:8}") int parallelism,
+            @Value("${admin.analytics.partitions:16}") int partitions
+    ) {
+        this.platformDayStatsRepository = platformDayStatsRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.pool = new ForkJoinPool(parallelism);
+        this.partitions = partitions;
+    }
+
+    public List<PlatformDayStats> getDailyStats(LocalDate from, LocalDate to) {
+        if (from == null || to == null || to.isBefore(from) || from.plusDays(MAX_DAYS).isBefore(to)) {
+            throw new IllegalArgumentException("Range must be between 1 and " + MAX_DAYS + " days");
+        }
+        List<PlatformDayStats> stats = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            stats.add(getDayStats(day));
+        }
+        return stats;
+    }
+
+    public PlatformDayStats getDayStats(LocalDate day) {
+        boolean closed = LocalDateTime.now().isAfter(day.plusDays(1).atStartOfDay().plus(CLOSE_GRACE));
+        if (!closed) {
+            return compute(day, false);
+        }
+        return platformDayStatsRepository.findById(day.toString())
+                .orElseGet(() -> platformDayStatsRepository.save(compute(day, true)));
+    }
+
+    // *Computes closed days again and overwrites what is stored, for when their ledger changed after they were kept
+    // *(a repair, a late import). Days still open are skipped, they are never stored
+    public List<PlatformDayStats> recomputeDays(LocalDate from, LocalDate to) {
+        if (from == null || to == null || to.isBefore(from) || from.plusDays(MAX_DAYS).isBefore(to)) {
+            throw new IllegalArgumentException("Range must be between 1 and " + MAX_DAYS + " days");
+        }
+        List<PlatformDayStats> stats = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            if (LocalDateTime.now().isAfter(day.plusDays(1).atStartOfDay().plus(CLOSE_GRACE))) {
+                stats.add(platformDayStatsRepository.save(compute(day, true)));
+            }
+        }
+        log.info("Recomputed {} stored platform days between {} and {}", stats.size(), from, to);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // ?a stored day is kept for good, so it must not come from a secondary that is still behind: those reads only
+    // ?go to a secondary within MAX_STALENESS (else the primary), at majority; the open day, recomputed on every
+    // ?call anyway, may read any lagging copy
+    PlatformDayStats compute(LocalDate day, boolean durable) {
+        LocalDateTime dayStart = day.atStartOfDay();
+        LocalDateTime dayEnd = day.plusDays(1).atStartOfDay();
+        long started = System.nanoTime();
+
+        PartialDay total = pool.invoke(new SliceTask(sliceBounds(dayStart, dayEnd), 0, partitions, dayStart, dayEnd, durable));
+
+        log.info("Computed platform stats for {} over {} partitions in {} ms", day, partitions,
+                (System.nanoTime() - started) / 1_000_000);
+        return PlatformDayStats.builder()
+                .id(day.toString())
+                .day(day)
+                .rechargeVolume(total.rechargeVolume)
+                .rechargeCount(total.rechargeCount)
+                .transferVolume(total.transferVolume)
+                .transferCount(total.transferCount)
+                .cashbackPaid(total.cashbackPaid)
+                .cashbackCount(total.cashbackCount)
+                .activeUsers(total.users.cardinality())
+                .computedAt(LocalDateTime.now())
+                .build();
+    }
+
+    //? ObjectIds start with their creation second, so equal time slices of the day are contiguous _id ranges
+    private ObjectId[] sliceBounds(LocalDateTime dayStart, LocalDateTime dayEnd) {
+        long from = dayStart.minus(ID_MARGIN).atZone(ZONE).toEpochSecond();
+        long to = dayEnd.plus(ID_MARGIN).atZone(ZONE).toEpochSecond();
+        ObjectId[] bounds = new ObjectId[partitions + 1];
+        for (int i = 0; i <= partitions; i++) {
+            long seconds = from + (to - from) * i / partitions;
+            bounds[i] = new ObjectId(String.format("%08x", seconds) + "0000000000000000");
+        }
+        return bounds;
+    }
+
+    private final class SliceTask extends RecursiveTask<PartialDay> {
+        private final ObjectId[] bounds;
+        private final int from;
+        private final int to;
+        private final LocalDateTime dayStart;
+        private final LocalDateTime dayEnd;
+        private final boolean durable;
+
+        SliceTask(ObjectId[] bounds, int from, int to, LocalDateTime dayStart, LocalDateTime dayEnd, boolean durable) {
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.dayStart = dayStart;
+            this.dayEnd = dayEnd;
+            this.durable = durable;
+        }
+
+        @Override
+        protected PartialDay compute() {
+            if (to - from == 1) {
+                return aggregateSlice(bounds[from], bounds[to], dayStart, dayEnd, durable);
+            }
+            int mid = (from + to) >>> 1;
+            SliceTask left = new SliceTask(bounds, from, mid, dayStart, dayEnd, durable);
+            left.fork();
+            PartialDay right = new SliceTask(bounds, mid, to, dayStart, dayEnd, durable).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    // *One slice: per-user sums come back as a cursor, folded into totals and the active-user sketch
+    private PartialDay aggregateSlice(ObjectId lower, ObjectId upper, LocalDateTime dayStart, LocalDateTime dayEnd,
+                                      boolean durable) {
+        Document match = new Document("$match", new Document("_id", new Document("$gte", lower).append("$lt", upper))
+                .append("timestamp", new Document("$gte", toDate(dayStart)).append("$lt", toDate(dayEnd))));
+        Document isRecharge = new Document("$eq", Arrays.asList("$type", "RECHARGE"));
+        //? both sides of a transfer are stored, only the sender's row (no senderId) counts toward volume
+        Document isOutgoingTransfer = new Document("$and", List.of(
+                new Document("$eq", Arrays.asList("$type", "TRANSFER")),
+                new Document("$eq", Arrays.asList(new Document("$ifNull", Arrays.asList("$senderId", null)), null))));
+
+        PartialDay partial = new PartialDay();
+        List<Document> transactionPipeline = List.of(match, new Document("$group", new Document("_id", "$userId")
+                .append("rechargeVolume", sumIf(isRecharge, "$amount"))
+                .append("rechargeCount", sumIf(isRecharge, 1))
+                .append("transferVolume", sumIf(isOutgoingTransfer, "$amount"))
+                .append("transferCount", sumIf(isOutgoingTransfer, 1))));
+        try (MongoCursor<Document> rows = collection(Transaction.class, durable)
+                .aggregate(transactionPipeline).allowDiskUse(true).iterator()) {
+            while (rows.hasNext()) {
+                Document row = rows.next();
+                partial.users.add(row.getString("_id"));
+                partial.rechargeVolume += ((Number) row.get("rechargeVolume")).doubleValue();
+                partial.rechargeCount += ((Number) row.get("rechargeCount")).longValue();
+                partial.transferVolume += ((Number) row.get("transferVolume")).doubleValue();
+                partial.transferCount += ((Number) row.get("transferCount")).longValue();
+            }
+        }
+
+        List<Document> cashbackPipeline = List.of(match, new Document("$group", new Document("_id", "$userId")
+                .append("cashbackPaid", new Document("$sum", "$amount"))
+                .append("cashbackCount", new Document("$sum", 1))));
+        try (MongoCursor<Document> rows = collection(Cashback.class, durable)
+                .aggregate(cashbackPipeline).allowDiskUse(true).iterator()) {
+            while (rows.hasNext()) {
+                Document row = rows.next();
+                partial.users.add(row.getString("_id"));
+                partial.cashbackPaid += ((Number) row.get("cashbackPaid")).doubleValue();
+                partial.cashbackCount += ((Number) row.get("cashbackCount")).longValue();
+            }
+        }
+        return partial;
+    }
+
+    private MongoCollection<Document> collection(Class<?> entity, boolean durable) {
+        MongoCollection<Document> collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(entity));
+        if (durable) {
+            return collection.withReadPreference(ReadPreference.secondaryPreferred(MAX_STALENESS.toSeconds(), TimeUnit.SECONDS))
+                    .withReadConcern(ReadConcern.MAJORITY);
+        }
+        return collection.withReadPreference(ReadPreference.secondaryPreferred());
+    }
+
+    private static Document sumIf(Document condition, Object value) {
+        return new Document("$sum", new Document("$cond", Arrays.asList(condition, value, 0)));
+    }
+
+    private static Date toDate(LocalDateTime dateTime) {
+        return Date.from(dateTime.atZone(ZONE).toInstant());
+    }
+
+    private static final class PartialDay {
+        private double rechargeVolume;
+        private long rechargeCount;
+        private double transferVolume;
+        private long transferCount;
+        private double cashbackPaid;
+        private long cashbackCount;
+        private final HyperLogLog users = new HyperLogLog(ACTIVE_USERS_PRECISION);
+
+        PartialDay merge(PartialDay other) {
+            rechargeVolume += other.rechargeVolume;
+            rechargeCount += other.rechargeCount;
+            transferVolume += other.transferVolume;
+            transferCount += other.transferCount;
+            cashbackPaid += other.cashbackPaid;
+            cashbackCount += other.cashbackCount;
+            users.merge(other.users);
+            return this;
+        }
+    }
+}
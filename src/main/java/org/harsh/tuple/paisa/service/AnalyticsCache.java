@@ -0,0 +1,111 @@
+package org.harsh.tuple.paisa.service;
+
+import org.harsh.tuple.paisa.dto.ChartGranularity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+// *Bounded LRU for analytics results keyed by (user, normalized range, granularity).
+// *Writes bump the user's generation instead of hunting down keys; an entry from an older generation is a miss
+@Component
+public class AnalyticsCache {
+
+    public enum View { HISTORY, BUCKETS }
+
+    private record Key(String userId, View view, LocalDateTime start, LocalDateTime end, ChartGranularity granularity) {
+    }
+
+    private record Entry(Object value, long generation, long expiresAtNanos) {
+    }
+
+    // ?users hash onto a fixed set of generation counters, so memory stays flat however many users ever wrote; a
+    // ?write also misses the few other users on its stripe once, which costs a reload and never a stale read
+    private static final int GENERATION_STRIPES = 1 << 14;
+
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final LinkedHashMap<Key, Entry> entries;
+    private final long closedTtlNanos;
+    private final long openTtlNanos;
+
+    public AnalyticsCache(
+            @Value("${analytics.cache.max-entries:10000}") int maxEntries,
+            @Value("${analytics.cache.closed-ttl:24h}") Duration closedTtl,
+            @Value("${analytics.cache.open-ttl:1m}") Duration openTtl
+    ) {
+        this.closedTtlNanos = closedTtl.toNanos();
+        this.openTtlNanos = openTtl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String userId, View view, LocalDateTime start, LocalDateTime end,
+                     ChartGranularity granularity, Supplier<T> loader) {
+        if (start == null || end == null) {
+            return loader.get();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Key key = new Key(userId, view, normalizeStart(start), normalizeEnd(end, now), granularity);
+        long generation = generation(userId);
+        long nowNanos = System.nanoTime();
+
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.generation() == generation && entry.expiresAtNanos() - nowNanos > 0) {
+                return (T) entry.value();
+            }
+        }
+
+        //? the generation is read before loading, so a write racing with the load leaves the entry already stale
+        T value = loader.get();
+        long ttl = key.end().toLocalDate().isBefore(now.toLocalDate()) ? closedTtlNanos : openTtlNanos;
+        synchronized (entries) {
+            entries.put(key, new Entry(value, generation, nowNanos + ttl));
+        }
+        return value;
+    }
+
+    // ?O(1) invalidation of everything cached for the user, called on recharge, transfer and cashback
+    public void invalidate(String userId) {
+        generations.incrementAndGet(stripe(userId));
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private long generation(String userId) {
+        return generations.get(stripe(userId));
+    }
+
+    private static int stripe(String userId) {
+        int hash = userId.hashCode();
+        return (hash ^ hash >>> 16) & (GENERATION_STRIPES - 1);
+    }
+
+    // ?request bodies carry second precision, anything finer would only fragment the keys
+    private static LocalDateTime normalizeStart(LocalDateTime start) {
+        return start.truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    //? the ledger holds nothing after "now", so every future end reads the same rows as end of today
+    private static LocalDateTime normalizeEnd(LocalDateTime end, LocalDateTime now) {
+        LocalDateTime endOfToday = LocalDate.from(now).atTime(LocalTime.MAX);
+        return end.isAfter(now) ? endOfToday : end.truncatedTo(ChronoUnit.SECONDS);
+    }
+}
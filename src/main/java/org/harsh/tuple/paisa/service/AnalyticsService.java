@@ -2,15 +2,40 @@ package org.harsh.tuple.paisa.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.harsh.tuple.paisa.dto.ChartBucket;
+import org.harsh.tuple.paisa.dto.ChartGranularity;
 import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.DailyRollup;
+import org.harsh.tuple.paisa.model.LedgerEntryKind;
 import org.harsh.tuple.paisa.model.Transaction;
 import org.harsh.tuple.paisa.repository.CashbackRepository;
+import org.harsh.tuple.paisa.repository.DailyRollupRepository;
 import org.harsh.tuple.paisa.repository.TransactionRepository;
+import org.harsh.tuple.paisa.util.ConcurrentReads;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
 
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
 
 @Slf4j
 @Service
@@ -18,13 +43,64 @@ import java.util.List;
 public class AnalyticsService {
     private final TransactionRepository transactionRepository;
     private final CashbackRepository cashbackRepository;
+    private final MongoTemplate mongoTemplate;
+    private final DailyRollupRepository dailyRollupRepository;
+    private final AnalyticsCache analyticsCache;
+    private final ColumnarLedgerStore columnarLedgerStore;
+
+    //? only switch on once RollupService.rebuildAll() has backfilled the existing history
+    @Value("${analytics.rollups.enabled:false}")
+    private boolean rollupsEnabled;
+
+    //? LocalDateTime is stored as a UTC instant of the server's local time, buckets follow the same zone
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final Duration READ_DEADLINE = Duration.ofSeconds(5);
+    //? up to a year is still cheap as a single cursor; beyond that the range is planned in month chunks
+    private static final Period LONG_RANGE = Period.ofYears(1);
+    //? at most 122 chunk queries, MAX_PARALLEL_CHUNKS at a time, all inside LONG_READ_DEADLINE
+    private static final Period MAX_RANGE = Period.ofYears(5);
+    private static final Duration LONG_READ_DEADLINE = Duration.ofSeconds(15);
+    private static final int MAX_PARALLEL_CHUNKS = 4;
+
+    // ?newest first, a cashback ahead of the transaction that shares its timestamp
+    private static final Comparator<Object> HISTORY_ORDER = (a, b) -> {
+        int timeComparison = timestampOf(b).compareTo(timestampOf(a));
+        if (timeComparison != 0) {
+            return timeComparison;
+        }
+
+        if (a instanceof Cashback && b instanceof Transaction) {
+            return -1; // Cashback comes before Transaction
+        } else if (a instanceof Transaction && b instanceof Cashback) {
+            return 1;
+        }
+
+        return 0;
+    };
 
 
     public List<Object> getCombinedHistory(String userId ,LocalDateTime startDate ,LocalDateTime endDate) {
+        if (startDate != null && endDate != null && startDate.plus(MAX_RANGE).isBefore(endDate)) {
+            throw new IllegalArgumentException("History range must not exceed " + MAX_RANGE.getYears() + " years");
+        }
+        return analyticsCache.get(userId, AnalyticsCache.View.HISTORY, startDate, endDate, null,
+                () -> loadCombinedHistory(userId, startDate, endDate));
+    }
+
+    private List<Object> loadCombinedHistory(String userId ,LocalDateTime startDate ,LocalDateTime endDate) {
+        if (startDate != null && endDate != null && startDate.plus(LONG_RANGE).isBefore(endDate)) {
+            return loadLongHistory(userId, startDate, endDate);
+        }
 
         List<Object> combinedList = new ArrayList<>();
-        List<Transaction> transactions = transactionRepository.findByUserIdAndTimestampBetween(userId , startDate ,endDate );
-        List<Cashback> cashbacks = cashbackRepository.findByUserIdAndTimestampBetween(userId , startDate ,endDate );
+        //? the two reads are independent, run them together under one deadline
+        ConcurrentReads.Both<List<Transaction>, List<Cashback>> reads = ConcurrentReads.both(
+                () -> transactionRepository.findByUserIdAndTimestampBetween(userId , startDate ,endDate ),
+                () -> cashbackRepository.findByUserIdAndTimestampBetween(userId , startDate ,endDate ),
+                READ_DEADLINE
+        );
+        List<Transaction> transactions = reads.first();
+        List<Cashback> cashbacks = reads.second();
 
         combinedList.addAll(transactions);
         log.info("transactions: {}", transactions);
@@ -32,29 +108,194 @@ public class AnalyticsService {
         log.info("cashbacks: {}", cashbacks);
 
 
-        combinedList.sort((a, b) -> {
+        combinedList.sort(HISTORY_ORDER);
+        log.info("combinedList: {}", combinedList);
+        return combinedList;
+    }
+
+    // *Multi-year ranges: one sorted query per month, a few in flight at a time, then a k-way merge of the runs
+    private List<Object> loadLongHistory(String userId, LocalDateTime startDate, LocalDateTime endDate) {
+        List<Callable<List<?>>> reads = new ArrayList<>();
+        for (Range<LocalDateTime> chunk : planMonthChunks(startDate, endDate)) {
+            reads.add(() -> transactionRepository.findByUserIdAndTimestampBetweenOrderByTimestampDesc(userId, chunk));
+            reads.add(() -> cashbackRepository.findByUserIdAndTimestampBetweenOrderByTimestampDesc(userId, chunk));
+        }
+        List<List<?>> runs = ConcurrentReads.all(reads, MAX_PARALLEL_CHUNKS, LONG_READ_DEADLINE);
+        List<Object> combinedList = mergeSortedRuns(runs);
+        log.info("combinedList: {} entries from {} chunk queries", combinedList.size(), reads.size());
+        return combinedList;
+    }
 
-            LocalDateTime time1 = (a instanceof Transaction) ?
-                    ((Transaction) a).getTimestamp() : ((Cashback) a).getTimestamp();
-            LocalDateTime time2 = (b instanceof Transaction) ?
-                    ((Transaction) b).getTimestamp() : ((Cashback) b).getTimestamp();
+    //? Between is exclusive on both ends; inner month boundaries are [inclusive, exclusive) so nothing is read twice or lost
+    static List<Range<LocalDateTime>> planMonthChunks(LocalDateTime startDate, LocalDateTime endDate) {
+        List<Range<LocalDateTime>> chunks = new ArrayList<>();
+        Range.Bound<LocalDateTime> lower = Range.Bound.exclusive(startDate);
+        LocalDateTime boundary = startDate.toLocalDate().withDayOfMonth(1).plusMonths(1).atStartOfDay();
+        while (boundary.isBefore(endDate)) {
+            chunks.add(Range.of(lower, Range.Bound.exclusive(boundary)));
+            lower = Range.Bound.inclusive(boundary);
+            boundary = boundary.plusMonths(1);
+        }
+        chunks.add(Range.of(lower, Range.Bound.exclusive(endDate)));
+        return chunks;
+    }
 
-            int timeComparison = time2.compareTo(time1);
-            if (timeComparison != 0) {
-                return timeComparison;
+    private static List<Object> mergeSortedRuns(List<List<?>> runs) {
+        record Cursor(List<?> run, int position) {
+            Object head() {
+                return run.get(position);
             }
+        }
+        PriorityQueue<Cursor> heads = new PriorityQueue<>((a, b) -> HISTORY_ORDER.compare(a.head(), b.head()));
+        int total = 0;
+        for (List<?> run : runs) {
+            total += run.size();
+            if (!run.isEmpty()) {
+                heads.add(new Cursor(run, 0));
+            }
+        }
+        List<Object> merged = new ArrayList<>(total);
+        while (!heads.isEmpty()) {
+            Cursor cursor = heads.poll();
+            merged.add(cursor.head());
+            if (cursor.position() + 1 < cursor.run().size()) {
+                heads.add(new Cursor(cursor.run(), cursor.position() + 1));
+            }
+        }
+        return merged;
+    }
 
+    private static LocalDateTime timestampOf(Object entry) {
+        return (entry instanceof Transaction) ?
+                ((Transaction) entry).getTimestamp() : ((Cashback) entry).getTimestamp();
+    }
 
-            if (a instanceof Cashback && b instanceof Transaction) {
-                return -1; // Cashback comes before Transaction
-            } else if (a instanceof Transaction && b instanceof Cashback) {
-                return 1;
+    // *Bucket totals computed in Mongo, only (bucket, kind) rows come back
+    public List<ChartBucket> getBuckets(String userId, LocalDateTime startDate, LocalDateTime endDate,
+                                        ChartGranularity granularity) {
+        return analyticsCache.get(userId, AnalyticsCache.View.BUCKETS, startDate, endDate, granularity,
+                () -> loadBuckets(userId, startDate, endDate, granularity));
+    }
+
+    private List<ChartBucket> loadBuckets(String userId, LocalDateTime startDate, LocalDateTime endDate,
+                                          ChartGranularity granularity) {
+        if (columnarLedgerStore.isEnabled()) {
+            return columnarLedgerStore.buckets(userId, startDate, endDate, granularity);
+        }
+        List<ChartBucket> buckets = new ArrayList<>();
+        if (!rollupsEnabled) {
+            buckets.addAll(aggregateRange(userId, startDate, endDate, true, granularity));
+        } else {
+            //? whole days come from daily_rollups, only the partial first/last day is read from history
+            LocalDate firstFullDay = startDate.toLocalTime().equals(LocalTime.MIDNIGHT)
+                    ? startDate.toLocalDate()
+                    : startDate.toLocalDate().plusDays(1);
+            LocalDate lastFullDay = endDate.toLocalTime().isBefore(LocalTime.of(23, 59, 59))
+                    ? endDate.toLocalDate().minusDays(1)
+                    : endDate.toLocalDate();
+
+            if (firstFullDay.isAfter(lastFullDay)) {
+                buckets.addAll(aggregateRange(userId, startDate, endDate, true, granularity));
+            } else {
+                if (startDate.isBefore(firstFullDay.atStartOfDay())) {
+                    buckets.addAll(aggregateRange(userId, startDate, firstFullDay.atStartOfDay(), false, granularity));
+                }
+                buckets.addAll(rollupBuckets(userId, firstFullDay, lastFullDay, granularity));
+                LocalDateTime tailStart = lastFullDay.plusDays(1).atStartOfDay();
+                if (!endDate.isBefore(tailStart)) {
+                    buckets.addAll(aggregateRange(userId, tailStart, endDate, true, granularity));
+                }
             }
+        }
+        return mergeBuckets(buckets);
+    }
 
-            return 0;
-        });
-        log.info("combinedList: {}", combinedList);
-        return combinedList;
+    private List<ChartBucket> aggregateRange(String userId, LocalDateTime from, LocalDateTime to,
+                                             boolean inclusiveEnd, ChartGranularity granularity) {
+        Criteria timestamp = Criteria.where("timestamp").gte(from);
+        Criteria range = Criteria.where("userId").is(userId)
+                .andOperator(inclusiveEnd ? timestamp.lte(to) : timestamp.lt(to));
+
+        Document transactionKind = new Document("$cond", List.of(
+                new Document("$eq", List.of("$type", "RECHARGE")),
+                LedgerEntryKind.RECHARGE.name(),
+                new Document("$cond", List.of(
+                        new Document("$ifNull", List.of("$senderId", false)),
+                        LedgerEntryKind.TRANSFER_IN.name(),
+                        LedgerEntryKind.TRANSFER_OUT.name()))));
+        Document cashbackKind = new Document("$literal", LedgerEntryKind.CASHBACK.name());
+
+        List<ChartBucket> buckets = new ArrayList<>();
+        buckets.addAll(aggregateBuckets(Transaction.class, range, granularity, transactionKind));
+        buckets.addAll(aggregateBuckets(Cashback.class, range, granularity, cashbackKind));
+        return buckets;
     }
 
+    private List<ChartBucket> rollupBuckets(String userId, LocalDate firstDay, LocalDate lastDay,
+                                            ChartGranularity granularity) {
+        List<ChartBucket> buckets = new ArrayList<>();
+        for (DailyRollup rollup : dailyRollupRepository.findByUserIdAndDayRange(userId, firstDay, lastDay)) {
+            LocalDate bucketStart = switch (granularity) {
+                case DAY -> rollup.getDay();
+                case WEEK -> rollup.getDay().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH -> rollup.getDay().withDayOfMonth(1);
+            };
+            addIfPresent(buckets, bucketStart, LedgerEntryKind.RECHARGE, rollup.getRechargeCount(), rollup.getRechargeTotal());
+            addIfPresent(buckets, bucketStart, LedgerEntryKind.TRANSFER_IN, rollup.getTransferInCount(), rollup.getTransferInTotal());
+            addIfPresent(buckets, bucketStart, LedgerEntryKind.TRANSFER_OUT, rollup.getTransferOutCount(), rollup.getTransferOutTotal());
+            addIfPresent(buckets, bucketStart, LedgerEntryKind.CASHBACK, rollup.getCashbackCount(), rollup.getCashbackTotal());
+        }
+        return buckets;
+    }
+
+    private static void addIfPresent(List<ChartBucket> buckets, LocalDate bucketStart, LedgerEntryKind kind,
+                                     long count, double total) {
+        if (count > 0) {
+            buckets.add(new ChartBucket(bucketStart, kind, count, total));
+        }
+    }
+
+    //? the same (bucket, kind) can come from several sources once days are folded into weeks/months
+    private static List<ChartBucket> mergeBuckets(List<ChartBucket> buckets) {
+        Map<String, ChartBucket> merged = new LinkedHashMap<>();
+        for (ChartBucket bucket : buckets) {
+            merged.merge(bucket.getBucketStart() + ":" + bucket.getKind(), bucket, (a, b) -> new ChartBucket(
+                    a.getBucketStart(), a.getKind(), a.getCount() + b.getCount(), a.getTotal() + b.getTotal()));
+        }
+        List<ChartBucket> result = new ArrayList<>(merged.values());
+        result.sort(Comparator.comparing(ChartBucket::getBucketStart).thenComparing(ChartBucket::getKind));
+        return result;
+    }
+
+    private List<ChartBucket> aggregateBuckets(Class<?> collection, Criteria range,
+                                               ChartGranularity granularity, Document kindExpression) {
+        Document truncate = new Document("date", "$timestamp")
+                .append("unit", granularity.unit())
+                .append("timezone", ZONE.getId());
+        if (granularity == ChartGranularity.WEEK) {
+            truncate.append("startOfWeek", "monday");
+        }
+        AggregationOperation group = context -> new Document("$group", new Document()
+                .append("_id", new Document("bucket", new Document("$dateTrunc", truncate))
+                        .append("kind", kindExpression))
+                .append("count", new Document("$sum", 1))
+                .append("total", new Document("$sum", "$amount")));
+
+        List<Document> rows = mongoTemplate.aggregate(
+                Aggregation.newAggregation(collection, Aggregation.match(range), group),
+                Document.class
+        ).getMappedResults();
+
+        List<ChartBucket> buckets = new ArrayList<>(rows.size());
+        for (Document row : rows) {
+            Document key = row.get("_id", Document.class);
+            buckets.add(new ChartBucket(
+                    key.getDate("bucket").toInstant().atZone(ZONE).toLocalDate(),
+                    LedgerEntryKind.valueOf(key.getString("kind")),
+                    ((Number) row.get("count")).longValue(),
+                    ((Number) row.get("total")).doubleValue()
+            ));
+        }
+        return buckets;
+    }
 }
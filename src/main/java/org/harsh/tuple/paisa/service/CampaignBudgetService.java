@@ -0,0 +1,259 @@
+package org.harsh.tuple.paisa.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.harsh.tuple.paisa.model.CashbackCampaign;
+import org.harsh.tuple.paisa.repository.CashbackCampaignRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// *Campaign budgets without a global hot counter: each node leases a chunk of a campaign's budget with one
+// *conditional $inc and hands it out locally with CAS. Expired leases give their unused part back to the campaign.
+// *allocated <= budget holds in Mongo at all times, so the cluster can never pay out more than the budget
+@Slf4j
+@Service
+public class CampaignBudgetService implements CashbackDecisionTable.BudgetGate {
+
+    // ?a lease is at most 1/100 of the budget, so one node cannot sit on a small campaign
+    private static final int MIN_CHUNKS_PER_BUDGET = 100;
+
+    private final MongoTemplate mongoTemplate;
+    private final CashbackCampaignRepository cashbackCampaignRepository;
+    private final long chunkPaise;
+    private final Duration leaseTtl;
+    private final Clock clock;
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    public CampaignBudgetService(
+            MongoTemplate mongoTemplate,
+            CashbackCampaignRepository cashbackCampaignRepository,
+            @Value("${cashback.campaigns.chunk-paise:100000}") long chunkPaise,
+            @Value("${cashback.campaigns.lease-ttl:5m}") Duration leaseTtl
+    ) {
+        this(mongoTemplate, cashbackCampaignRepository, chunkPaise, leaseTtl, Clock.systemDefaultZone());
+    }
+
+    CampaignBudgetService(MongoTemplate mongoTemplate, CashbackCampaignRepository cashbackCampaignRepository,
+                          long chunkPaise, Duration leaseTtl, Clock clock) {
+        this.mongoTemplate = mongoTemplate;
+        this.cashbackCampaignRepository = cashbackCampaignRepository;
+        this.chunkPaise = chunkPaise;
+        this.leaseTtl = leaseTtl;
+        this.clock = clock;
+    }
+
+    // *Hot path: a CAS on the local lease; Mongo is only touched when the lease runs dry
+    @Override
+    public boolean tryReserve(String campaignId, long paise) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        while (true) {
+            Lease lease = leases.computeIfAbsent(campaignId, _ -> new Lease());
+            if (lease.take(paise, now)) {
+                return true;
+            }
+            if (lease.isRetired()) {
+                continue;
+            }
+            //? one thread refills per campaign, the others wait and retry the CAS on the topped-up lease
+            synchronized (lease) {
+                if (lease.isRetired()) {
+                    continue;
+                }
+                if (lease.take(paise, now)) {
+                    return true;
+                }
+                if (!refill(campaignId, lease, paise)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    // *Hands back paise reserved with tryReserve that were never paid out (wallet gone, cashback cut by the monthly
+    // *cap, accrual dropped at settlement): into the live lease if there is one, otherwise straight to the campaign
+    public void release(String campaignId, long paise) {
+        if (paise <= 0) {
+            return;
+        }
+        Lease lease = leases.get(campaignId);
+        if (lease == null || !lease.giveBack(paise)) {
+            report(campaignId, -paise, paise);
+        }
+    }
+
+    public List<CashbackCampaign> getCampaigns() {
+        return cashbackCampaignRepository.findAll();
+    }
+
+    // ?counters are owned by the leases, an edit only touches the definition
+    public CashbackCampaign saveCampaign(CashbackCampaign campaign) {
+        if (campaign.getBudgetPaise() <= 0 || (campaign.getStartsAt() != null && campaign.getEndsAt() != null
+                && !campaign.getEndsAt().isAfter(campaign.getStartsAt()))) {
+            throw new IllegalArgumentException("Campaign needs a positive budget and an end after its start");
+        }
+        if (campaign.getId() == null || !cashbackCampaignRepository.existsById(campaign.getId())) {
+            campaign.setAllocatedPaise(0);
+            campaign.setSpentPaise(0);
+            return cashbackCampaignRepository.save(campaign);
+        }
+        return mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(campaign.getId())),
+                new Update()
+                        .set("name", campaign.getName())
+                        .set("budgetPaise", campaign.getBudgetPaise())
+                        .set("startsAt", campaign.getStartsAt())
+                        .set("endsAt", campaign.getEndsAt()),
+                FindAndModifyOptions.options().returnNew(true),
+                CashbackCampaign.class
+        );
+    }
+
+    @Scheduled(fixedDelayString = "${cashback.campaigns.reconcile-ms:10000}")
+    public void reconcile() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        leases.forEach((campaignId, lease) -> {
+            if (now.isBefore(lease.expiresAt)) {
+                report(campaignId, lease.drainUsed(), 0);
+            } else if (leases.remove(campaignId, lease)) {
+                long unused = lease.retire();
+                report(campaignId, lease.drainUsed(), unused);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void releaseAll() {
+        leases.forEach((campaignId, lease) -> {
+            if (leases.remove(campaignId, lease)) {
+                long unused = lease.retire();
+                report(campaignId, lease.drainUsed(), unused);
+            }
+        });
+    }
+
+    // ?the chunk is granted only if it still fits under the budget and the campaign is running; the tail
+    // ?of a budget is leased exactly, so the last rupees are still spendable
+    private boolean refill(String campaignId, Lease lease, long needed) {
+        LocalDateTime now = LocalDateTime.now(clock);
+        CashbackCampaign campaign = cashbackCampaignRepository.findById(campaignId).orElse(null);
+        if (campaign == null
+                || (campaign.getStartsAt() != null && now.isBefore(campaign.getStartsAt()))
+                || (campaign.getEndsAt() != null && !now.isBefore(campaign.getEndsAt()))) {
+            return false;
+        }
+        LocalDateTime expiresAt = campaign.getEndsAt() != null && campaign.getEndsAt().isBefore(now.plus(leaseTtl))
+                ? campaign.getEndsAt()
+                : now.plus(leaseTtl);
+        if (lease.available() >= needed) {
+            //? an expired lease that still holds enough is only renewed, now that the campaign is known to be running
+            lease.grant(0, expiresAt);
+            return true;
+        }
+        long left = campaign.getBudgetPaise() - campaign.getAllocatedPaise();
+        long chunk = Math.min(left, Math.max(needed, Math.min(chunkPaise, campaign.getBudgetPaise() / MIN_CHUNKS_PER_BUDGET)));
+        if (chunk < needed) {
+            return false;
+        }
+        Document guard = new Document("_id", campaignId)
+                .append("$expr", new Document("$lte", Arrays.asList(
+                        new Document("$add", Arrays.asList("$allocatedPaise", chunk)), "$budgetPaise")));
+        CashbackCampaign leased = mongoTemplate.findAndModify(
+                new BasicQuery(guard),
+                new Update().inc("allocatedPaise", chunk),
+                FindAndModifyOptions.options().returnNew(true),
+                CashbackCampaign.class
+        );
+        if (leased == null) {
+            //? another node took the tail first; the next reservation re-reads the campaign
+            return false;
+        }
+        lease.grant(chunk, expiresAt);
+        log.debug("Leased {} paise of campaign {}", chunk, campaignId);
+        return true;
+    }
+
+    private void report(String campaignId, long used, long unused) {
+        if (used == 0 && unused == 0) {
+            return;
+        }
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(campaignId)),
+                new Update().inc("spentPaise", used).inc("allocatedPaise", -unused),
+                CashbackCampaign.class
+        );
+    }
+
+    // ?remaining never drops below zero (CAS); RETIRED marks a lease that was already handed back
+    private static final class Lease {
+        private static final long RETIRED = Long.MIN_VALUE;
+
+        private final AtomicLong remaining = new AtomicLong();
+        private final AtomicLong used = new AtomicLong();
+        private volatile LocalDateTime expiresAt = LocalDateTime.MIN;
+
+        // ?past expiresAt nothing is handed out until a refill has checked the campaign again (it may have ended)
+        boolean take(long paise, LocalDateTime now) {
+            if (!now.isBefore(expiresAt)) {
+                return false;
+            }
+            long current = remaining.get();
+            while (current != RETIRED && current >= paise) {
+                if (remaining.compareAndSet(current, current - paise)) {
+                    used.addAndGet(paise);
+                    return true;
+                }
+                current = remaining.get();
+            }
+            return false;
+        }
+
+        boolean isRetired() {
+            return remaining.get() == RETIRED;
+        }
+
+        long available() {
+            return Math.max(0, remaining.get());
+        }
+
+        // ?under the retire monitor, so paise given back either reach the retire() count or go to the campaign
+        synchronized boolean giveBack(long paise) {
+            if (isRetired()) {
+                return false;
+            }
+            used.addAndGet(-paise);
+            remaining.addAndGet(paise);
+            return true;
+        }
+
+        void grant(long paise, LocalDateTime expiresAt) {
+            remaining.addAndGet(paise);
+            this.expiresAt = expiresAt;
+        }
+
+        // ?same monitor as the refill in tryReserve, so a chunk can't be granted to a lease being retired
+        synchronized long retire() {
+            return remaining.getAndSet(RETIRED);
+        }
+
+        long drainUsed() {
+            return used.getAndSet(0);
+        }
+    }
+}
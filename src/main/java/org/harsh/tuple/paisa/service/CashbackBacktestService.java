@@ -0,0 +1,420 @@
+package org.harsh.tuple.paisa.service;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Sorts;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.harsh.tuple.paisa.dto.BacktestJob;
+import org.harsh.tuple.paisa.dto.BacktestReport;
+import org.harsh.tuple.paisa.dto.QuantileValue;
+import org.harsh.tuple.paisa.dto.SegmentCost;
+import org.harsh.tuple.paisa.model.CashbackCampaign;
+import org.harsh.tuple.paisa.model.CashbackRule;
+import org.harsh.tuple.paisa.model.Transaction;
+import org.harsh.tuple.paisa.model.User;
+import org.harsh.tuple.paisa.repository.CashbackCampaignRepository;
+import org.harsh.tuple.paisa.util.TDigest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+// *Replays the last N months of recharges through a candidate rule set before it goes live. Users are cut into
+// *userId ranges whose recharges are streamed (projection only) user by user in ledger order and evaluated in
+// *parallel with the same decision table the recharge path uses. Each range folds into a fixed-size partial
+// *(totals, per-segment costs, a t-digest of cashback amounts) and keeps state for the current user only (seen a
+// *recharge yet, month-to-date cashback), so memory does not grow with recharges or users. Admin requests queue a
+// *job (submit) and poll it (job), runs go one at a time on their own thread
+@Slf4j
+@Service
+public class CashbackBacktestService {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final int MAX_MONTHS = 24;
+    private static final int BATCH_SIZE = 10_000;
+    private static final double COMPRESSION = 100;
+    private static final List<Double> QUANTILES = List.of(0.5, 0.9, 0.99);
+    static final String NO_SEGMENT = "none";
+    // ?finished jobs kept for polling, oldest dropped first; more waiting than MAX_QUEUED is refused
+    private static final int MAX_JOBS = 32;
+    private static final int MAX_QUEUED = 4;
+
+    private final MongoTemplate mongoTemplate;
+    private final CashbackCampaignRepository cashbackCampaignRepository;
+    private final CashbackCapService cashbackCapService;
+    private final ForkJoinPool pool;
+    private final int partitions;
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("cashback-backtest").daemon().factory());
+    private final Map<String, BacktestJob> jobs = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BacktestJob> eldest) {
+            return size() > MAX_JOBS;
+        }
+    };
+
+    public CashbackBacktestService(
+            MongoTemplate mongoTemplate,
+            CashbackCampaignRepository cashbackCampaignRepository,
+            CashbackCapService cashbackCapService,
+            @Value("${cashback.backtest.parallelism:0}") int parallelism,
+            @Value("${cashback.backtest.partitions:64}") int partitions
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.cashbackCampaignRepository = cashbackCampaignRepository;
+        this.cashbackCapService = cashbackCapService;
+        //? 0 means one worker per core
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.partitions = partitions;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    // *Queues a backtest and returns at once; the rule set is checked (and compiled) before anything is queued
+    public BacktestJob submit(List<CashbackRule> rules, int months) {
+        validate(rules, months);
+        CashbackDecisionTable.compile(rules);
+        BacktestJob job = BacktestJob.builder()
+                .id(UUID.randomUUID().toString())
+                .ruleCount(rules.size())
+                .months(months)
+                .status(BacktestJob.Status.QUEUED)
+                .submittedAt(LocalDateTime.now())
+                .build();
+        synchronized (jobs) {
+            long waiting = jobs.values().stream()
+                    .filter(queued -> queued.getStatus() == BacktestJob.Status.QUEUED)
+                    .count();
+            if (waiting >= MAX_QUEUED) {
+                throw new IllegalArgumentException(waiting + " backtests are already waiting, try again later");
+            }
+            jobs.put(job.getId(), job);
+        }
+        List<CashbackRule> snapshot = List.copyOf(rules);
+        runner.execute(() -> {
+            job.setStatus(BacktestJob.Status.RUNNING);
+            try {
+                job.setReport(run(snapshot, months));
+                job.setStatus(BacktestJob.Status.DONE);
+            } catch (RuntimeException ex) {
+                log.error("Backtest {} failed", job.getId(), ex);
+                job.setError(ex.getMessage());
+                job.setStatus(BacktestJob.Status.FAILED);
+            } finally {
+                job.setFinishedAt(LocalDateTime.now());
+            }
+        });
+        return job;
+    }
+
+    public Optional<BacktestJob> job(String id) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(id));
+        }
+    }
+
+    public BacktestReport run(List<CashbackRule> rules, int months) {
+        validate(rules, months);
+        CashbackDecisionTable table = CashbackDecisionTable.compile(rules);
+        LocalDateTime to = LocalDateTime.now();
+        LocalDateTime from = to.minusMonths(months);
+        long started = System.nanoTime();
+
+        Run run = new Run(table, from, to, loadSegments(), simulatedBudgets(rules));
+        String[] bounds = userBounds();
+        Partial total = pool.invoke(new SliceTask(run, bounds, 0, bounds.length - 1));
+
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        log.info("Backtested {} rules over {} recharges in {} ms", table.ruleCount(), total.recharges, elapsedMs);
+        return BacktestReport.builder()
+                .from(from)
+                .to(to)
+                .ruleCount(table.ruleCount())
+                .recharges(total.recharges)
+                .rechargeVolume(total.rechargeVolume)
+                .rewarded(total.rewarded)
+                .totalCashback(total.cashback)
+                .cappedCashback(total.capped)
+                .costRatio(total.rechargeVolume == 0 ? 0 : total.cashback / total.rechargeVolume)
+                .bySegment(new TreeMap<>(total.segments))
+                .distribution(QUANTILES.stream()
+                        .map(q -> new QuantileValue(q, total.amounts.count() == 0 ? null : total.amounts.quantile(q)))
+                        .toList())
+                .campaignSpend(run.budgets().spent())
+                .elapsedMs(elapsedMs)
+                .build();
+    }
+
+    private static void validate(List<CashbackRule> rules, int months) {
+        if (rules == null || rules.isEmpty() || months < 1 || months > MAX_MONTHS) {
+            throw new IllegalArgumentException("A rule set and between 1 and " + MAX_MONTHS + " months are required");
+        }
+    }
+
+    // ?segments are set on few users, so the segmented ones are held in memory and everyone else is NO_SEGMENT
+    private Map<String, String> loadSegments() {
+        Map<String, String> segments = new HashMap<>();
+        Document filter = new Document("segment", new Document("$ne", null));
+        try (MongoCursor<Document> rows = secondaryCollection(User.class).find(filter)
+                .projection(new Document("segment", 1)).batchSize(BATCH_SIZE).iterator()) {
+            while (rows.hasNext()) {
+                Document row = rows.next();
+                segments.put(row.get("_id").toString(), row.getString("segment"));
+            }
+        }
+        log.debug("Backtest loaded {} segmented users", segments.size());
+        return segments;
+    }
+
+    // ?campaign rules draw from each campaign's whole budget as it stands today
+    private SimulatedBudgets simulatedBudgets(List<CashbackRule> rules) {
+        Set<String> campaignIds = new HashSet<>();
+        rules.forEach(rule -> {
+            if (rule.isEnabled() && rule.getCampaignId() != null) {
+                campaignIds.add(rule.getCampaignId());
+            }
+        });
+        SimulatedBudgets budgets = new SimulatedBudgets();
+        for (CashbackCampaign campaign : cashbackCampaignRepository.findAllById(campaignIds)) {
+            budgets.remaining.put(campaign.getId(), new AtomicLong(campaign.getBudgetPaise()));
+        }
+        return budgets;
+    }
+
+    //? user ids are ObjectId hex, so equal slices of the time between the oldest and newest user are contiguous
+    //? userId ranges; the outer ranges are left open so any id falls in exactly one. null is unbounded
+    private String[] userBounds() {
+        String[] bounds = new String[partitions + 1];
+        Document oldest = secondaryCollection(User.class).find(new Document())
+                .projection(new Document("_id", 1)).sort(Sorts.ascending("_id")).limit(1).first();
+        Document newest = secondaryCollection(User.class).find(new Document())
+                .projection(new Document("_id", 1)).sort(Sorts.descending("_id")).limit(1).first();
+        if (oldest == null || newest == null || !(oldest.get("_id") instanceof ObjectId first)
+                || !(newest.get("_id") instanceof ObjectId last)) {
+            return new String[]{null, null};
+        }
+        long start = first.getTimestamp();
+        long end = last.getTimestamp() + 1L;
+        for (int i = 1; i < partitions; i++) {
+            bounds[i] = idAt(start + (end - start) * i / partitions).toHexString();
+        }
+        return bounds;
+    }
+
+    private static ObjectId idAt(long epochSecond) {
+        return new ObjectId(String.format("%08x", epochSecond) + "0000000000000000");
+    }
+
+    // *One slice: a projected cursor over its users' recharges, by user and then ledger seq (the user_seq index).
+    // *When a rule needs first recharges the user's history before the window is streamed too, only to learn
+    // *whether an in-window recharge is their first; the cap sees each user's recharges in the order production did
+    private Partial replaySlice(Run run, String lowerUserId, String upperUserId) {
+        Document users = new Document();
+        if (lowerUserId != null) {
+            users.append("$gte", lowerUserId);
+        }
+        if (upperUserId != null) {
+            users.append("$lt", upperUserId);
+        }
+        boolean needsHistory = run.table().usesFirstRecharge();
+        Document window = new Document("$lte", toDate(run.to()));
+        if (!needsHistory) {
+            window.append("$gte", toDate(run.from()));
+        }
+        Document filter = new Document("type", "RECHARGE").append("timestamp", window);
+        if (!users.isEmpty()) {
+            filter.append("userId", users);
+        }
+        Document projection = new Document("userId", 1).append("amount", 1).append("timestamp", 1);
+        Partial partial = new Partial();
+        String currentUser = null;
+        boolean seenRecharge = false;
+        YearMonth month = null;
+        double usedThisMonth = 0;
+        try (MongoCursor<Document> rows = secondaryCollection(Transaction.class).find(filter)
+                .projection(projection).sort(Sorts.ascending("userId", "seq")).batchSize(BATCH_SIZE).iterator()) {
+            while (rows.hasNext()) {
+                Document row = rows.next();
+                String userId = row.getString("userId");
+                if (!userId.equals(currentUser)) {
+                    currentUser = userId;
+                    seenRecharge = false;
+                    month = null;
+                }
+                boolean first = !seenRecharge;
+                seenRecharge = true;
+                LocalDateTime timestamp = LocalDateTime.ofInstant(row.getDate("timestamp").toInstant(), ZONE);
+                if (timestamp.isBefore(run.from())) {
+                    continue;
+                }
+                String segment = run.segments().get(userId);
+                double amount = ((Number) row.get("amount")).doubleValue();
+                CashbackDecisionTable.Decision decision = run.table().evaluate(amount,
+                        timestamp.toLocalTime().toSecondOfDay(), first, segment, run.budgets());
+                double quoted = decision.amount();
+                //? as on the recharge path: the cap trims the quote and the campaign gets the trimmed part back
+                double cashback = quoted;
+                if (cashbackCapService.isEnabled() && quoted > 0) {
+                    YearMonth rechargeMonth = YearMonth.from(timestamp);
+                    if (!rechargeMonth.equals(month)) {
+                        month = rechargeMonth;
+                        usedThisMonth = 0;
+                    }
+                    cashback = cashbackCapService.fit(quoted, usedThisMonth);
+                    usedThisMonth += cashback;
+                }
+                if (decision.campaignId() != null && cashback < quoted) {
+                    run.budgets().release(decision.campaignId(), Math.round(quoted * 100) - Math.round(cashback * 100));
+                }
+                partial.add(segment == null ? NO_SEGMENT : segment, amount, cashback, quoted - cashback);
+            }
+        }
+        return partial;
+    }
+
+    //? backtests read from secondaries when there are any, the primary keeps serving wallet traffic
+    private MongoCollection<Document> secondaryCollection(Class<?> entity) {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(entity))
+                .withReadPreference(ReadPreference.secondaryPreferred());
+    }
+
+    private static Date toDate(LocalDateTime dateTime) {
+        return Date.from(dateTime.atZone(ZONE).toInstant());
+    }
+
+    private record Run(CashbackDecisionTable table, LocalDateTime from, LocalDateTime to, Map<String, String> segments,
+                       SimulatedBudgets budgets) {
+    }
+
+    private final class SliceTask extends RecursiveTask<Partial> {
+        private final Run run;
+        private final String[] bounds;
+        private final int from;
+        private final int to;
+
+        SliceTask(Run run, String[] bounds, int from, int to) {
+            this.run = run;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from == 1) {
+                return replaySlice(run, bounds[from], bounds[to]);
+            }
+            int mid = (from + to) >>> 1;
+            SliceTask left = new SliceTask(run, bounds, from, mid);
+            left.fork();
+            Partial right = new SliceTask(run, bounds, mid, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    // ?slices run side by side, so which users' recharges win a nearly empty budget differs from production;
+    // ?the total drawn from each campaign does not
+    private static final class SimulatedBudgets implements CashbackDecisionTable.BudgetGate {
+        private final Map<String, AtomicLong> remaining = new ConcurrentHashMap<>();
+        private final Map<String, AtomicLong> spent = new ConcurrentHashMap<>();
+
+        @Override
+        public boolean tryReserve(String campaignId, long paise) {
+            AtomicLong left = remaining.get(campaignId);
+            if (left == null) {
+                return false;
+            }
+            long current = left.get();
+            while (current >= paise) {
+                if (left.compareAndSet(current, current - paise)) {
+                    spent.computeIfAbsent(campaignId, _ -> new AtomicLong()).addAndGet(paise);
+                    return true;
+                }
+                current = left.get();
+            }
+            return false;
+        }
+
+        void release(String campaignId, long paise) {
+            AtomicLong left = remaining.get(campaignId);
+            if (left != null && paise > 0) {
+                left.addAndGet(paise);
+                spent.get(campaignId).addAndGet(-paise);
+            }
+        }
+
+        Map<String, Double> spent() {
+            Map<String, Double> rupees = new TreeMap<>();
+            spent.forEach((campaignId, paise) -> rupees.put(campaignId, paise.get() / 100.0));
+            return rupees;
+        }
+    }
+
+    private static final class Partial {
+        private long recharges;
+        private double rechargeVolume;
+        private long rewarded;
+        private double cashback;
+        private double capped;
+        private final Map<String, SegmentCost> segments = new HashMap<>();
+        private final TDigest amounts = new TDigest(COMPRESSION);
+
+        void add(String segment, double amount, double cashbackAmount, double cappedAmount) {
+            recharges++;
+            rechargeVolume += amount;
+            capped += cappedAmount;
+            SegmentCost cost = segments.computeIfAbsent(segment, _ -> new SegmentCost());
+            cost.setRecharges(cost.getRecharges() + 1);
+            cost.setRechargeVolume(cost.getRechargeVolume() + amount);
+            if (cashbackAmount > 0) {
+                rewarded++;
+                cashback += cashbackAmount;
+                cost.setCashback(cost.getCashback() + cashbackAmount);
+                amounts.add(cashbackAmount);
+            }
+        }
+
+        Partial merge(Partial other) {
+            recharges += other.recharges;
+            rechargeVolume += other.rechargeVolume;
+            rewarded += other.rewarded;
+            cashback += other.cashback;
+            capped += other.capped;
+            other.segments.forEach((segment, cost) -> segments.merge(segment, cost, (a, b) -> {
+                a.setRecharges(a.getRecharges() + b.getRecharges());
+                a.setRechargeVolume(a.getRechargeVolume() + b.getRechargeVolume());
+                a.setCashback(a.getCashback() + b.getCashback());
+                return a;
+            }));
+            amounts.merge(other.amounts);
+            return this;
+        }
+    }
+}
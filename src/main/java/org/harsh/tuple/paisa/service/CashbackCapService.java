@@ -0,0 +1,93 @@
+package org.harsh.tuple.paisa.service;
+
+import org.harsh.tuple.paisa.model.Wallet;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// *Monthly per-user cashback cap (cashback.caps.monthly, rupees; 0 = no cap). The counter is the wallet's
+// *cashbackByMonth entry, so the cap is checked by the same conditional update that credits the cashback and a new
+// *month simply starts on a fresh key. A small local cache of month-to-date totals trims cashback before the write,
+// *users already at their cap never cost a failed update
+@Service
+public class CashbackCapService {
+
+    private final double monthlyCap;
+    private final int cacheSize;
+    private final Map<String, MonthToDate> cache;
+
+    public CashbackCapService(
+            @Value("${cashback.caps.monthly:0}") double monthlyCap,
+            @Value("${cashback.caps.cache-size:10000}") int cacheSize
+    ) {
+        this.monthlyCap = monthlyCap;
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MonthToDate> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return monthlyCap > 0;
+    }
+
+    // *Cashback that still fits under the cap, as far as this node knows; rounded down to paise
+    public double clip(String userId, YearMonth month, double cashbackAmount) {
+        if (!isEnabled() || cashbackAmount <= 0) {
+            return cashbackAmount;
+        }
+        return fit(cashbackAmount, used(userId, month));
+    }
+
+    // ?floored so that used + the result never rounds past the cap
+    double fit(double cashbackAmount, double used) {
+        double left = monthlyCap - used;
+        return Math.max(0, Math.floor(Math.min(cashbackAmount, left) * 100) / 100);
+    }
+
+    // ?the condition added to the wallet update: the month's total after this cashback stays under the cap
+    public Criteria withinCap(YearMonth month, double cashbackAmount) {
+        String field = "cashbackByMonth." + month;
+        return new Criteria().orOperator(
+                Criteria.where(field).exists(false),
+                Criteria.where(field).lte(monthlyCap - cashbackAmount));
+    }
+
+    // ?called with every wallet read or returned by an update, so the cache follows Mongo
+    public void observe(Wallet wallet, YearMonth month) {
+        if (!isEnabled() || wallet == null) {
+            return;
+        }
+        Double used = wallet.getCashbackByMonth() == null ? null : wallet.getCashbackByMonth().get(month.toString());
+        observe(wallet.getUserId(), month, used == null ? 0 : used);
+    }
+
+    public void observe(String userId, YearMonth month, double used) {
+        synchronized (cache) {
+            MonthToDate cached = cache.get(userId);
+            //? an older month is never written over a newer one, and totals only grow within a month
+            if (cached == null || cached.month().isBefore(month)
+                    || (cached.month().equals(month) && cached.used() < used)) {
+                cache.put(userId, new MonthToDate(month, used));
+            }
+        }
+    }
+
+    // ?unknown users and a cached earlier month both count as nothing used yet (lazy rollover)
+    double used(String userId, YearMonth month) {
+        synchronized (cache) {
+            MonthToDate cached = cache.get(userId);
+            return cached != null && cached.month().equals(month) ? cached.used() : 0;
+        }
+    }
+
+    private record MonthToDate(YearMonth month, double used) {
+    }
+}
@@ -0,0 +1,196 @@
+package org.harsh.tuple.paisa.service;
+
+import org.harsh.tuple.paisa.model.CashbackRule;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+// *Immutable, compiled form of the cashback rules: the amount axis is cut at every band edge, and each
+// *interval holds its candidate rules by descending priority. Evaluation is a binary search plus a short scan
+// *over primitive fields; the only allocation is the Decision of a rule that pays
+final class CashbackDecisionTable {
+
+    // ?what the service paid before rules existed, used while the rule store is empty
+    static final CashbackDecisionTable DEFAULT = compile(List.of(CashbackRule.builder()
+            .name("default")
+            .enabled(true)
+            .percentage(5)
+            .build()));
+
+    private static final int NO_WINDOW = -1;
+
+    private final double[] boundaries;
+    private final Compiled[][] intervals;
+    private final boolean usesFirstRecharge;
+    private final boolean usesSegments;
+    private final int ruleCount;
+
+    private CashbackDecisionTable(double[] boundaries, Compiled[][] intervals, boolean usesFirstRecharge,
+                                  boolean usesSegments, int ruleCount) {
+        this.boundaries = boundaries;
+        this.intervals = intervals;
+        this.usesFirstRecharge = usesFirstRecharge;
+        this.usesSegments = usesSegments;
+        this.ruleCount = ruleCount;
+    }
+
+    static CashbackDecisionTable compile(List<CashbackRule> rules) {
+        List<Compiled> compiled = new ArrayList<>();
+        for (CashbackRule rule : rules) {
+            if (rule.isEnabled()) {
+                validate(rule);
+                compiled.add(new Compiled(rule));
+            }
+        }
+        //? ties keep a stable order by id so every node picks the same rule
+        compiled.sort(Comparator.comparingInt((Compiled rule) -> rule.priority).reversed()
+                .thenComparing(rule -> rule.id == null ? "" : rule.id));
+
+        TreeSet<Double> edges = new TreeSet<>();
+        for (Compiled rule : compiled) {
+            edges.add(rule.minAmount);
+            edges.add(rule.maxAmount);
+        }
+        double[] boundaries = edges.stream().mapToDouble(Double::doubleValue).toArray();
+
+        Compiled[][] intervals = new Compiled[boundaries.length][];
+        for (int i = 0; i < boundaries.length; i++) {
+            double lower = boundaries[i];
+            intervals[i] = compiled.stream()
+                    .filter(rule -> rule.minAmount <= lower && lower < rule.maxAmount)
+                    .toArray(Compiled[]::new);
+        }
+        return new CashbackDecisionTable(boundaries, intervals,
+                compiled.stream().anyMatch(rule -> rule.firstRechargeOnly),
+                compiled.stream().anyMatch(rule -> rule.segment != null),
+                compiled.size());
+    }
+
+    static void validate(CashbackRule rule) {
+        if (rule.getMinAmount() < 0 || (rule.getMaxAmount() != null && rule.getMaxAmount() <= rule.getMinAmount())) {
+            throw new IllegalArgumentException("Rule " + rule.getName() + ": amount band must satisfy 0 <= min < max");
+        }
+        if (rule.getPercentage() < 0 || rule.getPercentage() > 100 || rule.getFlatBonus() < 0
+                || (rule.getMaxCashback() != null && rule.getMaxCashback() < 0)) {
+            throw new IllegalArgumentException("Rule " + rule.getName() + ": percentage must be 0-100 and amounts >= 0");
+        }
+        if ((rule.getWindowStart() == null) != (rule.getWindowEnd() == null)) {
+            throw new IllegalArgumentException("Rule " + rule.getName() + ": time window needs both start and end");
+        }
+    }
+
+    // ?the cashback and the campaign whose budget was reserved for it (null when the rule is not campaign-funded)
+    record Decision(double amount, String campaignId) {
+        static final Decision NONE = new Decision(0, null);
+    }
+
+    // ?where campaign cashback is reserved from; CampaignBudgetService on the recharge path
+    interface BudgetGate {
+        BudgetGate UNLIMITED = (campaignId, paise) -> true;
+
+        boolean tryReserve(String campaignId, long paise);
+    }
+
+    double evaluate(double amount, int secondOfDay, boolean firstRecharge, String segment) {
+        return evaluate(amount, secondOfDay, firstRecharge, segment, BudgetGate.UNLIMITED).amount();
+    }
+
+    // *Cashback in rupees, rounded to paise, with the campaign that funds it; NONE when no rule matches. A campaign
+    // *rule whose budget cannot cover the cashback is skipped and the next rule by priority gets its chance
+    Decision evaluate(double amount, int secondOfDay, boolean firstRecharge, String segment, BudgetGate budgets) {
+        int interval = Arrays.binarySearch(boundaries, amount);
+        //? between two edges binarySearch returns -(insertion point) - 1, the interval starts one edge lower
+        if (interval < 0) {
+            interval = -interval - 2;
+        }
+        if (interval < 0) {
+            return Decision.NONE;
+        }
+        for (Compiled rule : intervals[interval]) {
+            if (!rule.matches(secondOfDay, firstRecharge, segment)) {
+                continue;
+            }
+            double cashback = rule.cashback(amount);
+            if (cashback == 0) {
+                return Decision.NONE;
+            }
+            if (rule.campaignId == null) {
+                return new Decision(cashback, null);
+            }
+            if (budgets.tryReserve(rule.campaignId, Math.round(cashback * 100))) {
+                return new Decision(cashback, rule.campaignId);
+            }
+        }
+        return Decision.NONE;
+    }
+
+    boolean usesFirstRecharge() {
+        return usesFirstRecharge;
+    }
+
+    boolean usesSegments() {
+        return usesSegments;
+    }
+
+    int ruleCount() {
+        return ruleCount;
+    }
+
+    private static final class Compiled {
+        private final String id;
+        private final int priority;
+        private final double minAmount;
+        private final double maxAmount;
+        private final double rate;
+        private final double flatBonus;
+        private final double maxCashback;
+        private final boolean firstRechargeOnly;
+        private final int windowStart;
+        private final int windowEnd;
+        private final String segment;
+        private final String campaignId;
+
+        Compiled(CashbackRule rule) {
+            this.id = rule.getId();
+            this.priority = rule.getPriority();
+            this.minAmount = rule.getMinAmount();
+            this.maxAmount = rule.getMaxAmount() == null ? Double.POSITIVE_INFINITY : rule.getMaxAmount();
+            this.rate = rule.getPercentage() / 100;
+            this.flatBonus = rule.getFlatBonus();
+            this.maxCashback = rule.getMaxCashback() == null ? Double.POSITIVE_INFINITY : rule.getMaxCashback();
+            this.firstRechargeOnly = rule.isFirstRechargeOnly();
+            this.windowStart = secondOfDay(rule.getWindowStart());
+            this.windowEnd = secondOfDay(rule.getWindowEnd());
+            this.segment = rule.getSegment();
+            this.campaignId = rule.getCampaignId();
+        }
+
+        boolean matches(int secondOfDay, boolean firstRecharge, String userSegment) {
+            if (firstRechargeOnly && !firstRecharge) {
+                return false;
+            }
+            if (segment != null && !segment.equals(userSegment)) {
+                return false;
+            }
+            if (windowStart == NO_WINDOW) {
+                return true;
+            }
+            return windowStart <= windowEnd
+                    ? secondOfDay >= windowStart && secondOfDay < windowEnd
+                    : secondOfDay >= windowStart || secondOfDay < windowEnd;
+        }
+
+        double cashback(double amount) {
+            double cashback = Math.min(amount * rate + flatBonus, maxCashback);
+            return Math.round(cashback * 100) / 100.0;
+        }
+
+        private static int secondOfDay(LocalTime time) {
+            return time == null ? NO_WINDOW : time.toSecondOfDay();
+        }
+    }
+}
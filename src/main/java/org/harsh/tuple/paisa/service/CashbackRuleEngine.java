@@ -0,0 +1,77 @@
+package org.harsh.tuple.paisa.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.harsh.tuple.paisa.model.CashbackRule;
+import org.harsh.tuple.paisa.repository.CashbackRuleRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+// *Owns the live cashback decision table. Rules live in Mongo; every node polls the latest updatedAt and, when it
+// *moves, recompiles the whole table and swaps it in one reference write. Recharges only ever read the reference
+@Slf4j
+@Component
+public class CashbackRuleEngine {
+
+    private final CashbackRuleRepository cashbackRuleRepository;
+    private final AtomicReference<CashbackDecisionTable> table = new AtomicReference<>(CashbackDecisionTable.DEFAULT);
+    private volatile Fingerprint loaded;
+
+    public CashbackRuleEngine(CashbackRuleRepository cashbackRuleRepository) {
+        this.cashbackRuleRepository = cashbackRuleRepository;
+    }
+
+    CashbackDecisionTable current() {
+        return table.get();
+    }
+
+    public List<CashbackRule> getRules() {
+        return cashbackRuleRepository.findAll();
+    }
+
+    // ?validated before saving so a bad rule can never stop the table from compiling on other nodes
+    public CashbackRule saveRule(CashbackRule rule) {
+        CashbackDecisionTable.validate(rule);
+        rule.setUpdatedAt(LocalDateTime.now());
+        CashbackRule saved = cashbackRuleRepository.save(rule);
+        refresh();
+        return saved;
+    }
+
+    public void deleteRule(String id) {
+        cashbackRuleRepository.deleteById(id);
+        refresh();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${cashback.rules.refresh-ms:5000}")
+    public synchronized void refresh() {
+        //? updatedAt catches edits, the count catches deletes
+        Fingerprint latest = new Fingerprint(
+                cashbackRuleRepository.findFirstByOrderByUpdatedAtDesc().map(CashbackRule::getUpdatedAt).orElse(null),
+                cashbackRuleRepository.count());
+        if (latest.equals(loaded)) {
+            return;
+        }
+        List<CashbackRule> rules = cashbackRuleRepository.findAll();
+        try {
+            CashbackDecisionTable compiled = rules.isEmpty()
+                    ? CashbackDecisionTable.DEFAULT
+                    : CashbackDecisionTable.compile(rules);
+            table.set(compiled);
+            log.info("Loaded cashback decision table with {} active rules", compiled.ruleCount());
+        } catch (IllegalArgumentException ex) {
+            log.error("Keeping the previous cashback rules, new set does not compile: {}", ex.getMessage());
+        }
+        //? a broken set is reported once, not on every poll
+        loaded = latest;
+    }
+
+    private record Fingerprint(LocalDateTime updatedAt, long count) {
+    }
+}
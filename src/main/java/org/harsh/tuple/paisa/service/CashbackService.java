@@ -1,15 +1,25 @@
 package org.harsh.tuple.paisa.service;
 
 import lombok.RequiredArgsConstructor;
-import org.harsh.tuple.paisa.exception.InvalidTransactionAmountException;
+import org.harsh.tuple.paisa.dto.CashbackHistoryPage;
+import org.harsh.tuple.paisa.dto.CashbackSummary;
 import org.harsh.tuple.paisa.exception.WalletNotFoundException;
 import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.LedgerEntryKind;
+import org.harsh.tuple.paisa.model.TransactionType;
+import org.harsh.tuple.paisa.model.User;
 import org.harsh.tuple.paisa.model.Wallet;
 import org.harsh.tuple.paisa.repository.CashbackRepository;
+import org.harsh.tuple.paisa.repository.TransactionRepository;
+import org.harsh.tuple.paisa.repository.UserRepository;
 import org.harsh.tuple.paisa.repository.WalletRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
 import java.util.List;
 
 
@@ -17,44 +27,111 @@ import java.util.List;
 @Service
 public class CashbackService {
 
+    private static final int MAX_HISTORY_PAGE = 100;
+
     private final CashbackRepository cashbackRepository;
     private final WalletRepository walletRepository;
+    private final RollupService rollupService;
+    private final AnalyticsCache analyticsCache;
+    private final ColumnarLedgerStore columnarLedgerStore;
+    private final CashbackRuleEngine cashbackRuleEngine;
+    private final TransactionRepository transactionRepository;
+    private final UserRepository userRepository;
+    private final CampaignBudgetService campaignBudgetService;
 
-    // *cashback Appied based on recharge amount and update wallet
-    public void applyCashback(String userId, double rechargeAmount) {
-        if (rechargeAmount <= 0) {
-            throw new InvalidTransactionAmountException(rechargeAmount);
-        }
+    //* Cashback from the live rule table (5% of recharge amount while no rules are configured).
+    //* rechargeRecorded: whether this recharge is already in the ledger, for first-recharge rules.
+    //* A campaign-funded quote holds a budget reservation; whatever is not credited goes back through releaseUnused
+    public Quote quoteCashback(String userId, double rechargeAmount, boolean rechargeRecorded) {
+        CashbackDecisionTable rules = cashbackRuleEngine.current();
+        // ?user lookups only happen when some active rule actually depends on them
+        boolean firstRecharge = rules.usesFirstRecharge() && isFirstRecharge(userId, rechargeRecorded);
+        String segment = rules.usesSegments()
+                ? userRepository.findById(userId).map(User::getSegment).orElse(null)
+                : null;
+        CashbackDecisionTable.Decision decision = rules.evaluate(rechargeAmount, LocalTime.now().toSecondOfDay(),
+                firstRecharge, segment, campaignBudgetService);
+        return new Quote(decision.amount(), decision.campaignId());
+    }
+
+    // ?stops at the first recharge past this one instead of counting the whole history
+    private boolean isFirstRecharge(String userId, boolean rechargeRecorded) {
+        int earlier = rechargeRecorded ? 1 : 0;
+        return transactionRepository.findByUserIdAndType(userId, TransactionType.RECHARGE, Limit.of(earlier + 1))
+                .size() <= earlier;
+    }
 
-        double cashbackAmount = calculateCashback(rechargeAmount);
-        if (cashbackAmount > 0) {
-            // Save cashback record
-            Cashback cashback = Cashback.builder()
-                    .userId(userId)
-                    .amount(cashbackAmount)
-                    .timestamp(LocalDateTime.now())
-                    .build();
-
-            cashbackRepository.save(cashback);
-
-            // *Update the wallet balance with cashback amount
-            Wallet wallet = walletRepository.findByUserId(userId)
-                    .orElseThrow(() -> new WalletNotFoundException(userId));
-            wallet.setBalance(wallet.getBalance() + cashbackAmount);
-            walletRepository.save(wallet);
+    // ?gives the campaign back the part of a quote that was not credited (0 when the recharge failed)
+    public void releaseUnused(Quote quote, double credited) {
+        if (quote.campaignId() != null) {
+            campaignBudgetService.release(quote.campaignId(), Math.round(quote.amount() * 100) - Math.round(credited * 100));
         }
     }
 
-    //* Cashback (5% of recharge amount)
-    private double calculateCashback(double rechargeAmount) {
-        return rechargeAmount * 0.05; // Only calculate the cashback amount (5%)
+    // *Ledger side of a cashback only; the caller credits the wallet and counts it in the rollups with its recharge
+    public Cashback recordCashback(String userId, long seq, double cashbackAmount, LocalDateTime timestamp) {
+        Cashback cashback = Cashback.builder()
+                .userId(userId)
+                .seq(seq)
+                .amount(cashbackAmount)
+                .timestamp(timestamp)
+                .build();
+
+        cashbackRepository.save(cashback);
+        updateViews(cashback);
+        return cashback;
+    }
+
+    // ?derived views of a cashback that is already stored, also used after a batched settlement insert
+    void onRecorded(Cashback cashback) {
+        rollupService.record(cashback.getUserId(), cashback.getTimestamp(), LedgerEntryKind.CASHBACK, cashback.getAmount());
+        updateViews(cashback);
     }
 
-    // *Viewng Cashback History
-    public List<Cashback> getCashbackHistory(String userId) {
-        if (!walletRepository.existsByUserId(userId)) {
+    private void updateViews(Cashback cashback) {
+        columnarLedgerStore.append(cashback.getUserId(), cashback.getSeq(), cashback.getTimestamp(), LedgerEntryKind.CASHBACK, cashback.getAmount());
+        analyticsCache.invalidate(cashback.getUserId());
+    }
+
+    // ?the cashback totals on the wallet, added to the same update that credits the balance
+    static Update addToTotals(Update update, double cashbackAmount, YearMonth month) {
+        return update.inc("cashbackLifetime", cashbackAmount)
+                .inc("cashbackByMonth." + month, cashbackAmount);
+    }
+
+    // *Viewng Cashback History, newest first; "before" is the nextCursor of the previous page.
+    // *One bounded scan of the (userId, seq) index, the wallet is only looked up when the first page is empty.
+    // *Cashbacks from before sequences carry seq <= 0 once LedgerBackfillService has run, so cursors can go negative
+    public CashbackHistoryPage getCashbackHistory(String userId, Long before, int size) {
+        if (size < 1 || size > MAX_HISTORY_PAGE) {
+            throw new IllegalArgumentException("Page size must be 1-" + MAX_HISTORY_PAGE);
+        }
+        List<Cashback> cashbacks = cashbackRepository.findByUserIdAndSeqLessThanOrderBySeqDesc(
+                userId, before == null ? Long.MAX_VALUE : before, Limit.of(size + 1));
+        if (cashbacks.isEmpty() && before == null && !walletRepository.existsByUserId(userId)) {
             throw new WalletNotFoundException(userId);
         }
-        return cashbackRepository.findByUserId(userId);
+        boolean hasMore = cashbacks.size() > size;
+        List<Cashback> page = hasMore ? cashbacks.subList(0, size) : cashbacks;
+        return CashbackHistoryPage.builder()
+                .cashbacks(page)
+                .nextCursor(hasMore ? page.getLast().getSeq() : null)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    // *Lifetime and month-to-date cashback, read straight off the wallet
+    public CashbackSummary getCashbackSummary(String userId) {
+        Wallet wallet = walletRepository.findByUserId(userId)
+                .orElseThrow(() -> new WalletNotFoundException(userId));
+        YearMonth month = YearMonth.now();
+        Double monthToDate = wallet.getCashbackByMonth() == null
+                ? null
+                : wallet.getCashbackByMonth().get(month.toString());
+        return new CashbackSummary(wallet.getCashbackLifetime(), month, monthToDate == null ? 0 : monthToDate);
+    }
+
+    // *Cashback decided for a recharge, and the campaign whose budget was reserved for it (null when none was)
+    public record Quote(double amount, String campaignId) {
     }
 }
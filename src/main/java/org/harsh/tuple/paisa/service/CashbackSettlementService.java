@@ -0,0 +1,438 @@
+package org.harsh.tuple.paisa.service;
+
+import com.mongodb.client.result.UpdateResult;
+import lombok.extern.slf4j.Slf4j;
+import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.PendingCashback;
+import org.harsh.tuple.paisa.model.Wallet;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// *Deferred cashback (cashback.settlement.mode=deferred): a recharge only leaves a pending record behind; settlement
+// *runs every interval or after batch-size accruals and credits a whole batch with one bulkWrite of $inc per wallet
+// *and one insertMany of Cashback records. Every step is safe to replay if a node dies halfway: sequences, capped
+// *amounts and the ledger timestamp are persisted on the pending records first, ledger rows are deduplicated by
+// *(userId, seq) and a wallet keeps the batch id it was credited for until the batch is done
+@Slf4j
+@Service
+public class CashbackSettlementService {
+
+    private static final int MAX_CREDIT_ATTEMPTS = 3;
+
+    private final MongoTemplate mongoTemplate;
+    private final LedgerSequenceService ledgerSequenceService;
+    private final CashbackService cashbackService;
+    private final WalletEventStream walletEventStream;
+    private final CashbackCapService cashbackCapService;
+    private final boolean deferred;
+    private final int batchSize;
+    private final Duration claimTtl;
+    private final AtomicInteger accruedSinceSettle = new AtomicInteger();
+    private final AtomicBoolean settling = new AtomicBoolean();
+
+    public CashbackSettlementService(
+            MongoTemplate mongoTemplate,
+            LedgerSequenceService ledgerSequenceService,
+            CashbackService cashbackService,
+            WalletEventStream walletEventStream,
+            CashbackCapService cashbackCapService,
+            @Value("${cashback.settlement.mode:inline}") String mode,
+            @Value("${cashback.settlement.batch-size:500}") int batchSize,
+            @Value("${cashback.settlement.claim-ttl:5m}") Duration claimTtl
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.ledgerSequenceService = ledgerSequenceService;
+        this.cashbackService = cashbackService;
+        this.walletEventStream = walletEventStream;
+        this.cashbackCapService = cashbackCapService;
+        this.deferred = "deferred".equalsIgnoreCase(mode);
+        this.batchSize = batchSize;
+        this.claimTtl = claimTtl;
+    }
+
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    public void accrue(String userId, double amount, String campaignId, LocalDateTime accruedAt) {
+        mongoTemplate.insert(PendingCashback.builder()
+                .userId(userId)
+                .amount(amount)
+                .campaignId(campaignId)
+                .accruedAt(accruedAt)
+                .build());
+        if (accruedSinceSettle.incrementAndGet() >= batchSize && !settling.get()) {
+            Thread.ofVirtual().name("cashback-settlement").start(this::settle);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cashback.settlement.interval-ms:2000}")
+    public void settle() {
+        if (!deferred || !settling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            accruedSinceSettle.set(0);
+            recoverStaleClaims();
+            int settled;
+            do {
+                String batchId = UUID.randomUUID().toString();
+                settled = claim(batchId);
+                if (settled > 0) {
+                    settleBatch(batchId);
+                }
+            } while (settled == batchSize);
+        } catch (RuntimeException ex) {
+            //? claimed records stay claimed and are picked up again once the claim goes stale
+            log.error("Cashback settlement failed", ex);
+        } finally {
+            settling.set(false);
+        }
+    }
+
+    // ?two steps so concurrent nodes never share a record: pick candidates, then claim only the still-unclaimed ones
+    private int claim(String batchId) {
+        Query candidates = Query.query(Criteria.where("batchId").is(null))
+                .with(Sort.by("accruedAt"))
+                .limit(batchSize);
+        candidates.fields().include("_id");
+        List<String> ids = mongoTemplate.find(candidates, PendingCashback.class).stream()
+                .map(PendingCashback::getId)
+                .toList();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("_id").in(ids).and("batchId").is(null)),
+                new Update().set("batchId", batchId).set("claimedAt", LocalDateTime.now()),
+                PendingCashback.class
+        );
+        //? a full page keeps the drain loop going even if another node won some of the candidates
+        return ids.size();
+    }
+
+    private void recoverStaleClaims() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(claimTtl);
+        List<String> staleBatches = mongoTemplate.findDistinct(
+                Query.query(Criteria.where("claimedAt").lt(cutoff)), "batchId", PendingCashback.class, String.class);
+        for (String batchId : staleBatches) {
+            UpdateResult taken = mongoTemplate.updateMulti(
+                    Query.query(Criteria.where("batchId").is(batchId).and("claimedAt").lt(cutoff)),
+                    new Update().set("claimedAt", LocalDateTime.now()),
+                    PendingCashback.class
+            );
+            if (taken.getModifiedCount() > 0) {
+                log.warn("Resuming stale cashback settlement batch {}", batchId);
+                settleBatch(batchId);
+            }
+        }
+    }
+
+    void settleBatch(String batchId) {
+        List<PendingCashback> claimed = mongoTemplate.find(
+                Query.query(Criteria.where("batchId").is(batchId)).with(Sort.by("accruedAt")), PendingCashback.class);
+        claimed = assignSequences(claimed);
+        if (claimed.isEmpty()) {
+            return;
+        }
+        Set<String> userIds = new LinkedHashSet<>();
+        claimed.forEach(pending -> userIds.add(pending.getUserId()));
+
+        //? wallets first: a credit the cap cuts short changes the amounts the ledger rows are written with
+        List<PendingCashback> credited = creditWallets(batchId, claimed);
+        List<Cashback> cashbacks = credited.stream()
+                .map(pending -> Cashback.builder()
+                        .id(pending.getId())
+                        .userId(pending.getUserId())
+                        .seq(pending.getSeq())
+                        .amount(pending.getAmount())
+                        .timestamp(settledAt(pending))
+                        .build())
+                .toList();
+        List<Cashback> inserted = cashbacks.isEmpty() ? cashbacks : insertLedger(cashbacks);
+        mongoTemplate.remove(Query.query(Criteria.where("batchId").is(batchId)), PendingCashback.class);
+        //? from here on nothing can replay the batch, so its marker is no longer needed
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("userId").in(userIds).and("settledCashbackBatches").is(batchId)),
+                new Update().pull("settledCashbackBatches", batchId),
+                Wallet.class);
+
+        //? rows a replay found already written were announced by the run that wrote them
+        inserted.forEach(cashback -> {
+            cashbackService.onRecorded(cashback);
+            walletEventStream.publishActivity(cashback.getUserId(), cashback);
+        });
+        publishBalances(userIds);
+        log.info("Settled {} cashbacks for {} wallets in batch {}", cashbacks.size(), userIds.size(), batchId);
+    }
+
+    // ?records sequenced before settledAt existed fall back to their accrual time
+    private static LocalDateTime settledAt(PendingCashback pending) {
+        return pending.getSettledAt() != null ? pending.getSettledAt() : pending.getAccruedAt();
+    }
+
+    // ?one $inc per user for the whole batch, written back to the pending records (with the capped amount) before
+    // ?anything else happens, so a replayed batch settles exactly the same entries
+    private List<PendingCashback> assignSequences(List<PendingCashback> claimed) {
+        Map<String, List<PendingCashback>> unsequenced = new LinkedHashMap<>();
+        for (PendingCashback pending : claimed) {
+            if (pending.getSeq() == null) {
+                unsequenced.computeIfAbsent(pending.getUserId(), _ -> new ArrayList<>()).add(pending);
+            }
+        }
+        if (unsequenced.isEmpty()) {
+            return claimed;
+        }
+        LocalDateTime settledAt = LocalDateTime.now();
+        unsequenced.values().forEach(records -> records.forEach(pending -> pending.setSettledAt(settledAt)));
+        List<Reserved> reserved = reservations(unsequenced.values());
+        Set<String> dropped = applyCaps(unsequenced);
+        if (!dropped.isEmpty()) {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").in(dropped)), PendingCashback.class);
+        }
+        BulkOperations updates = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PendingCashback.class);
+        unsequenced.forEach((userId, records) -> {
+            if (records.isEmpty()) {
+                return;
+            }
+            long first = ledgerSequenceService.next(userId, records.size()) - records.size() + 1;
+            for (int i = 0; i < records.size(); i++) {
+                PendingCashback pending = records.get(i);
+                pending.setSeq(first + i);
+                updates.updateOne(Query.query(Criteria.where("_id").is(pending.getId())),
+                        new Update()
+                                .set("seq", pending.getSeq())
+                                .set("amount", pending.getAmount())
+                                .set("settledAt", pending.getSettledAt()));
+            }
+        });
+        updates.execute();
+        releaseTrimmed(reserved, dropped);
+        return dropped.isEmpty()
+                ? claimed
+                : claimed.stream().filter(pending -> !dropped.contains(pending.getId())).toList();
+    }
+
+    // ?trims each accrual to what is left of its month's cap, in accrual order; returns the ids left with nothing.
+    // ?Only a first cut from a plain read: the crediting update is what actually enforces the cap
+    private Set<String> applyCaps(Map<String, List<PendingCashback>> unsequenced) {
+        Set<String> dropped = new HashSet<>();
+        if (!cashbackCapService.isEnabled()) {
+            return dropped;
+        }
+        Query wallets = Query.query(Criteria.where("userId").in(unsequenced.keySet()));
+        wallets.fields().include("userId", "cashbackByMonth");
+        Map<String, Map<String, Double>> usedByUser = new HashMap<>();
+        for (Wallet wallet : mongoTemplate.find(wallets, Wallet.class)) {
+            usedByUser.put(wallet.getUserId(), wallet.getCashbackByMonth() == null
+                    ? new HashMap<>()
+                    : new HashMap<>(wallet.getCashbackByMonth()));
+        }
+        unsequenced.forEach((userId, records) -> {
+            Map<String, Double> used = usedByUser.computeIfAbsent(userId, _ -> new HashMap<>());
+            records.removeIf(pending -> {
+                String month = YearMonth.from(pending.getSettledAt()).toString();
+                double granted = cashbackCapService.fit(pending.getAmount(), used.getOrDefault(month, 0.0));
+                if (granted == 0) {
+                    dropped.add(pending.getId());
+                    return true;
+                }
+                pending.setAmount(granted);
+                used.merge(month, granted, Double::sum);
+                return false;
+            });
+        });
+        return dropped;
+    }
+
+    // ?a replay may find some of the batch already written. (userId, seq) identifies a row on both layouts (a
+    // ?time-series collection has no unique _id), so those rows are looked up on the user_seq index and left out
+    private List<Cashback> insertLedger(List<Cashback> cashbacks) {
+        Query existing = Query.query(Criteria.where("userId").in(cashbacks.stream().map(Cashback::getUserId).distinct().toList())
+                .and("seq").in(cashbacks.stream().map(Cashback::getSeq).distinct().toList()));
+        existing.fields().include("userId", "seq");
+        Set<LedgerKey> written = new HashSet<>();
+        for (Cashback cashback : mongoTemplate.find(existing, Cashback.class)) {
+            written.add(new LedgerKey(cashback.getUserId(), cashback.getSeq()));
+        }
+        List<Cashback> missing = cashbacks.stream()
+                .filter(cashback -> !written.contains(new LedgerKey(cashback.getUserId(), cashback.getSeq())))
+                .toList();
+        if (!missing.isEmpty()) {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Cashback.class)
+                    .insert(missing)
+                    .execute();
+        }
+        return missing;
+    }
+
+    // ?the batch id is added in the same single-document update as the credit and stays until the batch is finished,
+    // ?however long a stale claim takes to be resumed. With a cap the update also only matches while every month it
+    // ?touches stays under it, as creditWallet does inline; a wallet that misses is re-read, its records trimmed to
+    // ?what is left (persisted before the retry, so a replay credits the same amounts) and credited again.
+    // ?Returns the records that were credited, with their final amounts
+    private List<PendingCashback> creditWallets(String batchId, List<PendingCashback> claimed) {
+        Map<String, List<PendingCashback>> remaining = new LinkedHashMap<>();
+        claimed.forEach(pending -> remaining.computeIfAbsent(pending.getUserId(), _ -> new ArrayList<>()).add(pending));
+        Set<String> credited = new HashSet<>();
+        for (int attempt = 1; !remaining.isEmpty(); attempt++) {
+            BulkOperations credits = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Wallet.class);
+            remaining.forEach((userId, records) -> credits.updateOne(creditQuery(batchId, userId, records), credit(batchId, records)));
+            if (credits.execute().getMatchedCount() == remaining.size()) {
+                remaining.values().forEach(records -> records.forEach(pending -> credited.add(pending.getId())));
+                break;
+            }
+            //? a miss is a replay (already credited), a wallet at its cap, or no wallet at all; the wallet tells which
+            Query wallets = Query.query(Criteria.where("userId").in(remaining.keySet()));
+            wallets.fields().include("userId", "settledCashbackBatches", "cashbackByMonth");
+            Map<String, Wallet> walletByUser = new HashMap<>();
+            mongoTemplate.find(wallets, Wallet.class).forEach(wallet -> walletByUser.put(wallet.getUserId(), wallet));
+
+            List<Reserved> reserved = reservations(remaining.values());
+            Map<String, List<PendingCashback>> retry = new LinkedHashMap<>();
+            List<PendingCashback> trimmed = new ArrayList<>();
+            Set<String> dropped = new HashSet<>();
+            for (Map.Entry<String, List<PendingCashback>> entry : remaining.entrySet()) {
+                Wallet wallet = walletByUser.get(entry.getKey());
+                if (wallet != null && wallet.getSettledCashbackBatches() != null
+                        && wallet.getSettledCashbackBatches().contains(batchId)) {
+                    entry.getValue().forEach(pending -> credited.add(pending.getId()));
+                    continue;
+                }
+                if (wallet == null) {
+                    log.warn("No wallet for {}, dropping its cashbacks in batch {}", entry.getKey(), batchId);
+                }
+                //? a user racing their own cap gives up the cashback rather than retrying forever
+                List<PendingCashback> records = wallet == null || attempt == MAX_CREDIT_ATTEMPTS
+                        ? List.of()
+                        : trimToCap(wallet, entry.getValue());
+                entry.getValue().stream()
+                        .filter(pending -> records.stream().noneMatch(kept -> kept.getId().equals(pending.getId())))
+                        .forEach(pending -> dropped.add(pending.getId()));
+                if (!records.isEmpty()) {
+                    trimmed.addAll(records);
+                    retry.put(entry.getKey(), records);
+                }
+            }
+            if (!dropped.isEmpty()) {
+                mongoTemplate.remove(Query.query(Criteria.where("_id").in(dropped)), PendingCashback.class);
+            }
+            if (!trimmed.isEmpty()) {
+                BulkOperations amounts = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PendingCashback.class);
+                trimmed.forEach(pending -> amounts.updateOne(Query.query(Criteria.where("_id").is(pending.getId())),
+                        new Update().set("amount", pending.getAmount())));
+                amounts.execute();
+            }
+            releaseTrimmed(reserved, dropped);
+            remaining.clear();
+            remaining.putAll(retry);
+        }
+        return claimed.stream().filter(pending -> credited.contains(pending.getId())).toList();
+    }
+
+    private Query creditQuery(String batchId, String userId, List<PendingCashback> records) {
+        Query query = Query.query(Criteria.where("userId").is(userId).and("settledCashbackBatches").ne(batchId));
+        if (cashbackCapService.isEnabled()) {
+            List<Criteria> withinCaps = byMonth(records).entrySet().stream()
+                    .map(month -> cashbackCapService.withinCap(month.getKey(), month.getValue()))
+                    .toList();
+            query.addCriteria(new Criteria().andOperator(withinCaps));
+        }
+        return query;
+    }
+
+    private Update credit(String batchId, List<PendingCashback> records) {
+        double total = records.stream().mapToDouble(PendingCashback::getAmount).sum();
+        Update update = new Update()
+                .inc("balance", total)
+                .inc("version", 1)
+                .set("updatedAt", LocalDateTime.now());
+        update.addToSet("settledCashbackBatches", batchId);
+        update.inc("cashbackLifetime", total);
+        byMonth(records).forEach((month, amount) -> update.inc("cashbackByMonth." + month, amount));
+        return update;
+    }
+
+    private static Map<YearMonth, Double> byMonth(List<PendingCashback> records) {
+        Map<YearMonth, Double> byMonth = new LinkedHashMap<>();
+        records.forEach(pending -> byMonth.merge(YearMonth.from(settledAt(pending)), pending.getAmount(), Double::sum));
+        return byMonth;
+    }
+
+    // ?the records, in accrual order, cut down to what the wallet's months still allow; those left with nothing go
+    private List<PendingCashback> trimToCap(Wallet wallet, List<PendingCashback> records) {
+        if (!cashbackCapService.isEnabled()) {
+            return records;
+        }
+        Map<String, Double> used = wallet.getCashbackByMonth() == null
+                ? new HashMap<>()
+                : new HashMap<>(wallet.getCashbackByMonth());
+        List<PendingCashback> kept = new ArrayList<>(records.size());
+        for (PendingCashback pending : records) {
+            YearMonth month = YearMonth.from(settledAt(pending));
+            cashbackCapService.observe(wallet, month);
+            double granted = cashbackCapService.fit(pending.getAmount(), used.getOrDefault(month.toString(), 0.0));
+            if (granted > 0) {
+                pending.setAmount(granted);
+                used.merge(month.toString(), granted, Double::sum);
+                kept.add(pending);
+            }
+        }
+        return kept;
+    }
+
+    private static List<Reserved> reservations(Collection<List<PendingCashback>> records) {
+        List<Reserved> reserved = new ArrayList<>();
+        records.forEach(list -> list.forEach(pending -> {
+            if (pending.getCampaignId() != null) {
+                reserved.add(new Reserved(pending, pending.getAmount()));
+            }
+        }));
+        return reserved;
+    }
+
+    // ?campaign budget the cap cut off, handed back only once the cut amounts are stored: a crash in between
+    // ?leaves it reserved, a replay never hands it back twice
+    private void releaseTrimmed(List<Reserved> reserved, Set<String> dropped) {
+        reserved.forEach(entry -> cashbackService.releaseUnused(
+                new CashbackService.Quote(entry.amount(), entry.pending().getCampaignId()),
+                dropped.contains(entry.pending().getId()) ? 0 : entry.pending().getAmount()));
+    }
+
+    private void publishBalances(Collection<String> userIds) {
+        Query wallets = Query.query(Criteria.where("userId").in(userIds));
+        wallets.fields().include("userId", "balance");
+        for (Wallet wallet : mongoTemplate.find(wallets, Wallet.class)) {
+            walletEventStream.publishBalance(wallet.getUserId(), wallet.getBalance());
+        }
+    }
+
+    private record LedgerKey(String userId, long seq) {
+    }
+
+    private record Reserved(PendingCashback pending, double amount) {
+    }
+}
@@ -0,0 +1,356 @@
+package org.harsh.tuple.paisa.service;
+
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.harsh.tuple.paisa.dto.ChartBucket;
+import org.harsh.tuple.paisa.dto.ChartGranularity;
+import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.LedgerEntryKind;
+import org.harsh.tuple.paisa.model.Transaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// *Optional in-memory analytics engine: each active user's ledger as parallel primitive columns
+// *(epoch millis, amount in paise, kind ordinal, ledger seq), sorted by time. Loaded on first use, appended on writes
+// *made through this node, reloaded after analytics.columnar.ttl to pick up writes made through other nodes, least
+// *recently used users evicted. A reload fills fresh columns off the lock and swaps them in, reads and appends keep
+// *using the old ones meanwhile. Range scans are index loops with no per-entry objects
+@Slf4j
+@Component
+public class ColumnarLedgerStore {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final LedgerEntryKind[] KINDS = LedgerEntryKind.values();
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final Map<String, Slot> users;
+
+    public ColumnarLedgerStore(
+            MongoTemplate mongoTemplate,
+            @Value("${analytics.columnar.enabled:false}") boolean enabled,
+            @Value("${analytics.columnar.max-users:5000}") int maxUsers,
+            @Value("${analytics.columnar.ttl:1m}") Duration ttl
+    ) {
+        this(mongoTemplate, enabled, maxUsers, ttl, Clock.systemDefaultZone());
+    }
+
+    ColumnarLedgerStore(MongoTemplate mongoTemplate, boolean enabled, int maxUsers, Duration ttl, Clock clock) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Slot> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ?only users already in memory are touched; anyone else picks the write up from Mongo when loaded
+    public void append(String userId, long seq, LocalDateTime timestamp, LedgerEntryKind kind, double amount) {
+        if (!enabled) {
+            return;
+        }
+        Slot slot;
+        synchronized (users) {
+            slot = users.get(userId);
+        }
+        if (slot != null) {
+            slot.append(new Append(toMillis(timestamp), toPaise(amount), (byte) kind.ordinal(), seq));
+        }
+    }
+
+    // *Same result shape as the Mongo $dateTrunc path: sorted by bucket start, then kind, inclusive range
+    public List<ChartBucket> buckets(String userId, LocalDateTime startDate, LocalDateTime endDate,
+                                     ChartGranularity granularity) {
+        List<LocalDate> starts = bucketStarts(startDate.toLocalDate(), endDate.toLocalDate(), granularity);
+        long[] boundaries = new long[starts.size() + 1];
+        for (int i = 0; i < starts.size(); i++) {
+            boundaries[i] = starts.get(i).atStartOfDay(ZONE).toInstant().toEpochMilli();
+        }
+        boundaries[starts.size()] = Long.MAX_VALUE;
+
+        int kinds = KINDS.length;
+        long[] counts = new long[starts.size() * kinds];
+        long[] totals = new long[starts.size() * kinds];
+        loaded(userId).scan(toMillis(startDate), toMillis(endDate), boundaries, counts, totals);
+
+        List<ChartBucket> buckets = new ArrayList<>();
+        for (int b = 0; b < starts.size(); b++) {
+            for (int k = 0; k < kinds; k++) {
+                int slot = b * kinds + k;
+                if (counts[slot] > 0) {
+                    buckets.add(new ChartBucket(starts.get(b), KINDS[k], counts[slot], totals[slot] / 100.0));
+                }
+            }
+        }
+        return buckets;
+    }
+
+    public int residentUsers() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    private UserColumns loaded(String userId) {
+        Slot slot;
+        synchronized (users) {
+            slot = users.computeIfAbsent(userId, _ -> new Slot());
+        }
+        return slot.current(userId);
+    }
+
+    private void load(String userId, UserColumns columns) {
+        long started = System.nanoTime();
+        try (MongoCursor<Document> rows = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Transaction.class))
+                .find(Filters.eq("userId", userId))
+                .projection(Projections.include("timestamp", "amount", "type", "senderId", "seq"))
+                .sort(Sorts.ascending("timestamp"))
+                .iterator()) {
+            while (rows.hasNext()) {
+                Document row = rows.next();
+                LedgerEntryKind kind = "RECHARGE".equals(row.getString("type"))
+                        ? LedgerEntryKind.RECHARGE
+                        : row.get("senderId") != null ? LedgerEntryKind.TRANSFER_IN : LedgerEntryKind.TRANSFER_OUT;
+                columns.add(row.getDate("timestamp").getTime(), toPaise(((Number) row.get("amount")).doubleValue()),
+                        (byte) kind.ordinal(), seq(row), false);
+            }
+        }
+        try (MongoCursor<Document> rows = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Cashback.class))
+                .find(Filters.eq("userId", userId))
+                .projection(Projections.include("timestamp", "amount", "seq"))
+                .sort(Sorts.ascending("timestamp"))
+                .iterator()) {
+            while (rows.hasNext()) {
+                Document row = rows.next();
+                columns.add(row.getDate("timestamp").getTime(), toPaise(((Number) row.get("amount")).doubleValue()),
+                        (byte) LedgerEntryKind.CASHBACK.ordinal(), seq(row), false);
+            }
+        }
+        log.debug("Loaded {} ledger entries for {} in {} ms", columns.size, userId, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static List<LocalDate> bucketStarts(LocalDate from, LocalDate to, ChartGranularity granularity) {
+        LocalDate start = switch (granularity) {
+            case DAY -> from;
+            case WEEK -> from.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> from.withDayOfMonth(1);
+        };
+        List<LocalDate> starts = new ArrayList<>();
+        for (LocalDate bucket = start; !bucket.isAfter(to); ) {
+            starts.add(bucket);
+            bucket = switch (granularity) {
+                case DAY -> bucket.plusDays(1);
+                case WEEK -> bucket.plusWeeks(1);
+                case MONTH -> bucket.plusMonths(1);
+            };
+        }
+        return starts;
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZONE).toInstant().toEpochMilli();
+    }
+
+    // ?rows from before sequences have none; they never match an append, which always carries a seq >= 1
+    private static long seq(Document row) {
+        Number seq = (Number) row.get("seq");
+        return seq == null ? 0 : seq.longValue();
+    }
+
+    private static long toPaise(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    private record Append(long timestamp, long amount, byte kind, long seq) {
+    }
+
+    // *One user's columns and their reload state. The monitor is only held for quick bookkeeping, never across Mongo
+    private final class Slot {
+        private UserColumns columns;
+        private long loadedAt;
+        // ?non-null while a reload runs: appends made meanwhile, replayed onto the new columns before the swap
+        private List<Append> appendedDuringLoad;
+
+        UserColumns current(String userId) {
+            UserColumns previous;
+            synchronized (this) {
+                while (true) {
+                    long now = clock.millis();
+                    if (columns != null && now - loadedAt < ttlMillis) {
+                        return columns;
+                    }
+                    if (appendedDuringLoad == null) {
+                        break;
+                    }
+                    //? someone else is reloading: stale columns are served meanwhile, only a first load is waited for
+                    if (columns != null) {
+                        return columns;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while loading ledger columns", ex);
+                    }
+                }
+                appendedDuringLoad = new ArrayList<>();
+                previous = columns;
+            }
+            long started = clock.millis();
+            UserColumns fresh = new UserColumns(previous == null ? UserColumns.INITIAL_CAPACITY : previous.size + 1);
+            try {
+                load(userId, fresh);
+            } catch (RuntimeException ex) {
+                synchronized (this) {
+                    appendedDuringLoad = null;
+                    notifyAll();
+                }
+                throw ex;
+            }
+            synchronized (this) {
+                //? a write that landed before the load read it is already there, add() recognises it by seq
+                appendedDuringLoad.sort(Comparator.comparingLong(Append::seq));
+                for (Append append : appendedDuringLoad) {
+                    fresh.add(append.timestamp(), append.amount(), append.kind(), append.seq(), true);
+                }
+                appendedDuringLoad = null;
+                columns = fresh;
+                loadedAt = started;
+                notifyAll();
+                return fresh;
+            }
+        }
+
+        synchronized void append(Append append) {
+            if (appendedDuringLoad != null) {
+                appendedDuringLoad.add(append);
+            }
+            if (columns != null) {
+                columns.add(append.timestamp(), append.amount(), append.kind(), append.seq(), true);
+            }
+        }
+    }
+
+    private static final class UserColumns {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private long[] timestamps;
+        private long[] amounts;
+        private byte[] kinds;
+        private long[] seqs;
+        private int size;
+
+        // ?sized from the columns being replaced, a reload usually needs about the same capacity again
+        UserColumns(int capacity) {
+            int initial = Math.max(capacity, INITIAL_CAPACITY);
+            timestamps = new long[initial];
+            amounts = new long[initial];
+            kinds = new byte[initial];
+            seqs = new long[initial];
+        }
+
+        synchronized void add(long timestamp, long amount, byte kind, long seq, boolean deduplicate) {
+            int position = upperBound(timestamp);
+            if (deduplicate) {
+                //? a write that raced the load may already be in the columns; the seq tells it apart from another
+                //? entry that happens to share its millisecond, amount and kind
+                for (int i = position - 1; i >= 0 && timestamps[i] == timestamp; i--) {
+                    if (seqs[i] == seq) {
+                        return;
+                    }
+                }
+            }
+            if (size == timestamps.length) {
+                int capacity = size + (size >> 1);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                kinds = Arrays.copyOf(kinds, capacity);
+                seqs = Arrays.copyOf(seqs, capacity);
+            }
+            //? almost always an append at the tail, the shift only happens for out-of-order writes
+            int tail = size - position;
+            if (tail > 0) {
+                System.arraycopy(timestamps, position, timestamps, position + 1, tail);
+                System.arraycopy(amounts, position, amounts, position + 1, tail);
+                System.arraycopy(kinds, position, kinds, position + 1, tail);
+                System.arraycopy(seqs, position, seqs, position + 1, tail);
+            }
+            timestamps[position] = timestamp;
+            amounts[position] = amount;
+            kinds[position] = kind;
+            seqs[position] = seq;
+            size++;
+        }
+
+        synchronized void scan(long from, long to, long[] boundaries, long[] counts, long[] totals) {
+            int kindCount = KINDS.length;
+            int bucket = 0;
+            for (int i = lowerBound(from); i < size && timestamps[i] <= to; i++) {
+                long timestamp = timestamps[i];
+                while (timestamp >= boundaries[bucket + 1]) {
+                    bucket++;
+                }
+                int slot = bucket * kindCount + kinds[i];
+                counts[slot]++;
+                totals[slot] += amounts[i];
+            }
+        }
+
+        private int lowerBound(long timestamp) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (timestamps[mid] < timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int upperBound(long timestamp) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (timestamps[mid] <= timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.harsh.tuple.paisa.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.harsh.tuple.paisa.dto.CounterpartyCount;
+import org.harsh.tuple.paisa.model.CounterpartySketchSnapshot;
+import org.harsh.tuple.paisa.repository.CounterpartySketchRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// *"Top people you paid" / distinct counterparties from fixed-size sketches, per user and platform-wide.
+// *Updated on every transfer, answered from memory, checkpointed to Mongo as mergeable deltas
+@Slf4j
+@Service
+public class CounterpartyInsightsService {
+
+    static final String PLATFORM = "_platform";
+    private static final int CHECKPOINT_ATTEMPTS = 3;
+
+    private final CounterpartySketchRepository counterpartySketchRepository;
+    private final Map<String, Tracked> sketches = new ConcurrentHashMap<>();
+    private final int maxResident;
+
+    public CounterpartyInsightsService(
+            CounterpartySketchRepository counterpartySketchRepository,
+            @Value("${insights.sketches.max-resident:20000}") int maxResident
+    ) {
+        this.counterpartySketchRepository = counterpartySketchRepository;
+        this.maxResident = maxResident;
+    }
+
+    public void recordTransfer(String senderId, String recipientId) {
+        update(senderId, sketch -> sketch.addFrequent(recipientId));
+        update(recipientId, sketch -> sketch.addDistinct(senderId));
+        update(PLATFORM, sketch -> {
+            sketch.addFrequent(recipientId);
+            sketch.addDistinct(senderId);
+        });
+    }
+
+    public List<CounterpartyCount> topPaid(String userId, int limit) {
+        return tracked(userId).read(sketch -> sketch.top(limit));
+    }
+
+    public long distinctCounterparties(String userId) {
+        return tracked(userId).read(CounterpartySketch::distinctCount);
+    }
+
+    public List<CounterpartyCount> topRecipients(int limit) {
+        return tracked(PLATFORM).read(sketch -> sketch.top(limit));
+    }
+
+    public long distinctActiveUsers() {
+        return tracked(PLATFORM).read(CounterpartySketch::distinctCount);
+    }
+
+    @Scheduled(fixedDelayString = "${insights.sketches.checkpoint-ms:60000}")
+    public void checkpoint() {
+        sketches.forEach(this::checkpoint);
+        if (sketches.size() > maxResident) {
+            //? clean sketches are fully persisted, dropping them only costs a reload on next use
+            sketches.entrySet().removeIf(entry -> !PLATFORM.equals(entry.getKey()) && entry.getValue().retireIfClean());
+        }
+    }
+
+    @PreDestroy
+    public void flush() {
+        sketches.forEach(this::checkpoint);
+    }
+
+    private void checkpoint(String id, Tracked tracked) {
+        CounterpartySketch delta = tracked.takePending();
+        if (delta == null) {
+            return;
+        }
+        for (int attempt = 1; attempt <= CHECKPOINT_ATTEMPTS; attempt++) {
+            try {
+                CounterpartySketchSnapshot stored = counterpartySketchRepository.findById(id).orElse(null);
+                CounterpartySketch merged = stored == null ? newSketch(id) : CounterpartySketch.fromSnapshot(stored);
+                merged.merge(delta);
+
+                CounterpartySketchSnapshot snapshot = stored == null
+                        ? CounterpartySketchSnapshot.builder().id(id).build()
+                        : stored;
+                snapshot.setCheckpointedAt(LocalDateTime.now());
+                counterpartySketchRepository.save(merged.toSnapshot(snapshot));
+                //? the stored state now also carries other nodes' deltas
+                tracked.replaceView(merged);
+                return;
+            } catch (OptimisticLockingFailureException | DuplicateKeyException ex) {
+                log.debug("Concurrent checkpoint of sketch {}, attempt {}", id, attempt);
+            }
+        }
+        log.warn("Could not checkpoint sketch {}, keeping the delta for the next run", id);
+        tracked.restorePending(delta);
+    }
+
+    //? a sketch evicted between lookup and update refuses the change; look it up again (reloads from Mongo)
+    private void update(String id, Consumer<CounterpartySketch> change) {
+        while (!tracked(id).update(change)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private Tracked tracked(String id) {
+        Tracked tracked = sketches.get(id);
+        if (tracked != null) {
+            return tracked;
+        }
+        CounterpartySketch loaded = counterpartySketchRepository.findById(id)
+                .map(CounterpartySketch::fromSnapshot)
+                .orElseGet(() -> newSketch(id));
+        Tracked existing = sketches.putIfAbsent(id, new Tracked(loaded, () -> newSketch(id)));
+        return existing != null ? existing : sketches.get(id);
+    }
+
+    private static CounterpartySketch newSketch(String id) {
+        return PLATFORM.equals(id) ? CounterpartySketch.forPlatform() : CounterpartySketch.forUser();
+    }
+
+    // ?view = what queries see; pending = updates not yet merged into Mongo
+    private static final class Tracked {
+        private final Supplier<CounterpartySketch> factory;
+        private CounterpartySketch view;
+        private CounterpartySketch pending;
+        private boolean retired;
+
+        Tracked(CounterpartySketch view, Supplier<CounterpartySketch> factory) {
+            this.view = view;
+            this.factory = factory;
+        }
+
+        synchronized boolean update(Consumer<CounterpartySketch> change) {
+            if (retired) {
+                return false;
+            }
+            change.accept(view);
+            if (pending == null) {
+                pending = factory.get();
+            }
+            change.accept(pending);
+            return true;
+        }
+
+        synchronized <T> T read(Function<CounterpartySketch, T> query) {
+            return query.apply(view);
+        }
+
+        synchronized CounterpartySketch takePending() {
+            CounterpartySketch taken = pending;
+            pending = null;
+            return taken;
+        }
+
+        synchronized void replaceView(CounterpartySketch merged) {
+            if (pending != null) {
+                merged.merge(pending);
+            }
+            view = merged;
+        }
+
+        synchronized void restorePending(CounterpartySketch delta) {
+            if (pending != null) {
+                delta.merge(pending);
+            }
+            pending = delta;
+        }
+
+        synchronized boolean retireIfClean() {
+            retired = pending == null;
+            return retired;
+        }
+    }
+}
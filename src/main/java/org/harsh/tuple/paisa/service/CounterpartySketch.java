@@ -0,0 +1,115 @@
+package org.harsh.tuple.paisa.service;
+
+import org.harsh.tuple.paisa.dto.CounterpartyCount;
+import org.harsh.tuple.paisa.model.CounterpartySketchSnapshot;
+import org.harsh.tuple.paisa.util.CountMinSketch;
+import org.harsh.tuple.paisa.util.HyperLogLog;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// *Count-Min frequencies + a k-slot heavy-hitter list + HyperLogLog distinct count, all fixed size.
+// *Not thread-safe, CounterpartyInsightsService serializes access per sketch
+final class CounterpartySketch {
+
+    private final CountMinSketch frequencies;
+    private final HyperLogLog distinct;
+    private final int topK;
+    private final Map<String, Long> heavyHitters;
+
+    CounterpartySketch(int depth, int width, int precision, int topK) {
+        this(new CountMinSketch(depth, width), new HyperLogLog(precision), topK, new HashMap<>());
+    }
+
+    private CounterpartySketch(CountMinSketch frequencies, HyperLogLog distinct, int topK, Map<String, Long> heavyHitters) {
+        this.frequencies = frequencies;
+        this.distinct = distinct;
+        this.topK = topK;
+        this.heavyHitters = heavyHitters;
+    }
+
+    // ?~4 KB of counters + 1 KB of registers per user
+    static CounterpartySketch forUser() {
+        return new CounterpartySketch(4, 128, 10, 10);
+    }
+
+    static CounterpartySketch forPlatform() {
+        return new CounterpartySketch(5, 8192, 14, 50);
+    }
+
+    void addFrequent(String key) {
+        frequencies.add(key, 1);
+        offer(key, frequencies.estimate(key));
+        distinct.add(key);
+    }
+
+    void addDistinct(String key) {
+        distinct.add(key);
+    }
+
+    List<CounterpartyCount> top(int limit) {
+        List<CounterpartyCount> top = new ArrayList<>(heavyHitters.size());
+        heavyHitters.forEach((key, count) -> top.add(new CounterpartyCount(key, count)));
+        top.sort(Comparator.comparingLong(CounterpartyCount::getCount).reversed()
+                .thenComparing(CounterpartyCount::getUserId));
+        return top.subList(0, Math.min(limit, top.size()));
+    }
+
+    long distinctCount() {
+        return distinct.cardinality();
+    }
+
+    // ?candidates from both sides are re-scored against the merged counters, then cut back to k
+    void merge(CounterpartySketch other) {
+        frequencies.merge(other.frequencies);
+        distinct.merge(other.distinct);
+        Set<String> candidates = new HashSet<>(heavyHitters.keySet());
+        candidates.addAll(other.heavyHitters.keySet());
+        heavyHitters.clear();
+        for (String candidate : candidates) {
+            offer(candidate, frequencies.estimate(candidate));
+        }
+    }
+
+    //? k is small (10-50), a linear scan for the weakest slot keeps updates allocation-free
+    private void offer(String key, long estimate) {
+        if (heavyHitters.containsKey(key) || heavyHitters.size() < topK) {
+            heavyHitters.put(key, estimate);
+            return;
+        }
+        String weakest = null;
+        long weakestCount = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> entry : heavyHitters.entrySet()) {
+            if (entry.getValue() < weakestCount) {
+                weakest = entry.getKey();
+                weakestCount = entry.getValue();
+            }
+        }
+        if (estimate > weakestCount) {
+            heavyHitters.remove(weakest);
+            heavyHitters.put(key, estimate);
+        }
+    }
+
+    CounterpartySketchSnapshot toSnapshot(CounterpartySketchSnapshot snapshot) {
+        snapshot.setFrequencies(frequencies.toBytes());
+        snapshot.setRegisters(distinct.toBytes());
+        snapshot.setTopK(topK);
+        snapshot.setHeavyHitters(new HashMap<>(heavyHitters));
+        return snapshot;
+    }
+
+    static CounterpartySketch fromSnapshot(CounterpartySketchSnapshot snapshot) {
+        return new CounterpartySketch(
+                CountMinSketch.fromBytes(snapshot.getFrequencies()),
+                HyperLogLog.fromBytes(snapshot.getRegisters()),
+                snapshot.getTopK(),
+                new HashMap<>(snapshot.getHeavyHitters())
+        );
+    }
+}
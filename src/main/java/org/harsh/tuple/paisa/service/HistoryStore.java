@@ -0,0 +1,268 @@
+package org.harsh.tuple.paisa.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.harsh.tuple.paisa.model.HistoryEntry;
+import org.harsh.tuple.paisa.repository.HistoryEntryRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// *Bounded per-user history buffers; entries pushed out by the caps go to Mongo when spilling is on
+@Slf4j
+@Component
+public class HistoryStore {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final HistoryEntryRepository historyEntryRepository;
+    private final MongoTemplate mongoTemplate;
+    private final int perUserCapacity;
+    private final long globalCapacity;
+    private final Duration idleTimeout;
+    private final boolean spillToMongo;
+
+    private final Map<String, UserHistory> buffers = new ConcurrentHashMap<>();
+    private final AtomicLong totalEntries = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000);
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    public HistoryStore(
+            HistoryEntryRepository historyEntryRepository,
+            MongoTemplate mongoTemplate,
+            @Value("${history.per-user-capacity:500}") int perUserCapacity,
+            @Value("${history.global-capacity:200000}") long globalCapacity,
+            @Value("${history.idle-timeout:30m}") Duration idleTimeout,
+            @Value("${history.spill-to-mongo:false}") boolean spillToMongo
+    ) {
+        if (perUserCapacity < 1 || globalCapacity < perUserCapacity) {
+            throw new IllegalArgumentException("History capacities must be positive and global >= per-user");
+        }
+        this.historyEntryRepository = historyEntryRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.perUserCapacity = perUserCapacity;
+        this.globalCapacity = globalCapacity;
+        this.idleTimeout = idleTimeout;
+        this.spillToMongo = spillToMongo;
+    }
+
+    public void append(String userId, List<?> payloads) {
+        Objects.requireNonNull(payloads, "history entries must not be null");
+        if (payloads.isEmpty()) {
+            return;
+        }
+
+        List<HistoryEntry> overflow;
+        do {
+            // ?a buffer retired by eviction between lookup and append is simply replaced
+            UserHistory history = buffers.computeIfAbsent(userId, _ -> new UserHistory(perUserCapacity));
+            overflow = history.append(userId, payloads, sequence);
+        } while (overflow == null);
+
+        totalEntries.addAndGet(payloads.size() - overflow.size());
+        spill(overflow);
+
+        if (totalEntries.get() > globalCapacity) {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    // *Oldest first; with spilling on, the entries pushed out to Mongo come ahead of those still in memory
+    public List<Object> snapshot(String userId) {
+        UserHistory history = buffers.get(userId);
+        List<HistoryEntry> inMemory = history == null ? List.of() : history.oldestFirst();
+        List<Object> result = new ArrayList<>(inMemory.size());
+        if (spillToMongo) {
+            //? memory is copied first and Mongo read below its oldest sequence, so an entry spilled in between is
+            //? neither lost nor returned twice
+            Criteria spilled = Criteria.where("userId").is(userId);
+            if (!inMemory.isEmpty()) {
+                spilled = spilled.and("sequence").lt(inMemory.getFirst().getSequence());
+            }
+            mongoTemplate.find(Query.query(spilled).with(Sort.by(Sort.Direction.ASC, "sequence")), HistoryEntry.class)
+                    .forEach(entry -> result.add(entry.getPayload()));
+        }
+        inMemory.forEach(entry -> result.add(entry.getPayload()));
+        return result;
+    }
+
+    // *Newest first; pages past the in-memory window continue into spilled entries
+    public List<Object> page(String userId, int page, int size) {
+        if (page < 0 || size < 1) {
+            throw new IllegalArgumentException("Page must be >= 0 and size must be >= 1");
+        }
+        long offset = (long) page * size;
+        List<Object> result = new ArrayList<>(size);
+
+        int inMemory = 0;
+        UserHistory history = buffers.get(userId);
+        if (history != null) {
+            inMemory = history.newestFirst(offset, size, result);
+        }
+
+        if (spillToMongo && result.size() < size) {
+            Query query = Query.query(Criteria.where("userId").is(userId))
+                    .with(Sort.by(Sort.Direction.DESC, "sequence"))
+                    .skip(Math.max(0, offset - inMemory))
+                    .limit(size - result.size());
+            mongoTemplate.find(query, HistoryEntry.class)
+                    .forEach(entry -> result.add(entry.getPayload()));
+        }
+        return result;
+    }
+
+    public long size() {
+        return totalEntries.get();
+    }
+
+    @Scheduled(fixedDelayString = "${history.sweep-interval-ms:60000}")
+    public void evictIdle() {
+        long cutoff = System.nanoTime() - idleTimeout.toNanos();
+        buffers.forEach((userId, history) -> {
+            if (history.lastAccess() - cutoff <= 0) {
+                evict(userId, history);
+            }
+        });
+    }
+
+    private void evictLeastRecentlyUsed() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // ?trim to 90% so a node sitting at the cap does not sort on every append
+            long target = globalCapacity - globalCapacity / 10;
+            List<Map.Entry<String, UserHistory>> candidates = new ArrayList<>(buffers.entrySet());
+            candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess()));
+            for (Map.Entry<String, UserHistory> candidate : candidates) {
+                if (totalEntries.get() <= target) {
+                    break;
+                }
+                evict(candidate.getKey(), candidate.getValue());
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private void evict(String userId, UserHistory history) {
+        if (buffers.remove(userId, history)) {
+            List<HistoryEntry> drained = history.retire();
+            totalEntries.addAndGet(-drained.size());
+            spill(drained);
+        }
+    }
+
+    private void spill(List<HistoryEntry> entries) {
+        if (!spillToMongo || entries.isEmpty()) {
+            return;
+        }
+        try {
+            historyEntryRepository.saveAll(entries);
+        } catch (RuntimeException ex) {
+            log.warn("Dropping {} history entries, spill to Mongo failed: {}", entries.size(), ex.getMessage());
+        }
+    }
+
+    // *Ring buffer that grows up to its cap and then overwrites the oldest entry
+    private static final class UserHistory {
+        private final int capacity;
+        private HistoryEntry[] ring;
+        private int head;
+        private int size;
+        private boolean retired;
+        private volatile long lastAccess = System.nanoTime();
+
+        UserHistory(int capacity) {
+            this.capacity = capacity;
+            this.ring = new HistoryEntry[Math.min(INITIAL_CAPACITY, capacity)];
+        }
+
+        long lastAccess() {
+            return lastAccess;
+        }
+
+        synchronized List<HistoryEntry> append(String userId, List<?> payloads, AtomicLong sequence) {
+            if (retired) {
+                return null;
+            }
+            lastAccess = System.nanoTime();
+            List<HistoryEntry> evicted = new ArrayList<>(0);
+            LocalDateTime now = LocalDateTime.now();
+            for (Object payload : payloads) {
+                HistoryEntry entry = HistoryEntry.builder()
+                        .userId(userId)
+                        .sequence(sequence.incrementAndGet())
+                        .payload(payload)
+                        .recordedAt(now)
+                        .build();
+                if (size == ring.length && ring.length < capacity) {
+                    grow();
+                }
+                if (size == ring.length) {
+                    evicted.add(ring[head]);
+                    ring[head] = entry;
+                    head = (head + 1) % ring.length;
+                } else {
+                    ring[(head + size) % ring.length] = entry;
+                    size++;
+                }
+            }
+            return evicted;
+        }
+
+        synchronized List<HistoryEntry> oldestFirst() {
+            lastAccess = System.nanoTime();
+            List<HistoryEntry> copy = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                copy.add(ring[(head + i) % ring.length]);
+            }
+            return copy;
+        }
+
+        // ?copies only the requested window and reports how many entries are held in memory
+        synchronized int newestFirst(long offset, int limit, List<Object> sink) {
+            lastAccess = System.nanoTime();
+            long end = Math.min(size, offset + limit);
+            for (long i = offset; i < end; i++) {
+                sink.add(ring[(int) ((head + size - 1 - i) % ring.length)].getPayload());
+            }
+            return size;
+        }
+
+        synchronized List<HistoryEntry> retire() {
+            retired = true;
+            List<HistoryEntry> drained = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                drained.add(ring[(head + i) % ring.length]);
+            }
+            ring = new HistoryEntry[0];
+            head = 0;
+            size = 0;
+            return drained;
+        }
+
+        private void grow() {
+            HistoryEntry[] larger = new HistoryEntry[Math.min(capacity, ring.length * 2)];
+            for (int i = 0; i < size; i++) {
+                larger[i] = ring[(head + i) % ring.length];
+            }
+            ring = larger;
+            head = 0;
+        }
+    }
+}
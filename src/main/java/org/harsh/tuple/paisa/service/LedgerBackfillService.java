@@ -0,0 +1,182 @@
+package org.harsh.tuple.paisa.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.Transaction;
+import org.harsh.tuple.paisa.model.Wallet;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// *Brings ledger rows and wallets written before seq numbers and wallet cashback totals existed up to date.
+// *Both steps are safe to rerun, ledger.backfill-on-startup=true runs them once the application is up
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LedgerBackfillService {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final int BATCH_SIZE = 1000;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${ledger.backfill-on-startup:false}")
+    private boolean backfillOnStartup;
+
+    // ?cashbacks before this local time were never added to the wallet totals; empty skips the totals step
+    @Value("${ledger.backfill.cashback-totals-before:}")
+    private String cashbackTotalsBefore;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        if (!backfillOnStartup) {
+            return;
+        }
+        backfillSequences();
+        if (cashbackTotalsBefore.isBlank()) {
+            log.warn("ledger.backfill.cashback-totals-before is not set, wallet cashback totals are left alone");
+        } else {
+            backfillCashbackTotals(LocalDateTime.parse(cashbackTotalsBefore));
+        }
+    }
+
+    // *Gives every user's seq-less transactions and cashbacks seq <= 0 (oldest lowest, the newest 0), so they come
+    // *after the counter's 1, 2, ... in every newest-first seq read. Renumbered from scratch per user, a rerun or a
+    // *run cut short just writes the same numbers again. On time-series collections this needs MongoDB 7.0+
+    public long backfillSequences() {
+        long numbered = 0;
+        for (Class<?> entity : List.of(Transaction.class, Cashback.class)) {
+            AggregationOperation byUser = context -> new Document("$group", new Document("_id", "$userId"));
+            try (Stream<Document> users = mongoTemplate.aggregateStream(
+                    Aggregation.newAggregation(entity, Aggregation.match(Criteria.where("seq").exists(false)), byUser)
+                            .withOptions(AggregationOptions.builder().allowDiskUse(true).build()),
+                    Document.class)) {
+                for (Iterator<Document> it = users.iterator(); it.hasNext(); ) {
+                    numbered += numberLegacyEntries(it.next().getString("_id"));
+                }
+            }
+        }
+        log.info("Numbered {} ledger entries written before sequences", numbered);
+        return numbered;
+    }
+
+    long numberLegacyEntries(String userId) {
+        Query legacy = Query.query(Criteria.where("userId").is(userId)
+                .orOperator(Criteria.where("seq").exists(false), Criteria.where("seq").lte(0)));
+        legacy.fields().include("_id", "timestamp", "seq");
+        List<LegacyEntry> entries = new ArrayList<>();
+        for (Transaction transaction : mongoTemplate.find(legacy, Transaction.class)) {
+            entries.add(new LegacyEntry(Transaction.class, transaction.getId(), transaction.getTimestamp(), transaction.getSeq()));
+        }
+        for (Cashback cashback : mongoTemplate.find(legacy, Cashback.class)) {
+            entries.add(new LegacyEntry(Cashback.class, cashback.getId(), cashback.getTimestamp(), cashback.getSeq()));
+        }
+        //? a recharge is numbered before the cashback it earned, as rechargeWallet does
+        entries.sort(Comparator.comparing(LegacyEntry::timestamp, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(entry -> entry.entity() == Cashback.class)
+                .thenComparing(LegacyEntry::id));
+
+        Map<Class<?>, BulkOperations> updates = new LinkedHashMap<>();
+        long written = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            LegacyEntry entry = entries.get(i);
+            long seq = i - (entries.size() - 1L);
+            //? a missing seq also reads as 0, so the newest entry is always written
+            if (entry.seq() == seq && seq != 0) {
+                continue;
+            }
+            //? userId and timestamp let a time-series collection go straight to the right bucket
+            updates.computeIfAbsent(entry.entity(), entity -> mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, entity))
+                    .updateOne(Query.query(Criteria.where("_id").is(entry.id()).and("userId").is(userId)
+                                    .and("timestamp").is(entry.timestamp())),
+                            new Update().set("seq", seq));
+            written++;
+        }
+        updates.values().forEach(BulkOperations::execute);
+        return written;
+    }
+
+    // *Adds the cashback earned before the wallet kept totals to cashbackLifetime / cashbackByMonth. One update per
+    // *wallet that also sets cashbackTotalsBackfilled and only matches while it is unset, so no wallet is topped up twice
+    public long backfillCashbackTotals(LocalDateTime before) {
+        AggregationOperation perUserMonth = context -> new Document("$group", new Document()
+                .append("_id", new Document("userId", "$userId")
+                        .append("month", new Document("$dateToString", new Document("format", "%Y-%m")
+                                .append("date", "$timestamp")
+                                .append("timezone", ZONE.getId()))))
+                .append("total", new Document("$sum", "$amount")));
+        AggregationOperation byUser = context -> new Document("$sort", new Document("_id.userId", 1));
+
+        long wallets = 0;
+        BulkOperations updates = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Wallet.class);
+        int pending = 0;
+        String userId = null;
+        Map<String, Double> byMonth = new LinkedHashMap<>();
+        try (Stream<Document> rows = mongoTemplate.aggregateStream(
+                Aggregation.newAggregation(Cashback.class, Aggregation.match(Criteria.where("timestamp").lt(before)),
+                                perUserMonth, byUser)
+                        .withOptions(AggregationOptions.builder().allowDiskUse(true).build()),
+                Document.class)) {
+            //? rows arrive grouped by user, one wallet update is built per run of rows
+            for (Iterator<Document> it = rows.iterator(); it.hasNext(); ) {
+                Document row = it.next();
+                Document key = row.get("_id", Document.class);
+                if (userId != null && !userId.equals(key.getString("userId"))) {
+                    addTotals(updates, userId, byMonth);
+                    wallets++;
+                    byMonth.clear();
+                    if (++pending == BATCH_SIZE) {
+                        updates.execute();
+                        updates = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Wallet.class);
+                        pending = 0;
+                    }
+                }
+                userId = key.getString("userId");
+                byMonth.put(key.getString("month"), ((Number) row.get("total")).doubleValue());
+            }
+        }
+        if (userId != null) {
+            addTotals(updates, userId, byMonth);
+            wallets++;
+            pending++;
+        }
+        if (pending > 0) {
+            updates.execute();
+        }
+        log.info("Backfilled cashback totals of {} wallets from cashbacks before {}", wallets, before);
+        return wallets;
+    }
+
+    private static void addTotals(BulkOperations updates, String userId, Map<String, Double> byMonth) {
+        Update update = new Update()
+                .set("cashbackTotalsBackfilled", true)
+                .inc("version", 1)
+                .inc("cashbackLifetime", byMonth.values().stream().mapToDouble(Double::doubleValue).sum());
+        byMonth.forEach((month, total) -> update.inc("cashbackByMonth." + month, total));
+        updates.updateOne(Query.query(Criteria.where("userId").is(userId).and("cashbackTotalsBackfilled").ne(true)), update);
+    }
+
+    private record LegacyEntry(Class<?> entity, String id, LocalDateTime timestamp, long seq) {
+    }
+}
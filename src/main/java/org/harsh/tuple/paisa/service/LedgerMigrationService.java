@@ -0,0 +1,143 @@
+package org.harsh.tuple.paisa.service;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.harsh.tuple.paisa.config.LedgerStorage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+// *Copies the ledger from the inactive layout into the active one (standard <-> time-series).
+// *Writes keep landing in the active layout meanwhile, so switch ledger.storage first, then migrate
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LedgerMigrationService {
+
+    private static final String PROGRESS_COLLECTION = "ledger_migrations";
+    private static final int BATCH_SIZE = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final LedgerStorage ledgerStorage;
+
+    @Value("${ledger.migrate-on-startup:false}")
+    private boolean migrateOnStartup;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (migrateOnStartup) {
+            migrate();
+        }
+    }
+
+    public long migrate() {
+        LedgerStorage.Mode target = ledgerStorage.getMode();
+        LedgerStorage.Mode source = target == LedgerStorage.Mode.TIMESERIES
+                ? LedgerStorage.Mode.STANDARD
+                : LedgerStorage.Mode.TIMESERIES;
+        long copied = 0;
+        for (String base : List.of("transactions", "cashbacks")) {
+            copied += copy(LedgerStorage.collectionName(base, source), LedgerStorage.collectionName(base, target));
+        }
+        return copied;
+    }
+
+    //? resumable per user: users are copied in userId order and the last finished one is checkpointed. Nothing
+    //? relies on a unique _id in the target (a time-series target has none), every batch is first checked against
+    //? what the target already holds, so a user cut short by a crash is replayed without duplicating rows
+    private long copy(String sourceName, String targetName) {
+        MongoDatabase database = mongoTemplate.getDb();
+        if (!mongoTemplate.collectionExists(sourceName)) {
+            log.info("Nothing to migrate, {} does not exist", sourceName);
+            return 0;
+        }
+        if (ledgerStorage.getMode() == LedgerStorage.Mode.TIMESERIES) {
+            LedgerStorage.ensureTimeSeries(database, targetName);
+        }
+        MongoCollection<Document> source = database.getCollection(sourceName);
+        MongoCollection<Document> target = database.getCollection(targetName);
+        MongoCollection<Document> progress = database.getCollection(PROGRESS_COLLECTION);
+        String progressId = sourceName + "->" + targetName;
+
+        //? a checkpoint without lastUserId (from the old _id-ordered copy) starts over, the target check skips what is there
+        Document checkpoint = progress.find(Filters.eq("_id", progressId)).first();
+        String lastUserId = checkpoint == null ? null : checkpoint.getString("lastUserId");
+        Bson remaining = lastUserId == null ? new Document() : Filters.gt("userId", lastUserId);
+
+        //? userId leads the user_seq index on a standard source and is the metaField of a time-series one,
+        //? so neither the grouping nor the per-user reads below scan the whole collection
+        long copied = 0;
+        try (MongoCursor<Document> users = source.aggregate(List.of(
+                        Aggregates.match(remaining),
+                        Aggregates.group("$userId"),
+                        Aggregates.sort(Sorts.ascending("_id"))))
+                .allowDiskUse(true)
+                .iterator()) {
+            while (users.hasNext()) {
+                String userId = users.next().getString("_id");
+                copied += copyUser(source, target, userId);
+                progress.updateOne(Filters.eq("_id", progressId),
+                        Updates.set("lastUserId", userId),
+                        new UpdateOptions().upsert(true));
+            }
+        }
+        log.info("Migrated {} documents from {} to {}", copied, sourceName, targetName);
+        return copied;
+    }
+
+    private static long copyUser(MongoCollection<Document> source, MongoCollection<Document> target, String userId) {
+        long copied = 0;
+        List<Document> batch = new ArrayList<>(BATCH_SIZE);
+        try (MongoCursor<Document> cursor = source.find(Filters.eq("userId", userId)).batchSize(BATCH_SIZE).iterator()) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() == BATCH_SIZE || !cursor.hasNext()) {
+                    copied += insertMissing(target, userId, batch);
+                    batch.clear();
+                }
+            }
+        }
+        return copied;
+    }
+
+    // ?userId and the batch's timestamp range narrow a time-series target to this user's buckets before the _id check
+    private static int insertMissing(MongoCollection<Document> target, String userId, List<Document> batch) {
+        List<Object> ids = batch.stream().map(document -> document.get("_id")).toList();
+        List<Date> timestamps = batch.stream().map(document -> document.getDate("timestamp")).filter(Objects::nonNull).toList();
+        List<Bson> present = new ArrayList<>(List.of(Filters.eq("userId", userId), Filters.in("_id", ids)));
+        if (timestamps.size() == batch.size()) {
+            present.add(Filters.gte("timestamp", Collections.min(timestamps)));
+            present.add(Filters.lte("timestamp", Collections.max(timestamps)));
+        }
+        Set<Object> copied = new HashSet<>();
+        target.find(Filters.and(present)).projection(Projections.include("_id"))
+                .forEach(document -> copied.add(document.get("_id")));
+        List<Document> missing = batch.stream().filter(document -> !copied.contains(document.get("_id"))).toList();
+        if (!missing.isEmpty()) {
+            target.insertMany(missing, new InsertManyOptions().ordered(false));
+        }
+        return missing.size();
+    }
+}
@@ -0,0 +1,33 @@
+package org.harsh.tuple.paisa.service;
+
+import lombok.RequiredArgsConstructor;
+import org.harsh.tuple.paisa.model.LedgerSequence;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+// *Per-user gapless counter shared by transactions and cashbacks, the basis of sync watermarks
+@Service
+@RequiredArgsConstructor
+public class LedgerSequenceService {
+
+    private final MongoTemplate mongoTemplate;
+
+    public long next(String userId) {
+        return next(userId, 1);
+    }
+
+    // ?reserves count consecutive numbers in one round trip and returns the last of them
+    public long next(String userId, int count) {
+        LedgerSequence sequence = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(userId)),
+                new Update().inc("seq", count),
+                FindAndModifyOptions.options().returnNew(true).upsert(true),
+                LedgerSequence.class
+        );
+        return sequence.getSeq();
+    }
+}
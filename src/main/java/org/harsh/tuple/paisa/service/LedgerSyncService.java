@@ -0,0 +1,72 @@
+package org.harsh.tuple.paisa.service;
+
+import lombok.RequiredArgsConstructor;
+import org.harsh.tuple.paisa.dto.SyncResponse;
+import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.Transaction;
+import org.harsh.tuple.paisa.repository.CashbackRepository;
+import org.harsh.tuple.paisa.repository.TransactionRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// *"Changes since watermark" for client history caches, read off the (userId, seq) index
+@Service
+@RequiredArgsConstructor
+public class LedgerSyncService {
+
+    private static final int MAX_LIMIT = 500;
+    // ?a seq allocated but not yet inserted shows up as a gap; past this age it is treated as abandoned
+    private static final Duration GAP_GRACE = Duration.ofSeconds(30);
+
+    private final TransactionRepository transactionRepository;
+    private final CashbackRepository cashbackRepository;
+
+    public SyncResponse getChangesSince(String userId, long since, int limit) {
+        if (since < 0 || limit < 1) {
+            throw new IllegalArgumentException("Watermark must be >= 0 and limit must be >= 1");
+        }
+        int pageSize = Math.min(limit, MAX_LIMIT);
+        Limit fetch = Limit.of(pageSize + 1);
+
+        List<Transaction> transactions = transactionRepository.findByUserIdAndSeqGreaterThanOrderBySeqAsc(userId, since, fetch);
+        List<Cashback> cashbacks = cashbackRepository.findByUserIdAndSeqGreaterThanOrderBySeqAsc(userId, since, fetch);
+
+        List<Transaction> changedTransactions = new ArrayList<>();
+        List<Cashback> changedCashbacks = new ArrayList<>();
+        LocalDateTime gapCutoff = LocalDateTime.now().minus(GAP_GRACE);
+        long watermark = since;
+        int i = 0;
+        int j = 0;
+
+        //? both lists are seq-ordered, merge until the page is full or an in-flight write leaves a hole
+        while (changedTransactions.size() + changedCashbacks.size() < pageSize
+                && (i < transactions.size() || j < cashbacks.size())) {
+            boolean takeTransaction = j >= cashbacks.size()
+                    || (i < transactions.size() && transactions.get(i).getSeq() < cashbacks.get(j).getSeq());
+            long seq = takeTransaction ? transactions.get(i).getSeq() : cashbacks.get(j).getSeq();
+            LocalDateTime timestamp = takeTransaction ? transactions.get(i).getTimestamp() : cashbacks.get(j).getTimestamp();
+
+            if (seq != watermark + 1 && timestamp != null && timestamp.isAfter(gapCutoff)) {
+                break;
+            }
+            if (takeTransaction) {
+                changedTransactions.add(transactions.get(i++));
+            } else {
+                changedCashbacks.add(cashbacks.get(j++));
+            }
+            watermark = seq;
+        }
+
+        return SyncResponse.builder()
+                .transactions(changedTransactions)
+                .cashbacks(changedCashbacks)
+                .watermark(watermark)
+                .hasMore(i < transactions.size() || j < cashbacks.size())
+                .build();
+    }
+}
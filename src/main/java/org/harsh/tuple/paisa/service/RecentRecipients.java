@@ -0,0 +1,157 @@
+package org.harsh.tuple.paisa.service;
+
+import org.harsh.tuple.paisa.model.Transaction;
+import org.harsh.tuple.paisa.model.TransactionType;
+import org.harsh.tuple.paisa.repository.TransactionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+// *Per-user "people you pay": the recipients of a user's transfers with exponentially decayed counts, so both
+// *frequent and recent payees rank high. At most users.recipients.per-user names per user (the weakest makes room)
+// *and only the most recently searched users are held. Loaded from the ledger on first use, updated in place by
+// *transfers on this node, and reloaded after users.recipients.ttl to pick up transfers made through other nodes
+@Component
+public class RecentRecipients {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    // ?outgoing transfers replayed when a user's list is (re)loaded
+    private static final int LEDGER_REPLAY = 200;
+
+    private final TransactionRepository transactionRepository;
+    private final int perUser;
+    private final double halfLifeMillis;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final Map<String, Recipients> byUser;
+
+    public RecentRecipients(
+            TransactionRepository transactionRepository,
+            @Value("${users.recipients.per-user:20}") int perUser,
+            @Value("${users.recipients.half-life:14d}") Duration halfLife,
+            @Value("${users.recipients.ttl:10m}") Duration ttl,
+            @Value("${users.recipients.max-users:100000}") int maxUsers
+    ) {
+        this(transactionRepository, perUser, halfLife, ttl, maxUsers, Clock.systemDefaultZone());
+    }
+
+    RecentRecipients(TransactionRepository transactionRepository, int perUser, Duration halfLife, Duration ttl,
+                     int maxUsers, Clock clock) {
+        this.transactionRepository = transactionRepository;
+        this.perUser = perUser;
+        this.halfLifeMillis = halfLife.toMillis();
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+        this.byUser = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Recipients> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    // *Only touches users already held; anyone else is loaded from the ledger, which has this transfer, on next use
+    public void record(String senderId, String recipientUsername, LocalDateTime at) {
+        Recipients recipients;
+        synchronized (byUser) {
+            recipients = byUser.get(senderId);
+        }
+        if (recipients != null && recipientUsername != null) {
+            recipients.add(recipientUsername, millis(at));
+        }
+    }
+
+    // *Up to limit of the user's recipients accepted by matches, highest decayed count first
+    public List<String> ranked(String userId, Predicate<String> matches, int limit) {
+        return recipients(userId).top(matches, limit, clock.millis());
+    }
+
+    private Recipients recipients(String userId) {
+        long now = clock.millis();
+        Recipients recipients;
+        synchronized (byUser) {
+            recipients = byUser.get(userId);
+        }
+        if (recipients != null && now - recipients.loadedAt < ttlMillis) {
+            return recipients;
+        }
+        //? two searches racing here both read the ledger; the later one wins, both lists are equally valid
+        Recipients loaded = new Recipients(now);
+        List<Transaction> transfers = transactionRepository.findByUserIdAndTypeAndRecipientUsernameNotNullOrderBySeqDesc(
+                userId, TransactionType.TRANSFER, Limit.of(LEDGER_REPLAY));
+        for (Transaction transfer : transfers.reversed()) {
+            loaded.add(transfer.getRecipientUsername(), millis(transfer.getTimestamp()));
+        }
+        synchronized (byUser) {
+            byUser.put(userId, loaded);
+        }
+        return loaded;
+    }
+
+    private static long millis(LocalDateTime at) {
+        return at.atZone(ZONE).toInstant().toEpochMilli();
+    }
+
+    private final class Recipients {
+        private final long loadedAt;
+        private final List<Counterparty> counterparties = new ArrayList<>();
+
+        Recipients(long loadedAt) {
+            this.loadedAt = loadedAt;
+        }
+
+        synchronized void add(String username, long at) {
+            for (Counterparty counterparty : counterparties) {
+                if (counterparty.username.equals(username)) {
+                    counterparty.score = counterparty.scoreAt(at) + 1;
+                    counterparty.at = Math.max(counterparty.at, at);
+                    return;
+                }
+            }
+            if (counterparties.size() >= perUser) {
+                counterparties.remove(counterparties.stream()
+                        .min(Comparator.comparingDouble(counterparty -> counterparty.scoreAt(at)))
+                        .orElseThrow());
+            }
+            counterparties.add(new Counterparty(username, at));
+        }
+
+        synchronized List<String> top(Predicate<String> matches, int limit, long now) {
+            return counterparties.stream()
+                    .filter(counterparty -> matches.test(counterparty.username))
+                    .sorted(Comparator.comparingDouble((Counterparty counterparty) -> counterparty.scoreAt(now))
+                            .reversed()
+                            .thenComparing(counterparty -> counterparty.username))
+                    .limit(limit)
+                    .map(counterparty -> counterparty.username)
+                    .toList();
+        }
+    }
+
+    private final class Counterparty {
+        private final String username;
+        private double score = 1;
+        private long at;
+
+        Counterparty(String username, long at) {
+            this.username = username;
+            this.at = at;
+        }
+
+        // ?halves every half-life; a transfer older than at (the ledger is replayed by seq) counts as made at at
+        double scoreAt(long when) {
+            return score * Math.pow(0.5, Math.max(0, when - at) / halfLifeMillis);
+        }
+    }
+}
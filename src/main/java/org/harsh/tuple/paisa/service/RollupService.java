@@ -0,0 +1,220 @@
+package org.harsh.tuple.paisa.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.DailyRollup;
+import org.harsh.tuple.paisa.model.LedgerEntryKind;
+import org.harsh.tuple.paisa.model.Transaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// *Per-user daily counters kept current with $inc upserts; charts read these instead of raw history. The upserts
+// *run on a writer thread, the ledger write that caused them does not wait; one lost to a failure is put right by
+// *the next rebuild
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RollupService {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final Duration CUTOFF_GRACE = Duration.ofMinutes(5);
+    private static final int WRITE_BACKLOG = 10_000;
+
+    private final MongoTemplate mongoTemplate;
+    // ?$inc commutes, so order does not matter; a full backlog makes the caller write its own upsert
+    private final ExecutorService writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(WRITE_BACKLOG),
+            Thread.ofPlatform().name("rollup-writer").daemon().factory(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    @Value("${analytics.rollups.enabled:false}")
+    private boolean enabled;
+
+    @Value("${analytics.rollups.rebuild-on-startup:false}")
+    private boolean rebuildOnStartup;
+
+    public static String rollupId(String userId, LocalDate day) {
+        return userId + ":" + day;
+    }
+
+    // ?nothing reads the counters while rollups are off; rebuildAll fills the closed days in once they are switched
+    // ?on, the day they were switched on counts only from then until the next rebuild
+    public void record(String userId, LocalDateTime timestamp, LedgerEntryKind kind, double amount) {
+        if (!enabled) {
+            return;
+        }
+        String prefix = fieldPrefix(kind);
+        upsert(userId, timestamp.toLocalDate(), new Update()
+                .inc(prefix + "Count", 1)
+                .inc(prefix + "Total", amount));
+    }
+
+    // *A recharge and the cashback credited with it land on the same day, so they are counted in one upsert
+    public void recordRecharge(String userId, LocalDateTime timestamp, double amount, double cashback) {
+        if (!enabled) {
+            return;
+        }
+        Update update = new Update()
+                .inc(fieldPrefix(LedgerEntryKind.RECHARGE) + "Count", 1)
+                .inc(fieldPrefix(LedgerEntryKind.RECHARGE) + "Total", amount);
+        if (cashback > 0) {
+            update.inc(fieldPrefix(LedgerEntryKind.CASHBACK) + "Count", 1)
+                    .inc(fieldPrefix(LedgerEntryKind.CASHBACK) + "Total", cashback);
+        }
+        upsert(userId, timestamp.toLocalDate(), update);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.shutdown();
+    }
+
+    private void upsert(String userId, LocalDate day, Update update) {
+        update.setOnInsert("userId", userId).setOnInsert("day", day);
+        writer.execute(() -> {
+            try {
+                mongoTemplate.upsert(Query.query(Criteria.where("_id").is(rollupId(userId, day))), update, DailyRollup.class);
+            } catch (RuntimeException ex) {
+                log.warn("Could not update daily rollup {}: {}", rollupId(userId, day), ex.getMessage());
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (rebuildOnStartup) {
+            rebuildAll();
+        }
+    }
+
+    // *Recomputes every user's rollups of closed days from history, see rebuild(String)
+    public void rebuildAll() {
+        log.info("Rebuilding daily rollups for all users");
+        LocalDate cutoff = rebuildCutoff();
+        runRebuild(null, cutoff);
+        log.info("Daily rollup rebuild finished for days before {}", cutoff);
+    }
+
+    // *Replaces each of the user's rollups before today (the cutoff) with one computed from history, one document at
+    // *a time, and drops those left over with no history behind them. Nothing is emptied first, so charts and the
+    // *$inc upserts of record() keep working throughout; today's document stays with record(), which has been
+    // *counting it since the day started
+    public void rebuild(String userId) {
+        runRebuild(userId, rebuildCutoff());
+    }
+
+    //? record() stamps entries with their own time, a write that began just before midnight can still land after it
+    private static LocalDate rebuildCutoff() {
+        return LocalDateTime.now().minus(CUTOFF_GRACE).toLocalDate();
+    }
+
+    private void runRebuild(String userId, LocalDate cutoff) {
+        Date rebuiltAt = new Date();
+        Document match = new Document("timestamp", new Document("$lt", toDate(cutoff.atStartOfDay())));
+        if (userId != null) {
+            match.append("userId", userId);
+        }
+        mongoTemplate.getCollection(mongoTemplate.getCollectionName(Transaction.class))
+                .aggregate(rebuildPipeline(match, rebuiltAt))
+                .allowDiskUse(true)
+                .toCollection();
+
+        //? days whose history is gone (nothing above matched them) keep their old rebuiltAt
+        Criteria stale = Criteria.where("day").lt(cutoff)
+                .orOperator(Criteria.where("rebuiltAt").exists(false), Criteria.where("rebuiltAt").lt(rebuiltAt));
+        if (userId != null) {
+            stale = Criteria.where("userId").is(userId).andOperator(stale);
+        }
+        long removed = mongoTemplate.remove(Query.query(stale), DailyRollup.class).getDeletedCount();
+        if (removed > 0) {
+            log.info("Removed {} daily rollups with no history before {}", removed, cutoff);
+        }
+    }
+
+    //? transactions and cashbacks are read in one pass ($unionWith) and grouped per (user, local day) into a whole
+    //? document keyed like record() does, so each day is replaced in one write instead of merged field-wise by two
+    private List<Document> rebuildPipeline(Document match, Date rebuiltAt) {
+        Document isRecharge = new Document("$eq", List.of("$type", "RECHARGE"));
+        Document hasSender = new Document("$ne", Arrays.asList(new Document("$ifNull", Arrays.asList("$senderId", null)), null));
+        Document transactionKind = new Document("$cond", List.of(isRecharge, "recharge",
+                new Document("$cond", List.of(hasSender, "transferIn", "transferOut"))));
+
+        Document cashbacks = new Document("coll", mongoTemplate.getCollectionName(Cashback.class))
+                .append("pipeline", List.of(
+                        new Document("$match", match),
+                        new Document("$project", entryFields(new Document("$literal", "cashback")))));
+
+        Document day = new Document("$dateTrunc", new Document("date", "$timestamp")
+                .append("unit", "day")
+                .append("timezone", ZONE.getId()));
+        Document group = new Document("_id", new Document("userId", "$userId").append("day", day));
+        Document project = new Document("_id", new Document("$concat", List.of(
+                "$_id.userId", ":",
+                new Document("$dateToString", new Document("format", "%Y-%m-%d")
+                        .append("date", "$_id.day")
+                        .append("timezone", ZONE.getId())))))
+                .append("userId", "$_id.userId")
+                .append("day", "$_id.day");
+        for (LedgerEntryKind kind : LedgerEntryKind.values()) {
+            String prefix = fieldPrefix(kind);
+            Document isKind = new Document("$eq", List.of("$kind", prefix));
+            group.append(prefix + "Count", sumIf(isKind, 1))
+                    .append(prefix + "Total", sumIf(isKind, "$amount"));
+            project.append(prefix + "Count", 1).append(prefix + "Total", 1);
+        }
+        project.append("rebuiltAt", new Document("$literal", rebuiltAt));
+
+        return List.of(
+                new Document("$match", match),
+                new Document("$project", entryFields(transactionKind)),
+                new Document("$unionWith", cashbacks),
+                new Document("$group", group),
+                new Document("$project", project),
+                new Document("$merge", new Document("into", mongoTemplate.getCollectionName(DailyRollup.class))
+                        .append("on", "_id")
+                        .append("whenMatched", "replace")
+                        .append("whenNotMatched", "insert")));
+    }
+
+    private static Document entryFields(Object kind) {
+        return new Document("userId", 1).append("timestamp", 1).append("amount", 1).append("kind", kind);
+    }
+
+    private static Date toDate(LocalDateTime dateTime) {
+        return Date.from(dateTime.atZone(ZONE).toInstant());
+    }
+
+    private static Document sumIf(Document condition, Object value) {
+        return new Document("$sum", new Document("$cond", List.of(condition, value, 0)));
+    }
+
+    static String fieldPrefix(LedgerEntryKind kind) {
+        return switch (kind) {
+            case RECHARGE -> "recharge";
+            case TRANSFER_IN -> "transferIn";
+            case TRANSFER_OUT -> "transferOut";
+            case CASHBACK -> "cashback";
+        };
+    }
+}
@@ -0,0 +1,172 @@
+package org.harsh.tuple.paisa.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.harsh.tuple.paisa.dto.QuantileValue;
+import org.harsh.tuple.paisa.dto.SpendingPercentiles;
+import org.harsh.tuple.paisa.model.SpendingDigest;
+import org.harsh.tuple.paisa.model.TransactionType;
+import org.harsh.tuple.paisa.repository.SpendingDigestRepository;
+import org.harsh.tuple.paisa.util.TDigest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// *Median / p90 of recharge and transfer sizes from one t-digest per user per month (plus a platform digest).
+// *Writes land in node-local deltas that are merged into the stored blobs periodically
+@Slf4j
+@Service
+public class SpendingDistributionService {
+
+    static final String PLATFORM = "_platform";
+    private static final double COMPRESSION = 100;
+    private static final int MAX_MONTHS = 36;
+    private static final int FLUSH_ATTEMPTS = 3;
+
+    private final SpendingDigestRepository spendingDigestRepository;
+    private final Map<DigestKey, TDigest> pending = new ConcurrentHashMap<>();
+
+    public SpendingDistributionService(SpendingDigestRepository spendingDigestRepository) {
+        this.spendingDigestRepository = spendingDigestRepository;
+    }
+
+    public void record(String userId, TransactionType type, double amount, LocalDateTime timestamp) {
+        YearMonth month = YearMonth.from(timestamp);
+        add(new DigestKey(userId, month, type), amount);
+        add(new DigestKey(PLATFORM, month, type), amount);
+    }
+
+    // *All months in the range folded into one digest
+    public SpendingPercentiles percentiles(String userId, TransactionType type, YearMonth from, YearMonth to,
+                                           List<Double> quantiles) {
+        List<DigestKey> keys = keys(userId, type, from, to, quantiles);
+        TDigest merged = new TDigest(COMPRESSION);
+        load(keys).values().forEach(merged::merge);
+        return toPercentiles(type, from, to, merged, quantiles);
+    }
+
+    // *One entry per month, for the "median / p90 over time" chart
+    public List<SpendingPercentiles> monthly(String userId, TransactionType type, YearMonth from, YearMonth to,
+                                             List<Double> quantiles) {
+        List<DigestKey> keys = keys(userId, type, from, to, quantiles);
+        Map<DigestKey, TDigest> digests = load(keys);
+        List<SpendingPercentiles> months = new ArrayList<>(keys.size());
+        for (DigestKey key : keys) {
+            TDigest digest = digests.getOrDefault(key, new TDigest(COMPRESSION));
+            months.add(toPercentiles(type, key.month(), key.month(), digest, quantiles));
+        }
+        return months;
+    }
+
+    public SpendingPercentiles platformPercentiles(TransactionType type, YearMonth from, YearMonth to,
+                                                   List<Double> quantiles) {
+        return percentiles(PLATFORM, type, from, to, quantiles);
+    }
+
+    @Scheduled(fixedDelayString = "${insights.digests.flush-ms:10000}")
+    public void flush() {
+        for (DigestKey key : List.copyOf(pending.keySet())) {
+            TDigest delta = pending.remove(key);
+            if (delta != null) {
+                flush(key, delta);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void flush(DigestKey key, TDigest delta) {
+        for (int attempt = 1; attempt <= FLUSH_ATTEMPTS; attempt++) {
+            try {
+                SpendingDigest stored = spendingDigestRepository.findById(key.id()).orElse(null);
+                TDigest merged = stored == null ? new TDigest(COMPRESSION) : TDigest.fromBytes(stored.getDigest());
+                merged.merge(delta);
+
+                SpendingDigest document = stored == null
+                        ? SpendingDigest.builder().id(key.id()).userId(key.userId())
+                                .month(key.month().toString()).type(key.type()).build()
+                        : stored;
+                document.setDigest(merged.toBytes());
+                document.setCount(merged.count());
+                document.setUpdatedAt(LocalDateTime.now());
+                spendingDigestRepository.save(document);
+                return;
+            } catch (OptimisticLockingFailureException | DuplicateKeyException ex) {
+                log.debug("Concurrent flush of digest {}, attempt {}", key.id(), attempt);
+            }
+        }
+        log.warn("Could not flush digest {}, keeping the delta for the next run", key.id());
+        pending.merge(key, delta, (current, restored) -> {
+            restored.merge(current);
+            return restored;
+        });
+    }
+
+    private void add(DigestKey key, double amount) {
+        //? compute runs under the map's bin lock, so adds and the flush's remove never interleave on one digest
+        pending.compute(key, (_, digest) -> {
+            TDigest target = digest != null ? digest : new TDigest(COMPRESSION);
+            target.add(amount);
+            return target;
+        });
+    }
+
+    // ?stored digests plus whatever this node has not flushed yet
+    private Map<DigestKey, TDigest> load(List<DigestKey> keys) {
+        Map<String, DigestKey> byId = new HashMap<>();
+        keys.forEach(key -> byId.put(key.id(), key));
+        Map<DigestKey, TDigest> digests = new HashMap<>();
+        for (SpendingDigest stored : spendingDigestRepository.findAllById(byId.keySet())) {
+            digests.put(byId.get(stored.getId()), TDigest.fromBytes(stored.getDigest()));
+        }
+        for (DigestKey key : keys) {
+            pending.computeIfPresent(key, (_, delta) -> {
+                digests.computeIfAbsent(key, _ -> new TDigest(COMPRESSION)).merge(delta);
+                return delta;
+            });
+        }
+        return digests;
+    }
+
+    private static List<DigestKey> keys(String userId, TransactionType type, YearMonth from, YearMonth to,
+                                        List<Double> quantiles) {
+        if (type == null || from == null || to == null || to.isBefore(from) || from.plusMonths(MAX_MONTHS).isBefore(to)) {
+            throw new IllegalArgumentException("Type and a range of at most " + MAX_MONTHS + " months are required");
+        }
+        if (quantiles.isEmpty() || quantiles.stream().anyMatch(q -> q == null || q < 0 || q > 1)) {
+            throw new IllegalArgumentException("Quantiles must be between 0 and 1");
+        }
+        List<DigestKey> keys = new ArrayList<>();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            keys.add(new DigestKey(userId, month, type));
+        }
+        return keys;
+    }
+
+    private static SpendingPercentiles toPercentiles(TransactionType type, YearMonth from, YearMonth to,
+                                                     TDigest digest, List<Double> quantiles) {
+        List<QuantileValue> values = new ArrayList<>(quantiles.size());
+        for (double q : quantiles) {
+            values.add(new QuantileValue(q, digest.count() == 0 ? null : digest.quantile(q)));
+        }
+        return new SpendingPercentiles(type, from, to, digest.count(), values);
+    }
+
+    private record DigestKey(String userId, YearMonth month, TransactionType type) {
+        String id() {
+            return userId + ":" + month + ":" + type;
+        }
+    }
+}
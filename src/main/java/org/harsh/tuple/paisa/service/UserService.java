@@ -1,7 +1,5 @@
 package org.harsh.tuple.paisa.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.harsh.tuple.paisa.exception.InvalidLoginException;
@@ -12,6 +10,7 @@ import org.harsh.tuple.paisa.model.Wallet;
 import org.harsh.tuple.paisa.repository.UserRepository;
 import org.harsh.tuple.paisa.repository.WalletRepository;
 import org.harsh.tuple.paisa.util.JwtUtil;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
@@ -24,9 +23,13 @@ import java.util.stream.Collectors;
 @Slf4j
 public class UserService {
 
+    private static final int MAX_SUGGESTIONS = 50;
+
     private final UserRepository userRepository;
     private final WalletRepository walletRepository;
     private final JwtUtil jwtUtil;
+    private final UsernameIndex usernameIndex;
+    private final RecentRecipients recentRecipients;
     private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
 
     // ?Register User
@@ -51,6 +54,7 @@ public class UserService {
 
 
         User registeredUser = userRepository.save(user);
+        usernameIndex.add(registeredUser.getUsername());
         log.info("User registered successfully, initializing Wallet Creation: {}", registeredUser.getUsername());
 
         Wallet wallet =  Wallet.builder()
@@ -100,25 +104,37 @@ public class UserService {
 
         userRepository.deleteById(id);
         walletRepository.deleteByUserId(user.getId());
+        usernameIndex.remove(user.getUsername());
         log.debug("User and associated wallet deleted successfully for id: {}", id);
     }
 
-    public Map<String, Set<String>> getSuggestions(String query){
-        String regexQuery = ".*"+query+".*";
-        List<String> results = userRepository.findUsernamesByQuery(regexQuery);
-
-        ObjectMapper objectMapper = new ObjectMapper();
-        Set<String> usernames = new HashSet<>();
-
-        for (String result : results) {
-            try {
-                // Parse the JSON string to extract the username
-                JsonNode jsonNode = objectMapper.readTree(result);
-                String username = jsonNode.get("username").asText();
-                usernames.add(username);
-            } catch (Exception e) {
-                // Handle parsing errors
-                e.printStackTrace();
+    // ?Username autocomplete: case-insensitive prefix match, at most limit names in index order.
+    // ?Served from the in-memory index; Mongo (anchored, escaped prefix) only while the index is unavailable.
+    // ?With fuzzy set, names within an edit or two of the query instead, closest first; prefix matching again when
+    // ?the query is too short or the fuzzy index is off.
+    // ?People the caller has paid lately come first; the global lookup only fills what they leave, and the caller's
+    // ?own name is never suggested
+    public Map<String, Set<String>> getSuggestions(String userId, String ownUsername, String query, int limit,
+                                                   boolean fuzzy) {
+        Set<String> usernames = new LinkedHashSet<>();
+        if (query != null && !query.isBlank()) {
+            String prefix = query.strip();
+            int size = Math.max(1, Math.min(limit, MAX_SUGGESTIONS));
+            recentRecipients.ranked(userId, usernameIndex.matcher(prefix, fuzzy), size + 1).stream()
+                    .filter(username -> !username.equals(ownUsername))
+                    .limit(size)
+                    .forEach(usernames::add);
+            if (usernames.size() < size) {
+                //? room for the recents and the caller turning up again in the global results
+                int wanted = size + usernames.size() + (ownUsername != null ? 1 : 0);
+                Optional<List<String>> fuzzyMatches = fuzzy ? usernameIndex.suggestFuzzy(prefix, wanted) : Optional.empty();
+                fuzzyMatches.or(() -> usernameIndex.suggest(prefix, wanted)).orElseGet(() ->
+                                userRepository.findByUsernameStartingWithIgnoreCase(prefix, Limit.of(wanted)).stream()
+                                        .map(User::getUsername)
+                                        .toList()).stream()
+                        .filter(username -> !username.equals(ownUsername))
+                        .takeWhile(_ -> usernames.size() < size)
+                        .forEach(usernames::add);
             }
         }
 
@@ -0,0 +1,281 @@
+package org.harsh.tuple.paisa.service;
+
+import com.mongodb.client.MongoCursor;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.harsh.tuple.paisa.model.User;
+import org.harsh.tuple.paisa.util.CountMinSketch;
+import org.harsh.tuple.paisa.util.FuzzyIndex;
+import org.harsh.tuple.paisa.util.PrefixIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+// *Node-local username autocomplete. Built from the users collection at startup, updated in place by this node's
+// *registrations and deletions, topped up from other nodes' registrations by polling for newer _ids, and rebuilt
+// *periodically to pick up their deletions. Builds and fuzzy compactions run on the index's own thread and are
+// *swapped in when done, so neither startup nor the shared scheduler waits on them. When the user base outgrows
+// *users.suggest.max-bytes the index is dropped and callers fall back to Mongo. A typo-tolerant FuzzyIndex over the
+// *same names is kept alongside under its own budget, ranked by how often this node has seen each name receive a
+// *transfer
+@Slf4j
+@Component
+public class UsernameIndex {
+
+    private static final int BATCH_SIZE = 10_000;
+    // ?ObjectIds from other nodes can lag this node's clock a little, the top-up re-reads this far back
+    private static final int CATCH_UP_SECONDS = 60;
+    // ?very short queries are a couple of edits away from nearly every short name: none below 3 characters, and
+    // ?only one edit up to 4
+    private static final int MIN_FUZZY_LENGTH = 3;
+    private static final int SHORT_FUZZY_LENGTH = 4;
+    // ?overlay size at which the catch-up job rebuilds the fuzzy entries, off the request path
+    private static final int FUZZY_COMPACT_PENDING = 20_000;
+
+    private final MongoTemplate mongoTemplate;
+    private final long maxBytes;
+    private final long fuzzyMaxBytes;
+    private final int maxDistance;
+    // ?transfers received per username on this node, ~512 KB whatever the user count
+    private final CountMinSketch popularity = new CountMinSketch(4, 1 << 14);
+    private volatile PrefixIndex index;
+    private volatile FuzzyIndex fuzzy;
+    private volatile ObjectId newestId;
+    // ?one thread: a full build and a compaction never run side by side and double the peak footprint
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("username-index-builder").daemon().factory());
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+
+    public UsernameIndex(
+            MongoTemplate mongoTemplate,
+            @Value("${users.suggest.max-bytes:128MB}") DataSize maxBytes,
+            @Value("${users.suggest.fuzzy.max-bytes:512MB}") DataSize fuzzyMaxBytes,
+            @Value("${users.suggest.fuzzy.max-distance:2}") int maxDistance
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.maxBytes = maxBytes.toBytes();
+        this.fuzzyMaxBytes = fuzzyMaxBytes.toBytes();
+        this.maxDistance = maxDistance;
+    }
+
+    // *Empty while the index is not built or over budget
+    public Optional<List<String>> suggest(String prefix, int limit) {
+        PrefixIndex current = index;
+        return current == null ? Optional.empty() : Optional.of(current.search(prefix, limit));
+    }
+
+    // *Names within one edit (queries up to 4 characters) or max-distance edits of the query, closest and most paid
+    // *first. Empty while the fuzzy index is not built or over budget, or when the query is too short to be fuzzy
+    public Optional<List<String>> suggestFuzzy(String query, int limit) {
+        FuzzyIndex current = fuzzy;
+        if (current == null || query.length() < MIN_FUZZY_LENGTH) {
+            return Optional.empty();
+        }
+        return Optional.of(current.search(query, fuzzyDistance(query), limit, this::popularity).stream()
+                .map(FuzzyIndex.Match::value)
+                .toList());
+    }
+
+    // *Whether a name answers the query under the same rules as suggest / suggestFuzzy, for ranking short lists of
+    // *names kept elsewhere
+    public Predicate<String> matcher(String query, boolean fuzzy) {
+        String folded = PrefixIndex.fold(query);
+        if (!fuzzy || folded.length() < MIN_FUZZY_LENGTH) {
+            return username -> PrefixIndex.fold(username).startsWith(folded);
+        }
+        int distance = fuzzyDistance(folded);
+        return username -> FuzzyIndex.distance(folded, PrefixIndex.fold(username), distance) <= distance;
+    }
+
+    public void add(String username) {
+        if (username == null) {
+            return;
+        }
+        PrefixIndex current = index;
+        if (current != null) {
+            current.add(username);
+        }
+        FuzzyIndex currentFuzzy = fuzzy;
+        if (currentFuzzy != null) {
+            currentFuzzy.add(username);
+        }
+        enforceBudget(current, currentFuzzy);
+    }
+
+    public void remove(String username) {
+        if (username == null) {
+            return;
+        }
+        PrefixIndex current = index;
+        if (current != null) {
+            current.remove(username);
+        }
+        FuzzyIndex currentFuzzy = fuzzy;
+        if (currentFuzzy != null) {
+            currentFuzzy.remove(username);
+        }
+    }
+
+    public void recordRecipient(String username) {
+        if (username != null) {
+            synchronized (popularity) {
+                popularity.add(username, 1);
+            }
+        }
+    }
+
+    // *Queues a full rebuild on the builder thread and returns; suggestions keep using the previous index (or fall
+    // *back to Mongo at startup) until it is swapped in. A rebuild already waiting covers this call
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${users.suggest.rebuild-ms:3600000}", initialDelayString = "${users.suggest.rebuild-ms:3600000}")
+    public void rebuild() {
+        if (rebuildQueued.compareAndSet(false, true)) {
+            builder.execute(() -> {
+                rebuildQueued.set(false);
+                try {
+                    build();
+                } catch (RuntimeException ex) {
+                    log.error("Username index rebuild failed, keeping the previous one", ex);
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+
+    void build() {
+        long started = System.nanoTime();
+        List<String> usernames = new ArrayList<>();
+        ObjectId newest = load(new Document(), usernames);
+        PrefixIndex built = new PrefixIndex(usernames);
+        if (built.estimatedBytes() > maxBytes) {
+            log.warn("Username index needs ~{} bytes, over the {} byte budget; suggestions fall back to Mongo",
+                    built.estimatedBytes(), maxBytes);
+            built = null;
+        } else {
+            log.info("Built username index of {} users (~{} KB) in {} ms", built.size(), built.estimatedBytes() / 1024,
+                    (System.nanoTime() - started) / 1_000_000);
+        }
+        FuzzyIndex builtFuzzy = buildFuzzy(usernames);
+        //? names registered elsewhere while this was loading have newer _ids than newest and the next top-up reads
+        //? them into the new index; this node's own adds went to the old one and are read back the same way
+        synchronized (this) {
+            index = built;
+            fuzzy = builtFuzzy;
+            //? an empty collection still needs a starting point for the top-up
+            newestId = newest != null ? newest : new ObjectId();
+        }
+    }
+
+    //? sized before building, a user base far over budget never allocates the entries
+    private FuzzyIndex buildFuzzy(List<String> usernames) {
+        long needed = FuzzyIndex.estimateBytes(usernames, maxDistance);
+        if (needed > fuzzyMaxBytes) {
+            log.warn("Fuzzy username index needs up to {} bytes, over the {} byte budget; fuzzy search is off",
+                    needed, fuzzyMaxBytes);
+            return null;
+        }
+        long started = System.nanoTime();
+        FuzzyIndex built = new FuzzyIndex(usernames, maxDistance);
+        log.info("Built fuzzy username index of {} users (~{} KB) in {} ms", built.size(),
+                built.estimatedBytes() / 1024, (System.nanoTime() - started) / 1_000_000);
+        return built;
+    }
+
+    @Scheduled(fixedDelayString = "${users.suggest.refresh-ms:5000}")
+    public synchronized void catchUp() {
+        PrefixIndex current = index;
+        FuzzyIndex currentFuzzy = fuzzy;
+        ObjectId since = newestId;
+        if (current == null && currentFuzzy == null || since == null) {
+            return;
+        }
+        ObjectId from = new ObjectId(String.format("%08x", since.getTimestamp() - CATCH_UP_SECONDS) + "0000000000000000");
+        List<String> usernames = new ArrayList<>();
+        ObjectId newest = load(new Document("_id", new Document("$gte", from)), usernames);
+        //? add() ignores names that are already indexed, re-reading the overlap is harmless
+        usernames.forEach(this::add);
+        if (newest != null && newest.compareTo(since) > 0) {
+            newestId = newest;
+        }
+        if (currentFuzzy != null && fuzzy == currentFuzzy && currentFuzzy.pending() > FUZZY_COMPACT_PENDING
+                && compactionQueued.compareAndSet(false, true)) {
+            builder.execute(() -> compact(currentFuzzy));
+        }
+    }
+
+    //? names added while this builds reach the new index on the next top-up, which re-reads the last minute;
+    //? removals made meanwhile wait for the next rebuild. A rebuild that finished first wins
+    private void compact(FuzzyIndex currentFuzzy) {
+        try {
+            FuzzyIndex compacted = currentFuzzy.compacted();
+            synchronized (this) {
+                if (fuzzy == currentFuzzy) {
+                    fuzzy = compacted;
+                }
+            }
+        } catch (RuntimeException ex) {
+            log.error("Fuzzy username index compaction failed, keeping the overlay", ex);
+        } finally {
+            compactionQueued.set(false);
+        }
+    }
+
+    private ObjectId load(Document filter, List<String> usernames) {
+        ObjectId newest = null;
+        try (MongoCursor<Document> rows = mongoTemplate.getCollection(mongoTemplate.getCollectionName(User.class))
+                .find(filter).projection(new Document("username", 1)).batchSize(BATCH_SIZE).iterator()) {
+            while (rows.hasNext()) {
+                Document row = rows.next();
+                String username = row.getString("username");
+                if (username != null) {
+                    usernames.add(username);
+                }
+                if (row.get("_id") instanceof ObjectId id && (newest == null || id.compareTo(newest) > 0)) {
+                    newest = id;
+                }
+            }
+        }
+        return newest;
+    }
+
+    private int fuzzyDistance(String query) {
+        return query.length() <= SHORT_FUZZY_LENGTH ? Math.min(1, maxDistance) : maxDistance;
+    }
+
+    private long popularity(String username) {
+        synchronized (popularity) {
+            return popularity.estimate(username);
+        }
+    }
+
+    private void enforceBudget(PrefixIndex current, FuzzyIndex currentFuzzy) {
+        if (current != null && current.estimatedBytes() > maxBytes && index == current) {
+            log.warn("Username index grew past the {} byte budget; suggestions fall back to Mongo", maxBytes);
+            index = null;
+        }
+        if (currentFuzzy != null && currentFuzzy.estimatedBytes() > fuzzyMaxBytes && fuzzy == currentFuzzy) {
+            log.warn("Fuzzy username index grew past the {} byte budget; fuzzy search is off until the next rebuild",
+                    fuzzyMaxBytes);
+            fuzzy = null;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.harsh.tuple.paisa.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.harsh.tuple.paisa.exception.WalletNotFoundException;
+import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.Transaction;
+import org.harsh.tuple.paisa.repository.CashbackRepository;
+import org.harsh.tuple.paisa.repository.TransactionRepository;
+import org.harsh.tuple.paisa.repository.WalletRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.WebRequest;
+
+// *Strong ETags for polled wallet reads, built from projections so a 304 never touches history
+@Service
+@RequiredArgsConstructor
+public class WalletEtagService {
+
+    private final WalletRepository walletRepository;
+    private final TransactionRepository transactionRepository;
+    private final CashbackRepository cashbackRepository;
+    private final MeterRegistry meterRegistry;
+
+    // ?Every balance mutation bumps the wallet @Version
+    public String balanceEtag(String userId) {
+        return quote("b-" + walletVersion(userId));
+    }
+
+    // ?Ledger records are written after the wallet save, so the newest ids are part of the tag too
+    public String statementEtag(String userId, int page, int size) {
+        String latestTransaction = transactionRepository.findFirstByUserIdOrderByTimestampDesc(userId)
+                .map(Transaction::getId)
+                .orElse("0");
+        String latestCashback = cashbackRepository.findFirstByUserIdOrderByTimestampDesc(userId)
+                .map(Cashback::getId)
+                .orElse("0");
+        return quote("s-" + walletVersion(userId) + "-" + latestTransaction + "-" + latestCashback
+                + "-" + page + "-" + size);
+    }
+
+    // *Answers If-None-Match and records whether the body (and its history reads) was skipped
+    public boolean checkNotModified(WebRequest request, String etag, String resource) {
+        boolean notModified = request.checkNotModified(etag);
+        counter(resource, notModified ? "not_modified" : "modified").increment();
+        return notModified;
+    }
+
+    private long walletVersion(String userId) {
+        return walletRepository.findVersionByUserId(userId)
+                .orElseThrow(() -> new WalletNotFoundException(userId))
+                .getVersion();
+    }
+
+    private Counter counter(String resource, String outcome) {
+        return Counter.builder("wallet.conditional.requests")
+                .description("Conditional GETs on polled wallet endpoints")
+                .tag("resource", resource)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static String quote(String value) {
+        return "\"" + value + "\"";
+    }
+}
@@ -0,0 +1,144 @@
+package org.harsh.tuple.paisa.service;
+
+import com.mongodb.CursorType;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// *Carries wallet stream events between nodes: publishes are batched into a small capped collection (off the
+// *request thread, see WalletEventStream), and each node tails it (tailable await cursor, so no replica set is needed) and hands on the events other
+// *nodes wrote to its own SSE subscribers. Capped, so old events simply roll off
+@Slf4j
+@Component
+public class WalletEventRelay {
+
+    private static final String COLLECTION = "wallet_events";
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+
+    // *What WalletEventStream does with an event that arrived from another node
+    interface Listener {
+        void deliver(String userId, String kind, String json);
+    }
+
+    record Event(String userId, String kind, String json) {
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    private final long sizeBytes;
+    private final String nodeId = UUID.randomUUID().toString();
+    private volatile Listener listener;
+    private volatile boolean running;
+    private Thread tailer;
+
+    public WalletEventRelay(
+            MongoTemplate mongoTemplate,
+            @Value("${wallet.stream.relay.enabled:false}") boolean enabled,
+            @Value("${wallet.stream.relay.size-bytes:16777216}") long sizeBytes
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+        this.sizeBytes = sizeBytes;
+    }
+
+    void listen(Listener listener) {
+        this.listener = listener;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    // ?best effort like the local push: a failed insert costs the other nodes a few events, never the write itself
+    void send(List<Event> events) {
+        if (!enabled || events.isEmpty()) {
+            return;
+        }
+        try {
+            mongoTemplate.getCollection(COLLECTION).insertMany(events.stream()
+                    .map(event -> new Document("userId", event.userId())
+                            .append("kind", event.kind())
+                            .append("data", event.json())
+                            .append("node", nodeId))
+                    .toList());
+        } catch (MongoException ex) {
+            log.warn("Could not relay {} wallet events: {}", events.size(), ex.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (!mongoTemplate.collectionExists(COLLECTION)) {
+            try {
+                mongoTemplate.createCollection(COLLECTION, CollectionOptions.empty().capped().size(sizeBytes));
+            } catch (MongoException ex) {
+                //? another node created it first
+                log.debug("wallet_events not created: {}", ex.getMessage());
+            }
+        }
+        running = true;
+        tailer = Thread.ofVirtual().name("wallet-event-relay").start(this::tail);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (tailer != null) {
+            tailer.interrupt();
+        }
+    }
+
+    // ?resumes after the last event seen when the cursor dies (empty collection, failover); ObjectIds from nodes
+    // ?with skewed clocks can land just behind that point, those few events are lost like any other dropped push
+    private void tail() {
+        ObjectId after = new ObjectId();
+        MongoCollection<Document> events = mongoTemplate.getCollection(COLLECTION);
+        while (running) {
+            try (MongoCursor<Document> cursor = events.find(Filters.gt("_id", after))
+                    .cursorType(CursorType.TailableAwait)
+                    .maxAwaitTime(1, TimeUnit.SECONDS)
+                    .iterator()) {
+                while (running) {
+                    Document event = cursor.tryNext();
+                    if (event == null) {
+                        if (cursor.getServerCursor() == null) {
+                            break;
+                        }
+                        continue;
+                    }
+                    after = event.getObjectId("_id");
+                    Listener target = listener;
+                    if (target != null && !nodeId.equals(event.getString("node"))) {
+                        target.deliver(event.getString("userId"), event.getString("kind"), event.getString("data"));
+                    }
+                }
+            } catch (MongoException ex) {
+                log.warn("Wallet event relay cursor failed, reopening: {}", ex.getMessage());
+            }
+            try {
+                Thread.sleep(RETRY_DELAY);
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+}
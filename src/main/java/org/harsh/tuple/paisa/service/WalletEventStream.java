@@ -0,0 +1,258 @@
+package org.harsh.tuple.paisa.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// *Live balance/activity push over SSE. Idle emitters hold no thread (async servlet);
+// *sends run on virtual threads, one drain at a time per connection. Events also go to the other nodes'
+// *subscribers through WalletEventRelay, batched by a single drain so the publishing request never waits on Mongo
+@Slf4j
+@Component
+public class WalletEventStream {
+
+    private static final String BALANCE = "balance";
+    private static final String ACTIVITY = "activity";
+    private static final String RESYNC = "resync";
+    private static final int RELAY_BATCH = 256;
+
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final ConcurrentLinkedQueue<WalletEventRelay.Event> relayQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger relayBacklog = new AtomicInteger();
+    private final AtomicBoolean relaying = new AtomicBoolean();
+    private final Counter droppedEvents;
+    private final ObjectMapper objectMapper;
+    private final WalletEventRelay relay;
+    private final long timeoutMillis;
+    private final int queueCapacity;
+
+    public WalletEventStream(
+            MeterRegistry meterRegistry,
+            ObjectMapper objectMapper,
+            WalletEventRelay relay,
+            @Value("${wallet.stream.timeout:30m}") Duration timeout,
+            @Value("${wallet.stream.queue-capacity:32}") int queueCapacity
+    ) {
+        this.objectMapper = objectMapper;
+        this.relay = relay;
+        this.timeoutMillis = timeout.toMillis();
+        this.queueCapacity = queueCapacity;
+        relay.listen(this::deliver);
+        meterRegistry.gauge("wallet.stream.connections", connections);
+        this.droppedEvents = Counter.builder("wallet.stream.dropped")
+                .description("Queued SSE events discarded because a client could not keep up")
+                .register(meterRegistry);
+    }
+
+    public SseEmitter subscribe(String userId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(userId, emitter);
+        subscribers.computeIfAbsent(userId, _ -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        connections.incrementAndGet();
+
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(_ -> subscriber.close());
+        return emitter;
+    }
+
+    public void publishBalance(String userId, double balance) {
+        publish(userId, BALANCE, Map.of("balance", balance));
+    }
+
+    public void publishActivity(String userId, Object entry) {
+        publish(userId, ACTIVITY, entry);
+    }
+
+    public int connectionCount() {
+        return connections.get();
+    }
+
+    // ?Keeps proxies from cutting idle streams and flushes out connections that died silently
+    @Scheduled(fixedDelayString = "${wallet.stream.heartbeat-ms:20000}")
+    public void heartbeat() {
+        subscribers.values().forEach(set -> set.forEach(Subscriber::heartbeat));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.values().forEach(set -> set.forEach(subscriber -> subscriber.emitter.complete()));
+        senders.shutdownNow();
+    }
+
+    // ?serialized once, so every node sends the same JSON whichever one made the write
+    private void publish(String userId, String kind, Object data) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException ex) {
+            log.warn("Could not serialize {} event for user {}: {}", kind, userId, ex.getMessage());
+            return;
+        }
+        deliver(userId, kind, json);
+        if (relay.isEnabled()) {
+            enqueueRelay(new WalletEventRelay.Event(userId, kind, json));
+        }
+    }
+
+    // ?one drain at a time keeps events in publish order; if Mongo stalls the backlog is capped like a subscriber's
+    private void enqueueRelay(WalletEventRelay.Event event) {
+        if (relayBacklog.incrementAndGet() > queueCapacity * RELAY_BATCH) {
+            relayBacklog.decrementAndGet();
+            droppedEvents.increment();
+            return;
+        }
+        relayQueue.add(event);
+        if (relaying.compareAndSet(false, true)) {
+            senders.execute(this::drainRelay);
+        }
+    }
+
+    private void drainRelay() {
+        while (true) {
+            List<WalletEventRelay.Event> batch = new ArrayList<>();
+            WalletEventRelay.Event next;
+            while (batch.size() < RELAY_BATCH && (next = relayQueue.poll()) != null) {
+                batch.add(next);
+            }
+            if (batch.isEmpty()) {
+                relaying.set(false);
+                //? an event queued between the last poll and the reset would otherwise wait for the next publish
+                if (relayQueue.isEmpty() || !relaying.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            relayBacklog.addAndGet(-batch.size());
+            relay.send(batch);
+        }
+    }
+
+    // ?local subscribers only; events relayed from other nodes come in here too
+    private void deliver(String userId, String kind, String json) {
+        Set<Subscriber> targets = subscribers.get(userId);
+        if (targets == null) {
+            return;
+        }
+        for (Subscriber subscriber : targets) {
+            subscriber.offer(kind, json);
+        }
+    }
+
+    private record Outgoing(String kind, SseEmitter.SseEventBuilder event) {
+    }
+
+    private final class Subscriber {
+        private final String userId;
+        private final SseEmitter emitter;
+        private final ArrayDeque<Outgoing> pending = new ArrayDeque<>();
+        private boolean draining;
+        private boolean closed;
+
+        Subscriber(String userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        void offer(String kind, String json) {
+            Outgoing outgoing = new Outgoing(kind, SseEmitter.event().name(kind).data(json, MediaType.APPLICATION_JSON));
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (BALANCE.equals(kind)) {
+                    // ?only the latest balance matters, an unsent older one is replaced
+                    pending.removeIf(queued -> BALANCE.equals(queued.kind()));
+                }
+                if (pending.size() >= queueCapacity) {
+                    // ?slow consumer: throw the backlog away and tell the client to refetch once
+                    droppedEvents.increment(pending.size());
+                    pending.clear();
+                    pending.add(new Outgoing(RESYNC, SseEmitter.event().name(RESYNC).data(Map.of())));
+                }
+                pending.add(outgoing);
+            }
+            scheduleDrain();
+        }
+
+        void heartbeat() {
+            synchronized (this) {
+                if (closed || draining || !pending.isEmpty()) {
+                    return;
+                }
+                pending.add(new Outgoing("heartbeat", SseEmitter.event().comment("heartbeat")));
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            synchronized (this) {
+                if (draining || closed) {
+                    return;
+                }
+                draining = true;
+            }
+            senders.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                Outgoing next;
+                synchronized (this) {
+                    next = pending.pollFirst();
+                    if (next == null || closed) {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    emitter.send(next.event());
+                } catch (IOException | IllegalStateException ex) {
+                    log.debug("Closing wallet stream for user {}: {}", userId, ex.getMessage());
+                    close();
+                    emitter.completeWithError(ex);
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                pending.clear();
+            }
+            connections.decrementAndGet();
+            subscribers.computeIfPresent(userId, (_, set) -> {
+                set.remove(this);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+}
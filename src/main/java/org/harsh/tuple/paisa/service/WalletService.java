@@ -2,6 +2,7 @@ package org.harsh.tuple.paisa.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.harsh.tuple.paisa.dto.StatementResponse;
 import org.harsh.tuple.paisa.exception.InsufficientBalanceException;
 import org.harsh.tuple.paisa.exception.InvalidTransactionAmountException;
 import org.harsh.tuple.paisa.exception.WalletNotFoundException;
@@ -10,34 +11,55 @@ import org.harsh.tuple.paisa.repository.CashbackRepository;
 import org.harsh.tuple.paisa.repository.TransactionRepository;
 import org.harsh.tuple.paisa.repository.UserRepository;
 import org.harsh.tuple.paisa.repository.WalletRepository;
-import org.springframework.data.domain.Page;
+import org.harsh.tuple.paisa.util.ConcurrentReads;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.transaction.annotation.Transactional;
 
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class WalletService {
 
+    private static final Duration READ_DEADLINE = Duration.ofSeconds(5);
+    private static final int MAX_CREDIT_ATTEMPTS = 3;
+
     private final WalletRepository walletRepository;
     private final TransactionRepository transactionRepository;
     private final CashbackService cashbackService;
         private final EmailService emailService;
     private final UserRepository userRepository;
     private final CashbackRepository cashbackRepository;
+    private final HistoryStore historyStore;
+    private final WalletEventStream walletEventStream;
+    private final LedgerSequenceService ledgerSequenceService;
+    private final RollupService rollupService;
+    private final AnalyticsCache analyticsCache;
+    private final CounterpartyInsightsService counterpartyInsightsService;
+    private final ColumnarLedgerStore columnarLedgerStore;
+    private final SpendingDistributionService spendingDistributionService;
+    private final MongoTemplate mongoTemplate;
+    private final CashbackSettlementService cashbackSettlementService;
+    private final CashbackCapService cashbackCapService;
+    private final UsernameIndex usernameIndex;
+    private final RecentRecipients recentRecipients;
     LocalDateTime now = LocalDateTime.now();
-    private final Map<String, List<Object>> userHistoryMap = new ConcurrentHashMap<>();
 
     @Transactional
     public Transaction rechargeWallet(String userId, double amount) {
@@ -45,35 +67,98 @@ public class WalletService {
             throw new InvalidTransactionAmountException(amount);
         }
 
-        Wallet wallet = walletRepository.findByUserId(userId)
-                .orElseThrow(() -> new WalletNotFoundException(userId));
-
-        // ?Update balance
-        wallet.setBalance(wallet.getBalance() + amount);
-
-        // ?Save wallet with version cntrl
-        walletRepository.save(wallet);
-
+        // ?Cashback is decided first so the wallet is credited once with recharge + cashback;
+        // ?in deferred mode it is only accrued here and credited by the next settlement batch
+        CashbackService.Quote quote = cashbackService.quoteCashback(userId, amount, false);
+        double cashbackAmount = quote.amount();
+        boolean deferred = cashbackSettlementService.isDeferred();
+        LocalDateTime timestamp = LocalDateTime.now();
+        Credit credit;
+        try {
+            credit = creditWallet(userId, amount, deferred ? 0 : cashbackAmount, timestamp);
+        } catch (WalletNotFoundException ex) {
+            cashbackService.releaseUnused(quote, 0);
+            throw ex;
+        }
+        //? inline, the cap may have cut the cashback; deferred, settlement hands back what it trims
+        if (!deferred) {
+            cashbackService.releaseUnused(quote, credit.cashback());
+        }
+        Wallet wallet = credit.wallet();
+        boolean creditCashback = credit.cashback() > 0;
 
-        // ?Record transaction
+        // ?Record transaction (and cashback), both sequence numbers reserved together
+        long lastSeq = ledgerSequenceService.next(userId, creditCashback ? 2 : 1);
         Transaction transaction = Transaction.builder()
                 .userId(userId)
+                .seq(creditCashback ? lastSeq - 1 : lastSeq)
                 .recipientId("self")
                 .walletId(wallet.getId())
                 .type(TransactionType.RECHARGE)
                 .amount(amount)
-                .timestamp(LocalDateTime.now())
+                .timestamp(timestamp)
                 .build();
         transaction = transactionRepository.save(transaction);
+        rollupService.recordRecharge(userId, timestamp, amount, credit.cashback());
+        columnarLedgerStore.append(userId, transaction.getSeq(), transaction.getTimestamp(), LedgerEntryKind.RECHARGE, amount);
+        spendingDistributionService.record(userId, TransactionType.RECHARGE, amount, transaction.getTimestamp());
+        Cashback cashback = creditCashback
+                ? cashbackService.recordCashback(userId, lastSeq, credit.cashback(), timestamp)
+                : null;
+        if (cashbackAmount > 0 && deferred) {
+            cashbackSettlementService.accrue(userId, cashbackAmount, quote.campaignId(), timestamp);
+        }
+        analyticsCache.invalidate(userId);
 
-        // ?Apply cshbck
-        cashbackService.applyCashback(userId, amount);
+        walletEventStream.publishBalance(userId, wallet.getBalance());
+        walletEventStream.publishActivity(userId, transaction);
+        if (cashback != null) {
+            walletEventStream.publishActivity(userId, cashback);
+        }
         //?Snd email
         sendEmail(userId, amount);
 
         return transaction;
     }
 
+    // ?one findAndModify instead of read + versioned save; the version still moves so concurrent save()s notice
+    // ?with a monthly cap the same update only matches while the month's cashback stays under it; when it does not,
+    // ?the wallet is re-read, the cashback trimmed to what is left, and the credit tried again
+    private Credit creditWallet(String userId, double amount, double cashbackAmount, LocalDateTime timestamp) {
+        YearMonth month = YearMonth.from(timestamp);
+        double cashback = cashbackCapService.clip(userId, month, cashbackAmount);
+        for (int attempt = 1; ; attempt++) {
+            Update update = new Update()
+                    .inc("balance", amount + cashback)
+                    .inc("version", 1)
+                    .set("updatedAt", timestamp);
+            Query query = Query.query(Criteria.where("userId").is(userId));
+            if (cashback > 0) {
+                CashbackService.addToTotals(update, cashback, month);
+                if (cashbackCapService.isEnabled()) {
+                    query.addCriteria(cashbackCapService.withinCap(month, cashback));
+                }
+            }
+            Wallet wallet = mongoTemplate.findAndModify(query, update,
+                    FindAndModifyOptions.options().returnNew(true), Wallet.class);
+            if (wallet != null) {
+                cashbackCapService.observe(wallet, month);
+                return new Credit(wallet, cashback);
+            }
+            if (cashback == 0) {
+                throw new WalletNotFoundException(userId);
+            }
+            Wallet current = walletRepository.findByUserId(userId)
+                    .orElseThrow(() -> new WalletNotFoundException(userId));
+            cashbackCapService.observe(current, month);
+            //? a user racing their own cap gives up the cashback rather than retrying forever
+            cashback = attempt < MAX_CREDIT_ATTEMPTS ? cashbackCapService.clip(userId, month, cashback) : 0;
+        }
+    }
+
+    private record Credit(Wallet wallet, double cashback) {
+    }
+
 
     @Transactional
     public List<Transaction> transferWallet(String senderId, String recipientId, double amount) {
@@ -103,6 +188,7 @@ public class WalletService {
         //? Recording trnsaction for both sndr and receiver
         Transaction senderTransaction = Transaction.builder()
                 .userId(senderId)
+                .seq(ledgerSequenceService.next(senderId))
                 .senderId(null)
                 .senderUsername(null)
                 .walletId(senderWallet.getId())
@@ -115,6 +201,7 @@ public class WalletService {
 
         Transaction recipientTransaction = Transaction.builder()
                 .userId(recipientId)
+                .seq(ledgerSequenceService.next(recipientId))
                 .senderId(senderId)
                 .senderUsername(senderUsername)
                 .walletId(recipientWallet.getId())
@@ -127,6 +214,21 @@ public class WalletService {
 
         transactionRepository.save(senderTransaction);
         transactionRepository.save(recipientTransaction);
+        rollupService.record(senderId, senderTransaction.getTimestamp(), LedgerEntryKind.TRANSFER_OUT, amount);
+        rollupService.record(recipientId, recipientTransaction.getTimestamp(), LedgerEntryKind.TRANSFER_IN, amount);
+        columnarLedgerStore.append(senderId, senderTransaction.getSeq(), senderTransaction.getTimestamp(), LedgerEntryKind.TRANSFER_OUT, amount);
+        columnarLedgerStore.append(recipientId, recipientTransaction.getSeq(), recipientTransaction.getTimestamp(), LedgerEntryKind.TRANSFER_IN, amount);
+        spendingDistributionService.record(senderId, TransactionType.TRANSFER, amount, senderTransaction.getTimestamp());
+        analyticsCache.invalidate(senderId);
+        analyticsCache.invalidate(recipientId);
+        counterpartyInsightsService.recordTransfer(senderId, recipientId);
+        usernameIndex.recordRecipient(recipientUsername);
+        recentRecipients.record(senderId, recipientUsername, senderTransaction.getTimestamp());
+
+        walletEventStream.publishBalance(senderId, senderWallet.getBalance());
+        walletEventStream.publishActivity(senderId, senderTransaction);
+        walletEventStream.publishBalance(recipientId, recipientWallet.getBalance());
+        walletEventStream.publishActivity(recipientId, recipientTransaction);
 
         sendEmail(recipientId, amount);
         return List.of(senderTransaction, recipientTransaction);
@@ -138,14 +240,20 @@ public class WalletService {
         return wallet.getBalance();
     }
 
-    public List<Object> getCombinedHistory(String userId, int page, int size) {
+    public StatementResponse getCombinedHistory(String userId, int page, int size) {
         List<Object> combinedList = new ArrayList<>();
 
 
+        //? Slice reads size+1 rows to work out hasNext, no count query
         Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "timestamp"));
-        Page<Transaction> transactions = transactionRepository.findByUserId(userId, pageable);
+        ConcurrentReads.Both<Slice<Transaction>, Slice<Cashback>> reads = ConcurrentReads.both(
+                () -> transactionRepository.findByUserId(userId, pageable),
+                () -> cashbackRepository.findByUserId(userId, pageable),
+                READ_DEADLINE
+        );
+        Slice<Transaction> transactions = reads.first();
         List<Transaction> transactionList = transactions.getContent();
-        Page<Cashback> cashbacks = cashbackRepository.findByUserId(userId, pageable);
+        Slice<Cashback> cashbacks = reads.second();
         List<Cashback> cashbackList = cashbacks.getContent();
 
 
@@ -177,22 +285,23 @@ public class WalletService {
             return 0;
         });
 
-        return combinedList;
+        return StatementResponse.builder()
+                .history(combinedList)
+                .page(page)
+                .size(size)
+                .hasMore(transactions.hasNext() || cashbacks.hasNext())
+                .build();
     }
 
 
     public void addHistory(String userId, List<Map<String, Object>> history) {
         log.info("adding history");
-
-        userHistoryMap.computeIfAbsent(userId, id -> new ArrayList<>()).addAll(history);
-
-        log.info("history added calling get history");
-        getHistory(userId);
+        historyStore.append(userId, history);
     }
 
     public List<Object> getHistory(String userId) {
         log.info("getting history and returning list");
-        return new ArrayList<>(userHistoryMap.getOrDefault(userId, Collections.emptyList()));
+        return historyStore.snapshot(userId);
     }
 
 
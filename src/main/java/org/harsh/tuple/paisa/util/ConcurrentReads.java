@@ -0,0 +1,72 @@
+package org.harsh.tuple.paisa.util;
+
+import org.harsh.tuple.paisa.exception.HistoryReadTimeoutException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.TimeoutException;
+
+// *Runs independent reads side by side on virtual threads (StructuredTaskScope, preview in Java 23).
+// *Latency is the slowest read instead of the sum; if one read fails or the deadline passes, the other is cancelled
+public final class ConcurrentReads {
+
+    private ConcurrentReads() {
+    }
+
+    public record Both<A, B>(A first, B second) {
+    }
+
+    public static <A, B> Both<A, B> both(Callable<A> first, Callable<B> second, Duration deadline) {
+        List<Object> results = all(List.of(first::call, second::call), 2, deadline);
+        @SuppressWarnings("unchecked")
+        Both<A, B> both = new Both<>((A) results.get(0), (B) results.get(1));
+        return both;
+    }
+
+    // *Same contract for any number of reads, with at most maxConcurrency of them hitting the database at once. The
+    // *deadline covers all of them, reads still queued behind the permits when it passes are cancelled too
+    public static <T> List<T> all(List<Callable<T>> reads, int maxConcurrency, Duration deadline) {
+        Semaphore permits = new Semaphore(maxConcurrency);
+        try (var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+            List<StructuredTaskScope.Subtask<T>> subtasks = new ArrayList<>(reads.size());
+            for (Callable<T> read : reads) {
+                subtasks.add(scope.fork(() -> {
+                    permits.acquire();
+                    try {
+                        return read.call();
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            scope.joinUntil(Instant.now().plus(deadline));
+            scope.throwIfFailed();
+            List<T> results = new ArrayList<>(subtasks.size());
+            for (StructuredTaskScope.Subtask<T> subtask : subtasks) {
+                results.add(subtask.get());
+            }
+            return results;
+        } catch (TimeoutException ex) {
+            throw new HistoryReadTimeoutException(deadline);
+        } catch (ExecutionException ex) {
+            //? surface the read's own exception (WalletNotFoundException, DataAccessException, ...)
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (ex.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading history", ex);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.harsh.tuple.paisa.util;
+
+import java.nio.ByteBuffer;
+
+// *Fixed-size frequency estimator: never under-counts, over-counts by at most e/width of the total
+// *with probability 1 - e^-depth. Sketches of the same shape merge by adding counters
+public final class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final long[] counts;
+    private long total;
+
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || width < 1) {
+            throw new IllegalArgumentException("Depth and width must be >= 1");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counts = new long[depth * width];
+    }
+
+    public void add(String key, long count) {
+        long hash = SketchHash.hash64(key);
+        for (int row = 0; row < depth; row++) {
+            counts[row * width + column(hash, row)] += count;
+        }
+        total += count;
+    }
+
+    public long estimate(String key) {
+        long hash = SketchHash.hash64(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counts[row * width + column(hash, row)]);
+        }
+        return estimate;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    public void merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("Cannot merge sketches of different shape");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 2 + Long.BYTES * (counts.length + 1));
+        buffer.putInt(depth).putInt(width).putLong(total);
+        for (long count : counts) {
+            buffer.putLong(count);
+        }
+        return buffer.array();
+    }
+
+    public static CountMinSketch fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CountMinSketch sketch = new CountMinSketch(buffer.getInt(), buffer.getInt());
+        sketch.total = buffer.getLong();
+        for (int i = 0; i < sketch.counts.length; i++) {
+            sketch.counts[i] = buffer.getLong();
+        }
+        return sketch;
+    }
+
+    // ?Kirsch-Mitzenmacher: row hashes derived from the two halves of one 64-bit hash
+    private int column(long hash, int row) {
+        int combined = (int) hash + row * (int) (hash >>> 32);
+        return Math.floorMod(combined, width);
+    }
+}
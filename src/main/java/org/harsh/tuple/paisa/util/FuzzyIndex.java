@@ -0,0 +1,467 @@
+package org.harsh.tuple.paisa.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+// *Typo-tolerant lookup over a set of strings (SymSpell-style deletion dictionary). The first PREFIX_LENGTH
+// *case-folded characters of every value are expanded into each string reachable by up to maxDistance deletions,
+// *stored as (32-bit hash, length, position) in one sorted long[]. A query expands its own prefix the same way; values
+// *sharing a deletion are candidates, screened by length and character set and then confirmed with a bounded edit
+// *distance (adjacent swaps count as one edit). Adds and removes go to an overlay until compacted() folds them in
+public final class FuzzyIndex {
+
+    // ?every extra prefix character multiplies the deletions stored per value; the tail signature covers the rest
+    private static final int PREFIX_LENGTH = 7;
+    private static final int TAIL_LENGTH = 4;
+    private static final int POSITION_BITS = 26;
+    private static final int MAX_VALUES = 1 << POSITION_BITS;
+    private static final int MAX_LENGTH = (1 << (32 - POSITION_BITS)) - 1;
+    private static final int VALUE_OVERHEAD_BYTES = 64;
+    // ?concurrent map node + set slot per overlay deletion
+    private static final int OVERLAY_ENTRY_BYTES = 96;
+
+    private final int maxDistance;
+    // ?folded values back to back, value i at [offsets[i], offsets[i + 1]): candidates are compared without
+    // ?dereferencing a String each
+    private final char[] arena;
+    private final int[] offsets;
+    private final String[] values;
+    // ?character-class bitmasks per position of the whole key and of its last TAIL_LENGTH characters, see signature().
+    // ?The tail set separates long values that share the indexed prefix
+    private final long[] signatures;
+    private final long[] tails;
+    // ?deletion hash | capped key length | position, sorted so one hash is a contiguous run ordered by length
+    private final long[] entries;
+    private final long baseBytes;
+    private final Map<Integer, Set<String>> added = new ConcurrentHashMap<>();
+    private final Set<String> addedValues = ConcurrentHashMap.newKeySet();
+    private final Set<String> removed = ConcurrentHashMap.newKeySet();
+    private volatile long overlayEntries;
+
+    public record Match(String value, int distance) {
+    }
+
+    public FuzzyIndex(Collection<String> values, int maxDistance) {
+        if (maxDistance < 1) {
+            throw new IllegalArgumentException("Max distance must be >= 1");
+        }
+        this.maxDistance = maxDistance;
+        //? in folded order, values sharing a prefix (and so most of their deletions) sit next to each other and a run
+        //? of candidates reads neighbouring signatures and keys instead of jumping across the heap
+        this.values = values.stream()
+                .distinct()
+                .map(value -> Map.entry(PrefixIndex.fold(value), value))
+                .sorted(Map.Entry.comparingByKey())
+                .map(Map.Entry::getValue)
+                .toArray(String[]::new);
+        if (this.values.length > MAX_VALUES) {
+            throw new IllegalArgumentException("At most " + MAX_VALUES + " values can be indexed");
+        }
+        this.offsets = new int[this.values.length + 1];
+        this.signatures = new long[this.values.length];
+        this.tails = new long[this.values.length];
+
+        StringBuilder keys = new StringBuilder();
+        long[] packed = new long[this.values.length * 8];
+        int size = 0;
+        Set<String> deletions = new HashSet<>();
+        for (int position = 0; position < this.values.length; position++) {
+            String key = PrefixIndex.fold(this.values[position]);
+            keys.append(key);
+            offsets[position + 1] = keys.length();
+            signatures[position] = signature(key, 0);
+            tails[position] = signature(key, key.length() - TAIL_LENGTH);
+
+            deletions.clear();
+            deletions(key, maxDistance, deletions);
+            if (size + deletions.size() > packed.length) {
+                packed = Arrays.copyOf(packed, Math.max(packed.length * 3 / 2, size + deletions.size()));
+            }
+            for (String deletion : deletions) {
+                packed[size++] = entry(hash(deletion), key.length(), position);
+            }
+        }
+        this.arena = keys.toString().toCharArray();
+        this.entries = Arrays.copyOf(packed, size);
+        Arrays.parallelSort(entries);
+        long valueBytes = 0;
+        for (String value : this.values) {
+            valueBytes += VALUE_OVERHEAD_BYTES + value.length();
+        }
+        this.baseBytes = valueBytes + 2L * arena.length + (long) (entries.length + 2 * signatures.length) * Long.BYTES
+                + (long) offsets.length * Integer.BYTES;
+    }
+
+    // *Upper bound of the memory new FuzzyIndex(values, maxDistance) will need, without building it
+    public static long estimateBytes(Collection<String> values, int maxDistance) {
+        long bytes = Integer.BYTES;
+        for (String value : values) {
+            int length = Math.min(value.length(), PREFIX_LENGTH);
+            long combinations = 1;
+            long deletions = 1;
+            for (int k = 1; k <= Math.min(maxDistance, length); k++) {
+                combinations = combinations * (length - k + 1) / k;
+                deletions += combinations;
+            }
+            bytes += VALUE_OVERHEAD_BYTES + 3L * value.length() + Integer.BYTES + (deletions + 2) * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    // *Up to limit values within distance edits of query (any case): closest first, then most popular, then by value
+    public List<Match> search(String query, int distance, int limit, ToLongFunction<String> popularity) {
+        if (distance < 0 || distance > maxDistance) {
+            throw new IllegalArgumentException("Distance must be between 0 and " + maxDistance);
+        }
+        String folded = PrefixIndex.fold(query);
+        Set<String> deletions = new HashSet<>();
+        deletions(folded, distance, deletions);
+        String prefix = folded.length() > PREFIX_LENGTH ? folded.substring(0, PREFIX_LENGTH) : folded;
+        //? a match within e edits shares a deletion that is at most e deep on both sides, so deletions are walked
+        //? shallowest first: once limit matches sit within the depths walked so far, nothing left can make the page
+        //? and the deep runs (short deletions, shared by thousands of names in dense prefixes) are never read
+        List<List<String>> byDepth = new ArrayList<>();
+        for (int depth = 0; depth <= distance; depth++) {
+            byDepth.add(new ArrayList<>());
+        }
+        for (String deletion : deletions) {
+            byDepth.get(prefix.length() - deletion.length()).add(deletion);
+        }
+
+        //? values with the query's whole prefix sit in every run; they are a contiguous block of positions, taken
+        //? from the undeleted prefix's run only
+        long querySignature = signature(folded, 0);
+        long queryTail = signature(folded, folded.length() - TAIL_LENGTH);
+        int sharedFrom = prefix.length() == PREFIX_LENGTH ? firstAtLeast(prefix, false) : 0;
+        int sharedTo = prefix.length() == PREFIX_LENGTH ? firstAtLeast(prefix, true) : 0;
+        char[] target = folded.toCharArray();
+        int[] rows = new int[3 * (target.length + 1)];
+        int[] candidates = new int[64];
+        int[] evaluated = new int[0];
+        Set<String> overlayCandidates = new HashSet<>();
+        Set<String> overlayEvaluated = new HashSet<>();
+        List<Scored> found = new ArrayList<>();
+        int[] atDistance = new int[distance + 1];
+        int bound = distance;
+        for (int depth = 0; depth <= bound; depth++) {
+            int count = 0;
+            for (String deletion : byDepth.get(depth)) {
+                int hash = hash(deletion);
+                //? a value reaches this deletion with min(length, PREFIX_LENGTH) - deletion.length() deletions of
+                //? its own, so below PREFIX_LENGTH only lengths up to bound past the deletion can match
+                int longest = deletion.length() + bound < PREFIX_LENGTH
+                        ? deletion.length() + bound
+                        : folded.length() + bound;
+                long last = entry(hash, longest, MAX_VALUES - 1);
+                for (int i = lowerBound(entry(hash, Math.max(0, folded.length() - bound), 0)); i < entries.length && entries[i] <= last; i++) {
+                    int position = (int) entries[i] & (MAX_VALUES - 1);
+                    if (depth > 0 && position >= sharedFrom && position < sharedTo) {
+                        continue;
+                    }
+                    //? common names share prefixes, the signatures rule out most of a run before the edit distance
+                    if (within(querySignature, signatures[position], bound) && within(queryTail, tails[position], bound)) {
+                        if (count == candidates.length) {
+                            candidates = Arrays.copyOf(candidates, count * 2);
+                        }
+                        candidates[count++] = position;
+                    }
+                }
+                Set<String> overlay = added.get(hash);
+                if (overlay != null) {
+                    overlayCandidates.addAll(overlay);
+                }
+            }
+
+            Arrays.sort(candidates, 0, count);
+            int distinct = 0;
+            for (int i = 0; i < count; i++) {
+                int position = candidates[i];
+                //? the same value is reached through several deletions, at this depth or a shallower one
+                if (i > 0 && candidates[i - 1] == position || Arrays.binarySearch(evaluated, position) >= 0) {
+                    continue;
+                }
+                candidates[distinct++] = position;
+                if (!removed.isEmpty() && removed.contains(values[position])) {
+                    continue;
+                }
+                int from = offsets[position];
+                int length = offsets[position + 1] - from;
+                int edits = distance(arena, from, length, target, bound, rows);
+                if (edits <= bound) {
+                    String value = values[position];
+                    found.add(new Scored(value, new String(arena, from, length), edits, popularity.applyAsLong(value)));
+                    bound = tighten(atDistance, edits, limit, bound);
+                }
+            }
+            evaluated = merge(evaluated, candidates, distinct);
+
+            overlayCandidates.removeAll(overlayEvaluated);
+            for (String value : overlayCandidates) {
+                String key = PrefixIndex.fold(value);
+                int edits = distance(key.toCharArray(), 0, key.length(), target, bound, rows);
+                if (edits <= bound) {
+                    found.add(new Scored(value, key, edits, popularity.applyAsLong(value)));
+                    bound = tighten(atDistance, edits, limit, bound);
+                }
+            }
+            overlayEvaluated.addAll(overlayCandidates);
+            overlayCandidates.clear();
+        }
+
+        int kept = bound;
+        found.removeIf(scored -> scored.distance() > kept);
+        found.sort(Comparator.comparingInt(Scored::distance)
+                .thenComparing(Comparator.comparingLong(Scored::popularity).reversed())
+                .thenComparing(Scored::key)
+                .thenComparing(Scored::value));
+        return found.stream()
+                .limit(limit)
+                .map(scored -> new Match(scored.value(), scored.distance()))
+                .toList();
+    }
+
+    // ?counts one more match at edits and returns the smallest distance that already holds limit matches, or bound
+    private static int tighten(int[] atDistance, int edits, int limit, int bound) {
+        atDistance[edits]++;
+        int matches = 0;
+        for (int d = 0; d < bound; d++) {
+            matches += atDistance[d];
+            if (matches >= limit) {
+                return d;
+            }
+        }
+        return bound;
+    }
+
+    // ?sorted union of two ascending position arrays
+    private static int[] merge(int[] sorted, int[] more, int count) {
+        int[] merged = Arrays.copyOf(sorted, sorted.length + count);
+        System.arraycopy(more, 0, merged, sorted.length, count);
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    public synchronized void add(String value) {
+        if (removed.remove(value) || addedValues.contains(value) || baseContains(value)) {
+            return;
+        }
+        Set<String> deletions = new HashSet<>();
+        deletions(PrefixIndex.fold(value), maxDistance, deletions);
+        for (String deletion : deletions) {
+            added.computeIfAbsent(hash(deletion), _ -> ConcurrentHashMap.newKeySet()).add(value);
+        }
+        addedValues.add(value);
+        overlayEntries += deletions.size();
+    }
+
+    public synchronized void remove(String value) {
+        if (addedValues.remove(value)) {
+            Set<String> deletions = new HashSet<>();
+            deletions(PrefixIndex.fold(value), maxDistance, deletions);
+            for (String deletion : deletions) {
+                added.computeIfPresent(hash(deletion), (_, overlay) -> {
+                    overlay.remove(value);
+                    return overlay.isEmpty() ? null : overlay;
+                });
+            }
+            overlayEntries -= deletions.size();
+        } else if (baseContains(value)) {
+            removed.add(value);
+        }
+    }
+
+    // *A fresh index with the overlay folded in; changes made while it builds are not carried over
+    public FuzzyIndex compacted() {
+        List<String> current;
+        synchronized (this) {
+            current = new ArrayList<>(values.length + addedValues.size());
+            for (String value : values) {
+                if (!removed.contains(value)) {
+                    current.add(value);
+                }
+            }
+            current.addAll(addedValues);
+        }
+        return new FuzzyIndex(current, maxDistance);
+    }
+
+    // ?adds and removes not yet folded into the sorted entries
+    public int pending() {
+        return addedValues.size() + removed.size();
+    }
+
+    public int size() {
+        return values.length - removed.size() + addedValues.size();
+    }
+
+    public long estimatedBytes() {
+        return baseBytes + overlayEntries * OVERLAY_ENTRY_BYTES;
+    }
+
+    // *Optimal string alignment distance, or max + 1 as soon as it is known to exceed max
+    public static int distance(String a, String b, int max) {
+        return distance(a.toCharArray(), 0, a.length(), b.toCharArray(), max, new int[3 * (b.length() + 1)]);
+    }
+
+    // ?source[from, from + length) against target; rows = three scratch rows of target.length + 1, reused across calls
+    private static int distance(char[] source, int from, int length, char[] target, int max, int[] rows) {
+        if (Math.abs(length - target.length) > max) {
+            return max + 1;
+        }
+        int width = target.length + 1;
+        int beforePrevious = 0;
+        int previous = width;
+        int current = 2 * width;
+        for (int j = 0; j < width; j++) {
+            rows[previous + j] = j;
+        }
+        for (int i = 1; i <= length; i++) {
+            char a = source[from + i - 1];
+            rows[current] = i;
+            int rowMin = i;
+            for (int j = 1; j < width; j++) {
+                char b = target[j - 1];
+                int value = Math.min(Math.min(rows[previous + j] + 1, rows[current + j - 1] + 1),
+                        rows[previous + j - 1] + (a == b ? 0 : 1));
+                if (i > 1 && j > 1 && a == target[j - 2] && source[from + i - 2] == b) {
+                    value = Math.min(value, rows[beforePrevious + j - 2] + 1);
+                }
+                rows[current + j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            //? every later row is at least this row's minimum
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(rows[previous + width - 1], max + 1);
+    }
+
+    // ?the key's prefix plus every string reachable from it by up to distance deletions
+    private static void deletions(String key, int distance, Set<String> out) {
+        String prefix = key.length() > PREFIX_LENGTH ? key.substring(0, PREFIX_LENGTH) : key;
+        out.add(prefix);
+        expand(prefix, distance, out);
+    }
+
+    private static void expand(String word, int distance, Set<String> out) {
+        if (distance == 0 || word.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            String shorter = word.substring(0, i) + word.substring(i + 1);
+            //? a string already seen was reached with the same number of deletions, its expansion is done
+            if (out.add(shorter)) {
+                expand(shorter, distance - 1, out);
+            }
+        }
+    }
+
+    private boolean baseContains(String value) {
+        String folded = PrefixIndex.fold(value);
+        int hash = hash(folded.length() > PREFIX_LENGTH ? folded.substring(0, PREFIX_LENGTH) : folded);
+        long last = entry(hash, folded.length(), MAX_VALUES - 1);
+        for (int i = lowerBound(entry(hash, folded.length(), 0)); i < entries.length && entries[i] <= last; i++) {
+            if (values[(int) entries[i] & (MAX_VALUES - 1)].equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ?lengths past MAX_LENGTH share the top slot, the edit distance still tells them apart
+    private static long entry(int hash, int length, int position) {
+        return ((long) hash << 32) | ((long) Math.min(length, MAX_LENGTH) << POSITION_BITS) | position;
+    }
+
+    // ?one bit per character class (letters, digits, the rest folded together) over key[from, key.length()). An edit
+    // ?adds at most one class to either side, whether the set covers the whole key or only its tail, so values more
+    // ?than distance classes apart in either direction cannot match
+    private static long signature(String key, int from) {
+        long signature = 0;
+        for (int i = Math.max(0, from); i < key.length(); i++) {
+            char c = key.charAt(i);
+            int bit = c >= 'a' && c <= 'z' ? c - 'a'
+                    : c >= '0' && c <= '9' ? 26 + c - '0'
+                    : 36 + c % 28;
+            signature |= 1L << bit;
+        }
+        return signature;
+    }
+
+    private static boolean within(long query, long value, int distance) {
+        return Long.bitCount(query & ~value) <= distance && Long.bitCount(value & ~query) <= distance;
+    }
+
+    // ?first position whose key is >= prefix, or with past set, the first one after every key starting with prefix
+    private int firstAtLeast(String prefix, boolean past) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int compared = comparePrefix(mid, prefix);
+            if (compared < 0 || past && compared == 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // ?key at position against prefix: 0 when the key starts with it
+    private int comparePrefix(int position, String prefix) {
+        int from = offsets[position];
+        int length = offsets[position + 1] - from;
+        for (int i = 0; i < Math.min(length, prefix.length()); i++) {
+            int compared = Character.compare(arena[from + i], prefix.charAt(i));
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return length < prefix.length() ? -1 : 0;
+    }
+
+    // ?first position whose entry is >= from
+    private int lowerBound(long from) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries[mid] < from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // ?FNV-1a over chars with a murmur3 finalizer, as SketchHash but without encoding millions of deletions to bytes
+    private static int hash(String deletion) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < deletion.length(); i++) {
+            hash ^= deletion.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) (hash ^ hash >>> 29);
+    }
+
+    private record Scored(String value, String key, int distance, long popularity) {
+    }
+}
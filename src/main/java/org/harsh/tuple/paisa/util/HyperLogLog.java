@@ -0,0 +1,82 @@
+package org.harsh.tuple.paisa.util;
+
+import java.util.Arrays;
+
+// *Distinct-count estimator in 2^precision one-byte registers, standard error about 1.04 / sqrt(2^precision).
+// *Merging takes the register-wise max, so node-local sketches combine losslessly
+public final class HyperLogLog {
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Precision must be between 4 and 18");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.precision = Integer.numberOfTrailingZeros(registers.length);
+        this.registers = registers;
+    }
+
+    public void add(String value) {
+        long hash = SketchHash.hash64(value);
+        int index = (int) (hash >>> (64 - precision));
+        //? rank = position of the first 1 bit in the remaining bits; the sentinel bit caps it
+        long remaining = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    public long cardinality() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // ?small range: linear counting is far more accurate
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge sketches of different precision");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+    }
+
+    public byte[] toBytes() {
+        return Arrays.copyOf(registers, registers.length);
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        if (Integer.bitCount(bytes.length) != 1) {
+            throw new IllegalArgumentException("Register count must be a power of two");
+        }
+        return new HyperLogLog(Arrays.copyOf(bytes, bytes.length));
+    }
+
+    private static double alpha(int m) {
+        return switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+    }
+}
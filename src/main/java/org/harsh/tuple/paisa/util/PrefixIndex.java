@@ -0,0 +1,188 @@
+package org.harsh.tuple.paisa.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// *Case-insensitive prefix lookup over a set of strings: a sorted array of case-folded keys (binary search to the
+// *first match, then a sequential walk) plus a small sorted overlay of recent adds and removes that is folded into
+// *a fresh array once it grows. Reads take no lock; writes are serialised and cheap until a merge
+public final class PrefixIndex {
+
+    // ?overlay size at which adds/removes are merged into a new array
+    private static final int MERGE_THRESHOLD = 1024;
+    // ?rough per-entry cost: two array slots, String header + backing array, and a folded copy when it differs
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+    private static final Comparator<String> ORDER = Comparator.comparing(PrefixIndex::fold).thenComparing(s -> s);
+
+    private volatile State state;
+
+    public PrefixIndex(Collection<String> values) {
+        this.state = new State(Snapshot.of(values.stream().distinct().toList()));
+    }
+
+    public static String fold(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    // *Up to limit values starting with prefix (any case), ordered by folded value; an exact match comes first
+    public List<String> search(String prefix, int limit) {
+        State current = state;
+        String folded = fold(prefix);
+        List<String> results = new ArrayList<>(Math.min(limit, 16));
+        Snapshot base = current.base;
+        int i = base.lowerBound(folded);
+        Iterator<Map.Entry<String, String>> overlay = current.added.tailMap(folded).entrySet().iterator();
+        Map.Entry<String, String> pending = next(overlay, folded);
+
+        while (results.size() < limit) {
+            boolean baseLeft = i < base.keys.length && base.keys[i].startsWith(folded);
+            if (!baseLeft && pending == null) {
+                break;
+            }
+            //? walk both sorted runs in step so the result stays in order
+            if (pending != null && (!baseLeft || compare(pending.getValue(), base.keys[i], base.values[i]) < 0)) {
+                results.add(pending.getValue());
+                pending = next(overlay, folded);
+            } else {
+                if (!current.removed.contains(base.values[i])) {
+                    results.add(base.values[i]);
+                }
+                i++;
+            }
+        }
+        return results;
+    }
+
+    public synchronized void add(String value) {
+        State current = state;
+        if (current.removed.remove(value) || current.base.contains(value)) {
+            return;
+        }
+        current.added.put(overlayKey(value), value);
+        mergeIfLarge(current);
+    }
+
+    public synchronized void remove(String value) {
+        State current = state;
+        if (current.added.remove(overlayKey(value)) != null) {
+            return;
+        }
+        if (current.base.contains(value)) {
+            current.removed.add(value);
+            mergeIfLarge(current);
+        }
+    }
+
+    public int size() {
+        State current = state;
+        return current.base.values.length - current.removed.size() + current.added.size();
+    }
+
+    public long estimatedBytes() {
+        State current = state;
+        return current.base.bytes + (long) current.added.size() * 2 * ENTRY_OVERHEAD_BYTES;
+    }
+
+    private void mergeIfLarge(State current) {
+        if (current.added.size() + current.removed.size() < MERGE_THRESHOLD) {
+            return;
+        }
+        List<String> merged = new ArrayList<>(current.base.values.length + current.added.size());
+        for (String value : current.base.values) {
+            if (!current.removed.contains(value)) {
+                merged.add(value);
+            }
+        }
+        merged.addAll(current.added.values());
+        //? readers holding the old state keep a consistent view of it until they finish
+        state = new State(Snapshot.of(merged));
+    }
+
+    // ?folded value first so overlay entries interleave with the array, then the original to keep case variants apart
+    private static String overlayKey(String value) {
+        return fold(value) + '\u0000' + value;
+    }
+
+    private static int compare(String value, String otherKey, String otherValue) {
+        int byKey = fold(value).compareTo(otherKey);
+        return byKey != 0 ? byKey : value.compareTo(otherValue);
+    }
+
+    private static Map.Entry<String, String> next(Iterator<Map.Entry<String, String>> overlay, String prefix) {
+        if (!overlay.hasNext()) {
+            return null;
+        }
+        Map.Entry<String, String> entry = overlay.next();
+        return entry.getKey().startsWith(prefix) ? entry : null;
+    }
+
+    private static final class State {
+        private final Snapshot base;
+        private final ConcurrentSkipListMap<String, String> added = new ConcurrentSkipListMap<>();
+        private final Set<String> removed = ConcurrentHashMap.newKeySet();
+
+        State(Snapshot base) {
+            this.base = base;
+        }
+    }
+
+    private static final class Snapshot {
+        private final String[] keys;
+        private final String[] values;
+        private final long bytes;
+
+        private Snapshot(String[] keys, String[] values, long bytes) {
+            this.keys = keys;
+            this.values = values;
+            this.bytes = bytes;
+        }
+
+        static Snapshot of(List<String> unsorted) {
+            String[] values = unsorted.toArray(String[]::new);
+            Arrays.sort(values, ORDER);
+            String[] keys = new String[values.length];
+            long bytes = 0;
+            for (int i = 0; i < values.length; i++) {
+                String folded = fold(values[i]);
+                //? most usernames are already lower case, those share one String
+                keys[i] = folded.equals(values[i]) ? values[i] : folded;
+                bytes += ENTRY_OVERHEAD_BYTES + values[i].length() * (keys[i] == values[i] ? 1L : 2L);
+            }
+            return new Snapshot(keys, values, bytes);
+        }
+
+        // ?first position whose key is >= folded
+        int lowerBound(String folded) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid].compareTo(folded) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        boolean contains(String value) {
+            String folded = fold(value);
+            for (int i = lowerBound(folded); i < keys.length && keys[i].equals(folded); i++) {
+                if (values[i].equals(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.harsh.tuple.paisa.util;
+
+import java.nio.charset.StandardCharsets;
+
+// ?64-bit FNV-1a with a murmur3 finalizer; String.hashCode is too weak (32 bits, poor low-bit spread) for sketches
+final class SketchHash {
+
+    private SketchHash() {
+    }
+
+    static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,197 @@
+package org.harsh.tuple.paisa.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// *Merging t-digest (Dunning): a few hundred weighted centroids approximate any distribution, with the
+// *tightest error at the tails. Digests merge by re-clustering their centroids, so months and users combine
+public final class TDigest {
+
+    private static final int BUFFER_FACTOR = 4;
+
+    private final double compression;
+    private double[] means;
+    private double[] weights;
+    private int centroids;
+    private final double[] bufferedValues;
+    private final double[] bufferedWeights;
+    private int buffered;
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest(double compression) {
+        if (compression < 10 || compression > 1000) {
+            throw new IllegalArgumentException("Compression must be between 10 and 1000");
+        }
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression) + 1;
+        this.means = new double[capacity];
+        this.weights = new double[capacity];
+        this.bufferedValues = new double[capacity * BUFFER_FACTOR];
+        this.bufferedWeights = new double[capacity * BUFFER_FACTOR];
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    public void add(double value, double weight) {
+        if (Double.isNaN(value) || weight <= 0) {
+            throw new IllegalArgumentException("Value must be a number and weight positive");
+        }
+        if (buffered == bufferedValues.length) {
+            compress();
+        }
+        bufferedValues[buffered] = value;
+        bufferedWeights[buffered] = weight;
+        buffered++;
+        totalWeight += weight;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public long count() {
+        return Math.round(totalWeight);
+    }
+
+    // ?NaN for an empty digest
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1");
+        }
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1) {
+            return means[0];
+        }
+        double index = q * totalWeight;
+        //? below the first centroid's center interpolate from the exact minimum, above the last one to the maximum
+        if (index < weights[0] / 2) {
+            return min + (means[0] - min) * index / (weights[0] / 2);
+        }
+        double cumulative = weights[0] / 2;
+        for (int i = 0; i < centroids - 1; i++) {
+            double gap = (weights[i] + weights[i + 1]) / 2;
+            if (cumulative + gap > index) {
+                return means[i] + (means[i + 1] - means[i]) * (index - cumulative) / gap;
+            }
+            cumulative += gap;
+        }
+        int last = centroids - 1;
+        double tail = Math.min(1, (index - cumulative) / (weights[last] / 2));
+        return means[last] + (max - means[last]) * tail;
+    }
+
+    public void merge(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.centroids; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        if (other.centroids > 0) {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    public byte[] toBytes() {
+        compress();
+        ByteBuffer buffer = ByteBuffer.allocate(Double.BYTES * 4 + Integer.BYTES + Double.BYTES * 2 * centroids);
+        buffer.putDouble(compression).putDouble(totalWeight).putDouble(min).putDouble(max).putInt(centroids);
+        for (int i = 0; i < centroids; i++) {
+            buffer.putDouble(means[i]).putDouble(weights[i]);
+        }
+        return buffer.array();
+    }
+
+    public static TDigest fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        TDigest digest = new TDigest(buffer.getDouble());
+        digest.totalWeight = buffer.getDouble();
+        digest.min = buffer.getDouble();
+        digest.max = buffer.getDouble();
+        int centroids = buffer.getInt();
+        digest.ensureCapacity(centroids);
+        for (int i = 0; i < centroids; i++) {
+            digest.means[i] = buffer.getDouble();
+            digest.weights[i] = buffer.getDouble();
+        }
+        digest.centroids = centroids;
+        return digest;
+    }
+
+    // *Sort centroids and buffered points together, then sweep left to right merging neighbours while the
+    // *cluster stays within one unit of the k1 scale function (small clusters at the tails, large in the middle)
+    private void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        int total = centroids + buffered;
+        double[] sortedMeans = Arrays.copyOf(means, total);
+        double[] sortedWeights = Arrays.copyOf(weights, total);
+        System.arraycopy(bufferedValues, 0, sortedMeans, centroids, buffered);
+        System.arraycopy(bufferedWeights, 0, sortedWeights, centroids, buffered);
+        sortByMean(sortedMeans, sortedWeights, total);
+        buffered = 0;
+
+        int merged = 0;
+        double mean = sortedMeans[0];
+        double weight = sortedWeights[0];
+        double weightSoFar = 0;
+        double limit = totalWeight * quantileOfScale(scaleOf(0) + 1);
+        for (int i = 1; i < total; i++) {
+            if (weightSoFar + weight + sortedWeights[i] <= limit) {
+                weight += sortedWeights[i];
+                mean += (sortedMeans[i] - mean) * sortedWeights[i] / weight;
+            } else {
+                ensureCapacity(merged + 1);
+                means[merged] = mean;
+                weights[merged] = weight;
+                merged++;
+                weightSoFar += weight;
+                limit = totalWeight * quantileOfScale(scaleOf(weightSoFar / totalWeight) + 1);
+                mean = sortedMeans[i];
+                weight = sortedWeights[i];
+            }
+        }
+        ensureCapacity(merged + 1);
+        means[merged] = mean;
+        weights[merged] = weight;
+        centroids = merged + 1;
+    }
+
+    private double scaleOf(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+    }
+
+    private double quantileOfScale(double k) {
+        double angle = Math.min(k * 2 * Math.PI / compression, Math.PI / 2);
+        return (Math.sin(angle) + 1) / 2;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > means.length) {
+            means = Arrays.copyOf(means, Math.max(capacity, means.length * 2));
+            weights = Arrays.copyOf(weights, means.length);
+        }
+    }
+
+    // ?sort an index permutation so means and weights move together
+    private static void sortByMean(double[] means, double[] weights, int length) {
+        Integer[] order = new Integer[length];
+        for (int i = 0; i < length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(means[a], means[b]));
+        double[] sortedMeans = new double[length];
+        double[] sortedWeights = new double[length];
+        for (int i = 0; i < length; i++) {
+            sortedMeans[i] = means[order[i]];
+            sortedWeights[i] = weights[order[i]];
+        }
+        System.arraycopy(sortedMeans, 0, means, 0, length);
+        System.arraycopy(sortedWeights, 0, weights, 0, length);
+    }
+}
@@ -74,6 +74,7 @@ class JwtAuthenticationFilterTest {
 
         assertNotNull(SecurityContextHolder.getContext().getAuthentication());
         assertEquals("harsh123", SecurityContextHolder.getContext().getAuthentication().getPrincipal());
+        assertEquals("harsh", SecurityContextHolder.getContext().getAuthentication().getDetails());
 
         verify(filterChain, times(1)).doFilter(request, response);
     }
@@ -1,7 +1,10 @@
 package org.harsh.tuple.paisa.controller;
 
+import org.harsh.tuple.paisa.dto.CashbackHistoryPage;
+import org.harsh.tuple.paisa.dto.CashbackSummary;
 import org.harsh.tuple.paisa.model.Cashback;
 import org.harsh.tuple.paisa.service.CashbackService;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,8 +14,11 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.Arrays;
 import java.util.List;
 
@@ -28,6 +34,18 @@ class CashbackControllerTest {
     @InjectMocks
     private CashbackController cashbackController;
 
+    //? the JWT filter authenticates with the user id as principal
+    @BeforeEach
+    void authenticate() {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("Harsh123", null, null));
+    }
+
+    @AfterEach
+    void clearAuthentication() {
+        SecurityContextHolder.clearContext();
+    }
+
     @Test
     void testGetCashbackHistory() {
         //!arrangement
@@ -48,14 +66,26 @@ class CashbackControllerTest {
 
 
         List<Cashback> mockCashbacks = Arrays.asList(cashback1, cashback2);
-        when(cashbackService.getCashbackHistory(userId)).thenReturn(mockCashbacks);
+        CashbackHistoryPage mockPage = CashbackHistoryPage.builder().cashbacks(mockCashbacks).hasMore(false).build();
+        when(cashbackService.getCashbackHistory(userId, null, 20)).thenReturn(mockPage);
 
         // !action time
-        ResponseEntity<?> response = cashbackController.getCashbackHistory(userId);
+        ResponseEntity<?> response = cashbackController.getCashbackHistory(null, 20);
 
         //*assertion
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals(mockCashbacks, response.getBody());
-        verify(cashbackService, times(1)).getCashbackHistory(userId);
+        assertEquals(mockPage, response.getBody());
+        verify(cashbackService, times(1)).getCashbackHistory(userId, null, 20);
+    }
+
+    @Test
+    void testGetCashbackSummary_ReadsTheCallersWallet() {
+        CashbackSummary summary = new CashbackSummary(120.0, YearMonth.now(), 15.0);
+        when(cashbackService.getCashbackSummary("Harsh123")).thenReturn(summary);
+
+        ResponseEntity<?> response = cashbackController.getCashbackSummary();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(summary, response.getBody());
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,15 @@
 package org.harsh.tuple.paisa.controller;
 
+import org.harsh.tuple.paisa.dto.StatementResponse;
 import org.harsh.tuple.paisa.model.Cashback;
 import org.harsh.tuple.paisa.model.Transaction;
 import org.harsh.tuple.paisa.model.User;
 import org.harsh.tuple.paisa.repository.CashbackRepository;
 import org.harsh.tuple.paisa.repository.TransactionRepository;
 import org.harsh.tuple.paisa.repository.UserRepository;
+import org.harsh.tuple.paisa.service.LedgerSyncService;
+import org.harsh.tuple.paisa.service.WalletEtagService;
+import org.harsh.tuple.paisa.service.WalletEventStream;
 import org.harsh.tuple.paisa.service.WalletService;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,10 +18,13 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
 import java.util.*;
@@ -30,6 +37,18 @@ class WalletControllerTest {
     @Mock
     private WalletService walletService;
 
+    @Mock
+    private WalletEtagService walletEtagService;
+
+    @Mock
+    private WalletEventStream walletEventStream;
+
+    @Mock
+    private LedgerSyncService ledgerSyncService;
+
+    @Mock
+    private WebRequest webRequest;
+
     @Mock
     private CashbackRepository cashbackRepository;
 
@@ -149,12 +168,18 @@ class WalletControllerTest {
     void testGetCombinedHistoryWithPagination_Empty() {
         String userId = "user123";
         when(authentication.getName()).thenReturn(userId);
-        List<Object> combinedList = List.of(new Object(), new Object());
-        when(walletService.getHistory(userId)).thenReturn(combinedList);
+        StatementResponse emptyStatement = StatementResponse.builder()
+                .history(Collections.emptyList())
+                .page(2)
+                .size(2)
+                .hasMore(false)
+                .build();
+        when(walletService.getCombinedHistory(userId, 2, 2)).thenReturn(emptyStatement);
 
-        List<Object> result = walletController.getCombinedHistory(2, 2);
+        StatementResponse result = walletController.getCombinedHistory(2, 2, webRequest).getBody();
 
-        assertEquals(Collections.emptyList(), result);
+        assertEquals(Collections.emptyList(), result.getHistory());
+        assertFalse(result.isHasMore());
     }
 
 
@@ -163,19 +188,55 @@ class WalletControllerTest {
         double balance = 200.0;
         when(walletService.getBalance("harsh123")).thenReturn(balance);
 
-        Map<String, Double> result = walletController.getWalletBalance();
+        Map<String, Double> result = walletController.getWalletBalance(webRequest).getBody();
 
         assertNotNull(result);
         assertEquals(balance, result.get("balance"));
         verify(walletService, times(1)).getBalance("harsh123");
     }
 
+    @Test
+    void testGetWalletBalanceNotModified() {
+        when(walletEtagService.balanceEtag("harsh123")).thenReturn("\"b-7\"");
+        when(walletEtagService.checkNotModified(webRequest, "\"b-7\"", "balance")).thenReturn(true);
+
+        ResponseEntity<Map<String, Double>> response = walletController.getWalletBalance(webRequest);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals("\"b-7\"", response.getHeaders().getETag());
+        assertNull(response.getBody());
+        verify(walletService, never()).getBalance(anyString());
+    }
+
+    @Test
+    void testGetCombinedHistoryNotModifiedSkipsHistoryReads() {
+        when(walletEtagService.statementEtag("harsh123", 0, 10)).thenReturn("\"s-7\"");
+        when(walletEtagService.checkNotModified(webRequest, "\"s-7\"", "statement")).thenReturn(true);
+
+        ResponseEntity<StatementResponse> response = walletController.getCombinedHistory(0, 10, webRequest);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        verify(walletService, never()).getCombinedHistory(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    void testStreamWalletPushesCurrentBalance() {
+        SseEmitter emitter = new SseEmitter();
+        when(walletEventStream.subscribe("harsh123")).thenReturn(emitter);
+        when(walletService.getBalance("harsh123")).thenReturn(75.0);
+
+        SseEmitter result = walletController.streamWallet();
+
+        assertSame(emitter, result);
+        verify(walletEventStream).publishBalance("harsh123", 75.0);
+    }
+
     // Test: Get Wallet Balance - Zero Balance
     @Test
     void testGetWalletBalanceZero() {
         when(walletService.getBalance("harsh123")).thenReturn(0.0);
 
-        Map<String, Double> result = walletController.getWalletBalance();
+        Map<String, Double> result = walletController.getWalletBalance(webRequest).getBody();
 
         assertNotNull(result);
         assertEquals(0.0, result.get("balance"));
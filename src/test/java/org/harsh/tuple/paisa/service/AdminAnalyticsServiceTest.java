@@ -0,0 +1,146 @@
+package org.harsh.tuple.paisa.service;
+
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import org.bson.Document;
+import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.PlatformDayStats;
+import org.harsh.tuple.paisa.model.Transaction;
+import org.harsh.tuple.paisa.repository.PlatformDayStatsRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AdminAnalyticsServiceTest {
+
+    @Mock
+    private PlatformDayStatsRepository platformDayStatsRepository;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private AdminAnalyticsService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        service = new AdminAnalyticsService(platformDayStatsRepository, mongoTemplate, 2, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private MongoCollection<Document> stubRows(Class<?> entity, String name, List<Document> rows) {
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        AggregateIterable<Document> aggregate = mock(AggregateIterable.class);
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        Iterator<Document> iterator = rows.iterator();
+
+        when(mongoTemplate.getCollectionName(entity)).thenReturn(name);
+        when(mongoTemplate.getCollection(name)).thenReturn(collection);
+        when(collection.withReadPreference(any(ReadPreference.class))).thenReturn(collection);
+        when(collection.withReadConcern(any(ReadConcern.class))).thenReturn(collection);
+        when(collection.aggregate(anyList())).thenReturn(aggregate);
+        when(aggregate.allowDiskUse(true)).thenReturn(aggregate);
+        when(aggregate.iterator()).thenReturn(cursor);
+        when(cursor.hasNext()).thenAnswer(_ -> iterator.hasNext());
+        when(cursor.next()).thenAnswer(_ -> iterator.next());
+        return collection;
+    }
+
+    @Test
+    void getDayStats_ClosedDayServedFromStore() {
+        LocalDate day = LocalDate.now().minusDays(3);
+        PlatformDayStats stored = PlatformDayStats.builder().id(day.toString()).day(day).rechargeVolume(10).build();
+        when(platformDayStatsRepository.findById(day.toString())).thenReturn(Optional.of(stored));
+
+        assertSame(stored, service.getDayStats(day));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void getDayStats_ClosedDayComputedOnceAndStored() {
+        LocalDate day = LocalDate.now().minusDays(3);
+        when(platformDayStatsRepository.findById(day.toString())).thenReturn(Optional.empty());
+        when(platformDayStatsRepository.save(any(PlatformDayStats.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        MongoCollection<Document> transactions = stubRows(Transaction.class, "transactions", List.of(
+                new Document("_id", "alice").append("rechargeVolume", 100.0).append("rechargeCount", 1)
+                        .append("transferVolume", 40.0).append("transferCount", 2),
+                new Document("_id", "bob").append("rechargeVolume", 0.0).append("rechargeCount", 0)
+                        .append("transferVolume", 0.0).append("transferCount", 0)));
+        stubRows(Cashback.class, "cashbacks", List.of(
+                new Document("_id", "alice").append("cashbackPaid", 5.0).append("cashbackCount", 1)));
+
+        PlatformDayStats stats = service.getDayStats(day);
+
+        assertEquals(100.0, stats.getRechargeVolume());
+        assertEquals(1, stats.getRechargeCount());
+        assertEquals(40.0, stats.getTransferVolume());
+        assertEquals(2, stats.getTransferCount());
+        assertEquals(5.0, stats.getCashbackPaid());
+        assertEquals(2, stats.getActiveUsers());
+        verify(platformDayStatsRepository).save(stats);
+        //? kept for good, so only taken from a secondary that has caught up past the close, never the primary
+        verify(transactions, atLeastOnce()).withReadPreference(ReadPreference.secondaryPreferred(90, TimeUnit.SECONDS));
+        verify(transactions, atLeastOnce()).withReadConcern(ReadConcern.MAJORITY);
+        verify(transactions, never()).withReadPreference(ReadPreference.primary());
+    }
+
+    @Test
+    void getDayStats_OpenDayAlwaysRecomputed() {
+        MongoCollection<Document> transactions = stubRows(Transaction.class, "transactions", List.of());
+        stubRows(Cashback.class, "cashbacks", List.of());
+
+        PlatformDayStats stats = service.getDayStats(LocalDate.now());
+
+        assertEquals(0, stats.getActiveUsers());
+        verify(transactions, atLeastOnce()).withReadPreference(ReadPreference.secondaryPreferred());
+        verify(platformDayStatsRepository, never()).findById(anyString());
+        verify(platformDayStatsRepository, never()).save(any());
+    }
+
+    @Test
+    void recomputeDays_OverwritesClosedDaysAndSkipsToday() {
+        LocalDate today = LocalDate.now();
+        when(platformDayStatsRepository.save(any(PlatformDayStats.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        stubRows(Transaction.class, "transactions", List.of(
+                new Document("_id", "alice").append("rechargeVolume", 100.0).append("rechargeCount", 1)
+                        .append("transferVolume", 0.0).append("transferCount", 0)));
+        stubRows(Cashback.class, "cashbacks", List.of());
+
+        List<PlatformDayStats> recomputed = service.recomputeDays(today.minusDays(3), today);
+
+        List<LocalDate> days = recomputed.stream().map(PlatformDayStats::getDay).toList();
+        //? yesterday only counts as closed a few minutes past midnight
+        assertEquals(List.of(today.minusDays(3), today.minusDays(2)), days.subList(0, 2));
+        assertFalse(days.contains(today));
+        verify(platformDayStatsRepository, times(days.size())).save(any(PlatformDayStats.class));
+        verify(platformDayStatsRepository, never()).findById(anyString());
+    }
+
+    @Test
+    void getDailyStats_InvalidRange() {
+        LocalDate today = LocalDate.now();
+
+        assertThrows(IllegalArgumentException.class, () -> service.getDailyStats(today, today.minusDays(1)));
+        assertThrows(IllegalArgumentException.class, () -> service.getDailyStats(today.minusDays(400), today));
+    }
+}
@@ -0,0 +1,90 @@
+package org.harsh.tuple.paisa.service;
+
+import org.harsh.tuple.paisa.dto.ChartGranularity;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalyticsCacheTest {
+
+    private static final LocalDateTime JAN_START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final LocalDateTime JAN_END = LocalDateTime.of(2024, 1, 31, 23, 59, 59);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private Supplier<List<String>> loader(String value) {
+        return () -> {
+            loads.incrementAndGet();
+            return List.of(value);
+        };
+    }
+
+    @Test
+    void get_ReusesEntryForSameRange() {
+        AnalyticsCache cache = new AnalyticsCache(10, Duration.ofHours(24), Duration.ofMinutes(1));
+
+        List<String> first = cache.get("user1", AnalyticsCache.View.BUCKETS, JAN_START, JAN_END, ChartGranularity.DAY, loader("a"));
+        List<String> second = cache.get("user1", AnalyticsCache.View.BUCKETS, JAN_START, JAN_END, ChartGranularity.DAY, loader("b"));
+
+        assertEquals(List.of("a"), first);
+        assertEquals(List.of("a"), second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void get_KeysOnGranularityAndView() {
+        AnalyticsCache cache = new AnalyticsCache(10, Duration.ofHours(24), Duration.ofMinutes(1));
+
+        cache.get("user1", AnalyticsCache.View.BUCKETS, JAN_START, JAN_END, ChartGranularity.DAY, loader("a"));
+        cache.get("user1", AnalyticsCache.View.BUCKETS, JAN_START, JAN_END, ChartGranularity.MONTH, loader("b"));
+        cache.get("user1", AnalyticsCache.View.HISTORY, JAN_START, JAN_END, null, loader("c"));
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void invalidate_OnlyAffectsThatUser() {
+        AnalyticsCache cache = new AnalyticsCache(10, Duration.ofHours(24), Duration.ofMinutes(1));
+        cache.get("user1", AnalyticsCache.View.HISTORY, JAN_START, JAN_END, null, loader("a"));
+        cache.get("user2", AnalyticsCache.View.HISTORY, JAN_START, JAN_END, null, loader("a"));
+
+        cache.invalidate("user1");
+
+        assertEquals(List.of("b"), cache.get("user1", AnalyticsCache.View.HISTORY, JAN_START, JAN_END, null, loader("b")));
+        assertEquals(List.of("a"), cache.get("user2", AnalyticsCache.View.HISTORY, JAN_START, JAN_END, null, loader("b")));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void get_OpenRangeExpiresOnShortTtl() {
+        AnalyticsCache cache = new AnalyticsCache(10, Duration.ofHours(24), Duration.ZERO);
+        LocalDateTime start = LocalDateTime.now().minusDays(30);
+        LocalDateTime end = LocalDateTime.now().plusDays(1);
+
+        cache.get("user1", AnalyticsCache.View.HISTORY, start, end, null, loader("a"));
+        cache.get("user1", AnalyticsCache.View.HISTORY, start, end, null, loader("b"));
+        cache.get("user1", AnalyticsCache.View.HISTORY, JAN_START, JAN_END, null, loader("c"));
+        cache.get("user1", AnalyticsCache.View.HISTORY, JAN_START, JAN_END, null, loader("d"));
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void get_EvictsLeastRecentlyUsedOverCapacity() {
+        AnalyticsCache cache = new AnalyticsCache(2, Duration.ofHours(24), Duration.ofMinutes(1));
+
+        cache.get("user1", AnalyticsCache.View.HISTORY, JAN_START, JAN_END, null, loader("a"));
+        cache.get("user2", AnalyticsCache.View.HISTORY, JAN_START, JAN_END, null, loader("a"));
+        cache.get("user3", AnalyticsCache.View.HISTORY, JAN_START, JAN_END, null, loader("a"));
+
+        assertEquals(2, cache.size());
+        cache.get("user1", AnalyticsCache.View.HISTORY, JAN_START, JAN_END, null, loader("a"));
+        assertEquals(4, loads.get());
+    }
+}
@@ -1,26 +1,49 @@
 package org.harsh.tuple.paisa.service;
 
+import org.bson.Document;
+import org.harsh.tuple.paisa.dto.ChartBucket;
+import org.harsh.tuple.paisa.dto.ChartGranularity;
 import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.DailyRollup;
+import org.harsh.tuple.paisa.model.LedgerEntryKind;
 import org.harsh.tuple.paisa.model.Transaction;
 import org.harsh.tuple.paisa.repository.CashbackRepository;
+import org.harsh.tuple.paisa.repository.DailyRollupRepository;
 import org.harsh.tuple.paisa.repository.TransactionRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-
+import org.mockito.Spy;
+import org.springframework.data.domain.Range;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
+import java.util.function.Function;
 
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 class AnalyticsServiceTest {
@@ -31,6 +54,18 @@ class AnalyticsServiceTest {
     @Mock
     private CashbackRepository cashbackRepository;
 
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private DailyRollupRepository dailyRollupRepository;
+
+    @Mock
+    private ColumnarLedgerStore columnarLedgerStore;
+
+    @Spy
+    private AnalyticsCache analyticsCache = new AnalyticsCache(100, Duration.ofHours(24), Duration.ofMinutes(1));
+
     @InjectMocks
     private AnalyticsService analyticsService;
 
@@ -452,4 +487,108 @@ class AnalyticsServiceTest {
         assertEquals(c1, result.get(0));
         assertEquals(t1, result.get(1));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetBuckets_MapsAggregationRowsAndSorts() {
+        LocalDateTime startDate = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime endDate = LocalDateTime.of(2024, 12, 31, 23, 59);
+        Date june = Date.from(LocalDate.of(2024, 6, 1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        Date may = Date.from(LocalDate.of(2024, 5, 1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+
+        Document transferOut = new Document("_id", new Document("bucket", june).append("kind", "TRANSFER_OUT"))
+                .append("count", 2).append("total", 150.0);
+        Document recharge = new Document("_id", new Document("bucket", june).append("kind", "RECHARGE"))
+                .append("count", 1).append("total", 100.0);
+        Document cashback = new Document("_id", new Document("bucket", may).append("kind", "CASHBACK"))
+                .append("count", 3).append("total", 12.5);
+
+        when(mongoTemplate.aggregate(any(TypedAggregation.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(transferOut, recharge), new Document()))
+                .thenReturn(new AggregationResults<>(List.of(cashback), new Document()));
+
+        List<ChartBucket> buckets = analyticsService.getBuckets("user1", startDate, endDate, ChartGranularity.MONTH);
+
+        assertEquals(3, buckets.size());
+        assertEquals(new ChartBucket(LocalDate.of(2024, 5, 1), LedgerEntryKind.CASHBACK, 3, 12.5), buckets.get(0));
+        assertEquals(new ChartBucket(LocalDate.of(2024, 6, 1), LedgerEntryKind.RECHARGE, 1, 100.0), buckets.get(1));
+        assertEquals(new ChartBucket(LocalDate.of(2024, 6, 1), LedgerEntryKind.TRANSFER_OUT, 2, 150.0), buckets.get(2));
+    }
+
+    @Test
+    void testGetBuckets_FullDaysReadFromRollupsAndFoldIntoWeeks() {
+        ReflectionTestUtils.setField(analyticsService, "rollupsEnabled", true);
+        LocalDateTime startDate = LocalDateTime.of(2024, 6, 3, 0, 0);
+        LocalDateTime endDate = LocalDateTime.of(2024, 6, 5, 23, 59, 59);
+
+        DailyRollup monday = DailyRollup.builder().userId("user1").day(LocalDate.of(2024, 6, 3))
+                .rechargeCount(1).rechargeTotal(100.0).cashbackCount(1).cashbackTotal(5.0).build();
+        DailyRollup wednesday = DailyRollup.builder().userId("user1").day(LocalDate.of(2024, 6, 5))
+                .rechargeCount(2).rechargeTotal(50.0).build();
+        when(dailyRollupRepository.findByUserIdAndDayRange("user1", LocalDate.of(2024, 6, 3), LocalDate.of(2024, 6, 5)))
+                .thenReturn(List.of(monday, wednesday));
+
+        List<ChartBucket> buckets = analyticsService.getBuckets("user1", startDate, endDate, ChartGranularity.WEEK);
+
+        assertEquals(2, buckets.size());
+        assertEquals(new ChartBucket(LocalDate.of(2024, 6, 3), LedgerEntryKind.RECHARGE, 3, 150.0), buckets.get(0));
+        assertEquals(new ChartBucket(LocalDate.of(2024, 6, 3), LedgerEntryKind.CASHBACK, 1, 5.0), buckets.get(1));
+        verify(mongoTemplate, never()).aggregate(any(TypedAggregation.class), eq(Document.class));
+    }
+
+    @Test
+    void testPlanMonthChunks_CoversRangeWithoutOverlap() {
+        LocalDateTime startDate = LocalDateTime.of(2022, 1, 15, 10, 0);
+        LocalDateTime endDate = LocalDateTime.of(2022, 3, 10, 8, 0);
+
+        List<Range<LocalDateTime>> chunks = AnalyticsService.planMonthChunks(startDate, endDate);
+
+        assertEquals(3, chunks.size());
+        assertEquals(Range.of(Range.Bound.exclusive(startDate), Range.Bound.exclusive(LocalDateTime.of(2022, 2, 1, 0, 0))), chunks.get(0));
+        assertEquals(Range.of(Range.Bound.inclusive(LocalDateTime.of(2022, 2, 1, 0, 0)), Range.Bound.exclusive(LocalDateTime.of(2022, 3, 1, 0, 0))), chunks.get(1));
+        assertEquals(Range.of(Range.Bound.inclusive(LocalDateTime.of(2022, 3, 1, 0, 0)), Range.Bound.exclusive(endDate)), chunks.get(2));
+    }
+
+    @Test
+    void testGetCombinedHistory_LongRangeMergesMonthChunks() {
+        String userId = "user1";
+        LocalDateTime startDate = LocalDateTime.of(2021, 1, 1, 0, 0);
+        LocalDateTime endDate = LocalDateTime.of(2023, 12, 31, 23, 59);
+        LocalDateTime shared = LocalDateTime.of(2022, 6, 1, 12, 0);
+
+        List<Transaction> transactions = List.of(
+                Transaction.builder().id("t1").timestamp(LocalDateTime.of(2021, 3, 5, 9, 0)).build(),
+                Transaction.builder().id("t2").timestamp(shared).build(),
+                Transaction.builder().id("t3").timestamp(LocalDateTime.of(2023, 11, 30, 8, 0)).build());
+        List<Cashback> cashbacks = List.of(
+                Cashback.builder().id("c1").timestamp(LocalDateTime.of(2021, 3, 5, 10, 0)).build(),
+                Cashback.builder().id("c2").timestamp(shared).build());
+
+        when(transactionRepository.findByUserIdAndTimestampBetweenOrderByTimestampDesc(eq(userId), any()))
+                .thenAnswer(invocation -> inRangeNewestFirst(transactions, invocation.getArgument(1), Transaction::getTimestamp));
+        when(cashbackRepository.findByUserIdAndTimestampBetweenOrderByTimestampDesc(eq(userId), any()))
+                .thenAnswer(invocation -> inRangeNewestFirst(cashbacks, invocation.getArgument(1), Cashback::getTimestamp));
+
+        List<Object> result = analyticsService.getCombinedHistory(userId, startDate, endDate);
+
+        assertEquals(List.of(transactions.get(2), cashbacks.get(1), transactions.get(1), cashbacks.get(0), transactions.get(0)), result);
+        verify(transactionRepository, times(36)).findByUserIdAndTimestampBetweenOrderByTimestampDesc(eq(userId), any());
+        verify(transactionRepository, never()).findByUserIdAndTimestampBetween(any(), any(), any());
+    }
+
+    @Test
+    void testGetCombinedHistory_RangeOverFiveYearsRejected() {
+        LocalDateTime startDate = LocalDateTime.of(1970, 1, 1, 0, 0);
+        LocalDateTime endDate = LocalDateTime.of(2100, 1, 1, 0, 0);
+
+        assertThrows(IllegalArgumentException.class, () -> analyticsService.getCombinedHistory("user1", startDate, endDate));
+        verifyNoInteractions(transactionRepository, cashbackRepository);
+    }
+
+    private static <T> List<T> inRangeNewestFirst(List<T> entries, Range<LocalDateTime> range,
+                                                  Function<T, LocalDateTime> timestamp) {
+        return entries.stream()
+                .filter(entry -> range.contains(timestamp.apply(entry), Comparator.naturalOrder()))
+                .sorted(Comparator.comparing(timestamp).reversed())
+                .toList();
+    }
+}
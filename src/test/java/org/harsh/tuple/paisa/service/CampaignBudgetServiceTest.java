@@ -0,0 +1,197 @@
+package org.harsh.tuple.paisa.service;
+
+import org.harsh.tuple.paisa.model.CashbackCampaign;
+import org.harsh.tuple.paisa.model.CashbackRule;
+import org.harsh.tuple.paisa.repository.CashbackCampaignRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CampaignBudgetServiceTest {
+
+    private static final Instant NOW = Instant.parse("2024-06-01T10:00:00Z");
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private CashbackCampaignRepository cashbackCampaignRepository;
+
+    private MutableClock clock;
+    private CampaignBudgetService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        clock = new MutableClock(NOW);
+        service = new CampaignBudgetService(mongoTemplate, cashbackCampaignRepository, 1_000, Duration.ofMinutes(5), clock);
+    }
+
+    private void stubCampaign(long budget, long allocated) {
+        CashbackCampaign campaign = CashbackCampaign.builder().id("diwali").budgetPaise(budget).allocatedPaise(allocated).build();
+        when(cashbackCampaignRepository.findById("diwali")).thenReturn(Optional.of(campaign));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(CashbackCampaign.class))).thenReturn(campaign);
+    }
+
+    @Test
+    void tryReserve_ServesFromLocalLeaseUntilItRunsDry() {
+        stubCampaign(1_000_000, 0);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(service.tryReserve("diwali", 100));
+        }
+
+        //? one chunk of 1000 paise covers ten reservations of 100
+        verify(mongoTemplate, times(1)).findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(CashbackCampaign.class));
+
+        assertTrue(service.tryReserve("diwali", 100));
+        verify(mongoTemplate, times(2)).findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(CashbackCampaign.class));
+    }
+
+    @Test
+    void tryReserve_FailsWhenBudgetCannotCoverAmount() {
+        stubCampaign(10_000, 9_950);
+
+        assertFalse(service.tryReserve("diwali", 100));
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(CashbackCampaign.class));
+    }
+
+    @Test
+    void tryReserve_FailsWhenAnotherNodeTookTheTail() {
+        stubCampaign(1_000_000, 0);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(CashbackCampaign.class))).thenReturn(null);
+
+        assertFalse(service.tryReserve("diwali", 100));
+    }
+
+    @Test
+    void tryReserve_EndedCampaignPaysNothing() {
+        CashbackCampaign campaign = CashbackCampaign.builder().id("diwali").budgetPaise(1_000_000)
+                .endsAt(LocalDateTime.ofInstant(NOW, ZoneId.systemDefault()).minusMinutes(1)).build();
+        when(cashbackCampaignRepository.findById("diwali")).thenReturn(Optional.of(campaign));
+
+        assertFalse(service.tryReserve("diwali", 100));
+    }
+
+    @Test
+    void reconcile_ReportsSpentAndReturnsUnusedOnExpiry() {
+        stubCampaign(1_000_000, 0);
+        service.tryReserve("diwali", 300);
+
+        service.reconcile();
+        clock.advance(Duration.ofMinutes(6));
+        service.reconcile();
+
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(2)).updateFirst(any(Query.class), updates.capture(), eq(CashbackCampaign.class));
+        assertEquals(300L, updates.getAllValues().get(0).getUpdateObject().get("$inc", org.bson.Document.class).get("spentPaise"));
+        assertEquals(-700L, updates.getAllValues().get(1).getUpdateObject().get("$inc", org.bson.Document.class).get("allocatedPaise"));
+
+        //? the next reservation leases a fresh chunk
+        assertTrue(service.tryReserve("diwali", 100));
+    }
+
+    @Test
+    void tryReserve_ExpiredLeaseChecksCampaignBeforePaying() {
+        stubCampaign(1_000_000, 0);
+        assertTrue(service.tryReserve("diwali", 100));
+
+        //? the campaign ended while the lease still had 900 left, and reconcile has not run yet
+        clock.advance(Duration.ofMinutes(6));
+        CashbackCampaign ended = CashbackCampaign.builder().id("diwali").budgetPaise(1_000_000)
+                .endsAt(LocalDateTime.ofInstant(NOW, ZoneId.systemDefault()).plusMinutes(1)).build();
+        when(cashbackCampaignRepository.findById("diwali")).thenReturn(Optional.of(ended));
+
+        assertFalse(service.tryReserve("diwali", 100));
+    }
+
+    @Test
+    void release_ReturnsPaiseToLiveLease() {
+        stubCampaign(1_000_000, 0);
+        assertTrue(service.tryReserve("diwali", 1_000));
+
+        service.release("diwali", 400);
+
+        //? served from the returned paise, no second chunk
+        assertTrue(service.tryReserve("diwali", 400));
+        verify(mongoTemplate, times(1)).findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(CashbackCampaign.class));
+        service.reconcile();
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(CashbackCampaign.class));
+        assertEquals(1_000L, update.getValue().getUpdateObject().get("$inc", org.bson.Document.class).get("spentPaise"));
+    }
+
+    @Test
+    void release_WithoutLeaseGoesStraightToCampaign() {
+        service.release("diwali", 250);
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(CashbackCampaign.class));
+        org.bson.Document inc = update.getValue().getUpdateObject().get("$inc", org.bson.Document.class);
+        assertEquals(-250L, inc.get("spentPaise"));
+        assertEquals(-250L, inc.get("allocatedPaise"));
+    }
+
+    @Test
+    void evaluate_ExhaustedCampaignFallsBackToNextRule() {
+        stubCampaign(10_000, 10_000);
+        CashbackDecisionTable table = CashbackDecisionTable.compile(List.of(
+                CashbackRule.builder().id("base").enabled(true).percentage(1).build(),
+                CashbackRule.builder().id("promo").enabled(true).priority(10).percentage(10).campaignId("diwali").build()));
+
+        assertEquals(new CashbackDecisionTable.Decision(1, null), table.evaluate(100, 0, false, null, service));
+        assertEquals(new CashbackDecisionTable.Decision(10, "diwali"),
+                table.evaluate(100, 0, false, null, CashbackDecisionTable.BudgetGate.UNLIMITED));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.systemDefault();
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
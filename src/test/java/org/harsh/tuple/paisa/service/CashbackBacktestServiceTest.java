@@ -0,0 +1,186 @@
+package org.harsh.tuple.paisa.service;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.harsh.tuple.paisa.dto.BacktestJob;
+import org.harsh.tuple.paisa.dto.BacktestReport;
+import org.harsh.tuple.paisa.model.CashbackCampaign;
+import org.harsh.tuple.paisa.model.CashbackRule;
+import org.harsh.tuple.paisa.model.Transaction;
+import org.harsh.tuple.paisa.model.User;
+import org.harsh.tuple.paisa.repository.CashbackCampaignRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CashbackBacktestServiceTest {
+
+    private static final Date NOON = Date.from(LocalDateTime.now().minusDays(3).withHour(12)
+            .atZone(ZoneId.systemDefault()).toInstant());
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private CashbackCampaignRepository cashbackCampaignRepository;
+
+    private CashbackBacktestService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        service = new CashbackBacktestService(mongoTemplate, cashbackCampaignRepository, new CashbackCapService(0, 10), 1, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private MongoCollection<Document> stubCollection(Class<?> entity, String name) {
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        when(mongoTemplate.getCollectionName(entity)).thenReturn(name);
+        when(mongoTemplate.getCollection(name)).thenReturn(collection);
+        when(collection.withReadPreference(ReadPreference.secondaryPreferred())).thenReturn(collection);
+        return collection;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubFind(MongoCollection<Document> collection, List<Document> rows) {
+        FindIterable<Document> find = mock(FindIterable.class);
+        when(collection.find(any(Bson.class))).thenReturn(find);
+        when(find.projection(any(Bson.class))).thenReturn(find);
+        when(find.sort(any(Bson.class))).thenReturn(find);
+        when(find.limit(anyInt())).thenReturn(find);
+        when(find.batchSize(anyInt())).thenReturn(find);
+        when(find.iterator()).thenReturn(cursor(rows));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MongoCursor<Document> cursor(List<Document> rows) {
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        Iterator<Document> iterator = rows.iterator();
+        when(cursor.hasNext()).thenAnswer(_ -> iterator.hasNext());
+        when(cursor.next()).thenAnswer(_ -> iterator.next());
+        return cursor;
+    }
+
+    private static Document recharge(ObjectId id, String userId, double amount) {
+        return recharge(id, userId, amount, NOON);
+    }
+
+    private static Document recharge(ObjectId id, String userId, double amount, Date timestamp) {
+        return new Document("_id", id).append("userId", userId).append("amount", amount).append("timestamp", timestamp);
+    }
+
+    @Test
+    void run_ReportsCostPerSegmentAndDistribution() {
+        stubFind(stubCollection(User.class, "users"), List.of(new Document("_id", "u2").append("segment", "gold")));
+        stubFind(stubCollection(Transaction.class, "transactions"), List.of(
+                recharge(new ObjectId(), "u1", 100),
+                recharge(new ObjectId(), "u1", 40),
+                recharge(new ObjectId(), "u2", 1000)));
+
+        BacktestReport report = service.run(List.of(
+                CashbackRule.builder().id("base").enabled(true).minAmount(50).percentage(5).build(),
+                CashbackRule.builder().id("gold").enabled(true).priority(10).segment("gold").percentage(10).build()
+        ), 3);
+
+        assertEquals(3, report.getRecharges());
+        assertEquals(2, report.getRewarded());
+        assertEquals(1140, report.getRechargeVolume());
+        assertEquals(105, report.getTotalCashback(), 1e-9);
+        assertEquals(5, report.getBySegment().get(CashbackBacktestService.NO_SEGMENT).getCashback(), 1e-9);
+        assertEquals(2, report.getBySegment().get(CashbackBacktestService.NO_SEGMENT).getRecharges());
+        assertEquals(100, report.getBySegment().get("gold").getCashback(), 1e-9);
+        assertEquals(3, report.getDistribution().size());
+        assertTrue(report.getCampaignSpend().isEmpty());
+    }
+
+    @Test
+    void run_FirstRechargeAndCampaignBudgetAreSimulated() {
+        Date beforeWindow = Date.from(LocalDateTime.now().minusMonths(6).atZone(ZoneId.systemDefault()).toInstant());
+        stubFind(stubCollection(User.class, "users"), List.of());
+        //? streamed by user in ledger order; u2's recharge before the window only tells that the later one is not a first
+        stubFind(stubCollection(Transaction.class, "transactions"), List.of(recharge(new ObjectId(), "u1", 1000),
+                recharge(new ObjectId(), "u1", 1000), recharge(new ObjectId(), "u2", 1000, beforeWindow),
+                recharge(new ObjectId(), "u2", 1000)));
+        when(cashbackCampaignRepository.findAllById(any())).thenReturn(List.of(
+                CashbackCampaign.builder().id("launch").budgetPaise(15_000).build()));
+
+        BacktestReport report = service.run(List.of(
+                CashbackRule.builder().id("welcome").enabled(true).priority(10).firstRechargeOnly(true)
+                        .flatBonus(100).build(),
+                CashbackRule.builder().id("promo").enabled(true).priority(5).campaignId("launch").percentage(10).build()
+        ), 3);
+
+        //? u1's first recharge takes the welcome bonus, the budget covers one 100 rupee promo, the third gets nothing
+        assertEquals(200, report.getTotalCashback(), 1e-9);
+        assertEquals(3, report.getRecharges());
+        assertEquals(2, report.getRewarded());
+        assertEquals(100.0, report.getCampaignSpend().get("launch"));
+    }
+
+    @Test
+    void run_MonthlyCapTrimsCashbackAndHandsBudgetBack() {
+        service.shutdown();
+        service = new CashbackBacktestService(mongoTemplate, cashbackCampaignRepository, new CashbackCapService(150, 10), 1, 1);
+        stubFind(stubCollection(User.class, "users"), List.of());
+        stubFind(stubCollection(Transaction.class, "transactions"), List.of(recharge(new ObjectId(), "u1", 1000),
+                recharge(new ObjectId(), "u1", 1000), recharge(new ObjectId(), "u1", 1000),
+                recharge(new ObjectId(), "u2", 1000)));
+        when(cashbackCampaignRepository.findAllById(any())).thenReturn(List.of(
+                CashbackCampaign.builder().id("launch").budgetPaise(100_000).build()));
+
+        BacktestReport report = service.run(List.of(
+                CashbackRule.builder().id("promo").enabled(true).campaignId("launch").percentage(10).build()), 3);
+
+        //? u1 is granted 100 + 50 + 0 under the 150 cap, u2 the full 100
+        assertEquals(250, report.getTotalCashback(), 1e-9);
+        assertEquals(150, report.getCappedCashback(), 1e-9);
+        assertEquals(3, report.getRewarded());
+        assertEquals(250.0, report.getCampaignSpend().get("launch"));
+    }
+
+    @Test
+    void submit_RunsInTheBackgroundAndIsPolledById() throws InterruptedException {
+        stubFind(stubCollection(User.class, "users"), List.of());
+        stubFind(stubCollection(Transaction.class, "transactions"), List.of(recharge(new ObjectId(), "u1", 100)));
+
+        BacktestJob job = service.submit(List.of(CashbackRule.builder().id("base").enabled(true).percentage(5).build()), 3);
+        assertSame(job, service.job(job.getId()).orElseThrow());
+
+        for (int i = 0; i < 100 && job.getStatus() != BacktestJob.Status.DONE; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(BacktestJob.Status.DONE, job.getStatus());
+        assertEquals(5, job.getReport().getTotalCashback(), 1e-9);
+        assertTrue(service.job("missing").isEmpty());
+    }
+
+    @Test
+    void run_RejectsEmptyRuleSet() {
+        assertThrows(IllegalArgumentException.class, () -> service.run(List.of(), 3));
+        assertThrows(IllegalArgumentException.class, () -> service.submit(List.of(), 3));
+        verifyNoInteractions(mongoTemplate);
+    }
+}
@@ -0,0 +1,85 @@
+package org.harsh.tuple.paisa.service;
+
+import org.harsh.tuple.paisa.model.CashbackRule;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CashbackDecisionTableTest {
+
+    private static final int NOON = LocalTime.NOON.toSecondOfDay();
+
+    private static CashbackRule.CashbackRuleBuilder rule(String id) {
+        return CashbackRule.builder().id(id).name(id).enabled(true);
+    }
+
+    @Test
+    void evaluate_DefaultIsFivePercent() {
+        assertEquals(5, CashbackDecisionTable.DEFAULT.evaluate(100, NOON, false, null));
+        assertEquals(1.67, CashbackDecisionTable.DEFAULT.evaluate(33.33, NOON, false, null));
+    }
+
+    @Test
+    void evaluate_AmountBandsAreHalfOpen() {
+        CashbackDecisionTable table = CashbackDecisionTable.compile(List.of(
+                rule("small").minAmount(0).maxAmount(500.0).percentage(1).build(),
+                rule("medium").minAmount(500).maxAmount(2000.0).percentage(2).build(),
+                rule("large").minAmount(2000).percentage(3).maxCashback(100.0).build()));
+
+        assertEquals(4.99, table.evaluate(499, NOON, false, null));
+        assertEquals(10, table.evaluate(500, NOON, false, null));
+        assertEquals(60, table.evaluate(2000, NOON, false, null));
+        assertEquals(100, table.evaluate(10_000, NOON, false, null));
+    }
+
+    @Test
+    void evaluate_HighestPriorityMatchingRuleWins() {
+        CashbackDecisionTable table = CashbackDecisionTable.compile(List.of(
+                rule("base").percentage(2).build(),
+                rule("gold").priority(5).percentage(4).segment("gold").build(),
+                rule("night").priority(10).percentage(0).flatBonus(25)
+                        .windowStart(LocalTime.of(22, 0)).windowEnd(LocalTime.of(2, 0)).build(),
+                rule("disabled").priority(100).percentage(50).enabled(false).build()));
+
+        assertEquals(2, table.evaluate(100, NOON, false, null));
+        assertEquals(4, table.evaluate(100, NOON, false, "gold"));
+        assertEquals(25, table.evaluate(100, LocalTime.of(23, 30).toSecondOfDay(), false, "gold"));
+        assertEquals(25, table.evaluate(100, LocalTime.of(1, 0).toSecondOfDay(), false, null));
+        assertEquals(2, table.evaluate(100, LocalTime.of(2, 0).toSecondOfDay(), false, null));
+        assertTrue(table.usesSegments());
+        assertFalse(table.usesFirstRecharge());
+        assertEquals(3, table.ruleCount());
+    }
+
+    @Test
+    void evaluate_NoMatchingBandPaysNothing() {
+        CashbackDecisionTable table = CashbackDecisionTable.compile(List.of(
+                rule("mid").minAmount(100).maxAmount(200.0).percentage(5).build()));
+
+        assertEquals(0, table.evaluate(50, NOON, false, null));
+        assertEquals(0, table.evaluate(200, NOON, false, null));
+    }
+
+    @Test
+    void evaluate_HundredsOfBands() {
+        List<CashbackRule> rules = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            rules.add(rule("band" + i).minAmount(i * 100).maxAmount((i + 1) * 100.0).percentage(i % 10).build());
+        }
+        CashbackDecisionTable table = CashbackDecisionTable.compile(rules);
+
+        assertEquals(12_345 * 0.03, table.evaluate(12_345, NOON, false, null), 0.005);
+    }
+
+    @Test
+    void compile_RejectsInvalidRules() {
+        assertThrows(IllegalArgumentException.class, () -> CashbackDecisionTable.compile(List.of(
+                rule("inverted").minAmount(500).maxAmount(100.0).build())));
+        assertThrows(IllegalArgumentException.class, () -> CashbackDecisionTable.compile(List.of(
+                rule("window").windowStart(LocalTime.NOON).build())));
+    }
+}
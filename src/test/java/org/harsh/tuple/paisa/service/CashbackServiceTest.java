@@ -1,20 +1,32 @@
 package org.harsh.tuple.paisa.service;
 
-import org.harsh.tuple.paisa.exception.InvalidTransactionAmountException;
+import org.harsh.tuple.paisa.dto.CashbackHistoryPage;
+import org.harsh.tuple.paisa.dto.CashbackSummary;
 import org.harsh.tuple.paisa.exception.WalletNotFoundException;
 import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.CashbackRule;
+import org.harsh.tuple.paisa.model.LedgerEntryKind;
+import org.harsh.tuple.paisa.model.Transaction;
+import org.harsh.tuple.paisa.model.TransactionType;
 import org.harsh.tuple.paisa.model.Wallet;
 import org.harsh.tuple.paisa.repository.CashbackRepository;
+import org.harsh.tuple.paisa.repository.CashbackRuleRepository;
+import org.harsh.tuple.paisa.repository.TransactionRepository;
+import org.harsh.tuple.paisa.repository.UserRepository;
 import org.harsh.tuple.paisa.repository.WalletRepository;
 import org.junit.jupiter.api.*;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.domain.Limit;
 
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -28,92 +40,103 @@ class CashbackServiceTest {
     @Mock
     private WalletRepository walletRepository;
 
-    @InjectMocks
-    private CashbackService cashbackService;
+    @Mock
+    private RollupService rollupService;
 
-    private static String userId;
-    private static Wallet wallet;
+    @Mock
+    private AnalyticsCache analyticsCache;
 
-    @BeforeAll
-    static void setUpConstants() {
-        userId = "harsh123";
-        wallet = Wallet.builder()
-                .id("harsh'swallet22")
-                .userId(userId)
-                .balance(1000.0).build();
-    }
+    @Mock
+    private ColumnarLedgerStore columnarLedgerStore;
+
+    @Spy
+    private CashbackRuleEngine cashbackRuleEngine = new CashbackRuleEngine(mock(CashbackRuleRepository.class));
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private CampaignBudgetService campaignBudgetService;
+
+    @InjectMocks
+    private CashbackService cashbackService;
 
     @BeforeEach
     void setUpMocks() {
         MockitoAnnotations.openMocks(this);
     }
 
-    @AfterEach
-    void resetWalletBalance() {
-        wallet.setBalance(1000.0);
-    }
-
-
     @Test
-    @DisplayName("Should throw InvalidTransactionAmountException when recharge amount is zero")
-    void applyCashback_ZeroAmount_ThrowsInvalidTransactionAmountException() {
-        String userId = "harsh123";
-        assertThrows(InvalidTransactionAmountException.class,
-                () -> cashbackService.applyCashback(userId, 0));
+    @DisplayName("Should pay 5% while no rules are configured")
+    void quoteCashback_NoRules_FivePercent() {
+        assertEquals(5, cashbackService.quoteCashback("harsh123", 100, false).amount());
+        verifyNoInteractions(transactionRepository, userRepository);
     }
 
     @Test
-    @DisplayName("Should throw InvalidTransactionAmountException when recharge amount is negative")
-    void applyCashback_NegativeAmount_ThrowsInvalidTransactionAmountException() {
+    @DisplayName("Should apply the first-recharge rule only to a user's first recharge")
+    void quoteCashback_FirstRechargeRule_LooksForAnEarlierRecharge() {
         String userId = "harsh123";
-        assertThrows(InvalidTransactionAmountException.class,
-                () -> cashbackService.applyCashback(userId, -100));
+        doReturn(CashbackDecisionTable.compile(List.of(
+                CashbackRule.builder().id("base").enabled(true).percentage(2).build(),
+                CashbackRule.builder().id("welcome").enabled(true).priority(10).percentage(10)
+                        .maxCashback(50.0).firstRechargeOnly(true).build()
+        ))).when(cashbackRuleEngine).current();
+        //? the recharge being priced is not in the ledger yet
+        when(transactionRepository.findByUserIdAndType(userId, TransactionType.RECHARGE, Limit.of(1)))
+                .thenReturn(List.of(), List.of(Transaction.builder().id("t1").build()));
+
+        assertEquals(50, cashbackService.quoteCashback(userId, 1000, false).amount());
+        assertEquals(20, cashbackService.quoteCashback(userId, 1000, false).amount());
+        verifyNoInteractions(userRepository);
     }
 
     @Test
-    @DisplayName("Should throw WalletNotFoundException when wallet doesn't exist")
-    void applyCashback_WalletNotFound_ThrowsWalletNotFoundException() {
-        String userId = "harsh123";
-        when(walletRepository.findByUserId(userId)).thenReturn(Optional.empty());
-        assertThrows(WalletNotFoundException.class,
-                () -> cashbackService.applyCashback(userId, 100));
+    @DisplayName("Should name the funding campaign and hand back the part that was not credited")
+    void quoteCashback_CampaignRule_ReleasesUncreditedPart() {
+        doReturn(CashbackDecisionTable.compile(List.of(
+                CashbackRule.builder().id("promo").enabled(true).percentage(10).campaignId("diwali").build()
+        ))).when(cashbackRuleEngine).current();
+        when(campaignBudgetService.tryReserve("diwali", 1000)).thenReturn(true);
+
+        CashbackService.Quote quote = cashbackService.quoteCashback("harsh123", 100, false);
+        assertEquals(new CashbackService.Quote(10, "diwali"), quote);
+
+        cashbackService.releaseUnused(quote, 2.5);
+        verify(campaignBudgetService).release("diwali", 750);
     }
 
     @Test
-    @DisplayName("Should successfully apply cashback and update wallet")
-    void applyCashback_ValidAmount_UpdatesWalletAndSavesCashback() {
+    @DisplayName("Should store the cashback and feed the derived views")
+    void recordCashback_SavesAndUpdatesDerivedViews() {
         String userId = "harsh123";
-        double rechargeAmount = 100;
-        double expectedCashback = 5;
-
-        wallet.setBalance(1000);
+        LocalDateTime timestamp = LocalDateTime.now();
 
-        when(walletRepository.findByUserId(userId)).thenReturn(Optional.of(wallet));
-
-        cashbackService.applyCashback(userId, rechargeAmount);
+        Cashback cashback = cashbackService.recordCashback(userId, 8, 5.0, timestamp);
 
         ArgumentCaptor<Cashback> cashbackCaptor = ArgumentCaptor.forClass(Cashback.class);
-        ArgumentCaptor<Wallet> walletCaptor = ArgumentCaptor.forClass(Wallet.class);
-
         verify(cashbackRepository).save(cashbackCaptor.capture());
-        verify(walletRepository).save(walletCaptor.capture());
-
-        Cashback savedCashback = cashbackCaptor.getValue();
-        Wallet savedWallet = walletCaptor.getValue();
-
-        assertEquals(userId, savedCashback.getUserId());
-        assertEquals(expectedCashback, savedCashback.getAmount());
-        assertEquals(1005, savedWallet.getBalance());
-        assertNotNull(savedCashback.getTimestamp());
+        assertSame(cashback, cashbackCaptor.getValue());
+        assertEquals(8, cashback.getSeq());
+        assertEquals(5.0, cashback.getAmount());
+        //? counted in the rollups together with its recharge
+        verify(rollupService, never()).record(anyString(), any(), any(), anyDouble());
+        verify(columnarLedgerStore).append(userId, 8, timestamp, LedgerEntryKind.CASHBACK, 5.0);
+        verify(analyticsCache).invalidate(userId);
     }
 
     @Test
     @DisplayName("Should throw WalletNotFoundException when getting cashback history for non-existent wallet")
     void getCashbackHistory_WalletNotFound_ThrowsWalletNotFoundException() {
         String userId = "harsh123";
+        when(cashbackRepository.findByUserIdAndSeqLessThanOrderBySeqDesc(userId, Long.MAX_VALUE, Limit.of(21)))
+                .thenReturn(List.of());
         when(walletRepository.existsByUserId(userId)).thenReturn(false);
         assertThrows(WalletNotFoundException.class,
-                () -> cashbackService.getCashbackHistory(userId));
+                () -> cashbackService.getCashbackHistory(userId, null, 20));
     }
 
     @Test
@@ -121,16 +144,81 @@ class CashbackServiceTest {
     void getCashbackHistory_ValidUser_ReturnsCashbackList() {
         String userId = "harsh123";
         List<Cashback> expectedCashbacks = Arrays.asList(
-                Cashback.builder().userId(userId).amount(5.0).timestamp(LocalDateTime.now()).build(),
-                Cashback.builder().userId(userId).amount(10.0).timestamp(LocalDateTime.now()).build()
+                Cashback.builder().userId(userId).seq(9).amount(5.0).timestamp(LocalDateTime.now()).build(),
+                Cashback.builder().userId(userId).seq(4).amount(10.0).timestamp(LocalDateTime.now()).build()
         );
 
-        when(walletRepository.existsByUserId(userId)).thenReturn(true);
-        when(cashbackRepository.findByUserId(userId)).thenReturn(expectedCashbacks);
+        when(cashbackRepository.findByUserIdAndSeqLessThanOrderBySeqDesc(userId, Long.MAX_VALUE, Limit.of(21)))
+                .thenReturn(expectedCashbacks);
+
+        CashbackHistoryPage page = cashbackService.getCashbackHistory(userId, null, 20);
+
+        assertEquals(expectedCashbacks, page.getCashbacks());
+        assertFalse(page.isHasMore());
+        assertNull(page.getNextCursor());
+        //? a non-empty page already proves the wallet exists
+        verify(walletRepository, never()).existsByUserId(userId);
+    }
+
+    @Test
+    @DisplayName("Should hand out a cursor when more cashbacks are left")
+    void getCashbackHistory_FullPage_ReturnsCursor() {
+        String userId = "harsh123";
+        when(cashbackRepository.findByUserIdAndSeqLessThanOrderBySeqDesc(userId, 12L, Limit.of(3))).thenReturn(List.of(
+                Cashback.builder().userId(userId).seq(11).amount(5.0).build(),
+                Cashback.builder().userId(userId).seq(8).amount(5.0).build(),
+                Cashback.builder().userId(userId).seq(3).amount(5.0).build()));
+
+        CashbackHistoryPage page = cashbackService.getCashbackHistory(userId, 12L, 2);
+
+        assertEquals(2, page.getCashbacks().size());
+        assertTrue(page.isHasMore());
+        assertEquals(8L, page.getNextCursor());
+    }
+
+    @Test
+    @DisplayName("Should page on into back-filled cashbacks from before sequences")
+    void getCashbackHistory_LegacyRows_FollowsCursorBelowZero() {
+        String userId = "harsh123";
+        //? LedgerBackfillService numbers the oldest cashbacks ..., -2, -1, 0
+        when(cashbackRepository.findByUserIdAndSeqLessThanOrderBySeqDesc(userId, 2L, Limit.of(3))).thenReturn(List.of(
+                Cashback.builder().userId(userId).seq(1).amount(5.0).build(),
+                Cashback.builder().userId(userId).seq(0).amount(5.0).build(),
+                Cashback.builder().userId(userId).seq(-1).amount(5.0).build()));
+        when(cashbackRepository.findByUserIdAndSeqLessThanOrderBySeqDesc(userId, 0L, Limit.of(3))).thenReturn(List.of(
+                Cashback.builder().userId(userId).seq(-1).amount(5.0).build(),
+                Cashback.builder().userId(userId).seq(-2).amount(5.0).build()));
+
+        CashbackHistoryPage page = cashbackService.getCashbackHistory(userId, 2L, 2);
+        assertEquals(0L, page.getNextCursor());
+
+        CashbackHistoryPage legacy = cashbackService.getCashbackHistory(userId, page.getNextCursor(), 2);
+        assertEquals(List.of(-1L, -2L), legacy.getCashbacks().stream().map(Cashback::getSeq).toList());
+        assertFalse(legacy.isHasMore());
+        assertNull(legacy.getNextCursor());
+    }
+
+    @Test
+    @DisplayName("Should reject oversized history pages")
+    void getCashbackHistory_InvalidSize_ThrowsIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class,
+                () -> cashbackService.getCashbackHistory("harsh123", null, 500));
+        verifyNoInteractions(cashbackRepository);
+    }
+
+    @Test
+    @DisplayName("Should read lifetime and month-to-date cashback off the wallet")
+    void getCashbackSummary_ReadsWalletTotals() {
+        String userId = "harsh123";
+        YearMonth month = YearMonth.now();
+        Wallet withTotals = Wallet.builder().userId(userId).cashbackLifetime(120.0)
+                .cashbackByMonth(Map.of(month.toString(), 15.0, month.minusMonths(1).toString(), 105.0)).build();
+        when(walletRepository.findByUserId(userId)).thenReturn(Optional.of(withTotals));
 
-        List<Cashback> actualCashbacks = cashbackService.getCashbackHistory(userId);
+        CashbackSummary summary = cashbackService.getCashbackSummary(userId);
 
-        assertEquals(expectedCashbacks, actualCashbacks);
-        verify(cashbackRepository).findByUserId(userId);
+        assertEquals(120.0, summary.getLifetime());
+        assertEquals(month, summary.getMonth());
+        assertEquals(15.0, summary.getMonthToDate());
     }
 }
@@ -0,0 +1,231 @@
+package org.harsh.tuple.paisa.service;
+
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.Document;
+import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.PendingCashback;
+import org.harsh.tuple.paisa.model.Wallet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CashbackSettlementServiceTest {
+
+    private static final LocalDateTime ACCRUED = LocalDateTime.of(2024, 6, 1, 10, 0);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private LedgerSequenceService ledgerSequenceService;
+
+    @Mock
+    private CashbackService cashbackService;
+
+    @Mock
+    private WalletEventStream walletEventStream;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @Mock
+    private BulkWriteResult allMatched;
+
+    @Mock
+    private BulkWriteResult noneMatched;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), any(Class.class))).thenReturn(bulkOperations);
+        when(bulkOperations.insert(anyList())).thenReturn(bulkOperations);
+        when(bulkOperations.updateOne(any(Query.class), any(Update.class))).thenReturn(bulkOperations);
+        when(bulkOperations.execute()).thenReturn(allMatched);
+        when(allMatched.getMatchedCount()).thenReturn(2);
+        when(noneMatched.getMatchedCount()).thenReturn(0);
+    }
+
+    private CashbackSettlementService service(String mode) {
+        return service(mode, 0);
+    }
+
+    private CashbackSettlementService service(String mode, double monthlyCap) {
+        return new CashbackSettlementService(mongoTemplate, ledgerSequenceService, cashbackService, walletEventStream,
+                new CashbackCapService(monthlyCap, 100), mode, 500, Duration.ofMinutes(5));
+    }
+
+    private static PendingCashback pending(String id, String userId, double amount, Long seq) {
+        return PendingCashback.builder().id(id).userId(userId).amount(amount).accruedAt(ACCRUED)
+                .batchId("batch-1").seq(seq).build();
+    }
+
+    @Test
+    void accrue_InsertsPendingRecord() {
+        service("deferred").accrue("user1", 5.0, "diwali", ACCRUED);
+
+        ArgumentCaptor<PendingCashback> pending = ArgumentCaptor.forClass(PendingCashback.class);
+        verify(mongoTemplate).insert(pending.capture());
+        assertEquals("user1", pending.getValue().getUserId());
+        assertEquals(5.0, pending.getValue().getAmount());
+        assertEquals("diwali", pending.getValue().getCampaignId());
+        assertNull(pending.getValue().getBatchId());
+    }
+
+    @Test
+    void settle_DoesNothingInInlineMode() {
+        service("inline").settle();
+
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void settleBatch_CreditsEachWalletOnceAndInsertsLedgerInBulk() {
+        when(mongoTemplate.find(any(Query.class), eq(PendingCashback.class))).thenReturn(List.of(
+                pending("p1", "user1", 5.0, null),
+                pending("p2", "user1", 2.5, null),
+                pending("p3", "user2", 10.0, null)));
+        when(ledgerSequenceService.next("user1", 2)).thenReturn(12L);
+        when(ledgerSequenceService.next("user2", 1)).thenReturn(4L);
+        when(mongoTemplate.find(any(Query.class), eq(Wallet.class))).thenReturn(List.of(
+                Wallet.builder().userId("user1").balance(107.5).build(),
+                Wallet.builder().userId("user2").balance(60.0).build()));
+
+        service("deferred").settleBatch("batch-1");
+
+        ArgumentCaptor<List<Cashback>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(bulkOperations).insert(inserted.capture());
+        assertEquals(List.of(11L, 12L, 4L), inserted.getValue().stream().map(Cashback::getSeq).toList());
+        assertEquals(List.of("p1", "p2", "p3"), inserted.getValue().stream().map(Cashback::getId).toList());
+
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        //? three seq write-backs on the pending records, then one credit per wallet
+        verify(bulkOperations, times(5)).updateOne(any(Query.class), updates.capture());
+        List<Update> credits = updates.getAllValues().subList(3, 5);
+        assertEquals(7.5, ((Document) credits.get(0).getUpdateObject().get("$inc")).get("balance"));
+        assertEquals(10.0, ((Document) credits.get(1).getUpdateObject().get("$inc")).get("balance"));
+        assertEquals(7.5, ((Document) credits.get(0).getUpdateObject().get("$inc")).get("cashbackLifetime"));
+        //? booked in the month it is settled in, not the one it accrued in
+        assertEquals(7.5, ((Document) credits.get(0).getUpdateObject().get("$inc")).get("cashbackByMonth." + YearMonth.now()));
+        assertEquals(new Document("settledCashbackBatches", "batch-1"), credits.get(0).getUpdateObject().get("$addToSet"));
+
+        verify(mongoTemplate).remove(any(Query.class), eq(PendingCashback.class));
+        verify(mongoTemplate).updateMulti(any(Query.class), any(Update.class), eq(Wallet.class));
+        verify(cashbackService, times(3)).onRecorded(any(Cashback.class));
+        verify(walletEventStream).publishBalance("user1", 107.5);
+        verify(walletEventStream).publishBalance("user2", 60.0);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void settleBatch_TrimsAccrualsToMonthlyCap() {
+        when(mongoTemplate.find(any(Query.class), eq(PendingCashback.class))).thenReturn(List.of(
+                pending("p1", "user1", 5.0, null),
+                pending("p2", "user1", 5.0, null),
+                pending("p3", "user1", 5.0, null)));
+        //? 493 already earned this month: p1 fits, p2 is trimmed to 2, p3 gets nothing
+        when(mongoTemplate.find(any(Query.class), eq(Wallet.class))).thenReturn(List.of(
+                Wallet.builder().userId("user1").cashbackByMonth(Map.of(YearMonth.now().toString(), 493.0)).build()));
+        when(ledgerSequenceService.next("user1", 2)).thenReturn(2L);
+        when(allMatched.getMatchedCount()).thenReturn(1);
+
+        service("deferred", 500).settleBatch("batch-1");
+
+        ArgumentCaptor<List<Cashback>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(bulkOperations).insert(inserted.capture());
+        assertEquals(List.of(5.0, 2.0), inserted.getValue().stream().map(Cashback::getAmount).toList());
+        assertEquals(List.of(1L, 2L), inserted.getValue().stream().map(Cashback::getSeq).toList());
+        //? p3 is dropped up front, the rest once the batch is settled
+        verify(mongoTemplate, times(2)).remove(any(Query.class), eq(PendingCashback.class));
+    }
+
+    @Test
+    void settleBatch_ReplayKeepsPersistedSequences() {
+        when(mongoTemplate.find(any(Query.class), eq(PendingCashback.class))).thenReturn(List.of(
+                pending("p1", "user1", 5.0, 11L)));
+        when(mongoTemplate.find(any(Query.class), eq(Wallet.class))).thenReturn(List.of());
+        when(allMatched.getMatchedCount()).thenReturn(1);
+
+        service("deferred").settleBatch("batch-1");
+
+        verifyNoInteractions(ledgerSequenceService);
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), eq(PendingCashback.class));
+        verify(bulkOperations).insert(anyList());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void settleBatch_ReplaySkipsLedgerRowsAlreadyWritten() {
+        LocalDateTime settledAt = ACCRUED.plusDays(1);
+        PendingCashback p1 = pending("p1", "user1", 5.0, 11L);
+        PendingCashback p2 = pending("p2", "user1", 2.5, 12L);
+        p1.setSettledAt(settledAt);
+        p2.setSettledAt(settledAt);
+        when(mongoTemplate.find(any(Query.class), eq(PendingCashback.class))).thenReturn(List.of(p1, p2));
+        //? the interrupted run got as far as p1's row; a time-series ledger would not reject it again by _id
+        when(mongoTemplate.find(any(Query.class), eq(Cashback.class))).thenReturn(List.of(
+                Cashback.builder().userId("user1").seq(11).build()));
+        //? the credit went through before the crash, so the guarded update matches nothing now
+        when(bulkOperations.execute()).thenReturn(noneMatched);
+        when(mongoTemplate.find(any(Query.class), eq(Wallet.class))).thenReturn(List.of(
+                Wallet.builder().userId("user1").settledCashbackBatches(List.of("batch-1")).build()));
+
+        service("deferred").settleBatch("batch-1");
+
+        ArgumentCaptor<List<Cashback>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(bulkOperations).insert(inserted.capture());
+        assertEquals(List.of(12L), inserted.getValue().stream().map(Cashback::getSeq).toList());
+        assertEquals(settledAt, inserted.getValue().getFirst().getTimestamp());
+
+        //? the wallet credit is still guarded by the batch id, whether or not it already went through
+        ArgumentCaptor<Query> credit = ArgumentCaptor.forClass(Query.class);
+        verify(bulkOperations).updateOne(credit.capture(), any(Update.class));
+        assertEquals(new Document("$ne", "batch-1"), credit.getValue().getQueryObject().get("settledCashbackBatches"));
+        verify(cashbackService, times(1)).onRecorded(any(Cashback.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void settleBatch_CapMissTrimsAndRetriesCredit() {
+        PendingCashback p1 = pending("p1", "user1", 5.0, 11L);
+        p1.setSettledAt(ACCRUED);
+        p1.setCampaignId("diwali");
+        when(mongoTemplate.find(any(Query.class), eq(PendingCashback.class))).thenReturn(List.of(p1));
+        //? another node credited cashback since the batch was capped: only 3 of the month's 500 are left
+        when(bulkOperations.execute()).thenReturn(noneMatched, allMatched);
+        when(mongoTemplate.find(any(Query.class), eq(Wallet.class))).thenReturn(List.of(
+                Wallet.builder().userId("user1").cashbackByMonth(Map.of("2024-06", 497.0)).build()));
+
+        service("deferred", 500).settleBatch("batch-1");
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        //? first credit, the trimmed amount written back to p1, second credit
+        verify(bulkOperations, times(3)).updateOne(queries.capture(), updates.capture());
+        assertTrue(queries.getAllValues().get(0).getQueryObject().containsKey("$and"));
+        assertEquals(3.0, ((Document) updates.getAllValues().get(1).getUpdateObject().get("$set")).get("amount"));
+        assertEquals(3.0, ((Document) updates.getAllValues().get(2).getUpdateObject().get("$inc")).get("balance"));
+
+        ArgumentCaptor<List<Cashback>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(bulkOperations).insert(inserted.capture());
+        assertEquals(List.of(3.0), inserted.getValue().stream().map(Cashback::getAmount).toList());
+        //? the 2 rupees trimmed off go back to the campaign that reserved 5
+        verify(cashbackService).releaseUnused(new CashbackService.Quote(5.0, "diwali"), 3.0);
+    }
+}
@@ -0,0 +1,231 @@
+package org.harsh.tuple.paisa.service;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.harsh.tuple.paisa.dto.ChartBucket;
+import org.harsh.tuple.paisa.dto.ChartGranularity;
+import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.LedgerEntryKind;
+import org.harsh.tuple.paisa.model.Transaction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ColumnarLedgerStoreTest {
+
+    private static final LocalDateTime JAN_START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final LocalDateTime JAN_END = LocalDateTime.of(2024, 1, 31, 23, 59, 59);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private Clock clock;
+    private ColumnarLedgerStore store;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        clock = mock(Clock.class);
+        store = new ColumnarLedgerStore(mongoTemplate, true, 2, Duration.ofMinutes(1), clock);
+    }
+
+    private void stubRows(Class<?> entity, String name, List<Document> rows) {
+        stubRows(entity, name, rows, () -> { });
+    }
+
+    // ?beforeFirstRow runs on the loading thread when the load starts reading
+    @SuppressWarnings("unchecked")
+    private void stubRows(Class<?> entity, String name, List<Document> rows, Runnable beforeFirstRow) {
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        FindIterable<Document> find = mock(FindIterable.class);
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        Iterator<Document> iterator = rows.iterator();
+
+        when(mongoTemplate.getCollectionName(entity)).thenReturn(name);
+        when(mongoTemplate.getCollection(name)).thenReturn(collection);
+        when(collection.find(any(Bson.class))).thenReturn(find);
+        when(find.projection(any(Bson.class))).thenReturn(find);
+        when(find.sort(any(Bson.class))).thenReturn(find);
+        when(find.iterator()).thenReturn(cursor);
+        AtomicBoolean started = new AtomicBoolean();
+        when(cursor.hasNext()).thenAnswer(_ -> {
+            if (started.compareAndSet(false, true)) {
+                beforeFirstRow.run();
+            }
+            return iterator.hasNext();
+        });
+        when(cursor.next()).thenAnswer(_ -> iterator.next());
+    }
+
+    private static Document row(long seq, LocalDateTime timestamp, String type, double amount, String senderId) {
+        return new Document("timestamp", Date.from(timestamp.atZone(ZoneId.systemDefault()).toInstant()))
+                .append("seq", seq)
+                .append("type", type)
+                .append("amount", amount)
+                .append("senderId", senderId);
+    }
+
+    private void stubLedger() {
+        stubRows(Transaction.class, "transactions", List.of(
+                row(1, LocalDateTime.of(2024, 1, 1, 9, 0), "RECHARGE", 100.0, null),
+                row(3, LocalDateTime.of(2024, 1, 1, 18, 0), "RECHARGE", 50.5, null),
+                row(4, LocalDateTime.of(2024, 1, 2, 10, 0), "TRANSFER", 20.0, null),
+                row(5, LocalDateTime.of(2024, 1, 9, 10, 0), "TRANSFER", 5.0, "user2")));
+        stubRows(Cashback.class, "cashbacks", List.of(
+                row(2, LocalDateTime.of(2024, 1, 1, 9, 0), null, 5.0, null)));
+    }
+
+    @Test
+    void buckets_DaySumsPerKind() {
+        stubLedger();
+
+        List<ChartBucket> buckets = store.buckets("user1", JAN_START, JAN_END, ChartGranularity.DAY);
+
+        assertEquals(List.of(
+                new ChartBucket(LocalDate.of(2024, 1, 1), LedgerEntryKind.RECHARGE, 2, 150.5),
+                new ChartBucket(LocalDate.of(2024, 1, 1), LedgerEntryKind.CASHBACK, 1, 5.0),
+                new ChartBucket(LocalDate.of(2024, 1, 2), LedgerEntryKind.TRANSFER_OUT, 1, 20.0),
+                new ChartBucket(LocalDate.of(2024, 1, 9), LedgerEntryKind.TRANSFER_IN, 1, 5.0)
+        ), buckets);
+    }
+
+    @Test
+    void buckets_WeekStartsOnMondayAndRangeIsInclusive() {
+        stubLedger();
+
+        List<ChartBucket> buckets = store.buckets("user1",
+                LocalDateTime.of(2024, 1, 1, 18, 0), LocalDateTime.of(2024, 1, 9, 10, 0), ChartGranularity.WEEK);
+
+        assertEquals(List.of(
+                new ChartBucket(LocalDate.of(2024, 1, 1), LedgerEntryKind.RECHARGE, 1, 50.5),
+                new ChartBucket(LocalDate.of(2024, 1, 1), LedgerEntryKind.TRANSFER_OUT, 1, 20.0),
+                new ChartBucket(LocalDate.of(2024, 1, 8), LedgerEntryKind.TRANSFER_IN, 1, 5.0)
+        ), buckets);
+    }
+
+    @Test
+    void append_LoadedUserSeesWriteWithoutReload() {
+        stubLedger();
+        store.buckets("user1", JAN_START, JAN_END, ChartGranularity.MONTH);
+
+        store.append("user1", 6, LocalDateTime.of(2024, 1, 20, 12, 0), LedgerEntryKind.RECHARGE, 10.0);
+        //? the same row again, as if it had raced the initial load
+        store.append("user1", 6, LocalDateTime.of(2024, 1, 20, 12, 0), LedgerEntryKind.RECHARGE, 10.0);
+        List<ChartBucket> buckets = store.buckets("user1", JAN_START, JAN_END, ChartGranularity.MONTH);
+
+        assertEquals(new ChartBucket(LocalDate.of(2024, 1, 1), LedgerEntryKind.RECHARGE, 3, 160.5), buckets.getFirst());
+        verify(mongoTemplate, times(1)).getCollection("transactions");
+    }
+
+    @Test
+    void append_KeepsDistinctEntriesSharingMillisecondAmountAndKind() {
+        stubLedger();
+        store.buckets("user1", JAN_START, JAN_END, ChartGranularity.MONTH);
+
+        //? two genuine recharges of the same amount in the same millisecond, only the seq differs
+        store.append("user1", 6, LocalDateTime.of(2024, 1, 20, 12, 0), LedgerEntryKind.RECHARGE, 10.0);
+        store.append("user1", 7, LocalDateTime.of(2024, 1, 20, 12, 0), LedgerEntryKind.RECHARGE, 10.0);
+        List<ChartBucket> buckets = store.buckets("user1", JAN_START, JAN_END, ChartGranularity.MONTH);
+
+        assertEquals(new ChartBucket(LocalDate.of(2024, 1, 1), LedgerEntryKind.RECHARGE, 4, 170.5), buckets.getFirst());
+    }
+
+    @Test
+    void buckets_ReloadsFromMongoAfterTtl() {
+        stubLedger();
+        store.buckets("user1", JAN_START, JAN_END, ChartGranularity.MONTH);
+
+        //? a recharge written through another node never reaches this node's append
+        stubRows(Transaction.class, "transactions", List.of(
+                row(1, LocalDateTime.of(2024, 1, 1, 9, 0), "RECHARGE", 100.0, null),
+                row(6, LocalDateTime.of(2024, 1, 20, 12, 0), "RECHARGE", 10.0, null)));
+        stubRows(Cashback.class, "cashbacks", List.of());
+        when(clock.millis()).thenReturn(30_000L);
+        assertEquals(2, store.buckets("user1", JAN_START, JAN_END, ChartGranularity.MONTH).getFirst().getCount());
+
+        when(clock.millis()).thenReturn(60_000L);
+        assertEquals(new ChartBucket(LocalDate.of(2024, 1, 1), LedgerEntryKind.RECHARGE, 2, 110.0),
+                store.buckets("user1", JAN_START, JAN_END, ChartGranularity.MONTH).getFirst());
+    }
+
+    @Test
+    void buckets_ReloadRunsOffTheLockAndKeepsAppendsMadeMeanwhile() throws Exception {
+        stubLedger();
+        store.buckets("user1", JAN_START, JAN_END, ChartGranularity.MONTH);
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        stubRows(Transaction.class, "transactions", List.of(
+                row(1, LocalDateTime.of(2024, 1, 1, 9, 0), "RECHARGE", 100.0, null)), () -> {
+            loading.countDown();
+            awaitQuietly(release);
+        });
+        stubRows(Cashback.class, "cashbacks", List.of());
+        when(clock.millis()).thenReturn(60_000L);
+        CompletableFuture<List<ChartBucket>> reload = CompletableFuture.supplyAsync(
+                () -> store.buckets("user1", JAN_START, JAN_END, ChartGranularity.MONTH));
+        assertTrue(loading.await(1, TimeUnit.SECONDS));
+
+        //? neither waits for the reload: the write lands in the old columns and is queued for the new ones
+        List<ChartBucket> stale = assertTimeoutPreemptively(Duration.ofSeconds(1), () -> {
+            store.append("user1", 6, LocalDateTime.of(2024, 1, 20, 12, 0), LedgerEntryKind.RECHARGE, 10.0);
+            return store.buckets("user1", JAN_START, JAN_END, ChartGranularity.MONTH);
+        });
+        assertEquals(new ChartBucket(LocalDate.of(2024, 1, 1), LedgerEntryKind.RECHARGE, 3, 160.5), stale.getFirst());
+
+        release.countDown();
+        assertEquals(new ChartBucket(LocalDate.of(2024, 1, 1), LedgerEntryKind.RECHARGE, 2, 110.0),
+                reload.get(1, TimeUnit.SECONDS).getFirst());
+        assertEquals(new ChartBucket(LocalDate.of(2024, 1, 1), LedgerEntryKind.RECHARGE, 2, 110.0),
+                store.buckets("user1", JAN_START, JAN_END, ChartGranularity.MONTH).getFirst());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void append_UnloadedUserIsIgnored() {
+        store.append("user1", 6, LocalDateTime.of(2024, 1, 20, 12, 0), LedgerEntryKind.RECHARGE, 10.0);
+
+        assertEquals(0, store.residentUsers());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void loaded_LeastRecentlyUsedUserEvicted() {
+        stubRows(Transaction.class, "transactions", List.of());
+        stubRows(Cashback.class, "cashbacks", List.of());
+
+        store.buckets("user1", JAN_START, JAN_END, ChartGranularity.DAY);
+        store.buckets("user2", JAN_START, JAN_END, ChartGranularity.DAY);
+        store.buckets("user3", JAN_START, JAN_END, ChartGranularity.DAY);
+
+        assertEquals(2, store.residentUsers());
+    }
+}
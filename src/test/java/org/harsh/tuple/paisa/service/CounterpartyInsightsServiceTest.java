@@ -0,0 +1,77 @@
+package org.harsh.tuple.paisa.service;
+
+import org.harsh.tuple.paisa.dto.CounterpartyCount;
+import org.harsh.tuple.paisa.model.CounterpartySketchSnapshot;
+import org.harsh.tuple.paisa.repository.CounterpartySketchRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CounterpartyInsightsServiceTest {
+
+    @Mock
+    private CounterpartySketchRepository counterpartySketchRepository;
+
+    private CounterpartyInsightsService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(counterpartySketchRepository.findById(anyString())).thenReturn(Optional.empty());
+        service = new CounterpartyInsightsService(counterpartySketchRepository, 1000);
+    }
+
+    @Test
+    void recordTransfer_TracksTopPaidAndDistinct() {
+        for (int i = 0; i < 5; i++) {
+            service.recordTransfer("alice", "bob");
+        }
+        service.recordTransfer("alice", "carol");
+        service.recordTransfer("dave", "alice");
+
+        List<CounterpartyCount> top = service.topPaid("alice", 5);
+        assertEquals("bob", top.get(0).getUserId());
+        assertTrue(top.get(0).getCount() >= 5);
+        assertEquals("carol", top.get(1).getUserId());
+        assertEquals(3, service.distinctCounterparties("alice"));
+        assertEquals(1, service.distinctCounterparties("bob"));
+    }
+
+    @Test
+    void recordTransfer_TracksPlatformWide() {
+        service.recordTransfer("alice", "bob");
+        service.recordTransfer("carol", "bob");
+        service.recordTransfer("carol", "dave");
+
+        assertEquals("bob", service.topRecipients(1).get(0).getUserId());
+        assertEquals(4, service.distinctActiveUsers());
+    }
+
+    @Test
+    void checkpoint_MergesPendingIntoStoredSnapshot() {
+        service.recordTransfer("alice", "bob");
+        when(counterpartySketchRepository.save(any(CounterpartySketchSnapshot.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        service.checkpoint();
+
+        ArgumentCaptor<CounterpartySketchSnapshot> saved = ArgumentCaptor.forClass(CounterpartySketchSnapshot.class);
+        verify(counterpartySketchRepository, times(3)).save(saved.capture());
+        CounterpartySketchSnapshot alice = saved.getAllValues().stream()
+                .filter(snapshot -> "alice".equals(snapshot.getId()))
+                .findFirst()
+                .orElseThrow();
+        assertTrue(alice.getHeavyHitters().get("bob") >= 1);
+
+        //? nothing pending anymore, a second run writes nothing
+        service.checkpoint();
+        verify(counterpartySketchRepository, times(3)).save(any(CounterpartySketchSnapshot.class));
+    }
+}
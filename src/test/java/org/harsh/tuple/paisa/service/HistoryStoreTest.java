@@ -0,0 +1,131 @@
+package org.harsh.tuple.paisa.service;
+
+import org.harsh.tuple.paisa.model.HistoryEntry;
+import org.harsh.tuple.paisa.repository.HistoryEntryRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class HistoryStoreTest {
+
+    private HistoryStore store(int perUser, long global, Duration idle) {
+        return new HistoryStore(null, null, perUser, global, idle, false);
+    }
+
+    private List<Object> entries(int from, int to) {
+        List<Object> entries = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            entries.add(Map.of("n", i));
+        }
+        return entries;
+    }
+
+    @Test
+    void append_KeepsOnlyNewestEntriesPerUser() {
+        HistoryStore store = store(3, 100, Duration.ofMinutes(30));
+
+        store.append("user1", entries(0, 5));
+
+        assertEquals(entries(2, 5), store.snapshot("user1"));
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    void page_ReturnsNewestFirstWithoutSpill() {
+        HistoryStore store = store(10, 100, Duration.ofMinutes(30));
+        store.append("user1", entries(0, 5));
+
+        assertEquals(List.of(Map.of("n", 4), Map.of("n", 3)), store.page("user1", 0, 2));
+        assertEquals(List.of(Map.of("n", 0)), store.page("user1", 2, 2));
+        assertTrue(store.page("user1", 3, 2).isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void snapshot_ReadsSpilledEntriesBackAheadOfMemory() {
+        HistoryEntryRepository repository = mock(HistoryEntryRepository.class);
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        HistoryStore store = new HistoryStore(repository, mongoTemplate, 3, 100, Duration.ofMinutes(30), true);
+        store.append("user1", entries(0, 5));
+
+        ArgumentCaptor<List<HistoryEntry>> spilled = ArgumentCaptor.forClass(List.class);
+        verify(repository).saveAll(spilled.capture());
+        when(mongoTemplate.find(any(Query.class), eq(HistoryEntry.class))).thenReturn(spilled.getValue());
+
+        assertEquals(entries(0, 5), store.snapshot("user1"));
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(HistoryEntry.class));
+        //? only below the oldest sequence still in memory, so nothing comes back twice
+        assertTrue(query.getValue().getQueryObject().toJson().contains("$lt"));
+    }
+
+    @Test
+    void page_InvalidArguments() {
+        HistoryStore store = store(10, 100, Duration.ofMinutes(30));
+
+        assertThrows(IllegalArgumentException.class, () -> store.page("user1", -1, 10));
+        assertThrows(IllegalArgumentException.class, () -> store.page("user1", 0, 0));
+    }
+
+    @Test
+    void append_EvictsLeastRecentlyUsedUsersOverGlobalCap() {
+        HistoryStore store = store(10, 20, Duration.ofMinutes(30));
+
+        store.append("user1", entries(0, 10));
+        store.append("user2", entries(0, 10));
+        store.append("user3", entries(0, 10));
+
+        assertTrue(store.size() <= 20);
+        assertTrue(store.snapshot("user1").isEmpty());
+        assertEquals(10, store.snapshot("user3").size());
+    }
+
+    @Test
+    void evictIdle_RemovesIdleUsers() {
+        HistoryStore store = store(10, 100, Duration.ZERO);
+        store.append("user1", entries(0, 3));
+
+        store.evictIdle();
+
+        assertTrue(store.snapshot("user1").isEmpty());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void append_ConcurrentWritersDoNotLoseEntries() throws Exception {
+        HistoryStore store = store(10_000, 100_000, Duration.ofMinutes(30));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        IntStream.range(0, 8).forEach(t -> executor.submit(() -> {
+            for (int i = 0; i < 500; i++) {
+                store.append("user1", List.of(Map.of("t", t, "n", i)));
+            }
+        }));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(4000, store.snapshot("user1").size());
+        assertEquals(4000, store.size());
+    }
+
+    @Test
+    void append_NullEntries() {
+        HistoryStore store = store(10, 100, Duration.ofMinutes(30));
+
+        assertThrows(NullPointerException.class, () -> store.append("user1", null));
+    }
+}
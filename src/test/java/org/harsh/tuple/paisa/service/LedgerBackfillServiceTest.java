@@ -0,0 +1,133 @@
+package org.harsh.tuple.paisa.service;
+
+import org.bson.Document;
+import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.Transaction;
+import org.harsh.tuple.paisa.model.Wallet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class LedgerBackfillServiceTest {
+
+    private static final LocalDateTime T = LocalDateTime.of(2024, 3, 1, 10, 0);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations transactionUpdates;
+
+    @Mock
+    private BulkOperations cashbackUpdates;
+
+    @Mock
+    private BulkOperations walletUpdates;
+
+    @InjectMocks
+    private LedgerBackfillService ledgerBackfillService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Transaction.class)).thenReturn(transactionUpdates);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Cashback.class)).thenReturn(cashbackUpdates);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Wallet.class)).thenReturn(walletUpdates);
+    }
+
+    private static Transaction transaction(String id, LocalDateTime timestamp, long seq) {
+        return Transaction.builder().id(id).userId("user1").seq(seq).timestamp(timestamp).build();
+    }
+
+    private static Cashback cashback(String id, LocalDateTime timestamp, long seq) {
+        return Cashback.builder().id(id).userId("user1").seq(seq).timestamp(timestamp).build();
+    }
+
+    private static Object seqOf(Update update) {
+        return update.getUpdateObject().get("$set", Document.class).get("seq");
+    }
+
+    private static Object idOf(Query query) {
+        return query.getQueryObject().get("_id");
+    }
+
+    @Test
+    void numberLegacyEntries_OldestLowestEndingAtZero() {
+        //? legacy rows carry no seq, which reads back as 0
+        when(mongoTemplate.find(any(Query.class), eq(Transaction.class))).thenReturn(List.of(
+                transaction("transfer", T.plusHours(1), 0),
+                transaction("recharge", T, 0)));
+        when(mongoTemplate.find(any(Query.class), eq(Cashback.class))).thenReturn(List.of(cashback("cashback", T, 0)));
+
+        assertEquals(3, ledgerBackfillService.numberLegacyEntries("user1"));
+
+        ArgumentCaptor<Query> transactionQueries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> transactionSeqs = ArgumentCaptor.forClass(Update.class);
+        verify(transactionUpdates, times(2)).updateOne(transactionQueries.capture(), transactionSeqs.capture());
+        assertEquals(List.of("recharge", "transfer"), transactionQueries.getAllValues().stream().map(LedgerBackfillServiceTest::idOf).toList());
+        assertEquals(List.of(-2L, 0L), transactionSeqs.getAllValues().stream().map(LedgerBackfillServiceTest::seqOf).toList());
+
+        ArgumentCaptor<Update> cashbackSeq = ArgumentCaptor.forClass(Update.class);
+        verify(cashbackUpdates).updateOne(any(Query.class), cashbackSeq.capture());
+        assertEquals(-1L, seqOf(cashbackSeq.getValue()));
+        verify(transactionUpdates).execute();
+        verify(cashbackUpdates).execute();
+    }
+
+    @Test
+    void numberLegacyEntries_RerunOnlyRewritesTheNewest() {
+        when(mongoTemplate.find(any(Query.class), eq(Transaction.class))).thenReturn(List.of(
+                transaction("recharge", T, -2),
+                transaction("transfer", T.plusHours(1), 0)));
+        when(mongoTemplate.find(any(Query.class), eq(Cashback.class))).thenReturn(List.of(cashback("cashback", T, -1)));
+
+        assertEquals(1, ledgerBackfillService.numberLegacyEntries("user1"));
+
+        verify(transactionUpdates).updateOne(any(Query.class), any(Update.class));
+        verifyNoInteractions(cashbackUpdates);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void backfillCashbackTotals_OneGuardedUpdatePerWallet() {
+        when(mongoTemplate.aggregateStream(any(TypedAggregation.class), eq(Document.class))).thenReturn(Stream.of(
+                new Document("_id", new Document("userId", "user1").append("month", "2024-01")).append("total", 10.0),
+                new Document("_id", new Document("userId", "user1").append("month", "2024-02")).append("total", 5.0),
+                new Document("_id", new Document("userId", "user2").append("month", "2024-01")).append("total", 3.0)));
+
+        assertEquals(2, ledgerBackfillService.backfillCashbackTotals(T));
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(walletUpdates, times(2)).updateOne(queries.capture(), updates.capture());
+        verify(walletUpdates).execute();
+
+        Document first = queries.getAllValues().get(0).getQueryObject();
+        assertEquals("user1", first.get("userId"));
+        assertEquals(new Document("$ne", true), first.get("cashbackTotalsBackfilled"));
+        Document inc = updates.getAllValues().get(0).getUpdateObject().get("$inc", Document.class);
+        assertEquals(15.0, inc.get("cashbackLifetime"));
+        assertEquals(10.0, inc.get("cashbackByMonth.2024-01"));
+        assertEquals(5.0, inc.get("cashbackByMonth.2024-02"));
+        assertEquals(true, updates.getAllValues().get(0).getUpdateObject().get("$set", Document.class)
+                .get("cashbackTotalsBackfilled"));
+        assertEquals(3.0, updates.getAllValues().get(1).getUpdateObject().get("$inc", Document.class)
+                .get("cashbackLifetime"));
+    }
+}
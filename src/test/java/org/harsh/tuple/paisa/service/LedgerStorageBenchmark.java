@@ -0,0 +1,102 @@
+package org.harsh.tuple.paisa.service;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import org.bson.Document;
+import org.harsh.tuple.paisa.config.LedgerStorage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+// *Standard vs time-series ledger layout: storage footprint and per-user range-query latency.
+// *Needs a scratch Mongo: mvn test -Dtest=LedgerStorageBenchmark -Dbenchmark.mongo.uri=mongodb://localhost/bench
+@EnabledIfSystemProperty(named = "benchmark.mongo.uri", matches = ".+")
+class LedgerStorageBenchmark {
+
+    private static final int USERS = 1_000;
+    private static final int EVENTS_PER_USER = 500;
+    private static final int QUERIES = 2_000;
+    private static final Instant EPOCH = Instant.parse("2024-01-01T00:00:00Z");
+
+    @Test
+    void compareLayouts() {
+        try (MongoClient client = MongoClients.create(System.getProperty("benchmark.mongo.uri"))) {
+            MongoDatabase database = client.getDatabase("ledger_benchmark");
+            database.drop();
+
+            MongoCollection<Document> standard = database.getCollection("transactions");
+            standard.createIndex(Indexes.ascending("userId", "seq"), new IndexOptions().name("user_seq"));
+            LedgerStorage.ensureTimeSeries(database, "transactions_ts");
+            MongoCollection<Document> timeSeries = database.getCollection("transactions_ts");
+            timeSeries.createIndex(Indexes.ascending("userId", "seq"), new IndexOptions().name("user_seq"));
+
+            load(standard, timeSeries);
+
+            report("standard", standard);
+            report("timeseries", timeSeries);
+            database.drop();
+        }
+    }
+
+    private void load(MongoCollection<Document> standard, MongoCollection<Document> timeSeries) {
+        Random random = new Random(42);
+        for (int user = 0; user < USERS; user++) {
+            List<Document> events = new ArrayList<>(EVENTS_PER_USER);
+            for (int i = 0; i < EVENTS_PER_USER; i++) {
+                events.add(new Document("userId", "user" + user)
+                        .append("type", random.nextInt(4) == 0 ? "RECHARGE" : "TRANSFER")
+                        .append("amount", Math.round(random.nextDouble() * 50_000) / 100.0)
+                        .append("timestamp", Date.from(EPOCH.plus(Duration.ofMinutes(random.nextInt(365 * 24 * 60))))));
+            }
+            //? the ledger is append-only, so events arrive in time order with increasing seq
+            events.sort(Comparator.comparing(event -> event.getDate("timestamp")));
+            for (int seq = 0; seq < events.size(); seq++) {
+                events.get(seq).append("seq", seq + 1L);
+            }
+            standard.insertMany(events);
+            //? insertMany adds _id to the documents, hand the time-series copy fresh ones
+            events.forEach(event -> event.remove("_id"));
+            timeSeries.insertMany(events);
+        }
+    }
+
+    private void report(String layout, MongoCollection<Document> collection) {
+        Document stats = collection.aggregate(List.of(new Document("$collStats", new Document("storageStats", new Document()))))
+                .first()
+                .get("storageStats", Document.class);
+
+        Random random = new Random(7);
+        long[] latencies = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            Instant from = EPOCH.plus(Duration.ofDays(random.nextInt(335)));
+            long started = System.nanoTime();
+            collection.find(Filters.and(
+                    Filters.eq("userId", "user" + random.nextInt(USERS)),
+                    Filters.gte("timestamp", Date.from(from)),
+                    Filters.lte("timestamp", Date.from(from.plus(Duration.ofDays(30))))
+            )).into(new ArrayList<>());
+            latencies[i] = System.nanoTime() - started;
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("%-10s storage=%,d B indexes=%,d B p50=%.2f ms p99=%.2f ms%n",
+                layout,
+                ((Number) stats.get("storageSize")).longValue(),
+                ((Number) stats.get("totalIndexSize")).longValue(),
+                latencies[QUERIES / 2] / 1e6,
+                latencies[QUERIES * 99 / 100] / 1e6);
+    }
+}
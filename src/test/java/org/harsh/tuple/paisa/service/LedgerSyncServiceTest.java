@@ -0,0 +1,108 @@
+package org.harsh.tuple.paisa.service;
+
+import org.harsh.tuple.paisa.dto.SyncResponse;
+import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.Transaction;
+import org.harsh.tuple.paisa.repository.CashbackRepository;
+import org.harsh.tuple.paisa.repository.TransactionRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LedgerSyncServiceTest {
+
+    @Mock
+    private TransactionRepository transactionRepository;
+    @Mock
+    private CashbackRepository cashbackRepository;
+
+    @InjectMocks
+    private LedgerSyncService ledgerSyncService;
+
+    private Transaction transaction(long seq, LocalDateTime timestamp) {
+        return Transaction.builder().userId("user1").seq(seq).amount(100.0).timestamp(timestamp).build();
+    }
+
+    private Cashback cashback(long seq, LocalDateTime timestamp) {
+        return Cashback.builder().userId("user1").seq(seq).amount(5.0).timestamp(timestamp).build();
+    }
+
+    @Test
+    void getChangesSince_MergesBothCollectionsBySeq() {
+        LocalDateTime old = LocalDateTime.now().minusHours(1);
+        when(transactionRepository.findByUserIdAndSeqGreaterThanOrderBySeqAsc(eq("user1"), eq(3L), any(Limit.class)))
+                .thenReturn(List.of(transaction(4, old), transaction(6, old)));
+        when(cashbackRepository.findByUserIdAndSeqGreaterThanOrderBySeqAsc(eq("user1"), eq(3L), any(Limit.class)))
+                .thenReturn(List.of(cashback(5, old)));
+
+        SyncResponse response = ledgerSyncService.getChangesSince("user1", 3, 10);
+
+        assertEquals(2, response.getTransactions().size());
+        assertEquals(1, response.getCashbacks().size());
+        assertEquals(6, response.getWatermark());
+        assertFalse(response.isHasMore());
+    }
+
+    @Test
+    void getChangesSince_StopsAtLimit() {
+        LocalDateTime old = LocalDateTime.now().minusHours(1);
+        when(transactionRepository.findByUserIdAndSeqGreaterThanOrderBySeqAsc(eq("user1"), eq(0L), any(Limit.class)))
+                .thenReturn(List.of(transaction(1, old), transaction(2, old), transaction(3, old)));
+        when(cashbackRepository.findByUserIdAndSeqGreaterThanOrderBySeqAsc(eq("user1"), eq(0L), any(Limit.class)))
+                .thenReturn(Collections.emptyList());
+
+        SyncResponse response = ledgerSyncService.getChangesSince("user1", 0, 2);
+
+        assertEquals(2, response.getTransactions().size());
+        assertEquals(2, response.getWatermark());
+        assertTrue(response.isHasMore());
+    }
+
+    @Test
+    void getChangesSince_HoldsWatermarkBeforeRecentGap() {
+        LocalDateTime now = LocalDateTime.now();
+        when(transactionRepository.findByUserIdAndSeqGreaterThanOrderBySeqAsc(eq("user1"), eq(0L), any(Limit.class)))
+                .thenReturn(List.of(transaction(1, now), transaction(3, now)));
+        when(cashbackRepository.findByUserIdAndSeqGreaterThanOrderBySeqAsc(eq("user1"), eq(0L), any(Limit.class)))
+                .thenReturn(Collections.emptyList());
+
+        SyncResponse response = ledgerSyncService.getChangesSince("user1", 0, 10);
+
+        assertEquals(1, response.getTransactions().size());
+        assertEquals(1, response.getWatermark());
+        assertTrue(response.isHasMore());
+    }
+
+    @Test
+    void getChangesSince_SkipsAbandonedGap() {
+        LocalDateTime old = LocalDateTime.now().minusMinutes(5);
+        when(transactionRepository.findByUserIdAndSeqGreaterThanOrderBySeqAsc(eq("user1"), eq(0L), any(Limit.class)))
+                .thenReturn(List.of(transaction(1, old), transaction(3, old)));
+        when(cashbackRepository.findByUserIdAndSeqGreaterThanOrderBySeqAsc(eq("user1"), eq(0L), any(Limit.class)))
+                .thenReturn(Collections.emptyList());
+
+        SyncResponse response = ledgerSyncService.getChangesSince("user1", 0, 10);
+
+        assertEquals(2, response.getTransactions().size());
+        assertEquals(3, response.getWatermark());
+    }
+
+    @Test
+    void getChangesSince_InvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> ledgerSyncService.getChangesSince("user1", -1, 10));
+        assertThrows(IllegalArgumentException.class, () -> ledgerSyncService.getChangesSince("user1", 0, 0));
+    }
+}
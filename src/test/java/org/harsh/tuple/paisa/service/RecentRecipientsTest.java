@@ -0,0 +1,159 @@
+package org.harsh.tuple.paisa.service;
+
+import org.harsh.tuple.paisa.model.Transaction;
+import org.harsh.tuple.paisa.model.TransactionType;
+import org.harsh.tuple.paisa.repository.TransactionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RecentRecipientsTest {
+
+    private static final Instant NOW = Instant.parse("2024-06-01T10:00:00Z");
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    private MutableClock clock;
+    private RecentRecipients recentRecipients;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        clock = new MutableClock(NOW);
+        recentRecipients = new RecentRecipients(transactionRepository, 3, Duration.ofDays(14), Duration.ofMinutes(10),
+                100, clock);
+    }
+
+    private LocalDateTime daysAgo(int days) {
+        return LocalDateTime.ofInstant(clock.instant().minus(Duration.ofDays(days)), ZoneId.systemDefault());
+    }
+
+    //? newest first, the way the repository returns them
+    private void stubLedger(String userId, Transaction... transfers) {
+        when(transactionRepository.findByUserIdAndTypeAndRecipientUsernameNotNullOrderBySeqDesc(
+                eq(userId), eq(TransactionType.TRANSFER), any(Limit.class))).thenReturn(List.of(transfers));
+    }
+
+    private static Transaction transfer(String recipientUsername, LocalDateTime at) {
+        return Transaction.builder().recipientUsername(recipientUsername).timestamp(at).build();
+    }
+
+    @Test
+    void ranked_OrdersLedgerByDecayedCount() {
+        //? three payments to rahul a month ago weigh less than two to priya this week
+        stubLedger("user1",
+                transfer("priya", daysAgo(1)),
+                transfer("priya", daysAgo(2)),
+                transfer("raj", daysAgo(10)),
+                transfer("rahul", daysAgo(28)),
+                transfer("rahul", daysAgo(29)),
+                transfer("rahul", daysAgo(30)));
+
+        assertEquals(List.of("priya", "rahul", "raj"), recentRecipients.ranked("user1", _ -> true, 10));
+        assertEquals(List.of("rahul", "raj"), recentRecipients.ranked("user1", name -> name.startsWith("ra"), 10));
+        assertEquals(List.of("priya"), recentRecipients.ranked("user1", _ -> true, 1));
+        verify(transactionRepository, times(1)).findByUserIdAndTypeAndRecipientUsernameNotNullOrderBySeqDesc(
+                eq("user1"), eq(TransactionType.TRANSFER), any(Limit.class));
+    }
+
+    @Test
+    void record_NewRecipientDisplacesWeakestAtCap() {
+        stubLedger("user1",
+                transfer("priya", daysAgo(1)),
+                transfer("rahul", daysAgo(2)),
+                transfer("raj", daysAgo(40)));
+        recentRecipients.ranked("user1", _ -> true, 10);
+
+        recentRecipients.record("user1", "harsh", daysAgo(0));
+        recentRecipients.record("user1", "harsh", daysAgo(0));
+
+        assertEquals(List.of("harsh", "priya", "rahul"), recentRecipients.ranked("user1", _ -> true, 10));
+    }
+
+    @Test
+    void record_IgnoresUsersNotHeld() {
+        stubLedger("user1", transfer("priya", daysAgo(1)));
+
+        recentRecipients.record("user1", "harsh", daysAgo(0));
+
+        //? the ledger stub stands in for the ledger, which would already have harsh
+        assertEquals(List.of("priya"), recentRecipients.ranked("user1", _ -> true, 10));
+    }
+
+    @Test
+    void ranked_ReloadsFromLedgerAfterTtl() {
+        stubLedger("user1", transfer("priya", daysAgo(1)));
+        assertEquals(List.of("priya"), recentRecipients.ranked("user1", _ -> true, 10));
+
+        //? a transfer made through another node
+        stubLedger("user1", transfer("rahul", daysAgo(0)), transfer("rahul", daysAgo(0)), transfer("priya", daysAgo(1)));
+        clock.advance(Duration.ofMinutes(5));
+        assertEquals(List.of("priya"), recentRecipients.ranked("user1", _ -> true, 10));
+
+        clock.advance(Duration.ofMinutes(6));
+        assertEquals(List.of("rahul", "priya"), recentRecipients.ranked("user1", _ -> true, 10));
+    }
+
+    @Test
+    void ranked_EvictsLeastRecentlyUsedUsers() {
+        recentRecipients = new RecentRecipients(transactionRepository, 3, Duration.ofDays(14), Duration.ofMinutes(10),
+                2, clock);
+        List<String> loaded = new ArrayList<>();
+        when(transactionRepository.findByUserIdAndTypeAndRecipientUsernameNotNullOrderBySeqDesc(
+                anyString(), eq(TransactionType.TRANSFER), any(Limit.class))).thenAnswer(invocation -> {
+            loaded.add(invocation.getArgument(0));
+            return List.of();
+        });
+
+        recentRecipients.ranked("user1", _ -> true, 10);
+        recentRecipients.ranked("user2", _ -> true, 10);
+        recentRecipients.ranked("user1", _ -> true, 10);
+        recentRecipients.ranked("user3", _ -> true, 10);
+        recentRecipients.ranked("user1", _ -> true, 10);
+        recentRecipients.ranked("user2", _ -> true, 10);
+
+        assertEquals(List.of("user1", "user2", "user3", "user2"), loaded);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.systemDefault();
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
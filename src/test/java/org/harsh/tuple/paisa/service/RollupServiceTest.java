@@ -0,0 +1,109 @@
+package org.harsh.tuple.paisa.service;
+
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.result.DeleteResult;
+import org.bson.Document;
+import org.harsh.tuple.paisa.model.Cashback;
+import org.harsh.tuple.paisa.model.DailyRollup;
+import org.harsh.tuple.paisa.model.LedgerEntryKind;
+import org.harsh.tuple.paisa.model.Transaction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RollupServiceTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MongoCollection<Document> transactions;
+
+    @Mock
+    private AggregateIterable<Document> aggregate;
+
+    @InjectMocks
+    private RollupService rollupService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(mongoTemplate.getCollectionName(Transaction.class)).thenReturn("transactions");
+        when(mongoTemplate.getCollectionName(Cashback.class)).thenReturn("cashbacks");
+        when(mongoTemplate.getCollectionName(DailyRollup.class)).thenReturn("daily_rollups");
+        when(mongoTemplate.getCollection("transactions")).thenReturn(transactions);
+        when(transactions.aggregate(anyList())).thenReturn(aggregate);
+        when(aggregate.allowDiskUse(true)).thenReturn(aggregate);
+        when(mongoTemplate.remove(any(Query.class), eq(DailyRollup.class))).thenReturn(DeleteResult.acknowledged(0));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rebuild_ReplacesClosedDaysWithoutEmptyingTheCollection() {
+        rollupService.rebuild("user1");
+
+        ArgumentCaptor<List<Document>> pipeline = ArgumentCaptor.forClass(List.class);
+        verify(transactions).aggregate(pipeline.capture());
+        verify(aggregate).toCollection();
+        Document match = pipeline.getValue().getFirst().get("$match", Document.class);
+        assertEquals("user1", match.get("userId"));
+        assertNotNull(match.get("timestamp", Document.class).get("$lt"));
+        assertEquals("cashbacks", pipeline.getValue().get(2).get("$unionWith", Document.class).get("coll"));
+        Document merge = pipeline.getValue().getLast().get("$merge", Document.class);
+        assertEquals("replace", merge.get("whenMatched"));
+
+        //? only leftovers of this user's closed days are removed, never the live documents
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(removed.capture(), eq(DailyRollup.class));
+        Document stale = removed.getValue().getQueryObject();
+        assertEquals("user1", stale.get("userId"));
+        assertTrue(stale.toJson().contains("rebuiltAt"));
+    }
+
+    @Test
+    void record_DoesNothingWhileRollupsAreOff() {
+        rollupService.record("user1", LocalDateTime.now(), LedgerEntryKind.RECHARGE, 100.0);
+
+        verify(mongoTemplate, never()).upsert(any(Query.class), any(Update.class), eq(DailyRollup.class));
+    }
+
+    @Test
+    void record_IncrementsTheDayOnceEnabled() {
+        ReflectionTestUtils.setField(rollupService, "enabled", true);
+
+        rollupService.record("user1", LocalDateTime.of(2024, 3, 1, 10, 0), LedgerEntryKind.RECHARGE, 100.0);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, timeout(1000)).upsert(query.capture(), any(Update.class), eq(DailyRollup.class));
+        assertEquals("user1:2024-03-01", query.getValue().getQueryObject().get("_id"));
+    }
+
+    @Test
+    void recordRecharge_CountsTheCashbackInTheSameUpsert() {
+        ReflectionTestUtils.setField(rollupService, "enabled", true);
+
+        rollupService.recordRecharge("user1", LocalDateTime.of(2024, 3, 1, 10, 0), 100.0, 5.0);
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, timeout(1000)).upsert(any(Query.class), update.capture(), eq(DailyRollup.class));
+        Document inc = update.getValue().getUpdateObject().get("$inc", Document.class);
+        assertEquals(100.0, inc.get("rechargeTotal"));
+        assertEquals(5.0, inc.get("cashbackTotal"));
+        assertEquals(1, inc.get("cashbackCount"));
+    }
+}
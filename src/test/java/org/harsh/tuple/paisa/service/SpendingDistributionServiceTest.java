@@ -0,0 +1,122 @@
+package org.harsh.tuple.paisa.service;
+
+import org.harsh.tuple.paisa.dto.QuantileValue;
+import org.harsh.tuple.paisa.dto.SpendingPercentiles;
+import org.harsh.tuple.paisa.model.SpendingDigest;
+import org.harsh.tuple.paisa.model.TransactionType;
+import org.harsh.tuple.paisa.repository.SpendingDigestRepository;
+import org.harsh.tuple.paisa.util.TDigest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SpendingDistributionServiceTest {
+
+    private static final YearMonth JAN = YearMonth.of(2024, 1);
+    private static final YearMonth FEB = YearMonth.of(2024, 2);
+
+    @Mock
+    private SpendingDigestRepository spendingDigestRepository;
+
+    private SpendingDistributionService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        service = new SpendingDistributionService(spendingDigestRepository);
+        when(spendingDigestRepository.findAllById(anyIterable())).thenReturn(List.of());
+    }
+
+    private static SpendingDigest stored(String userId, YearMonth month, double... amounts) {
+        TDigest digest = new TDigest(100);
+        for (double amount : amounts) {
+            digest.add(amount);
+        }
+        return SpendingDigest.builder()
+                .id(userId + ":" + month + ":TRANSFER")
+                .userId(userId)
+                .month(month.toString())
+                .type(TransactionType.TRANSFER)
+                .digest(digest.toBytes())
+                .count(digest.count())
+                .build();
+    }
+
+    @Test
+    void percentiles_MergesStoredMonthsWithUnflushedWrites() {
+        when(spendingDigestRepository.findAllById(anyIterable())).thenReturn(List.of(
+                stored("user1", JAN, 10, 20, 30),
+                stored("user1", FEB, 40, 50)));
+        service.record("user1", TransactionType.TRANSFER, 60, LocalDateTime.of(2024, 2, 10, 12, 0));
+
+        SpendingPercentiles percentiles = service.percentiles("user1", TransactionType.TRANSFER, JAN, FEB, List.of(0.0, 1.0));
+
+        assertEquals(6, percentiles.getCount());
+        assertEquals(List.of(new QuantileValue(0.0, 10.0), new QuantileValue(1.0, 60.0)), percentiles.getQuantiles());
+    }
+
+    @Test
+    void monthly_EmptyMonthHasNoValues() {
+        service.record("user1", TransactionType.TRANSFER, 25, LocalDateTime.of(2024, 1, 5, 9, 0));
+
+        List<SpendingPercentiles> months = service.monthly("user1", TransactionType.TRANSFER, JAN, FEB, List.of(0.5));
+
+        assertEquals(2, months.size());
+        assertEquals(new QuantileValue(0.5, 25.0), months.get(0).getQuantiles().getFirst());
+        assertEquals(0, months.get(1).getCount());
+        assertNull(months.get(1).getQuantiles().getFirst().getValue());
+    }
+
+    @Test
+    void record_AlsoFeedsPlatformDigest() {
+        service.record("user1", TransactionType.RECHARGE, 100, LocalDateTime.of(2024, 1, 5, 9, 0));
+        service.record("user2", TransactionType.RECHARGE, 300, LocalDateTime.of(2024, 1, 6, 9, 0));
+
+        SpendingPercentiles platform = service.platformPercentiles(TransactionType.RECHARGE, JAN, JAN, List.of(1.0));
+
+        assertEquals(2, platform.getCount());
+        assertEquals(300.0, platform.getQuantiles().getFirst().getValue());
+    }
+
+    @Test
+    void flush_MergesDeltaIntoStoredDigestAndRetriesOnConflict() {
+        service.record("user1", TransactionType.TRANSFER, 50, LocalDateTime.of(2024, 1, 5, 9, 0));
+        when(spendingDigestRepository.findById(anyString())).thenReturn(Optional.empty());
+        when(spendingDigestRepository.findById("user1:2024-01:TRANSFER"))
+                .thenAnswer(_ -> Optional.of(stored("user1", JAN, 10)));
+        when(spendingDigestRepository.save(any(SpendingDigest.class)))
+                .thenThrow(new OptimisticLockingFailureException("conflict"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        service.flush();
+
+        ArgumentCaptor<SpendingDigest> saved = ArgumentCaptor.forClass(SpendingDigest.class);
+        verify(spendingDigestRepository, times(3)).save(saved.capture());
+        SpendingDigest userDigest = saved.getAllValues().stream()
+                .filter(digest -> digest.getId().equals("user1:2024-01:TRANSFER"))
+                .reduce((first, second) -> second)
+                .orElseThrow();
+        assertEquals(2, userDigest.getCount());
+        assertEquals(50, TDigest.fromBytes(userDigest.getDigest()).quantile(1.0));
+    }
+
+    @Test
+    void percentiles_RejectsInvalidRange() {
+        assertThrows(IllegalArgumentException.class,
+                () -> service.percentiles("user1", TransactionType.TRANSFER, FEB, JAN, List.of(0.5)));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.percentiles("user1", TransactionType.TRANSFER, JAN, JAN, List.of(1.5)));
+    }
+}
@@ -13,12 +13,16 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class UserServiceTest {
@@ -32,6 +36,12 @@ class UserServiceTest {
     @Mock
     private JwtUtil jwtUtil;
 
+    @Mock
+    private UsernameIndex usernameIndex;
+
+    @Mock
+    private RecentRecipients recentRecipients;
+
     @InjectMocks
     private UserService userService;
 
@@ -61,6 +71,7 @@ class UserServiceTest {
         assertEquals("testuser", registeredUser.getUsername());
         verify(userRepository).save(any(User.class));
         verify(walletRepository).save(any(Wallet.class));
+        verify(usernameIndex).add("testuser");
     }
 
     @Test
@@ -136,6 +147,7 @@ class UserServiceTest {
         // Arrange
         User user = User.builder()
                 .id("user123")
+                .username("testuser")
                 .build();
 
         when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
@@ -146,6 +158,7 @@ class UserServiceTest {
         // Assert
         verify(userRepository).deleteById(user.getId());
         verify(walletRepository).deleteByUserId(user.getId());
+        verify(usernameIndex).remove("testuser");
     }
 
     @Test
@@ -226,65 +239,94 @@ class UserServiceTest {
     }
 
     @Test
-    public void testGetSuggestions_ValidJson() throws Exception {
+    public void testGetSuggestions_FromIndex() {
         // Arrange
-        String query = "test";
-        List<String> mockResults = Arrays.asList(
-                "{\"username\":\"user1\"}",
-                "{\"username\":\"user2\"}"
-        );
-
-        when(userRepository.findUsernamesByQuery(".*" + query + ".*")).thenReturn(mockResults);
+        String query = "Test";
+        when(usernameIndex.suggest(query, 10)).thenReturn(Optional.of(List.of("test", "tester")));
 
         // Act
-        Map<String, Set<String>> response = userService.getSuggestions(query);
+        Map<String, Set<String>> response = userService.getSuggestions("user123", null, query, 10, false);
 
         // Assert
         assertNotNull(response);
-        assertTrue(response.containsKey("usernames"));
-        assertEquals(2, response.get("usernames").size());
-        assertTrue(response.get("usernames").contains("user1"));
-        assertTrue(response.get("usernames").contains("user2"));
-        verify(userRepository, times(1)).findUsernamesByQuery(".*" + query + ".*");
+        assertEquals(List.of("test", "tester"), new ArrayList<>(response.get("usernames")));
+        verify(userRepository, never()).findByUsernameStartingWithIgnoreCase(anyString(), any(Limit.class));
     }
 
     @Test
-    public void testGetSuggestions_InvalidJson() {
+    public void testGetSuggestions_FallsBackToRepositoryWithoutIndex() {
         // Arrange
         String query = "test";
-        List<String> mockResults = Arrays.asList(
-                "{\"username\":\"user1\"}",
-                "{invalidJson}"
-        );
-
-        when(userRepository.findUsernamesByQuery(".*" + query + ".*")).thenReturn(mockResults);
+        when(usernameIndex.suggest(query, 5)).thenReturn(Optional.empty());
+        when(userRepository.findByUsernameStartingWithIgnoreCase(query, Limit.of(5))).thenReturn(List.of(
+                User.builder().username("user1").build(),
+                User.builder().username("user2").build()));
 
         // Act
-        Map<String, Set<String>> response = userService.getSuggestions(query);
+        Map<String, Set<String>> response = userService.getSuggestions("user123", null, query, 5, false);
 
         // Assert
-        assertNotNull(response);
-        assertTrue(response.containsKey("usernames"));
-        assertEquals(1, response.get("usernames").size());
-        assertTrue(response.get("usernames").contains("user1"));
-        verify(userRepository, times(1)).findUsernamesByQuery(".*" + query + ".*");
+        assertEquals(Set.of("user1", "user2"), response.get("usernames"));
+        verify(userRepository, times(1)).findByUsernameStartingWithIgnoreCase(query, Limit.of(5));
     }
 
     @Test
-    public void testGetSuggestions_NoResults() {
-        // Arrange
-        String query = "test";
-        List<String> mockResults = Collections.emptyList();
+    public void testGetSuggestions_ClampsLimit() {
+        when(usernameIndex.suggest("test", 50)).thenReturn(Optional.of(List.of()));
 
-        when(userRepository.findUsernamesByQuery(".*" + query + ".*")).thenReturn(mockResults);
+        Map<String, Set<String>> response = userService.getSuggestions("user123", null, "test", 10_000, false);
 
-        // Act
-        Map<String, Set<String>> response = userService.getSuggestions(query);
+        assertTrue(response.get("usernames").isEmpty());
+        verify(usernameIndex).suggest("test", 50);
+    }
+
+    @Test
+    public void testGetSuggestions_Fuzzy() {
+        when(usernameIndex.suggestFuzzy("rahl", 10)).thenReturn(Optional.of(List.of("rahul", "rah")));
+
+        Map<String, Set<String>> response = userService.getSuggestions("user123", null, "rahl", 10, true);
+
+        assertEquals(List.of("rahul", "rah"), new ArrayList<>(response.get("usernames")));
+        verify(usernameIndex, never()).suggest(anyString(), anyInt());
+    }
+
+    @Test
+    public void testGetSuggestions_FuzzyFallsBackToPrefix() {
+        when(usernameIndex.suggestFuzzy("ra", 10)).thenReturn(Optional.empty());
+        when(usernameIndex.suggest("ra", 10)).thenReturn(Optional.of(List.of("rahul")));
+
+        Map<String, Set<String>> response = userService.getSuggestions("user123", null, "ra", 10, true);
+
+        assertEquals(Set.of("rahul"), response.get("usernames"));
+    }
+
+    @Test
+    public void testGetSuggestions_RecentRecipientsFirst() {
+        when(recentRecipients.ranked(eq("user123"), any(), eq(4))).thenReturn(List.of("rahul99"));
+        when(usernameIndex.suggest("ra", 5)).thenReturn(Optional.of(List.of("harsh", "rahul", "rahul99", "raj")));
+
+        Map<String, Set<String>> response = userService.getSuggestions("user123", "harsh", "ra", 3, false);
+
+        //? the caller's own name is dropped and the recent recipient is not repeated
+        assertEquals(List.of("rahul99", "rahul", "raj"), new ArrayList<>(response.get("usernames")));
+    }
+
+    @Test
+    public void testGetSuggestions_RecentRecipientsFillLimit() {
+        when(recentRecipients.ranked(eq("user123"), any(), eq(3))).thenReturn(List.of("rahul99", "harsh", "raj"));
+
+        Map<String, Set<String>> response = userService.getSuggestions("user123", "harsh", "ra", 2, false);
+
+        assertEquals(List.of("rahul99", "raj"), new ArrayList<>(response.get("usernames")));
+        verify(usernameIndex, never()).suggest(anyString(), anyInt());
+        verify(userRepository, never()).findByUsernameStartingWithIgnoreCase(anyString(), any(Limit.class));
+    }
+
+    @Test
+    public void testGetSuggestions_BlankQuery() {
+        Map<String, Set<String>> response = userService.getSuggestions("user123", null, "  ", 10, false);
 
-        // Assert
-        assertNotNull(response);
-        assertTrue(response.containsKey("usernames"));
         assertTrue(response.get("usernames").isEmpty());
-        verify(userRepository, times(1)).findUsernamesByQuery(".*" + query + ".*");
+        verifyNoInteractions(usernameIndex);
     }
 }
@@ -0,0 +1,158 @@
+package org.harsh.tuple.paisa.service;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.harsh.tuple.paisa.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UsernameIndexTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MongoCollection<Document> users;
+
+    // ?one entry per load, in the order the index reads the users collection; each thread iterates its own
+    private final BlockingQueue<Supplier<List<Document>>> loads = new LinkedBlockingQueue<>();
+    private final ThreadLocal<Iterator<Document>> rows = new ThreadLocal<>();
+    private UsernameIndex index;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        FindIterable<Document> find = mock(FindIterable.class);
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        when(mongoTemplate.getCollectionName(User.class)).thenReturn("users");
+        when(mongoTemplate.getCollection("users")).thenReturn(users);
+        when(users.find(any(Bson.class))).thenReturn(find);
+        when(find.projection(any(Bson.class))).thenReturn(find);
+        when(find.batchSize(anyInt())).thenReturn(find);
+        when(find.iterator()).thenAnswer(_ -> {
+            Supplier<List<Document>> load = loads.poll(1, TimeUnit.SECONDS);
+            rows.set((load == null ? List.<Document>of() : load.get()).iterator());
+            return cursor;
+        });
+        when(cursor.hasNext()).thenAnswer(_ -> rows.get().hasNext());
+        when(cursor.next()).thenAnswer(_ -> rows.get().next());
+        index = new UsernameIndex(mongoTemplate, DataSize.ofMegabytes(128), DataSize.ofMegabytes(512), 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.shutdown();
+    }
+
+    private static List<Document> named(String... usernames) {
+        List<Document> rows = new ArrayList<>();
+        for (String username : usernames) {
+            rows.add(new Document("_id", new ObjectId()).append("username", username));
+        }
+        return rows;
+    }
+
+    // ?a load that holds the builder thread until released
+    private static Supplier<List<Document>> blocked(CountDownLatch started, CountDownLatch release, List<Document> rows) {
+        return () -> {
+            started.countDown();
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return rows;
+        };
+    }
+
+    @Test
+    void rebuild_CallsWhileOneIsWaitingAreCoalesced() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        loads.add(blocked(started, release, named("alice")));
+        loads.add(() -> named("alice", "bob"));
+
+        index.rebuild();
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        //? the first build is running, one more is queued behind it and the rest ride along
+        index.rebuild();
+        index.rebuild();
+        index.rebuild();
+        release.countDown();
+
+        verify(users, timeout(1000).times(2)).find(any(Bson.class));
+        verify(users, after(200).times(2)).find(any(Bson.class));
+        assertEquals(Optional.of(List.of("alice", "bob")), index.suggest("", 10));
+    }
+
+    @Test
+    void catchUp_AddsNewerRegistrationsToTheSwappedInIndex() {
+        loads.add(() -> named("alice"));
+        index.build();
+        loads.add(() -> named("alice", "bob"));
+        index.build();
+        loads.add(() -> named("carol"));
+
+        index.catchUp();
+
+        assertEquals(Optional.of(List.of("alice", "bob", "carol")), index.suggest("", 10));
+        assertEquals(Optional.of(List.of("carol")), index.suggestFuzzy("carl", 5));
+    }
+
+    @Test
+    void catchUp_CompactionFinishingAfterARebuildIsDiscarded() throws InterruptedException {
+        loads.add(() -> named("alice"));
+        index.build();
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        loads.add(blocked(started, release, named("zed")));
+        index.rebuild();
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        //? enough registrations to ask for a compaction of the current fuzzy index, queued behind the rebuild
+        String[] registered = new String[20_001];
+        for (int i = 0; i < registered.length; i++) {
+            registered[i] = "member" + i;
+        }
+        loads.add(() -> named(registered));
+        index.catchUp();
+        AtomicBoolean compactionQueued = (AtomicBoolean) ReflectionTestUtils.getField(index, "compactionQueued");
+        assertTrue(compactionQueued.get());
+
+        release.countDown();
+        for (int i = 0; i < 3000 && compactionQueued.get(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(compactionQueued.get());
+        //? the rebuilt index stays, the compacted copy of the one it replaced is thrown away
+        assertEquals(Optional.of(List.of("zed")), index.suggestFuzzy("zex", 5));
+        assertEquals(Optional.of(List.of()), index.suggestFuzzy("alicf", 5));
+    }
+}
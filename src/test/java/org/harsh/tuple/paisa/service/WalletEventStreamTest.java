@@ -0,0 +1,77 @@
+package org.harsh.tuple.paisa.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class WalletEventStreamTest {
+
+    @Mock
+    private WalletEventRelay relay;
+
+    private WalletEventStream stream;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(relay.isEnabled()).thenReturn(true);
+        stream = new WalletEventStream(new SimpleMeterRegistry(), new ObjectMapper(), relay, Duration.ofMinutes(30), 32);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stream.shutdown();
+    }
+
+    @Test
+    void publish_RelaysToOtherNodesAsJson() {
+        stream.publishBalance("user1", 10.5);
+
+        verify(relay, timeout(1000)).send(List.of(new WalletEventRelay.Event("user1", "balance", "{\"balance\":10.5}")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void publish_RelaysInPublishOrder() {
+        List<String> relayed = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            ((List<WalletEventRelay.Event>) invocation.getArgument(0)).forEach(event -> relayed.add(event.json()));
+            return null;
+        }).when(relay).send(anyList());
+
+        for (int i = 0; i < 50; i++) {
+            stream.publishBalance("user1", i);
+        }
+
+        verify(relay, timeout(1000).atLeastOnce()).send(anyList());
+        long until = System.currentTimeMillis() + 1000;
+        while (relayed.size() < 50 && System.currentTimeMillis() < until) {
+            Thread.onSpinWait();
+        }
+        assertEquals(50, relayed.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals("{\"balance\":" + (double) i + "}", relayed.get(i));
+        }
+    }
+
+    @Test
+    void publish_DisabledRelaySendsNothing() {
+        when(relay.isEnabled()).thenReturn(false);
+
+        stream.publishBalance("user1", 10.5);
+
+        verify(relay, after(100).never()).send(anyList());
+    }
+}
@@ -2,6 +2,7 @@ package org.harsh.tuple.paisa.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.harsh.tuple.paisa.dto.EmailDetails;
+import org.harsh.tuple.paisa.dto.StatementResponse;
 import org.harsh.tuple.paisa.exception.InsufficientBalanceException;
 import org.harsh.tuple.paisa.exception.InvalidTransactionAmountException;
 import org.harsh.tuple.paisa.exception.WalletNotFoundException;
@@ -13,11 +14,19 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.*;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -39,6 +48,43 @@ class WalletServiceTest {
     private CashbackRepository cashbackRepository;
     @Mock
     private ObjectMapper objectMapper;
+    @Mock
+    private WalletEventStream walletEventStream;
+    @Mock
+    private LedgerSequenceService ledgerSequenceService;
+
+    @Mock
+    private RollupService rollupService;
+
+    @Mock
+    private AnalyticsCache analyticsCache;
+
+    @Mock
+    private CounterpartyInsightsService counterpartyInsightsService;
+
+    @Mock
+    private ColumnarLedgerStore columnarLedgerStore;
+
+    @Mock
+    private SpendingDistributionService spendingDistributionService;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private CashbackSettlementService cashbackSettlementService;
+
+    @Mock
+    private UsernameIndex usernameIndex;
+
+    @Mock
+    private RecentRecipients recentRecipients;
+
+    @Spy
+    private CashbackCapService cashbackCapService = new CashbackCapService(0, 100);
+
+    @Spy
+    private HistoryStore historyStore = new HistoryStore(null, null, 500, 10_000, Duration.ofMinutes(30), false);
 
     @InjectMocks
     private WalletService walletService;
@@ -68,13 +114,27 @@ class WalletServiceTest {
                 .amount(100.0)
                 .timestamp(LocalDateTime.now())
                 .build();
+
+        lenient().when(cashbackService.quoteCashback(anyString(), anyDouble(), anyBoolean()))
+                .thenReturn(new CashbackService.Quote(0, null));
+    }
+
+    // ?rechargeWallet credits the wallet with one findAndModify; returns the wallet as it is after the credit
+    private ArgumentCaptor<Update> stubCredit(double balanceAfter) {
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        when(mongoTemplate.findAndModify(any(Query.class), update.capture(), any(FindAndModifyOptions.class), eq(Wallet.class)))
+                .thenReturn(Wallet.builder().id("wallet1").userId("user1").balance(balanceAfter).build());
+        return update;
+    }
+
+    private static double credited(ArgumentCaptor<Update> update) {
+        return ((Number) update.getValue().getUpdateObject().get("$inc", org.bson.Document.class).get("balance")).doubleValue();
     }
 
     @Test
     void rechargeWallet_Success() {
         double rechargeAmount = 100.0;
-        when(walletRepository.findByUserId("user1")).thenReturn(Optional.of(testWallet));
-        when(walletRepository.save(any(Wallet.class))).thenReturn(testWallet);
+        ArgumentCaptor<Update> update = stubCredit(1100.0);
 
         Transaction expectedTransaction = Transaction.builder()
                 .id("trans1")
@@ -92,15 +152,17 @@ class WalletServiceTest {
         assertNotNull(result);
         assertEquals(rechargeAmount, result.getAmount());
         assertEquals(TransactionType.RECHARGE, result.getType());
-        verify(cashbackService).applyCashback("user1", rechargeAmount);
-        verify(walletRepository).save(any(Wallet.class));
+        verify(cashbackService).quoteCashback("user1", rechargeAmount, false);
+        verify(walletRepository, never()).save(any(Wallet.class));
+        assertEquals(rechargeAmount, credited(update));
+        verify(walletEventStream).publishBalance("user1", 1100.0);
+        verify(walletEventStream).publishActivity("user1", expectedTransaction);
     }
 
     @Test
     void rechargeWallet_WithDecimalAmount() {
         double rechargeAmount = 100.55;
-        when(walletRepository.findByUserId("user1")).thenReturn(Optional.of(testWallet));
-        when(walletRepository.save(any(Wallet.class))).thenReturn(testWallet);
+        ArgumentCaptor<Update> update = stubCredit(1100.55);
 
         Transaction expectedTransaction = Transaction.builder()
                 .id("trans1")
@@ -117,7 +179,101 @@ class WalletServiceTest {
 
         assertNotNull(result);
         assertEquals(rechargeAmount, result.getAmount());
-        assertEquals(1100.55, testWallet.getBalance(), 0.001);
+        assertEquals(rechargeAmount, credited(update), 0.001);
+        verify(walletEventStream).publishBalance("user1", 1100.55);
+    }
+
+    @Test
+    void rechargeWallet_CashbackCreditedInSameWalletUpdate() {
+        double rechargeAmount = 100.0;
+        ArgumentCaptor<Update> update = stubCredit(1105.0);
+        when(cashbackService.quoteCashback("user1", rechargeAmount, false)).thenReturn(new CashbackService.Quote(5.0, null));
+        when(ledgerSequenceService.next("user1", 2)).thenReturn(8L);
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        Cashback cashback = Cashback.builder().userId("user1").seq(8).amount(5.0).build();
+        when(cashbackService.recordCashback(eq("user1"), eq(8L), eq(5.0), any(LocalDateTime.class))).thenReturn(cashback);
+
+        Transaction result = walletService.rechargeWallet("user1", rechargeAmount);
+
+        assertEquals(105.0, credited(update));
+        org.bson.Document inc = update.getValue().getUpdateObject().get("$inc", org.bson.Document.class);
+        assertEquals(5.0, inc.get("cashbackLifetime"));
+        assertEquals(5.0, inc.get("cashbackByMonth." + YearMonth.from(result.getTimestamp())));
+        assertEquals(7, result.getSeq());
+        verify(walletRepository, never()).findByUserId(anyString());
+        verify(walletRepository, never()).save(any(Wallet.class));
+        verify(walletEventStream).publishBalance("user1", 1105.0);
+        verify(walletEventStream).publishActivity("user1", result);
+        verify(walletEventStream).publishActivity("user1", cashback);
+    }
+
+    @Test
+    void rechargeWallet_MonthlyCapTrimsCashbackInTheSameUpdate() {
+        CashbackCapService capped = new CashbackCapService(500, 100);
+        ReflectionTestUtils.setField(walletService, "cashbackCapService", capped);
+        String month = YearMonth.now().toString();
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        //? the first credit misses the cap guard (498 already earned this month), the retry grants the last 2
+        when(mongoTemplate.findAndModify(queries.capture(), updates.capture(), any(FindAndModifyOptions.class), eq(Wallet.class)))
+                .thenReturn(null, Wallet.builder().id("wallet1").userId("user1").balance(1102.0)
+                        .cashbackByMonth(Map.of(month, 500.0)).build());
+        when(walletRepository.findByUserId("user1")).thenReturn(Optional.of(Wallet.builder().userId("user1")
+                .cashbackByMonth(Map.of(month, 498.0)).build()));
+        CashbackService.Quote quote = new CashbackService.Quote(5.0, "diwali");
+        when(cashbackService.quoteCashback("user1", 100.0, false)).thenReturn(quote);
+        when(ledgerSequenceService.next("user1", 2)).thenReturn(8L);
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        walletService.rechargeWallet("user1", 100.0);
+
+        //? the 3 rupees the cap cut go back to the campaign
+        verify(cashbackService).releaseUnused(quote, 2.0);
+
+        assertEquals(List.of(105.0, 102.0), updates.getAllValues().stream()
+                .map(update -> ((Number) update.getUpdateObject().get("$inc", org.bson.Document.class).get("balance")).doubleValue())
+                .toList());
+        assertTrue(queries.getValue().getQueryObject().containsKey("$or"));
+        verify(cashbackService).recordCashback(eq("user1"), eq(8L), eq(2.0), any(LocalDateTime.class));
+        //? the cache now knows the cap is used up, the next recharge skips the cashback up front
+        assertEquals(0, capped.clip("user1", YearMonth.now(), 5.0));
+    }
+
+    @Test
+    void rechargeWallet_MonthlyCapReachedCreditsRechargeOnly() {
+        CashbackCapService capped = new CashbackCapService(500, 100);
+        capped.observe("user1", YearMonth.now(), 500.0);
+        ReflectionTestUtils.setField(walletService, "cashbackCapService", capped);
+        ArgumentCaptor<Update> update = stubCredit(1100.0);
+        when(cashbackService.quoteCashback("user1", 100.0, false)).thenReturn(new CashbackService.Quote(5.0, null));
+        when(ledgerSequenceService.next("user1", 1)).thenReturn(7L);
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        walletService.rechargeWallet("user1", 100.0);
+
+        assertEquals(100.0, credited(update));
+        assertFalse(update.getValue().getUpdateObject().get("$inc", org.bson.Document.class).containsKey("cashbackLifetime"));
+        verify(cashbackService, never()).recordCashback(anyString(), anyLong(), anyDouble(), any());
+    }
+
+    @Test
+    void rechargeWallet_DeferredModeOnlyAccruesCashback() {
+        double rechargeAmount = 100.0;
+        ArgumentCaptor<Update> update = stubCredit(1100.0);
+        when(cashbackService.quoteCashback("user1", rechargeAmount, false)).thenReturn(new CashbackService.Quote(5.0, null));
+        when(cashbackSettlementService.isDeferred()).thenReturn(true);
+        when(ledgerSequenceService.next("user1", 1)).thenReturn(7L);
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Transaction result = walletService.rechargeWallet("user1", rechargeAmount);
+
+        assertEquals(rechargeAmount, credited(update));
+        assertFalse(update.getValue().getUpdateObject().get("$inc", org.bson.Document.class).containsKey("cashbackLifetime"));
+        assertEquals(7, result.getSeq());
+        verify(cashbackSettlementService).accrue("user1", 5.0, null, result.getTimestamp());
+        verify(cashbackService, never()).releaseUnused(any(), anyDouble());
+        verify(cashbackService, never()).recordCashback(anyString(), anyLong(), anyDouble(), any());
+        verify(walletEventStream).publishBalance("user1", 1100.0);
     }
 
     @Test
@@ -134,10 +290,20 @@ class WalletServiceTest {
 
     @Test
     void rechargeWallet_WalletNotFound() {
-        when(walletRepository.findByUserId("nonexistent")).thenReturn(Optional.empty());
+        //? findAndModify matches no wallet and returns null
+        assertThrows(WalletNotFoundException.class,
+                () -> walletService.rechargeWallet("nonexistent", 100.0));
+    }
+
+    @Test
+    void rechargeWallet_WalletNotFoundReleasesCampaignBudget() {
+        CashbackService.Quote quote = new CashbackService.Quote(5.0, "diwali");
+        when(cashbackService.quoteCashback("nonexistent", 100.0, false)).thenReturn(quote);
 
         assertThrows(WalletNotFoundException.class,
                 () -> walletService.rechargeWallet("nonexistent", 100.0));
+
+        verify(cashbackService).releaseUnused(quote, 0);
     }
 
     @Test
@@ -160,6 +326,8 @@ class WalletServiceTest {
         assertEquals(600.0, recipientWallet.getBalance());
         verify(walletRepository, times(2)).save(any(Wallet.class));
         verify(transactionRepository, times(2)).save(any(Transaction.class));
+        verify(usernameIndex).recordRecipient(any());
+        verify(recentRecipients).record(eq("user1"), any(), any());
     }
 
     @Test
@@ -242,15 +410,15 @@ class WalletServiceTest {
                         .build()
         );
 
-        Page<Transaction> transactionPage = new PageImpl<>(transactions);
-        Page<Cashback> cashbackPage = new PageImpl<>(cashbacks);
+        Slice<Transaction> transactionPage = new SliceImpl<>(transactions);
+        Slice<Cashback> cashbackPage = new SliceImpl<>(cashbacks);
 
         when(transactionRepository.findByUserId(eq("user1"), any(Pageable.class)))
                 .thenReturn(transactionPage);
         when(cashbackRepository.findByUserId(eq("user1"), any(Pageable.class)))
                 .thenReturn(cashbackPage);
 
-        List<Object> history = walletService.getCombinedHistory("user1", 0, 10);
+        List<Object> history = walletService.getCombinedHistory("user1", 0, 10).getHistory();
 
         assertNotNull(history);
         assertEquals(2, history.size());
@@ -275,11 +443,11 @@ class WalletServiceTest {
     @Test
     void getCombinedHistory_EmptyResults() {
         when(transactionRepository.findByUserId(eq("user1"), any(Pageable.class)))
-                .thenReturn(new PageImpl<>(Collections.emptyList()));
+                .thenReturn(new SliceImpl<>(Collections.emptyList()));
         when(cashbackRepository.findByUserId(eq("user1"), any(Pageable.class)))
-                .thenReturn(new PageImpl<>(Collections.emptyList()));
+                .thenReturn(new SliceImpl<>(Collections.emptyList()));
 
-        List<Object> history = walletService.getCombinedHistory("user1", 0, 10);
+        List<Object> history = walletService.getCombinedHistory("user1", 0, 10).getHistory();
 
         assertTrue(history.isEmpty());
     }
@@ -302,11 +470,11 @@ class WalletServiceTest {
         );
 
         when(transactionRepository.findByUserId(eq("user1"), any(Pageable.class)))
-                .thenReturn(new PageImpl<>(transactions));
+                .thenReturn(new SliceImpl<>(transactions));
         when(cashbackRepository.findByUserId(eq("user1"), any(Pageable.class)))
-                .thenReturn(new PageImpl<>(Collections.emptyList()));
+                .thenReturn(new SliceImpl<>(Collections.emptyList()));
 
-        List<Object> history = walletService.getCombinedHistory("user1", 0, 10);
+        List<Object> history = walletService.getCombinedHistory("user1", 0, 10).getHistory();
 
         assertEquals(2, history.size());
         assertTrue(history.stream().allMatch(item -> item instanceof Transaction));
@@ -330,11 +498,11 @@ class WalletServiceTest {
         );
 
         when(transactionRepository.findByUserId(eq("user1"), any(Pageable.class)))
-                .thenReturn(new PageImpl<>(Collections.emptyList()));
+                .thenReturn(new SliceImpl<>(Collections.emptyList()));
         when(cashbackRepository.findByUserId(eq("user1"), any(Pageable.class)))
-                .thenReturn(new PageImpl<>(cashbacks));
+                .thenReturn(new SliceImpl<>(cashbacks));
 
-        List<Object> history = walletService.getCombinedHistory("user1", 0, 10);
+        List<Object> history = walletService.getCombinedHistory("user1", 0, 10).getHistory();
 
         assertEquals(2, history.size());
         assertTrue(history.stream().allMatch(item -> item instanceof Cashback));
@@ -366,11 +534,11 @@ class WalletServiceTest {
                 .build();
 
         when(transactionRepository.findByUserId(eq("user1"), any(Pageable.class)))
-                .thenReturn(new PageImpl<>(Arrays.asList(transaction1, transaction2)));
+                .thenReturn(new SliceImpl<>(Arrays.asList(transaction1, transaction2)));
         when(cashbackRepository.findByUserId(eq("user1"), any(Pageable.class)))
-                .thenReturn(new PageImpl<>(Arrays.asList(cashback1)));
+                .thenReturn(new SliceImpl<>(Arrays.asList(cashback1)));
 
-        List<Object> history = walletService.getCombinedHistory("user1", 0, 10);
+        List<Object> history = walletService.getCombinedHistory("user1", 0, 10).getHistory();
 
         assertEquals(3, history.size());
         assertTrue(history.get(0) instanceof Transaction); // Most recent transaction
@@ -415,8 +583,7 @@ class WalletServiceTest {
     @Test
     void rechargeWallet_MaximumAmount() {
         double maxAmount = Double.MAX_VALUE;
-        when(walletRepository.findByUserId("user1")).thenReturn(Optional.of(testWallet));
-        when(walletRepository.save(any(Wallet.class))).thenReturn(testWallet);
+        stubCredit(maxAmount);
 
         Transaction expectedTransaction = Transaction.builder()
                 .id("trans1")
@@ -517,7 +684,7 @@ class WalletServiceTest {
     @Test
     void rechargeWallet_TransactionDetails() {
         double rechargeAmount = 100.0;
-        when(walletRepository.findByUserId("user1")).thenReturn(Optional.of(testWallet));
+        stubCredit(1100.0);
 
         Transaction expectedTransaction = Transaction.builder()
                 .id("trans1")
@@ -562,11 +729,11 @@ class WalletServiceTest {
                 .build();
 
         when(transactionRepository.findByUserId(eq("user1"), any(Pageable.class)))
-                .thenReturn(new PageImpl<>(List.of(transaction)));
+                .thenReturn(new SliceImpl<>(List.of(transaction)));
         when(cashbackRepository.findByUserId(eq("user1"), any(Pageable.class)))
-                .thenReturn(new PageImpl<>(List.of(cashback)));
+                .thenReturn(new SliceImpl<>(List.of(cashback)));
 
-        List<Object> history = walletService.getCombinedHistory("user1", 0, 10);
+        List<Object> history = walletService.getCombinedHistory("user1", 0, 10).getHistory();
 
         assertEquals(2, history.size());
         assertTrue(history.get(0) instanceof Cashback);
@@ -582,31 +749,47 @@ class WalletServiceTest {
                 Transaction.builder().userId("user1").amount(200.0).timestamp(LocalDateTime.now()).build()
         );
 
-        doReturn(new PageImpl<>(transactions))
+        doReturn(new SliceImpl<>(transactions))
                 .when(transactionRepository)
                 .findByUserId(eq("user1"), any(Pageable.class));
 
-        doReturn(new PageImpl<>(Collections.emptyList()))
+        doReturn(new SliceImpl<>(Collections.emptyList()))
                 .when(cashbackRepository)
                 .findByUserId(eq("user1"), any(Pageable.class));
 
-        List<Object> history = walletService.getCombinedHistory("user1", 1, 5);
+        List<Object> history = walletService.getCombinedHistory("user1", 1, 5).getHistory();
 
         assertEquals(2, history.size());
     }
 
+    @Test
+    void getCombinedHistory_HasMoreWhenEitherSliceHasNext() {
+        Pageable pageable = PageRequest.of(0, 1, Sort.by(Sort.Direction.DESC, "timestamp"));
+
+        when(transactionRepository.findByUserId(eq("user1"), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(testTransaction), pageable, true));
+        when(cashbackRepository.findByUserId(eq("user1"), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(Collections.emptyList(), pageable, false));
+
+        StatementResponse statement = walletService.getCombinedHistory("user1", 0, 1);
+
+        assertTrue(statement.isHasMore());
+        assertEquals(1, statement.getHistory().size());
+        verify(transactionRepository, never()).count();
+        verify(cashbackRepository, never()).count();
+    }
+
     @Test
     void rechargeWallet_VerifyEmailSent() {
         double rechargeAmount = 100.0;
-        when(walletRepository.findByUserId("user1")).thenReturn(Optional.of(testWallet));
-        when(walletRepository.save(any(Wallet.class))).thenReturn(testWallet);
+        stubCredit(1100.0);
         when(transactionRepository.save(any(Transaction.class))).thenReturn(testTransaction);
         when(userRepository.findById("user1")).thenReturn(Optional.of(testUser));
 
         walletService.rechargeWallet("user1", rechargeAmount);
 
         verify(userRepository).findById("user1");
-        verify(cashbackService).applyCashback("user1", rechargeAmount);
+        verify(cashbackService).quoteCashback("user1", rechargeAmount, false);
     }
 
     @Test
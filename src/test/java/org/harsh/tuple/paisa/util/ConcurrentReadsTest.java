@@ -0,0 +1,85 @@
+package org.harsh.tuple.paisa.util;
+
+import org.harsh.tuple.paisa.exception.HistoryReadTimeoutException;
+import org.harsh.tuple.paisa.exception.WalletNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentReadsTest {
+
+    @Test
+    void both_RunsReadsConcurrently() {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        ConcurrentReads.Both<String, Integer> result = ConcurrentReads.both(
+                () -> {
+                    bothStarted.countDown();
+                    assertTrue(bothStarted.await(2, TimeUnit.SECONDS));
+                    return "transactions";
+                },
+                () -> {
+                    bothStarted.countDown();
+                    assertTrue(bothStarted.await(2, TimeUnit.SECONDS));
+                    return 42;
+                },
+                Duration.ofSeconds(5)
+        );
+
+        assertEquals("transactions", result.first());
+        assertEquals(42, result.second());
+    }
+
+    @Test
+    void both_FailureCancelsOtherReadAndRethrows() {
+        AtomicBoolean interrupted = new AtomicBoolean();
+
+        assertThrows(WalletNotFoundException.class, () -> ConcurrentReads.both(
+                () -> {
+                    throw new WalletNotFoundException("user1");
+                },
+                () -> {
+                    try {
+                        Thread.sleep(10_000);
+                    } catch (InterruptedException ex) {
+                        interrupted.set(true);
+                    }
+                    return null;
+                },
+                Duration.ofSeconds(5)
+        ));
+        assertTrue(interrupted.get());
+    }
+
+    @Test
+    void both_DeadlineExceeded() {
+        assertThrows(HistoryReadTimeoutException.class, () -> ConcurrentReads.both(
+                () -> "fast",
+                () -> {
+                    Thread.sleep(10_000);
+                    return "slow";
+                },
+                Duration.ofMillis(50)
+        ));
+    }
+
+    @Test
+    void all_DeadlineCoversQueuedReadsToo() {
+        List<Callable<Integer>> reads = List.of(() -> slow(1), () -> slow(2), () -> slow(3), () -> slow(4));
+
+        //? one at a time the four reads need ~240 ms, each fits in 150 ms but the request as a whole does not
+        assertThrows(HistoryReadTimeoutException.class, () -> ConcurrentReads.all(reads, 1, Duration.ofMillis(150)));
+    }
+
+    private static Integer slow(int value) throws InterruptedException {
+        Thread.sleep(60);
+        return value;
+    }
+}
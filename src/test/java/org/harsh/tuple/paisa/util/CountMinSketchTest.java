@@ -0,0 +1,47 @@
+package org.harsh.tuple.paisa.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountMinSketchTest {
+
+    @Test
+    void estimate_NeverBelowTrueCountAndWithinBound() {
+        CountMinSketch sketch = new CountMinSketch(4, 256);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("user" + i, 1);
+        }
+        sketch.add("frequent", 500);
+
+        assertTrue(sketch.estimate("frequent") >= 500);
+        //? e/width * total, the bound holds per key with high probability
+        assertTrue(sketch.estimate("frequent") <= 500 + Math.ceil(Math.E / 256 * sketch.total()));
+        assertEquals(1500, sketch.total());
+    }
+
+    @Test
+    void merge_AddsCounters() {
+        CountMinSketch a = new CountMinSketch(4, 64);
+        CountMinSketch b = new CountMinSketch(4, 64);
+        a.add("x", 3);
+        b.add("x", 4);
+
+        a.merge(b);
+
+        assertTrue(a.estimate("x") >= 7);
+        assertEquals(7, a.total());
+        assertThrows(IllegalArgumentException.class, () -> a.merge(new CountMinSketch(4, 32)));
+    }
+
+    @Test
+    void bytes_RoundTrip() {
+        CountMinSketch sketch = new CountMinSketch(3, 16);
+        sketch.add("x", 9);
+
+        CountMinSketch copy = CountMinSketch.fromBytes(sketch.toBytes());
+
+        assertEquals(sketch.estimate("x"), copy.estimate("x"));
+        assertEquals(9, copy.total());
+    }
+}
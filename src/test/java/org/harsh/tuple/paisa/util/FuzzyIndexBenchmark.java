@@ -0,0 +1,89 @@
+package org.harsh.tuple.paisa.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// *Fuzzy username lookup at scale: build time, footprint and per-query latency for mistyped names.
+// *mvn test -Dtest=FuzzyIndexBenchmark -Dbenchmark.fuzzy.users=1000000 (needs ~2 GB of heap)
+@EnabledIfSystemProperty(named = "benchmark.fuzzy.users", matches = "\\d+")
+class FuzzyIndexBenchmark {
+
+    private static final String[] SYLLABLES = {
+            "ra", "hu", "l", "an", "ki", "ta", "sh", "ar", "ma", "pri", "ya", "dev", "ni", "ka", "jo", "sa", "mi", "vi",
+            "kr", "is", "be", "co", "do", "el", "fa", "ge", "ho", "iv", "ju", "ke", "lo", "mu", "ne", "ol", "pe", "ro",
+            "si", "tu", "ur", "ve", "wa", "yo", "ze", "ch", "th", "st", "br", "gr", "nd", "ay"
+    };
+    private static final int WARMUP = 20_000;
+    private static final int QUERIES = 20_000;
+
+    @Test
+    void lookupLatency() {
+        int users = Integer.parseInt(System.getProperty("benchmark.fuzzy.users"));
+        Random random = new Random(42);
+        List<String> usernames = usernames(users, random);
+
+        long started = System.nanoTime();
+        FuzzyIndex index = new FuzzyIndex(usernames, 2);
+        long buildMillis = (System.nanoTime() - started) / 1_000_000;
+
+        for (int i = 0; i < WARMUP; i++) {
+            index.search(mistype(usernames.get(random.nextInt(users)), random), 2, 10, _ -> 0);
+        }
+        long[] latencies = new long[QUERIES];
+        int answered = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            String query = mistype(usernames.get(random.nextInt(users)), random);
+            int distance = query.length() <= 4 ? 1 : 2;
+            long queryStarted = System.nanoTime();
+            if (!index.search(query, distance, 10, _ -> 0).isEmpty()) {
+                answered++;
+            }
+            latencies[i] = System.nanoTime() - queryStarted;
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("users=%,d build=%,d ms index=~%,d MB p50=%.3f ms p99=%.3f ms answered=%d/%d%n",
+                users, buildMillis, index.estimatedBytes() >> 20,
+                latencies[QUERIES / 2] / 1e6, latencies[QUERIES * 99 / 100] / 1e6, answered, QUERIES);
+    }
+
+    //? syllable names, some with a number or a capital, the way people pick handles
+    private static List<String> usernames(int count, Random random) {
+        Set<String> usernames = new LinkedHashSet<>(count * 2);
+        while (usernames.size() < count) {
+            StringBuilder name = new StringBuilder();
+            for (int i = 2 + random.nextInt(3); i > 0; i--) {
+                name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            if (random.nextBoolean()) {
+                name.append(random.nextInt(1000));
+            }
+            if (random.nextInt(5) == 0) {
+                name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+            }
+            usernames.add(name.toString());
+        }
+        return new ArrayList<>(usernames);
+    }
+
+    // ?one or two deletions, substitutions or insertions
+    private static String mistype(String username, Random random) {
+        StringBuilder query = new StringBuilder(username);
+        for (int edits = 1 + random.nextInt(2); edits > 0 && query.length() > 2; edits--) {
+            int at = random.nextInt(query.length());
+            switch (random.nextInt(3)) {
+                case 0 -> query.deleteCharAt(at);
+                case 1 -> query.setCharAt(at, (char) ('a' + random.nextInt(26)));
+                default -> query.insert(at, (char) ('a' + random.nextInt(26)));
+            }
+        }
+        return query.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package org.harsh.tuple.paisa.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FuzzyIndexTest {
+
+    private static List<String> values(List<FuzzyIndex.Match> matches) {
+        return matches.stream().map(FuzzyIndex.Match::value).toList();
+    }
+
+    @Test
+    void distance_CountsAdjacentSwapAsOneEdit() {
+        assertEquals(0, FuzzyIndex.distance("rahul", "rahul", 2));
+        assertEquals(1, FuzzyIndex.distance("rahul", "rahl", 2));
+        assertEquals(1, FuzzyIndex.distance("rahul", "rhaul", 2));
+        assertEquals(2, FuzzyIndex.distance("rahul", "rahool", 2));
+        //? capped at max + 1 once it is out of range
+        assertEquals(3, FuzzyIndex.distance("kitten", "sitting", 2));
+    }
+
+    @Test
+    void search_FindsTyposRankedByDistanceThenPopularity() {
+        FuzzyIndex index = new FuzzyIndex(List.of("rahul", "Rahul99", "raul", "rahel", "priya", "rahulkumar"), 2);
+        Map<String, Long> paid = Map.of("rahel", 5L, "raul", 1L);
+
+        List<FuzzyIndex.Match> matches = index.search("rahull", 2, 10, value -> paid.getOrDefault(value, 0L));
+
+        assertEquals(List.of("rahul", "rahel", "raul", "Rahul99"), values(matches));
+        assertEquals(1, matches.get(0).distance());
+        assertEquals(2, matches.get(1).distance());
+    }
+
+    @Test
+    void search_IgnoresCaseAndHonoursLimitAndDistance() {
+        FuzzyIndex index = new FuzzyIndex(List.of("Harsh", "harsha", "marsh", "hash"), 2);
+
+        assertEquals(List.of("Harsh"), values(index.search("HARSH", 0, 10, _ -> 0)));
+        assertEquals(List.of("Harsh", "harsha", "hash", "marsh"), values(index.search("harsh", 1, 10, _ -> 0)));
+        assertEquals(2, index.search("harsh", 1, 2, _ -> 0).size());
+        assertThrows(IllegalArgumentException.class, () -> index.search("harsh", 3, 10, _ -> 0));
+    }
+
+    @Test
+    void search_FullPageOfCloseMatchesKeepsPopularFartherOnesOut() {
+        FuzzyIndex index = new FuzzyIndex(List.of("kiran", "kiren", "kiron", "kirana", "kin"), 2);
+        Map<String, Long> paid = Map.of("kin", 100L);
+
+        List<FuzzyIndex.Match> matches = index.search("kiran", 2, 2, value -> paid.getOrDefault(value, 0L));
+
+        assertEquals(List.of("kiran", "kirana"), values(matches));
+        assertEquals(List.of("kiran", "kirana", "kiren", "kiron", "kin"),
+                values(index.search("kiran", 2, 10, value -> paid.getOrDefault(value, 0L))));
+    }
+
+    @Test
+    void search_LongNamesSharingPrefixAreToldApartByTheirTail() {
+        FuzzyIndex index = new FuzzyIndex(List.of("rahulkumar", "rahulkumar1", "rahulkapoor", "rahulkumari"), 2);
+
+        assertEquals(List.of("rahulkumar", "rahulkumar1", "rahulkumari"),
+                values(index.search("rahulkumr", 2, 10, _ -> 0)));
+    }
+
+    @Test
+    void addAndRemove_VisibleImmediatelyAndSurviveCompaction() {
+        FuzzyIndex index = new FuzzyIndex(List.of("anna", "annie"), 2);
+
+        index.add("anne");
+        index.remove("annie");
+        index.add("anna");
+
+        assertEquals(List.of("anna", "anne"), values(index.search("anni", 1, 10, _ -> 0)));
+        assertEquals(2, index.size());
+        assertEquals(2, index.pending());
+
+        FuzzyIndex compacted = index.compacted();
+        assertEquals(0, compacted.pending());
+        assertEquals(List.of("anna", "anne"), values(compacted.search("anni", 1, 10, _ -> 0)));
+
+        compacted.remove("anne");
+        compacted.add("annie");
+        assertEquals(List.of("anna", "annie"), values(compacted.search("anni", 1, 10, _ -> 0)));
+    }
+
+    @Test
+    void estimateBytes_IsAnUpperBound() {
+        List<String> names = List.of("rahul", "priya", "harshvardhan", "ab", "user_2024");
+
+        assertTrue(FuzzyIndex.estimateBytes(names, 2) >= new FuzzyIndex(names, 2).estimatedBytes());
+    }
+}
@@ -0,0 +1,46 @@
+package org.harsh.tuple.paisa.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest {
+
+    @Test
+    void cardinality_SmallSetsAreNearlyExact() {
+        HyperLogLog hll = new HyperLogLog(12);
+        for (int i = 0; i < 50; i++) {
+            hll.add("user" + i);
+            hll.add("user" + i);
+        }
+
+        assertEquals(50, hll.cardinality(), 2);
+    }
+
+    @Test
+    void cardinality_LargeSetsWithinErrorBound() {
+        HyperLogLog hll = new HyperLogLog(12);
+        for (int i = 0; i < 100_000; i++) {
+            hll.add("user" + i);
+        }
+
+        //? standard error at p=12 is ~1.6%, allow 5%
+        assertEquals(100_000, hll.cardinality(), 5_000);
+    }
+
+    @Test
+    void merge_IsUnionAndBytesRoundTrip() {
+        HyperLogLog a = new HyperLogLog(10);
+        HyperLogLog b = new HyperLogLog(10);
+        for (int i = 0; i < 300; i++) {
+            a.add("user" + i);
+            b.add("user" + (i + 150));
+        }
+
+        a.merge(b);
+        HyperLogLog copy = HyperLogLog.fromBytes(a.toBytes());
+
+        assertEquals(450, copy.cardinality(), 25);
+        assertThrows(IllegalArgumentException.class, () -> a.merge(new HyperLogLog(11)));
+    }
+}
@@ -0,0 +1,62 @@
+package org.harsh.tuple.paisa.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefixIndexTest {
+
+    @Test
+    void search_MatchesPrefixIgnoringCaseInOrder() {
+        PrefixIndex index = new PrefixIndex(List.of("harshit", "Harsh", "hari", "bob", "harsha"));
+
+        assertEquals(List.of("Harsh", "harsha", "harshit"), index.search("HARSH", 10));
+        assertEquals(List.of("hari", "Harsh"), index.search("har", 2));
+        assertTrue(index.search("zed", 10).isEmpty());
+    }
+
+    @Test
+    void search_DoesNotMatchInsideName() {
+        PrefixIndex index = new PrefixIndex(List.of("alice", "malice"));
+
+        assertEquals(List.of("alice"), index.search("ali", 10));
+    }
+
+    @Test
+    void addAndRemove_VisibleBeforeMerge() {
+        PrefixIndex index = new PrefixIndex(List.of("anna", "annie"));
+
+        index.add("Anne");
+        index.add("anna");
+        index.remove("annie");
+
+        assertEquals(List.of("anna", "Anne"), index.search("ann", 10));
+        assertEquals(2, index.size());
+
+        index.remove("Anne");
+        index.add("annie");
+        assertEquals(List.of("anna", "annie"), index.search("ann", 10));
+    }
+
+    @Test
+    void add_ManyNamesMergesIntoSnapshot() {
+        PrefixIndex index = new PrefixIndex(List.of());
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            String name = String.format("user%05d", i);
+            index.add(name);
+            expected.add(name);
+        }
+        for (int i = 0; i < 3000; i += 2) {
+            index.remove(expected.get(i));
+        }
+
+        assertEquals(1500, index.size());
+        assertEquals(List.of("user00001", "user00003", "user00005"), index.search("user", 3));
+        assertEquals(List.of("user02999"), index.search("user02999", 10));
+        assertTrue(index.search("user02998", 10).isEmpty());
+    }
+}
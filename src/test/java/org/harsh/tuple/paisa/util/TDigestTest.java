@@ -0,0 +1,62 @@
+package org.harsh.tuple.paisa.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TDigestTest {
+
+    @Test
+    void quantile_UniformValuesWithinOnePercent() {
+        TDigest digest = new TDigest(100);
+        for (int i = 1; i <= 100_000; i++) {
+            digest.add(i);
+        }
+
+        assertEquals(50_000, digest.quantile(0.5), 1_000);
+        assertEquals(90_000, digest.quantile(0.9), 1_000);
+        assertEquals(99_000, digest.quantile(0.99), 200);
+        assertEquals(1, digest.quantile(0));
+        assertEquals(100_000, digest.quantile(1));
+        assertEquals(100_000, digest.count());
+    }
+
+    @Test
+    void quantile_EmptyIsNaNAndSingleValueIsExact() {
+        TDigest digest = new TDigest(100);
+        assertTrue(Double.isNaN(digest.quantile(0.5)));
+
+        digest.add(42);
+        assertEquals(42, digest.quantile(0.9));
+    }
+
+    @Test
+    void merge_MatchesCombinedDistributionAndBytesRoundTrip() {
+        TDigest low = new TDigest(100);
+        TDigest high = new TDigest(100);
+        Random random = new Random(7);
+        for (int i = 0; i < 50_000; i++) {
+            low.add(random.nextDouble() * 100);
+            high.add(100 + random.nextDouble() * 100);
+        }
+
+        low.merge(TDigest.fromBytes(high.toBytes()));
+
+        assertEquals(100_000, low.count());
+        assertEquals(100, low.quantile(0.5), 2);
+        assertEquals(50, low.quantile(0.25), 2);
+        assertEquals(180, low.quantile(0.9), 2);
+    }
+
+    @Test
+    void toBytes_StaysCompact() {
+        TDigest digest = new TDigest(100);
+        for (int i = 0; i < 1_000_000; i++) {
+            digest.add(i % 9973);
+        }
+
+        assertTrue(digest.toBytes().length < 4_096);
+    }
+}